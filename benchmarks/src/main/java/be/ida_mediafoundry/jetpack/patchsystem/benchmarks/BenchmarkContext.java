@@ -0,0 +1,24 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+/**
+ * AEM mock context of a benchmark trial, outside of a JUnit rule.
+ * The resource resolver mock keeps the content in memory, so the benchmarks measure the patch system and not the repository.
+ */
+public class BenchmarkContext extends AemContextImpl implements AutoCloseable {
+
+    public BenchmarkContext() {
+        setResourceResolverType(ResourceResolverType.RESOURCERESOLVER_MOCK);
+    }
+
+    public void start() {
+        setUp();
+    }
+
+    @Override
+    public void close() {
+        tearDown();
+    }
+}
@@ -0,0 +1,58 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.ProfilerConfig;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the options of the JMH command line, always with the GC profiler,
+ * so the reports contain the allocation rate of every benchmark next to its time.
+ */
+public final class BenchmarkMain {
+
+    private static final String GC_PROFILER = "gc";
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions;
+        try {
+            commandLineOptions = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats() || hasGcProfiler(commandLineOptions)) {
+            Main.main(args);
+            return;
+        }
+
+        run(commandLineOptions);
+    }
+
+    private static void run(CommandLineOptions commandLineOptions) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    private static boolean hasGcProfiler(CommandLineOptions commandLineOptions) {
+        for (ProfilerConfig profiler : commandLineOptions.getProfilers()) {
+            if (GC_PROFILER.equals(profiler.getKlass()) || GCProfiler.class.getName().equals(profiler.getKlass())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
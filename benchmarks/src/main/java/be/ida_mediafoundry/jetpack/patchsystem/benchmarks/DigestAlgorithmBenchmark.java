@@ -0,0 +1,60 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ScriptFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of detecting changes in a patch, per digest algorithm and patch size.
+ * The sizes follow the patches in /apps/patches: most are a few kB, migrations with inline data go up to hundreds of kB.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar DigestAlgorithmBenchmark -p size=2048,16384
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DigestAlgorithmBenchmark {
+
+    @Param({"1024", "8192", "65536", "524288"})
+    private int size;
+
+    @Param({"MD5", "SHA256", "MURMUR3"})
+    private DigestAlgorithm algorithm;
+
+    private String script;
+
+    @Setup
+    public void setUp() {
+        script = PatchScripts.generate(size);
+    }
+
+    @Benchmark
+    public String digest() {
+        return algorithm.digest(script);
+    }
+
+    /**
+     * Normalized fingerprint of the script, independent of the algorithm parameter.
+     */
+    @Benchmark
+    public String fingerprint() {
+        return ScriptFingerprint.of(script);
+    }
+}
@@ -0,0 +1,142 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.SimplePatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.servlets.responsemodels.PatchesListResponse;
+import com.adobe.granite.ui.components.ComponentHelper;
+import com.adobe.granite.ui.components.Config;
+import com.adobe.granite.ui.components.ExpressionHelper;
+import com.adobe.granite.ui.components.ExpressionResolver;
+import com.adobe.granite.ui.components.ds.DataSource;
+import com.google.gson.Gson;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.servlet.jsp.PageContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cost of rendering the patch console and the list endpoint: a page of the datasource and the JSON of the list servlet.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PatchConsoleBenchmark -p patches=1000,10000
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatchConsoleBenchmark {
+
+    /**
+     * Page size of the console, see the datasource of /apps/jetpack/patchsystem/content/patchsystem.
+     */
+    static final int PAGE_SIZE = 40;
+
+    private static final String DATASOURCE_PATH = "/apps/jetpack/patchsystem/content/patchsystem/datasource";
+    private static final String OFFSET = "offset";
+    private static final String LIMIT = "limit";
+
+    private Resource firstPage;
+    private Resource lastPage;
+    private ComponentHelper componentHelper;
+    private PatchesListResponse listResponse;
+
+    @Setup
+    public void setUp(PatchRepository repository) {
+        firstPage = createDatasource(repository, 0);
+        lastPage = createDatasource(repository, Math.max(0, repository.getPatchCount() - PAGE_SIZE));
+
+        //the expressions of the datasource are resolved to the offset and limit of the page
+        ExpressionResolver expressionResolver = new ExpressionResolver() {
+            @Override
+            public <T> T resolve(String expression, Locale locale, Class<T> type, PageContext pageContext) {
+                return type.cast(Integer.valueOf(expression));
+            }
+
+            @Override
+            public <T> T resolve(String expression, Locale locale, Class<T> type, SlingHttpServletRequest request) {
+                return type.cast(Integer.valueOf(expression));
+            }
+        };
+        ExpressionHelper expressionHelper = new ExpressionHelper(expressionResolver, repository.getContext().request());
+        componentHelper = mock(ComponentHelper.class);
+        when(componentHelper.getExpressionHelper()).thenReturn(expressionHelper);
+
+        //list of a new instance, on which every patch is executed
+        List<SimplePatchFile> patchFiles = new ArrayList<>();
+        for (String patchPath : repository.getPatchPaths()) {
+            patchFiles.add(new SimplePatchFile(GroovyPatchFile.TYPE, patchPath));
+        }
+        listResponse = new PatchesListResponse(patchFiles);
+        Map<String, Boolean> readyStates = new HashMap<>();
+        readyStates.put(GroovyPatchFile.TYPE, true);
+        listResponse.setReadyStates(readyStates);
+    }
+
+    /**
+     * First page of the console, as it is opened.
+     */
+    @Benchmark
+    public void getDataSourceFirstPage(PatchRepository repository, Blackhole blackhole) {
+        renderPage(repository, firstPage, blackhole);
+    }
+
+    /**
+     * Last page of the console, after scrolling through all patches.
+     */
+    @Benchmark
+    public void getDataSourceLastPage(PatchRepository repository, Blackhole blackhole) {
+        renderPage(repository, lastPage, blackhole);
+    }
+
+    /**
+     * JSON of the list servlet, serialized the same way as {@code HasPatchesToExecuteServlet}.
+     */
+    @Benchmark
+    public String serializePatchesList() {
+        Gson gson = new Gson();
+        return gson.toJson(listResponse);
+    }
+
+    private void renderPage(PatchRepository repository, Resource datasource, Blackhole blackhole) {
+        DataSource dataSource = repository.getDataSourceService().getDataSource(repository.getContext().request(), componentHelper, datasource);
+        Iterator<Resource> items = dataSource.iterator();
+        while (items.hasNext()) {
+            Resource item = items.next();
+            blackhole.consume(item.getResourceType());
+            blackhole.consume(item.adaptTo(ValueMap.class));
+        }
+    }
+
+    private static Resource createDatasource(PatchRepository repository, int offset) {
+        String path = DATASOURCE_PATH + "-" + offset;
+        return repository.getContext().create().resource(path + "/" + Config.DATASOURCE,
+                "itemResourceType", "jetpack/patchsystem/components/resourceconfig",
+                OFFSET, String.valueOf(offset),
+                LIMIT, String.valueOf(PAGE_SIZE)).getParent();
+    }
+}
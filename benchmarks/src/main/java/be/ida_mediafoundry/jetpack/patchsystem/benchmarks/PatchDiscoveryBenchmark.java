@@ -0,0 +1,83 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import org.apache.sling.api.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of discovering the patches, which is done for every request of the console and the list endpoint, and on every deployment.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PatchDiscoveryBenchmark -p patches=1000,10000
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatchDiscoveryBenchmark {
+
+    private List<Resource> scriptResources;
+
+    @Setup
+    public void setUp(PatchRepository repository) {
+        scriptResources = new ArrayList<>();
+        for (String patchPath : repository.getPatchPaths()) {
+            scriptResources.add(repository.getResourceResolver().getResource(patchPath));
+        }
+    }
+
+    /**
+     * Scan of /apps/patches by the file repository.
+     */
+    @Benchmark
+    public List<GroovyPatchFile> getPatches(PatchRepository repository) {
+        return repository.getPatchFileRepository().getPatches();
+    }
+
+    /**
+     * Scan of /apps/patches and the comparison of every patch with its result.
+     */
+    @Benchmark
+    public List<PatchFile> getPatchesToExecute(PatchRepository repository) {
+        return repository.getPatchSystemService().getPatchesToExecute();
+    }
+
+    /**
+     * Adapting the script resources to patch files, which reads the script.
+     */
+    @Benchmark
+    public void createPatchFiles(Blackhole blackhole) {
+        for (Resource scriptResource : scriptResources) {
+            blackhole.consume(scriptResource.adaptTo(GroovyPatchFile.class));
+        }
+    }
+
+    /**
+     * Adapting the script resources to patch files and the md5 of every script, as needed to compare a patch with its result.
+     */
+    @Benchmark
+    public void createAndHashPatchFiles(Blackhole blackhole) {
+        for (Resource scriptResource : scriptResources) {
+            GroovyPatchFile patchFile = scriptResource.adaptTo(GroovyPatchFile.class);
+            blackhole.consume(patchFile.getMd5());
+        }
+    }
+}
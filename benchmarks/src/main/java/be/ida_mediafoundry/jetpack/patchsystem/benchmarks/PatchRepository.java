@@ -0,0 +1,223 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import be.ida_mediafoundry.jetpack.carve.manager.ModelManager;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl.GroovyPatchFileRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl.GroovyPatchResultRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyPatchSystemServiceImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyScriptCacheImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemDataSourceService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.impl.PatchSystemDataSourceServiceImpl;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.icfolson.aem.groovy.console.GroovyConsoleService;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.osgi.framework.Constants;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory repository with generated patches under /apps/patches and the patch system services on top of it.
+ * The patches are spread over project folders of 50 patches, one in a hundred patches is new, the others ran before.
+ */
+@State(Scope.Benchmark)
+public class PatchRepository implements AutoCloseable {
+
+    static final String ROOT = "/apps/patches";
+    static final int PATCHES_PER_PROJECT = 50;
+    static final int PATCH_SIZE = 2048;
+    static final int NEW_PATCH_INTERVAL = 100;
+
+    @Param({"100", "1000", "10000", "50000"})
+    private int patches;
+
+    private UnaryOperator<ResourceResolverFactory> resourceResolverFactoryDecorator;
+    private BenchmarkContext context;
+    private final List<String> patchPaths = new ArrayList<>();
+    private final Map<String, GroovyPatchResult> results = new ConcurrentHashMap<>();
+
+    /**
+     * Create the repository outside of a benchmark.
+     *
+     * @param patches number of patches to generate
+     * @param resourceResolverFactoryDecorator decorates the resource resolver factory the services use, e.g. to count the reads
+     * @return the repository with the patch system services
+     * @throws PersistenceException in case the patches can't be created
+     */
+    public static PatchRepository create(int patches, UnaryOperator<ResourceResolverFactory> resourceResolverFactoryDecorator)
+            throws PersistenceException {
+        PatchRepository repository = new PatchRepository();
+        repository.patches = patches;
+        repository.resourceResolverFactoryDecorator = resourceResolverFactoryDecorator;
+        repository.setUp();
+        return repository;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws PersistenceException {
+        context = new BenchmarkContext();
+        context.start();
+        context.addModelsForClasses(GroovyPatchFile.class, GroovyPatchFolder.class);
+        if (resourceResolverFactoryDecorator != null) {
+            ResourceResolverFactory resourceResolverFactory = context.getService(ResourceResolverFactory.class);
+            context.registerService(ResourceResolverFactory.class, resourceResolverFactoryDecorator.apply(resourceResolverFactory),
+                    Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+        }
+
+        createPatches();
+        registerServices();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Override
+    public void close() {
+        tearDown();
+    }
+
+    public int getPatchCount() {
+        return patches;
+    }
+
+    /**
+     * @return paths of all patches, in the order of the repository
+     */
+    public List<String> getPatchPaths() {
+        return patchPaths;
+    }
+
+    public ResourceResolver getResourceResolver() {
+        return context.resourceResolver();
+    }
+
+    public BenchmarkContext getContext() {
+        return context;
+    }
+
+    public GroovyPatchFileRepository getPatchFileRepository() {
+        return context.getService(GroovyPatchFileRepository.class);
+    }
+
+    public GroovyPatchSystemService getPatchSystemService() {
+        return context.getService(GroovyPatchSystemService.class);
+    }
+
+    public PatchSystemDataSourceService getDataSourceService() {
+        return context.getService(PatchSystemDataSourceService.class);
+    }
+
+    private void createPatches() throws PersistenceException {
+        ResourceResolver resourceResolver = context.resourceResolver();
+        Resource root = context.create().resource(ROOT, JcrConstants.JCR_PRIMARYTYPE, "sling:OrderedFolder");
+        String template = PatchScripts.generate(PATCH_SIZE);
+
+        Resource project = null;
+        for (int i = 0; i < patches; i++) {
+            if (i % PATCHES_PER_PROJECT == 0) {
+                String projectName = String.format("project-%04d", i / PATCHES_PER_PROJECT);
+                project = resourceResolver.create(root, projectName, properties(JcrConstants.JCR_PRIMARYTYPE, "sling:OrderedFolder",
+                        JcrConstants.JCR_TITLE, "Project " + projectName));
+            }
+
+            String scriptName = String.format("patch-%05d.groovy", i);
+            String script = template + "\nprintln \"Patch " + i + "\"\n";
+            Resource file = resourceResolver.create(project, scriptName, properties(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE));
+            resourceResolver.create(file, JcrConstants.JCR_CONTENT, properties(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE,
+                    JcrConstants.JCR_DATA, script));
+            patchPaths.add(file.getPath());
+
+            if (i % NEW_PATCH_INTERVAL != 0) {
+                String resultPath = project.getName() + "/" + scriptName;
+                GroovyPatchResult patchResult = new GroovyPatchResult(resultPath, PatchStatus.SUCCESS, Calendar.getInstance());
+                patchResult.setEndDate(Calendar.getInstance());
+                patchResult.setMd5(DigestAlgorithm.MD5.hex(script));
+                results.put(resultPath, patchResult);
+            }
+        }
+        resourceResolver.commit();
+    }
+
+    private void registerServices() {
+        ClassLoader classLoader = PatchRepository.class.getClassLoader();
+        context.registerService(DynamicClassLoaderManager.class, () -> classLoader);
+        context.registerService(ModelManager.class, createModelManager());
+        //the patch system is ready when the Groovy Console is installed, scripts are not run by the benchmarks
+        context.registerService(GroovyConsoleService.class, createGroovyConsoleService());
+
+        context.registerInjectActivateService(new GroovyPatchResultRepositoryImpl(), "flushInterval", 0);
+        context.registerInjectActivateService(new GroovyPatchFileRepositoryImpl());
+        context.registerInjectActivateService(new GroovyScriptCacheImpl());
+        context.registerInjectActivateService(new GroovyPatchSystemServiceImpl());
+        context.registerInjectActivateService(new PatchSystemDataSourceServiceImpl());
+    }
+
+    /**
+     * @return model manager that retrieves the generated results and keeps the persisted ones, as Carve would in /var/patches/completed
+     */
+    private ModelManager createModelManager() {
+        return (ModelManager) Proxy.newProxyInstance(PatchRepository.class.getClassLoader(), new Class<?>[]{ModelManager.class},
+                (proxy, method, args) -> {
+                    if ("retrieve".equals(method.getName()) && args != null && args.length == 2 && args[1] instanceof String) {
+                        return results.get(args[1]);
+                    } else if ("persist".equals(method.getName()) && args != null && args[0] instanceof GroovyPatchResult) {
+                        GroovyPatchResult patchResult = (GroovyPatchResult) args[0];
+                        results.put(patchResult.getId(), patchResult);
+                        return null;
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("toString".equals(method.getName())) {
+                        return "Generated results";
+                    }
+                    return null;
+                });
+    }
+
+    private static GroovyConsoleService createGroovyConsoleService() {
+        return (GroovyConsoleService) Proxy.newProxyInstance(PatchRepository.class.getClassLoader(), new Class<?>[]{GroovyConsoleService.class},
+                (proxy, method, args) -> {
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("toString".equals(method.getName())) {
+                        return "Groovy Console";
+                    }
+                    throw new UnsupportedOperationException("Scripts are not run by the benchmarks");
+                });
+    }
+
+    private static Map<String, Object> properties(Object... keysAndValues) {
+        Map<String, Object> properties = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
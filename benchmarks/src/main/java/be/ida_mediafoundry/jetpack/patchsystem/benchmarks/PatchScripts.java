@@ -0,0 +1,40 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates groovy patches of a given size, built from the statements typical for patches.
+ */
+public final class PatchScripts {
+
+    private static final String[] STATEMENTS = {
+            "// migrate the page properties of the site\n",
+            "def page = pageManager.getPage(\"/content/site/en/page-%d\")\n",
+            "page.contentResource.adaptTo(ModifiableValueMap).put(\"migrated\", true)\n",
+            "queryIterator.each(\"SELECT * FROM [cq:PageContent] WHERE ISDESCENDANTNODE('/content/site')\") { node ->\n"
+                    + "    node.setProperty(\"jcr:title\", node.getProperty(\"title\").string)\n"
+                    + "    batchSaver.changed()\n"
+                    + "}\n",
+            "/*\n * Remove the obsolete properties, see ticket %d\n */\n",
+            "session.getNode(\"/content/site/en/page-%d/jcr:content\").getProperty(\"obsolete\").remove()\n",
+            "println \"Updated page %d\"\n"
+    };
+
+    private PatchScripts() {
+    }
+
+    /**
+     * @param size size of the script in characters
+     * @return a script of the given size, the same for every call with the same size
+     */
+    public static String generate(int size) {
+        Random random = new Random(size);
+        StringBuilder script = new StringBuilder(size + 256);
+        while (script.length() < size) {
+            String statement = STATEMENTS[random.nextInt(STATEMENTS.length)];
+            script.append(String.format(statement, random.nextInt(10000)));
+        }
+        script.setLength(size);
+        return script.toString();
+    }
+}
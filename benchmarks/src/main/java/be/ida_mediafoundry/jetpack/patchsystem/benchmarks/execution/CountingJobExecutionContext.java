@@ -0,0 +1,126 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Execution context of a job, which formats and keeps the progress log like Sling keeps it on the job, and counts the lines.
+ */
+class CountingJobExecutionContext implements JobExecutionContext {
+
+    private final List<String> progressLog = new ArrayList<>();
+
+    int getProgressLogLines() {
+        return progressLog.size();
+    }
+
+    void clear() {
+        progressLog.clear();
+    }
+
+    @Override
+    public void asyncProcessingFinished(JobExecutionResult result) {
+        //jobs are processed synchronously
+    }
+
+    @Override
+    public boolean isStopped() {
+        return false;
+    }
+
+    @Override
+    public void initProgress(int steps, long eta) {
+        //the progress isn't reported
+    }
+
+    @Override
+    public void incrementProgressCount(int steps) {
+        //the progress isn't reported
+    }
+
+    @Override
+    public void updateProgress(long eta) {
+        //the eta isn't reported
+    }
+
+    @Override
+    public void log(String message, Object... args) {
+        progressLog.add(MessageFormat.format(message, args));
+    }
+
+    @Override
+    public ResultBuilder result() {
+        return new ResultBuilder() {
+
+            private String message;
+
+            @Override
+            public ResultBuilder message(String message) {
+                this.message = message;
+                return this;
+            }
+
+            @Override
+            public JobExecutionResult succeeded() {
+                return new Result(true, false, message);
+            }
+
+            @Override
+            public JobExecutionResult failed() {
+                return new Result(false, false, message);
+            }
+
+            @Override
+            public JobExecutionResult failed(long retryDelayInMs) {
+                return failed();
+            }
+
+            @Override
+            public JobExecutionResult cancelled() {
+                return new Result(false, true, message);
+            }
+        };
+    }
+
+    private static class Result implements JobExecutionResult {
+
+        private final boolean succeeded;
+        private final boolean cancelled;
+        private final String message;
+
+        Result(boolean succeeded, boolean cancelled, String message) {
+            this.succeeded = succeeded;
+            this.cancelled = cancelled;
+            this.message = message;
+        }
+
+        @Override
+        public boolean succeeded() {
+            return succeeded;
+        }
+
+        @Override
+        public boolean cancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean failed() {
+            return !succeeded && !cancelled;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public Long getRetryDelayInMs() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import be.ida_mediafoundry.jetpack.carve.manager.ModelManager;
+import be.ida_mediafoundry.jetpack.patchsystem.benchmarks.BenchmarkContext;
+import be.ida_mediafoundry.jetpack.patchsystem.executors.PatchJobExecutor;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl.GroovyPatchFileRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl.GroovyPatchResultRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyPatchSystemServiceImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyScriptCacheImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.repositories.impl.OnDeployScriptResultRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.services.impl.OnDeployScriptSystemServiceImpl;
+import com.adobe.acs.commons.ondeploy.OnDeployExecutor;
+import com.day.cq.replication.Replicator;
+import com.day.cq.search.QueryBuilder;
+import com.icfolson.aem.groovy.console.GroovyConsoleService;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultBindingExtensionProvider;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultExtensionService;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultScriptMetaClassExtensionProvider;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultStarImportExtensionProvider;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.osgi.framework.Constants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The patch job executor with the groovy and on-deploy services it runs patches through, on an in-memory repository.
+ * Counts the resolver logins and result persists the services do, the framework overhead next to the scripts themselves.
+ */
+@State(Scope.Benchmark)
+public class ExecutionServices {
+
+    static final String ON_DEPLOY_STATUS_PATH = "/var/acs-commons/on-deploy-scripts-status";
+
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    final AtomicLong resolverLogins = new AtomicLong();
+    final AtomicLong resultPersists = new AtomicLong();
+
+    private final Map<String, GroovyPatchResult> results = new ConcurrentHashMap<>();
+    private BenchmarkContext context;
+    private SyntheticOnDeployExecutor onDeployExecutor;
+    private PatchJobExecutor patchJobExecutor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchmarkContext();
+        context.start();
+        context.addModelsForClasses(GroovyPatchFile.class, GroovyPatchFolder.class, OnDeployPatchResult.class);
+        ResourceResolverFactory resourceResolverFactory = context.getService(ResourceResolverFactory.class);
+        context.registerService(ResourceResolverFactory.class, countLogins(resourceResolverFactory),
+                Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+        context.create().resource(ON_DEPLOY_STATUS_PATH);
+
+        registerServices();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public BenchmarkContext getContext() {
+        return context;
+    }
+
+    public PatchJobExecutor getPatchJobExecutor() {
+        return patchJobExecutor;
+    }
+
+    SyntheticOnDeployExecutor getOnDeployExecutor() {
+        return onDeployExecutor;
+    }
+
+    public GroovyPatchFileRepository getPatchFileRepository() {
+        return context.getService(GroovyPatchFileRepository.class);
+    }
+
+    public GroovyPatchResultRepository getPatchResultRepository() {
+        return context.getService(GroovyPatchResultRepository.class);
+    }
+
+    public ExtensionService getExtensionService() {
+        return context.getService(ExtensionService.class);
+    }
+
+    /**
+     * @return a service resource resolver, as the patch system services log in
+     * @throws LoginException in case the login fails
+     */
+    public ResourceResolver login() throws LoginException {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return context.getService(ResourceResolverFactory.class).getServiceResourceResolver(credentials);
+    }
+
+    /**
+     * Register the services like the patch system runner does, services are registered before the components referencing them.
+     * The preconditions are left out, the in-memory repository has no JCR session to evaluate them with.
+     */
+    private void registerServices() {
+        ClassLoader classLoader = ExecutionServices.class.getClassLoader();
+        context.registerService(DynamicClassLoaderManager.class, () -> classLoader);
+        context.registerService(ModelManager.class, createModelManager());
+        context.registerService(QueryBuilder.class, createProxy(QueryBuilder.class, (proxy, method, args) -> {
+            throw new UnsupportedOperationException("QueryBuilder is not available in the benchmarks");
+        }));
+        context.registerService(Replicator.class, createProxy(Replicator.class, (proxy, method, args) -> null));
+        //scripts run through the extension service, the console service only has to be present
+        context.registerService(GroovyConsoleService.class, createProxy(GroovyConsoleService.class, (proxy, method, args) -> {
+            throw new UnsupportedOperationException("Scripts run through the extension service");
+        }));
+
+        context.registerInjectActivateService(new DefaultStarImportExtensionProvider());
+        context.registerInjectActivateService(new DefaultBindingExtensionProvider());
+        context.registerInjectActivateService(new DefaultScriptMetaClassExtensionProvider());
+        context.registerInjectActivateService(new DefaultExtensionService());
+
+        context.registerInjectActivateService(new GroovyPatchResultRepositoryImpl(), "flushInterval", 0);
+        context.registerInjectActivateService(new GroovyPatchFileRepositoryImpl());
+        context.registerInjectActivateService(new GroovyScriptCacheImpl());
+        context.registerInjectActivateService(new GroovyPatchSystemServiceImpl());
+
+        onDeployExecutor = new SyntheticOnDeployExecutor(this);
+        context.registerService(OnDeployExecutor.class, onDeployExecutor);
+        context.registerInjectActivateService(new OnDeployScriptResultRepositoryImpl());
+        context.registerInjectActivateService(new OnDeployScriptSystemServiceImpl());
+
+        patchJobExecutor = new PatchJobExecutor();
+        context.registerInjectActivateService(patchJobExecutor);
+    }
+
+    private ResourceResolverFactory countLogins(ResourceResolverFactory resourceResolverFactory) {
+        return createProxy(ResourceResolverFactory.class, (proxy, method, args) -> {
+            if (method.getReturnType() == ResourceResolver.class) {
+                resolverLogins.incrementAndGet();
+            }
+            try {
+                return method.invoke(resourceResolverFactory, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * @return model manager that keeps the groovy results in memory and reads the on-deploy results from their status resources,
+     * as Carve would
+     */
+    private ModelManager createModelManager() {
+        return createProxy(ModelManager.class, (proxy, method, args) -> {
+            if ("persist".equals(method.getName()) && args[0] instanceof GroovyPatchResult) {
+                GroovyPatchResult patchResult = (GroovyPatchResult) args[0];
+                resultPersists.incrementAndGet();
+                results.put(patchResult.getId(), patchResult);
+            } else if ("retrieve".equals(method.getName()) && args[0] == GroovyPatchResult.class) {
+                return results.get(args[1]);
+            } else if ("retrieve".equals(method.getName()) && args[0] == OnDeployPatchResult.class) {
+                Resource status = context.resourceResolver().getResource(ON_DEPLOY_STATUS_PATH + "/" + args[1]);
+                return status != null ? status.adaptTo(OnDeployPatchResult.class) : null;
+            }
+            return null;
+        });
+    }
+
+    private static <T> T createProxy(Class<T> serviceClass, InvocationHandler handler) {
+        return serviceClass.cast(Proxy.newProxyInstance(ExecutionServices.class.getClassLoader(), new Class<?>[]{serviceClass},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() != Object.class) {
+                        return handler.invoke(proxy, method, args);
+                    } else if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return "Benchmark " + serviceClass.getName();
+                }));
+    }
+}
@@ -0,0 +1,29 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Framework work done for the executed patches, reported next to the time of the benchmark.
+ * Divide a counter by {@link #patches} for the work per patch.
+ */
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class FrameworkCounters {
+
+    public long patches;
+    public long resolverLogins;
+    public long resultPersists;
+    public long progressLogLines;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        patches = 0;
+        resolverLogins = 0;
+        resultPersists = 0;
+        progressLogLines = 0;
+    }
+}
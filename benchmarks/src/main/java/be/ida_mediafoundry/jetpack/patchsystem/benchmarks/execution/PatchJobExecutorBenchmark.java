@@ -0,0 +1,49 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per patch of the patch job executor, for jobs of no-op, CPU-bound and write-heavy synthetic patches,
+ * run through the groovy patch system and through the on-deploy scripts.
+ * The no-op patches measure the overhead of the patch system, the counters show the framework work per patch.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar PatchJobExecutorBenchmark -p work=NOOP
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PatchJobExecutorBenchmark {
+
+    /**
+     * One job of {@link SyntheticPatches#PATCHES_PER_JOB} patches, reported per patch.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SyntheticPatches.PATCHES_PER_JOB)
+    public JobExecutionResult executeJob(ExecutionServices services, SyntheticPatches patches, FrameworkCounters counters) {
+        long resolverLogins = services.resolverLogins.get();
+        long resultPersists = services.resultPersists.get();
+        CountingJobExecutionContext context = new CountingJobExecutionContext();
+
+        JobExecutionResult result = services.getPatchJobExecutor().process(patches.getJob(), context);
+
+        counters.patches += SyntheticPatches.PATCHES_PER_JOB;
+        counters.resolverLogins += services.resolverLogins.get() - resolverLogins;
+        counters.resultPersists += services.resultPersists.get() - resultPersists;
+        counters.progressLogLines += context.getProgressLogLines();
+        return result;
+    }
+}
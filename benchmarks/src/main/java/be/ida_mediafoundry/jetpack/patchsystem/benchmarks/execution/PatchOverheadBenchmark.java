@@ -0,0 +1,126 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.icfolson.aem.groovy.console.api.BindingVariable;
+import com.icfolson.aem.groovy.console.api.ScriptContext;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import groovy.lang.Binding;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
+import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the framework work the patch system does for every patch, next to the script:
+ * the resolver login, the result persists, the progress logging and the emulated Groovy Console request.
+ * Multiply by the counters of the {@link PatchJobExecutorBenchmark} for the overhead per patch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatchOverheadBenchmark {
+
+    //the job executor logs these lines for every patch
+    private static final int LOG_LINES_PER_JOB = SyntheticPatches.PATCHES_PER_JOB * 2;
+
+    private GroovyPatchFile patchFile;
+    private ResourceResolver resourceResolver;
+    private CountingJobExecutionContext jobContext;
+
+    @Setup(Level.Trial)
+    public void setUp(ExecutionServices services) throws LoginException {
+        services.getContext().create().resource(SyntheticPatches.ROOT + "/overhead.groovy",
+                JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE);
+        services.getContext().create().resource(SyntheticPatches.ROOT + "/overhead.groovy/" + JcrConstants.JCR_CONTENT,
+                JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE, JcrConstants.JCR_DATA, SyntheticWork.NOOP.getScript(0));
+        patchFile = services.getPatchFileRepository().getPatch(SyntheticPatches.ROOT + "/overhead.groovy");
+        resourceResolver = services.login();
+        jobContext = new CountingJobExecutionContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        resourceResolver.close();
+    }
+
+    /**
+     * Login and logout of a service resource resolver, as done for every patch that runs.
+     */
+    @Benchmark
+    public String resolverLogin(ExecutionServices services) throws LoginException {
+        try (ResourceResolver patchResourceResolver = services.login()) {
+            return patchResourceResolver.getUserID();
+        }
+    }
+
+    /**
+     * Creating the running result and updating it with the outcome, written behind in batches.
+     */
+    @Benchmark
+    public GroovyPatchResult resultPersist(ExecutionServices services) {
+        GroovyPatchResultRepository patchResultRepository = services.getPatchResultRepository();
+        GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
+        patchResult.setStatus(PatchStatus.SUCCESS);
+        patchResultRepository.updateResult(patchResult);
+        return patchResult;
+    }
+
+    /**
+     * The progress lines the job executor logs for a patch, the log of a job is kept until the job ends.
+     */
+    @Benchmark
+    public void progressLogging() {
+        if (jobContext.getProgressLogLines() >= LOG_LINES_PER_JOB) {
+            jobContext.clear();
+        }
+        jobContext.log("Executing patch '{0}' of type '{1}'", patchFile.getPath(), GroovyPatchFile.TYPE);
+        jobContext.log("Executed patch '{0}' - RESULT '{1}' - RUNNING TIME '{2}'", patchFile.getPath(), PatchStatus.SUCCESS, "0 ms");
+    }
+
+    /**
+     * The request, response, script context and bindings of the Groovy Console a groovy patch runs with.
+     */
+    @Benchmark
+    public void consoleRequest(ExecutionServices services, Blackhole blackhole) throws UnsupportedEncodingException {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resourceResolver);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream, true, "UTF-8");
+        ScriptContext scriptContext = new ScriptContext(request, response, printStream, patchFile.getFileContent(), null);
+
+        ExtensionService extensions = services.getExtensionService();
+        Binding binding = new Binding();
+        for (Map.Entry<String, BindingVariable> variable : extensions.getBindingVariables(scriptContext).entrySet()) {
+            binding.setVariable(variable.getKey(), variable.getValue().getValue());
+        }
+        blackhole.consume(binding);
+        blackhole.consume(extensions.getScriptMetaClasses(scriptContext));
+        printStream.close();
+    }
+}
@@ -0,0 +1,69 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import com.adobe.acs.commons.ondeploy.OnDeployExecutor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stand-in for the on-deploy executor of ACS Commons: logs in, marks the script as running, does the synthetic work
+ * and marks the script as succeeded, in the status resources the on-deploy results are read from.
+ */
+class SyntheticOnDeployExecutor implements OnDeployExecutor {
+
+    static final String SCRIPT_PREFIX = "synthetic.ondeploy.Script";
+
+    private final ExecutionServices services;
+    private volatile SyntheticWork work = SyntheticWork.NOOP;
+    private volatile long sink;
+
+    SyntheticOnDeployExecutor(ExecutionServices services) {
+        this.services = services;
+    }
+
+    void setWork(SyntheticWork work) {
+        this.work = work;
+    }
+
+    @Override
+    public boolean executeScript(String scriptName, boolean force) {
+        int number = Integer.parseInt(StringUtils.removeStart(scriptName, SCRIPT_PREFIX));
+        try (ResourceResolver resourceResolver = services.login()) {
+            writeStatus(resourceResolver, scriptName, "running", null);
+            sink += work.execute(number, resourceResolver);
+            writeStatus(resourceResolver, scriptName, "success", Calendar.getInstance());
+            return true;
+        } catch (LoginException | PersistenceException e) {
+            throw new IllegalStateException("Synthetic on-deploy script " + scriptName + " failed", e);
+        }
+    }
+
+    private void writeStatus(ResourceResolver resourceResolver, String scriptName, String status, Calendar endDate)
+            throws PersistenceException {
+        Resource parent = resourceResolver.getResource(ExecutionServices.ON_DEPLOY_STATUS_PATH);
+        Resource resource = parent.getChild(scriptName);
+        if (resource == null) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("id", scriptName);
+            resource = resourceResolver.create(parent, scriptName, properties);
+        }
+
+        ModifiableValueMap properties = resource.adaptTo(ModifiableValueMap.class);
+        properties.put("status", status);
+        if (endDate == null) {
+            properties.put("startDate", Calendar.getInstance());
+            properties.remove("endDate");
+        } else {
+            properties.put("endDate", endDate);
+        }
+        resourceResolver.commit();
+        services.resultPersists.incrementAndGet();
+    }
+}
@@ -0,0 +1,99 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.benchmarks.BenchmarkContext;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchFile;
+import com.day.cq.commons.jcr.JcrConstants;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A job of synthetic patches of one type, which all do the same work.
+ * The groovy patches are scripts under /apps/patches, the on-deploy patches are run by the synthetic on-deploy executor.
+ */
+@State(Scope.Benchmark)
+public class SyntheticPatches {
+
+    public static final int PATCHES_PER_JOB = 1000;
+
+    static final String ROOT = "/apps/patches/synthetic";
+
+    @Param({"NOOP", "CPU", "WRITE"})
+    private SyntheticWork work;
+
+    @Param({GroovyPatchFile.TYPE, OnDeployPatchFile.TYPE})
+    private String type;
+
+    private Job job;
+
+    @Setup(Level.Trial)
+    public void setUp(ExecutionServices services) throws PersistenceException {
+        BenchmarkContext context = services.getContext();
+        context.create().resource(SyntheticWork.CONTENT_PATH);
+        services.getOnDeployExecutor().setWork(work);
+
+        List<String> patchPaths = GroovyPatchFile.TYPE.equals(type) ? createScripts(context) : getOnDeployScripts();
+        List<String> types = new ArrayList<>(Collections.nCopies(patchPaths.size(), type));
+
+        job = mock(Job.class);
+        when(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).thenReturn(patchPaths);
+        when(job.getProperty(JetpackConstants.TYPES, List.class)).thenReturn(types);
+    }
+
+    /**
+     * @return job with all patches, of which the patches run every time the job is processed
+     */
+    public Job getJob() {
+        return job;
+    }
+
+    private List<String> createScripts(BenchmarkContext context) throws PersistenceException {
+        ResourceResolver resourceResolver = context.resourceResolver();
+        Resource project = context.create().resource(ROOT, JcrConstants.JCR_PRIMARYTYPE, "sling:OrderedFolder",
+                JcrConstants.JCR_TITLE, "Synthetic");
+
+        List<String> patchPaths = new ArrayList<>();
+        for (int i = 0; i < PATCHES_PER_JOB; i++) {
+            Resource file = resourceResolver.create(project, String.format("patch-%04d.groovy", i),
+                    properties(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE));
+            resourceResolver.create(file, JcrConstants.JCR_CONTENT, properties(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE,
+                    JcrConstants.JCR_DATA, work.getScript(i)));
+            patchPaths.add(file.getPath());
+        }
+        resourceResolver.commit();
+        return patchPaths;
+    }
+
+    private static List<String> getOnDeployScripts() {
+        List<String> scriptNames = new ArrayList<>();
+        for (int i = 0; i < PATCHES_PER_JOB; i++) {
+            scriptNames.add(SyntheticOnDeployExecutor.SCRIPT_PREFIX + String.format("%04d", i));
+        }
+        return scriptNames;
+    }
+
+    private static Map<String, Object> properties(Object... keysAndValues) {
+        Map<String, Object> properties = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,93 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.execution;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.HashMap;
+
+/**
+ * Work done by a synthetic patch, as groovy script and as the same work in Java for the on-deploy scripts.
+ */
+public enum SyntheticWork {
+
+    /**
+     * Nothing, the time of the patch is the overhead of the patch system.
+     */
+    NOOP("// no-op patch %d\n"),
+
+    /**
+     * Arithmetic without repository access.
+     */
+    CPU("long sum = 0\n"
+            + "for (int i = 0; i < " + SyntheticWork.CPU_ITERATIONS + "; i++) {\n"
+            + "    sum += i * %d\n"
+            + "}\n"
+            + "sum\n"),
+
+    /**
+     * Creates or updates a resource with child resources, and commits.
+     */
+    WRITE("def parent = resourceResolver.getResource('" + SyntheticWork.CONTENT_PATH + "')\n"
+            + "def node = parent.getChild('patch-%1$d') ?: resourceResolver.create(parent, 'patch-%1$d', [:])\n"
+            + SyntheticWork.WRITE_CHILDREN + ".times { i ->\n"
+            + "    def item = node.getChild('item-' + i) ?: resourceResolver.create(node, 'item-' + i, [:])\n"
+            + "    item.adaptTo(org.apache.sling.api.resource.ModifiableValueMap).put('value', System.nanoTime())\n"
+            + "}\n"
+            + "resourceResolver.commit()\n");
+
+    static final String CONTENT_PATH = "/content/synthetic";
+
+    private static final int CPU_ITERATIONS = 100000;
+    private static final int WRITE_CHILDREN = 50;
+
+    private final String script;
+
+    SyntheticWork(String script) {
+        this.script = script;
+    }
+
+    /**
+     * @param number number of the patch, which makes every script unique
+     * @return the groovy script of the patch
+     */
+    String getScript(int number) {
+        return String.format(script, number);
+    }
+
+    /**
+     * Do the work of the script in Java.
+     *
+     * @param number number of the patch
+     * @param resourceResolver resource resolver of the patch
+     * @return result of the work, to consume
+     * @throws PersistenceException in case the written resources can't be committed
+     */
+    long execute(int number, ResourceResolver resourceResolver) throws PersistenceException {
+        switch (this) {
+            case CPU:
+                long sum = 0;
+                for (int i = 0; i < CPU_ITERATIONS; i++) {
+                    sum += (long) i * number;
+                }
+                return sum;
+            case WRITE:
+                Resource parent = resourceResolver.getResource(CONTENT_PATH);
+                Resource node = getOrCreate(resourceResolver, parent, "patch-" + number);
+                for (int i = 0; i < WRITE_CHILDREN; i++) {
+                    Resource item = getOrCreate(resourceResolver, node, "item-" + i);
+                    item.adaptTo(ModifiableValueMap.class).put("value", System.nanoTime());
+                }
+                resourceResolver.commit();
+                return WRITE_CHILDREN;
+            default:
+                return 0;
+        }
+    }
+
+    private static Resource getOrCreate(ResourceResolver resourceResolver, Resource parent, String name) throws PersistenceException {
+        Resource child = parent.getChild(name);
+        return child != null ? child : resourceResolver.create(parent, name, new HashMap<>());
+    }
+}
@@ -0,0 +1,85 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the used heap at a fixed interval and counts the garbage collections between start and stop.
+ */
+class HeapSampler {
+
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final long interval;
+
+    private ScheduledExecutorService scheduler;
+    private long gcCountAtStart;
+    private long gcTimeAtStart;
+    private long samples;
+    private long sumUsed;
+    private long maxUsed;
+
+    /**
+     * @param interval sample interval in milliseconds
+     */
+    HeapSampler(long interval) {
+        this.interval = interval;
+    }
+
+    void start() {
+        gcCountAtStart = getGcCount();
+        gcTimeAtStart = getGcTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sampling and report the samples.
+     *
+     * @param heap report to fill in
+     * @throws InterruptedException in case the thread is interrupted while waiting for the last sample
+     */
+    void stop(LoadReport.Heap heap) throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(interval * 2, TimeUnit.MILLISECONDS);
+
+        synchronized (this) {
+            heap.maxUsedMb = (double) maxUsed / BYTES_PER_MB;
+            heap.avgUsedMb = samples > 0 ? (double) sumUsed / samples / BYTES_PER_MB : 0;
+        }
+        heap.gcCount = getGcCount() - gcCountAtStart;
+        heap.gcTimeMs = getGcTime() - gcTimeAtStart;
+    }
+
+    private synchronized void sample() {
+        long used = memory.getHeapMemoryUsage().getUsed();
+        samples++;
+        sumUsed += used;
+        maxUsed = Math.max(maxUsed, used);
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+}
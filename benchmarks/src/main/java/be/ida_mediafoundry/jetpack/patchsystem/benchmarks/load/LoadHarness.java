@@ -0,0 +1,320 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.benchmarks.BenchmarkContext;
+import be.ida_mediafoundry.jetpack.patchsystem.benchmarks.PatchRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.executors.PatchJobExecutor;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.services.impl.PatchSystemJobServiceImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.servlets.CheckPatchStatusServlet;
+import be.ida_mediafoundry.jetpack.patchsystem.servlets.HasPatchesToExecuteServlet;
+import be.ida_mediafoundry.jetpack.patchsystem.servlets.TriggerNewPatchesServlet;
+import org.apache.sling.api.adapter.AdapterManager;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the list, check and trigger servlets in-process against an in-memory repository with generated patches
+ * and a local stand-in for the Sling job manager. Concurrent clients poll the servlets, like the patch system console
+ * and deployment pipelines do, while a synthetic patch job executes the new patches.
+ * Reports the latency percentiles, the repository reads per request and the heap usage.
+ *
+ * <pre>
+ * java -cp benchmarks.jar be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load.LoadHarness
+ *      [--patches 1000] [--clients 32] [--duration 30] [--patch-time ms] [--think-time ms] [--output report.json]
+ * </pre>
+ */
+public class LoadHarness {
+
+    static final String LIST = "list";
+    static final String CHECK = "check";
+    static final String TRIGGER = "trigger";
+
+    //every client triggers the new patches once every so many requests, the other requests alternate list and check
+    private static final int TRIGGER_INTERVAL = 20;
+    private static final long HEAP_SAMPLE_INTERVAL = 100;
+
+    private static final String USAGE = "Usage: java -cp benchmarks.jar " + LoadHarness.class.getName()
+            + " [--patches 1000] [--clients 32] [--duration 30] [--patch-time ms] [--think-time ms] [--output report.json]";
+
+    private final int patches;
+    private final int clients;
+    private final long duration;
+    private final long patchTime;
+    private final long thinkTime;
+
+    /**
+     * @param patches number of generated patches, one in a hundred is new
+     * @param clients number of concurrent clients
+     * @param duration duration of the run in milliseconds
+     * @param patchTime time every synthetic patch takes in milliseconds, negative to spread the job over the run
+     * @param thinkTime pause of a client between requests in milliseconds
+     */
+    public LoadHarness(int patches, int clients, long duration, long patchTime, long thinkTime) {
+        this.patches = patches;
+        this.clients = clients;
+        this.duration = duration;
+        this.patchTime = patchTime;
+        this.thinkTime = thinkTime;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int patches = 1000;
+        int clients = 32;
+        long duration = TimeUnit.SECONDS.toMillis(30);
+        long patchTime = -1;
+        long thinkTime = 0;
+        String output = null;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--patches":
+                        patches = Integer.parseInt(value);
+                        break;
+                    case "--clients":
+                        clients = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        duration = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+                        break;
+                    case "--patch-time":
+                        patchTime = Long.parseLong(value);
+                        break;
+                    case "--think-time":
+                        thinkTime = Long.parseLong(value);
+                        break;
+                    case "--output":
+                        output = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        LoadReport report = new LoadHarness(patches, clients, duration, patchTime, thinkTime).run();
+        System.out.println(report.toTable());
+        if (output != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                writer.write(report.toJson());
+            }
+        }
+    }
+
+    /**
+     * Set up the repository and the servlets, run the clients for the duration and report.
+     *
+     * @return latencies, reads and heap usage of the run
+     * @throws PersistenceException in case the patches can't be generated
+     * @throws InterruptedException in case the thread is interrupted while the clients run
+     */
+    public LoadReport run() throws PersistenceException, InterruptedException {
+        RepositoryReads reads = new RepositoryReads();
+        try (PatchRepository repository = PatchRepository.create(patches, reads::count)) {
+            BenchmarkContext context = repository.getContext();
+            reads.setAdapterManager(context.getService(AdapterManager.class));
+
+            int patchesToExecute = repository.getPatchSystemService().getPatchesToExecute().size();
+            long jobPatchTime = patchTime >= 0 ? patchTime : duration / Math.max(1, patchesToExecute);
+            try (LocalJobManager jobManager = new LocalJobManager(PatchJobExecutor.TOPIC, new SyntheticPatchJobExecutor(
+                    repository.getPatchFileRepository(), context.getService(GroovyPatchResultRepository.class), jobPatchTime))) {
+                context.registerService(JobManager.class, jobManager);
+                context.registerInjectActivateService(new PatchSystemJobServiceImpl());
+                Servlets servlets = new Servlets(context, reads);
+
+                LoadReport report = new LoadReport();
+                report.setRun(patches, clients, duration);
+                report.getJob().patchesToExecute = patchesToExecute;
+                long readsAtStart = reads.getTotalReads();
+
+                HeapSampler heapSampler = new HeapSampler(HEAP_SAMPLE_INTERVAL);
+                heapSampler.start();
+                List<Client> finishedClients = runClients(servlets);
+                heapSampler.stop(report.getHeap());
+
+                long clientReads = 0;
+                for (String endpoint : Arrays.asList(LIST, CHECK, TRIGGER)) {
+                    List<Samples> samples = new ArrayList<>();
+                    finishedClients.forEach(client -> samples.add(client.samples[index(endpoint)]));
+                    Samples merged = Samples.merge(samples);
+                    clientReads += merged.reads;
+                    report.getEndpoints().put(endpoint, LoadReport.Endpoint.of(merged.toLatencies(), merged.reads, merged.errors, duration));
+                }
+
+                report.getJob().jobsQueued = jobManager.getJobCount();
+                for (Job job : jobManager.findJobs(JobManager.QueryType.ALL, PatchJobExecutor.TOPIC, -1)) {
+                    report.getJob().executedPatches += Math.max(0, job.getFinishedProgressStep());
+                }
+                report.getJob().reads = reads.getTotalReads() - readsAtStart - clientReads;
+                return report;
+            }
+        }
+    }
+
+    private static int index(String endpoint) {
+        return LIST.equals(endpoint) ? 0 : CHECK.equals(endpoint) ? 1 : 2;
+    }
+
+    private List<Client> runClients(Servlets servlets) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(clients, runnable -> {
+            Thread thread = new Thread(runnable, "load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+            List<Future<Client>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client client = new Client(servlets, i, deadline);
+                futures.add(executor.submit(client::call));
+            }
+
+            List<Client> finishedClients = new ArrayList<>();
+            for (Future<Client> future : futures) {
+                try {
+                    finishedClients.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Client failed", e.getCause());
+                }
+            }
+            return finishedClients;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Servlets of the patch system console, called through {@link Servlet#service} with mock requests.
+     */
+    private static class Servlets {
+
+        private final BenchmarkContext context;
+        private final RepositoryReads reads;
+        private final Servlet list;
+        private final Servlet check;
+        private final Servlet trigger;
+
+        Servlets(BenchmarkContext context, RepositoryReads reads) {
+            this.context = context;
+            this.reads = reads;
+            this.list = context.registerInjectActivateService(new HasPatchesToExecuteServlet());
+            this.check = context.registerInjectActivateService(new CheckPatchStatusServlet());
+            this.trigger = context.registerInjectActivateService(new TriggerNewPatchesServlet());
+        }
+
+        void call(String endpoint, Samples samples) throws ServletException, IOException {
+            MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext());
+            MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+            Servlet servlet;
+            if (TRIGGER.equals(endpoint)) {
+                request.setMethod("POST");
+                request.setContentType(JetpackConstants.APPLICATION_JSON);
+                servlet = trigger;
+            } else {
+                request.setMethod("GET");
+                servlet = LIST.equals(endpoint) ? list : check;
+            }
+
+            long readsBefore = reads.getThreadReads();
+            long start = System.nanoTime();
+            servlet.service(request, response);
+            long latency = System.nanoTime() - start;
+            samples.add(latency, reads.getThreadReads() - readsBefore, response.getStatus() != HttpServletResponse.SC_OK);
+        }
+    }
+
+    /**
+     * Client polling the servlets until the deadline, keeping its own samples per endpoint.
+     */
+    private class Client {
+
+        private final Servlets servlets;
+        private final int number;
+        private final long deadline;
+        private final Samples[] samples = {new Samples(), new Samples(), new Samples()};
+
+        Client(Servlets servlets, int number, long deadline) {
+            this.servlets = servlets;
+            this.number = number;
+            this.deadline = deadline;
+        }
+
+        Client call() throws ServletException, IOException, InterruptedException {
+            //clients start at another point of the request cycle, the first one triggers the job right away
+            long request = number;
+            while (System.nanoTime() < deadline) {
+                String endpoint = request % TRIGGER_INTERVAL == 0 ? TRIGGER : request % 2 == 0 ? LIST : CHECK;
+                servlets.call(endpoint, samples[index(endpoint)]);
+                request++;
+                if (thinkTime > 0) {
+                    TimeUnit.MILLISECONDS.sleep(thinkTime);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Latencies in nanoseconds, reads and errors of the requests to one endpoint.
+     */
+    private static class Samples {
+
+        private long[] latencies = new long[1024];
+        private int count;
+        private long reads;
+        private long errors;
+
+        void add(long latency, long reads, boolean error) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            this.reads += reads;
+            if (error) {
+                errors++;
+            }
+        }
+
+        long[] toLatencies() {
+            return Arrays.copyOf(latencies, count);
+        }
+
+        static Samples merge(List<Samples> samples) {
+            Samples merged = new Samples();
+            for (Samples sample : samples) {
+                for (int i = 0; i < sample.count; i++) {
+                    merged.add(sample.latencies[i], 0, false);
+                }
+                merged.reads += sample.reads;
+                merged.errors += sample.errors;
+            }
+            return merged;
+        }
+    }
+}
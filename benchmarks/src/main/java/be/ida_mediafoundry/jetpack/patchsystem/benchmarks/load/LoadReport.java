@@ -0,0 +1,128 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import com.google.gson.GsonBuilder;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies, repository reads and heap usage of a load run, printed as a table or written as JSON.
+ */
+public class LoadReport {
+
+    private int patches;
+    private int clients;
+    private long durationMs;
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    private final Heap heap = new Heap();
+    private final PatchJob job = new PatchJob();
+
+    void setRun(int patches, int clients, long durationMs) {
+        this.patches = patches;
+        this.clients = clients;
+        this.durationMs = durationMs;
+    }
+
+    public Map<String, Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Heap getHeap() {
+        return heap;
+    }
+
+    public PatchJob getJob() {
+        return job;
+    }
+
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this);
+    }
+
+    public String toTable() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%d patches, %d clients, %d ms%n%n", patches, clients, durationMs));
+        table.append(String.format("%-10s %10s %10s %10s %10s %10s %12s %8s%n",
+                "Endpoint", "Requests", "Req/s", "p50 ms", "p99 ms", "Max ms", "Reads/req", "Errors"));
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Endpoint endpoint = entry.getValue();
+            table.append(String.format("%-10s %10d %10.1f %10.3f %10.3f %10.3f %12.1f %8d%n", entry.getKey(),
+                    endpoint.requests, endpoint.throughput, endpoint.p50Ms, endpoint.p99Ms, endpoint.maxMs,
+                    endpoint.readsPerRequest, endpoint.errors));
+        }
+        table.append(String.format("%nHeap used: max %.1f MB, avg %.1f MB, %d GC(s) taking %d ms%n",
+                heap.maxUsedMb, heap.avgUsedMb, heap.gcCount, heap.gcTimeMs));
+        table.append(String.format("Job: %d of %d patches executed, %d job(s) queued, %d reads%n",
+                job.executedPatches, job.patchesToExecute, job.jobsQueued, job.reads));
+        return table.toString();
+    }
+
+    /**
+     * Requests of one endpoint, latencies in milliseconds.
+     */
+    public static class Endpoint {
+
+        long requests;
+        long errors;
+        double throughput;
+        double p50Ms;
+        double p99Ms;
+        double maxMs;
+        double readsPerRequest;
+
+        /**
+         * @param latencies latencies of all requests in nanoseconds, sorted in place
+         * @param reads repository reads of all requests
+         * @param errors requests that didn't return 200
+         * @param durationMs duration of the run
+         */
+        static Endpoint of(long[] latencies, long reads, long errors, long durationMs) {
+            Arrays.sort(latencies);
+            Endpoint endpoint = new Endpoint();
+            endpoint.requests = latencies.length;
+            endpoint.errors = errors;
+            endpoint.throughput = durationMs > 0 ? latencies.length * 1000.0 / durationMs : 0;
+            endpoint.p50Ms = toMillis(percentile(latencies, 50));
+            endpoint.p99Ms = toMillis(percentile(latencies, 99));
+            endpoint.maxMs = toMillis(latencies.length > 0 ? latencies[latencies.length - 1] : 0);
+            endpoint.readsPerRequest = latencies.length > 0 ? (double) reads / latencies.length : 0;
+            return endpoint;
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * Heap used during the run, sampled while the clients run.
+     */
+    public static class Heap {
+
+        double maxUsedMb;
+        double avgUsedMb;
+        long gcCount;
+        long gcTimeMs;
+    }
+
+    /**
+     * Synthetic patch job started by the trigger requests.
+     */
+    public static class PatchJob {
+
+        int patchesToExecute;
+        int executedPatches;
+        int jobsQueued;
+        long reads;
+    }
+}
@@ -0,0 +1,164 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import org.apache.sling.event.jobs.Job;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Job of the {@link LocalJobManager}, of which the state and progress are updated while it's processed.
+ */
+class LocalJob implements Job {
+
+    private final String id;
+    private final String topic;
+    private final Map<String, Object> properties;
+    private final Calendar created = Calendar.getInstance();
+    private final List<String> progressLog = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile JobState jobState = JobState.QUEUED;
+    private volatile Calendar processingStarted;
+    private volatile Calendar finishedDate;
+    private volatile String resultMessage;
+    private volatile int progressStepCount = -1;
+    private volatile int finishedProgressStep = -1;
+
+    LocalJob(String id, String topic, Map<String, Object> properties) {
+        this.id = id;
+        this.topic = topic;
+        this.properties = properties;
+    }
+
+    void start() {
+        processingStarted = Calendar.getInstance();
+        jobState = JobState.ACTIVE;
+    }
+
+    void finish(JobState jobState, String resultMessage) {
+        this.finishedDate = Calendar.getInstance();
+        this.resultMessage = resultMessage;
+        this.jobState = jobState;
+    }
+
+    void initProgress(int steps) {
+        progressStepCount = steps;
+        finishedProgressStep = 0;
+    }
+
+    synchronized void incrementProgress(int steps) {
+        finishedProgressStep += steps;
+    }
+
+    void log(String message) {
+        progressLog.add(message);
+    }
+
+    @Override
+    public String getTopic() {
+        return topic;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public Set<String> getPropertyNames() {
+        return properties.keySet();
+    }
+
+    @Override
+    public <T> T getProperty(String name, Class<T> type) {
+        Object value = properties.get(name);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String name, T defaultValue) {
+        Object value = properties.get(name);
+        return value != null && defaultValue.getClass().isInstance(value) ? (T) value : defaultValue;
+    }
+
+    @Override
+    public int getRetryCount() {
+        return 0;
+    }
+
+    @Override
+    public int getNumberOfRetries() {
+        return 0;
+    }
+
+    @Override
+    public String getQueueName() {
+        return LocalJobManager.QUEUE_NAME;
+    }
+
+    @Override
+    public String getTargetInstance() {
+        return null;
+    }
+
+    @Override
+    public Calendar getProcessingStarted() {
+        return processingStarted;
+    }
+
+    @Override
+    public Calendar getCreated() {
+        return created;
+    }
+
+    @Override
+    public String getCreatedInstance() {
+        return null;
+    }
+
+    @Override
+    public JobState getJobState() {
+        return jobState;
+    }
+
+    @Override
+    public Calendar getFinishedDate() {
+        return finishedDate;
+    }
+
+    @Override
+    public String getResultMessage() {
+        return resultMessage;
+    }
+
+    @Override
+    public String[] getProgressLog() {
+        synchronized (progressLog) {
+            return progressLog.toArray(new String[0]);
+        }
+    }
+
+    @Override
+    public int getProgressStepCount() {
+        return progressStepCount;
+    }
+
+    @Override
+    public int getFinishedProgressStep() {
+        return finishedProgressStep;
+    }
+
+    @Override
+    public Calendar getProgressETA() {
+        return null;
+    }
+}
@@ -0,0 +1,321 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobBuilder;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.Queue;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.apache.sling.event.jobs.Statistics;
+import org.apache.sling.event.jobs.TopicStatistics;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Sling job manager: jobs of one topic are processed one by one by a job executor, in the order they were added,
+ * like in an ordered Sling job queue. Only adding and finding jobs is supported.
+ */
+class LocalJobManager implements JobManager, AutoCloseable {
+
+    static final String QUEUE_NAME = "local";
+
+    private final String topic;
+    private final JobExecutor jobExecutor;
+    private final ExecutorService queue = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "local-job-queue");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong jobCounter = new AtomicLong();
+    private final List<LocalJob> jobs = Collections.synchronizedList(new ArrayList<>());
+    private final List<Future<?>> processing = Collections.synchronizedList(new ArrayList<>());
+
+    LocalJobManager(String topic, JobExecutor jobExecutor) {
+        this.topic = topic;
+        this.jobExecutor = jobExecutor;
+    }
+
+    @Override
+    public Job addJob(String topic, Map<String, Object> properties) {
+        if (!this.topic.equals(topic)) {
+            return null;
+        }
+
+        LocalJob job = new LocalJob(String.valueOf(jobCounter.incrementAndGet()), topic, new HashMap<>(properties));
+        jobs.add(job);
+        processing.add(queue.submit(() -> process(job)));
+        return job;
+    }
+
+    @Override
+    @SafeVarargs
+    public final Collection<Job> findJobs(QueryType type, String topic, long limit, Map<String, Object>... templates) {
+        List<Job> result = new ArrayList<>();
+        synchronized (jobs) {
+            //newest job first
+            for (int i = jobs.size() - 1; i >= 0 && (limit < 1 || result.size() < limit); i--) {
+                LocalJob job = jobs.get(i);
+                if (job.getTopic().equals(topic) && matches(type, job)) {
+                    result.add(job);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Job getJobById(String jobId) {
+        synchronized (jobs) {
+            return jobs.stream().filter(job -> job.getId().equals(jobId)).findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * @return number of jobs that were added
+     */
+    int getJobCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Wait until all added jobs are processed.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true in case all jobs were processed in time
+     * @throws InterruptedException in case the thread is interrupted while waiting
+     */
+    boolean awaitJobs(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Future<?>> futures;
+        synchronized (processing) {
+            futures = new ArrayList<>(processing);
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        queue.shutdownNow();
+    }
+
+    private void process(LocalJob job) {
+        job.start();
+        JobExecutionResult result;
+        try {
+            result = jobExecutor.process(job, new LocalJobExecutionContext(job));
+        } catch (RuntimeException e) {
+            job.finish(Job.JobState.ERROR, e.getMessage());
+            return;
+        }
+        job.finish(result.succeeded() ? Job.JobState.SUCCEEDED : Job.JobState.ERROR, result.getMessage());
+    }
+
+    private static boolean matches(QueryType type, Job job) {
+        switch (type) {
+            case ACTIVE:
+                return job.getJobState() == Job.JobState.ACTIVE;
+            case QUEUED:
+                return job.getJobState() == Job.JobState.QUEUED;
+            case SUCCEEDED:
+                return job.getJobState() == Job.JobState.SUCCEEDED;
+            case ERROR:
+                return job.getJobState() == Job.JobState.ERROR;
+            case HISTORY:
+                return job.getFinishedDate() != null;
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public Statistics getStatistics() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterable<TopicStatistics> getTopicStatistics() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Queue getQueue(String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterable<Queue> getQueues() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeJobById(String jobId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Job getJob(String topic, Map<String, Object> template) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void stopJobById(String jobId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Job retryJobById(String jobId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public JobBuilder createJob(String topic) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<ScheduledJobInfo> getScheduledJobs() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @SafeVarargs
+    public final Collection<ScheduledJobInfo> getScheduledJobs(String topic, long limit, Map<String, Object>... templates) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static class LocalJobExecutionContext implements JobExecutionContext {
+
+        private final LocalJob job;
+
+        LocalJobExecutionContext(LocalJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void asyncProcessingFinished(JobExecutionResult result) {
+            //jobs are processed synchronously
+        }
+
+        @Override
+        public boolean isStopped() {
+            return false;
+        }
+
+        @Override
+        public void initProgress(int steps, long eta) {
+            job.initProgress(steps);
+        }
+
+        @Override
+        public void incrementProgressCount(int steps) {
+            job.incrementProgress(steps);
+        }
+
+        @Override
+        public void updateProgress(long eta) {
+            //the eta isn't reported
+        }
+
+        @Override
+        public void log(String message, Object... args) {
+            job.log(MessageFormat.format(message, args));
+        }
+
+        @Override
+        public ResultBuilder result() {
+            return new LocalResultBuilder();
+        }
+    }
+
+    private static class LocalResultBuilder implements JobExecutionContext.ResultBuilder {
+
+        private String message;
+
+        @Override
+        public JobExecutionContext.ResultBuilder message(String message) {
+            this.message = message;
+            return this;
+        }
+
+        @Override
+        public JobExecutionResult succeeded() {
+            return new LocalJobResult(true, false, message);
+        }
+
+        @Override
+        public JobExecutionResult failed() {
+            return new LocalJobResult(false, false, message);
+        }
+
+        @Override
+        public JobExecutionResult failed(long retryDelayInMs) {
+            return failed();
+        }
+
+        @Override
+        public JobExecutionResult cancelled() {
+            return new LocalJobResult(false, true, message);
+        }
+    }
+
+    private static class LocalJobResult implements JobExecutionResult {
+
+        private final boolean succeeded;
+        private final boolean cancelled;
+        private final String message;
+
+        LocalJobResult(boolean succeeded, boolean cancelled, String message) {
+            this.succeeded = succeeded;
+            this.cancelled = cancelled;
+            this.message = message;
+        }
+
+        @Override
+        public boolean succeeded() {
+            return succeeded;
+        }
+
+        @Override
+        public boolean cancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean failed() {
+            return !succeeded && !cancelled;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public Long getRetryDelayInMs() {
+            return null;
+        }
+    }
+}
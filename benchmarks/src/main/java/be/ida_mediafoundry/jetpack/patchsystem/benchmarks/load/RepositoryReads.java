@@ -0,0 +1,183 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import org.apache.sling.api.adapter.AdapterManager;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceWrapper;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the resources read through the resource resolvers of the patch system services, per thread.
+ * Every resource returned by a resolver or by a resource of that resolver, e.g. a child, counts as one read.
+ */
+class RepositoryReads {
+
+    private final ThreadLocal<long[]> threadReads = ThreadLocal.withInitial(() -> new long[1]);
+    private final LongAdder totalReads = new LongAdder();
+
+    private AdapterManager adapterManager;
+
+    /**
+     * @param adapterManager adapts the counted resources, so models read through the counted resources too
+     */
+    void setAdapterManager(AdapterManager adapterManager) {
+        this.adapterManager = adapterManager;
+    }
+
+    /**
+     * @return reads of the current thread so far
+     */
+    long getThreadReads() {
+        return threadReads.get()[0];
+    }
+
+    /**
+     * @return reads of all threads so far
+     */
+    long getTotalReads() {
+        return totalReads.sum();
+    }
+
+    /**
+     * @return factory of which the resource resolvers count their reads
+     */
+    ResourceResolverFactory count(ResourceResolverFactory resourceResolverFactory) {
+        return new CountingResourceResolverFactory(resourceResolverFactory);
+    }
+
+    private void record() {
+        threadReads.get()[0]++;
+        totalReads.increment();
+    }
+
+    private ResourceResolver count(ResourceResolver resourceResolver) {
+        if (resourceResolver == null) {
+            return null;
+        }
+        return (ResourceResolver) Proxy.newProxyInstance(RepositoryReads.class.getClassLoader(), new Class<?>[]{ResourceResolver.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(resourceResolver, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    return count(result, (ResourceResolver) proxy);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object count(Object result, ResourceResolver resourceResolver) {
+        if (result instanceof Resource) {
+            record();
+            return result instanceof CountingResource ? result : new CountingResource((Resource) result, resourceResolver);
+        } else if (result instanceof Iterator) {
+            return new CountingIterator((Iterator<Object>) result, resourceResolver);
+        } else if (result instanceof Iterable) {
+            Iterable<Object> iterable = (Iterable<Object>) result;
+            return (Iterable<Object>) () -> new CountingIterator(iterable.iterator(), resourceResolver);
+        }
+        return result;
+    }
+
+    private class CountingResourceResolverFactory implements ResourceResolverFactory {
+
+        private final ResourceResolverFactory resourceResolverFactory;
+
+        CountingResourceResolverFactory(ResourceResolverFactory resourceResolverFactory) {
+            this.resourceResolverFactory = resourceResolverFactory;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+            return count(resourceResolverFactory.getResourceResolver(authenticationInfo));
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ResourceResolver getAdministrativeResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+            return count(resourceResolverFactory.getAdministrativeResourceResolver(authenticationInfo));
+        }
+
+        @Override
+        public ResourceResolver getServiceResourceResolver(Map<String, Object> authenticationInfo) throws LoginException {
+            return count(resourceResolverFactory.getServiceResourceResolver(authenticationInfo));
+        }
+
+        @Override
+        public ResourceResolver getThreadResourceResolver() {
+            return count(resourceResolverFactory.getThreadResourceResolver());
+        }
+    }
+
+    private class CountingIterator implements Iterator<Object> {
+
+        private final Iterator<Object> iterator;
+        private final ResourceResolver resourceResolver;
+
+        CountingIterator(Iterator<Object> iterator, ResourceResolver resourceResolver) {
+            this.iterator = iterator;
+            this.resourceResolver = resourceResolver;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            return count(iterator.next(), resourceResolver);
+        }
+    }
+
+    private class CountingResource extends ResourceWrapper {
+
+        private final ResourceResolver resourceResolver;
+
+        CountingResource(Resource resource, ResourceResolver resourceResolver) {
+            super(resource);
+            this.resourceResolver = resourceResolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return resourceResolver;
+        }
+
+        @Override
+        public Resource getParent() {
+            return (Resource) count(super.getParent(), resourceResolver);
+        }
+
+        @Override
+        public Resource getChild(String relPath) {
+            return (Resource) count(super.getChild(relPath), resourceResolver);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<Resource> listChildren() {
+            return (Iterator<Resource>) count(super.listChildren(), resourceResolver);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterable<Resource> getChildren() {
+            return (Iterable<Resource>) count(super.getChildren(), resourceResolver);
+        }
+
+        @Override
+        public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
+            AdapterType adapter = adapterManager != null ? adapterManager.getAdapter(this, type) : null;
+            return adapter != null ? adapter : super.adaptTo(type);
+        }
+    }
+}
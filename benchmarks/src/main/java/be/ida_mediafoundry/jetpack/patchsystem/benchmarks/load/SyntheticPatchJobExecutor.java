@@ -0,0 +1,69 @@
+package be.ida_mediafoundry.jetpack.patchsystem.benchmarks.load;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Patch job that doesn't run the scripts: every patch takes a fixed time, its file and result are read and written
+ * through the patch system repositories and its progress is logged, like the patch job executor does.
+ */
+class SyntheticPatchJobExecutor implements JobExecutor {
+
+    private final GroovyPatchFileRepository patchFileRepository;
+    private final GroovyPatchResultRepository patchResultRepository;
+    private final long patchTime;
+
+    /**
+     * @param patchTime time every patch takes, in milliseconds
+     */
+    SyntheticPatchJobExecutor(GroovyPatchFileRepository patchFileRepository, GroovyPatchResultRepository patchResultRepository,
+                              long patchTime) {
+        this.patchFileRepository = patchFileRepository;
+        this.patchResultRepository = patchResultRepository;
+        this.patchTime = patchTime;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public JobExecutionResult process(Job job, JobExecutionContext context) {
+        List<String> patchPaths = job.getProperty(JetpackConstants.PATCH_PATHS, List.class);
+        if (patchPaths == null) {
+            patchPaths = Collections.emptyList();
+        }
+
+        context.initProgress(patchPaths.size(), -1L);
+        try {
+            for (String patchPath : patchPaths) {
+                context.log("Executing patch '{0}' of type '{1}'", patchPath, GroovyPatchFile.TYPE);
+                GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+                GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
+
+                TimeUnit.MILLISECONDS.sleep(patchTime);
+
+                patchResult.setStatus(PatchStatus.SUCCESS);
+                patchResult.setOutput("Synthetic patch");
+                patchResultRepository.updateResult(patchResult);
+                context.incrementProgressCount(1);
+                context.log("Patch '{0}' of type '{1}' - RESULT '{2}'", patchPath, GroovyPatchFile.TYPE, patchResult.getStatus());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return context.result().message("Interrupted").cancelled();
+        } finally {
+            patchResultRepository.flush();
+        }
+        return context.result().succeeded();
+    }
+}
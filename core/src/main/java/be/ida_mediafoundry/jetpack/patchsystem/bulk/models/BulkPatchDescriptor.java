@@ -0,0 +1,153 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.models;
+
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchPrecondition;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.jcr.query.Query;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Descriptor of a bulk patch.
+ *
+ * <pre>
+ * {
+ *   "query": "SELECT * FROM [cq:PageContent] WHERE ISDESCENDANTNODE('/content/site')",
+ *   "preconditions": ["missing /content/site/jcr:content/migrated"],
+ *   "keyProperty": "jcr:uuid",
+ *   "batchSize": 500,
+ *   "operations": [
+ *     {"op": "set", "property": "migrated", "value": true},
+ *     {"op": "rename", "property": "oldTitle", "to": "jcr:title"},
+ *     {"op": "remove", "property": "obsolete"}
+ *   ]
+ * }
+ * </pre>
+ */
+public class BulkPatchDescriptor {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private String query;
+    private String language;
+    private String keyProperty;
+    private Integer batchSize;
+    private List<String> preconditions = new ArrayList<>();
+    private List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Parse and validate the json descriptor.
+     *
+     * @param json json descriptor
+     * @return descriptor
+     * @throws IllegalArgumentException in case the descriptor is invalid
+     */
+    public static BulkPatchDescriptor parse(String json) {
+        BulkPatchDescriptor descriptor;
+        try {
+            descriptor = new Gson().fromJson(json, BulkPatchDescriptor.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid bulk patch descriptor: " + e.getMessage(), e);
+        }
+
+        if (descriptor == null || StringUtils.isBlank(descriptor.query)) {
+            throw new IllegalArgumentException("Invalid bulk patch descriptor: no query");
+        }
+        if (descriptor.operations == null || descriptor.operations.isEmpty()) {
+            throw new IllegalArgumentException("Invalid bulk patch descriptor: no operations");
+        }
+        for (Operation operation : descriptor.operations) {
+            operation.validate();
+            if (operation.getType() != OperationType.SET && !Query.JCR_SQL2.equals(descriptor.getLanguage())) {
+                throw new IllegalArgumentException("Invalid bulk patch descriptor: op '" + operation.op
+                        + "' removes matches of the query and needs a " + Query.JCR_SQL2 + " query");
+            }
+        }
+        descriptor.getPreconditions();
+        return descriptor;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public String getLanguage() {
+        return StringUtils.defaultIfBlank(language, Query.JCR_SQL2);
+    }
+
+    public String getKeyProperty() {
+        return keyProperty;
+    }
+
+    public int getBatchSize() {
+        return batchSize != null && batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * @return the preconditions of the patch
+     * @throws IllegalArgumentException in case a precondition is invalid
+     */
+    public List<PatchPrecondition> getPreconditions() {
+        List<PatchPrecondition> parsed = new ArrayList<>();
+        if (preconditions != null) {
+            for (String precondition : preconditions) {
+                parsed.add(PatchPrecondition.parse(precondition));
+            }
+        }
+        return parsed;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public enum OperationType {
+        SET, RENAME, REMOVE
+    }
+
+    public static class Operation {
+
+        private String op;
+        private String property;
+        private Object value;
+        private String to;
+
+        private void validate() {
+            if (getType() == null) {
+                throw new IllegalArgumentException("Invalid bulk patch operation: unknown op '" + op + "'");
+            }
+            if (StringUtils.isBlank(property)) {
+                throw new IllegalArgumentException("Invalid bulk patch operation: no property for op '" + op + "'");
+            }
+            if (getType() == OperationType.SET && value == null) {
+                throw new IllegalArgumentException("Invalid bulk patch operation: no value to set for property '" + property + "'");
+            }
+            if (getType() == OperationType.RENAME && StringUtils.isBlank(to)) {
+                throw new IllegalArgumentException("Invalid bulk patch operation: no name to rename property '" + property + "' to");
+            }
+        }
+
+        public OperationType getType() {
+            for (OperationType type : OperationType.values()) {
+                if (type.name().equalsIgnoreCase(op)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public String getTo() {
+            return to;
+        }
+    }
+}
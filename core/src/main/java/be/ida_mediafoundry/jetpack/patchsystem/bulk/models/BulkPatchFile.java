@@ -0,0 +1,177 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.models;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ScriptFingerprint;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchPrecondition;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.Self;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarative bulk-update patch: a json descriptor with a query and the operations to apply on every matching node.
+ * Bulk patches live next to the groovy patches and share their folders and results.
+ */
+@Model(adaptables = Resource.class)
+public class BulkPatchFile implements ContentPatchFile {
+
+    public static final String TYPE = "bulk";
+    public static final String EXTENSION = ".bulk.json";
+
+    @Self
+    private Resource resource;
+
+    private String path;
+
+    private String scriptName;
+    private String fileContent;
+    private String md5;
+    private final Map<DigestAlgorithm, String> digests = new EnumMap<>(DigestAlgorithm.class);
+    private String fingerprint;
+
+    private GroovyPatchFolder parentFolder;
+
+    /**
+     * Create the bulk patch from its entry in the manifest, without reading the descriptor.
+     * The descriptor is read when the patch runs, the patch is compared on the md5, digests and fingerprint of the manifest.
+     *
+     * @param path path of the descriptor
+     * @param entry entry of the patch in the manifest
+     * @param parentFolder folder of the patch, or null
+     * @return bulk patch
+     */
+    public static BulkPatchFile fromManifest(String path, PatchManifest.Patch entry, GroovyPatchFolder parentFolder) {
+        BulkPatchFile patchFile = new BulkPatchFile();
+        patchFile.path = path;
+        patchFile.scriptName = StringUtils.substringAfterLast(path, "/");
+        patchFile.md5 = entry.getMd5();
+        patchFile.fingerprint = entry.getFingerprint();
+        for (Map.Entry<String, String> digest : entry.getDigests().entrySet()) {
+            DigestAlgorithm algorithm = DigestAlgorithm.fromDigest(digest.getValue());
+            if (algorithm != null) {
+                patchFile.digests.put(algorithm, digest.getValue());
+            }
+        }
+        patchFile.parentFolder = parentFolder;
+        return patchFile;
+    }
+
+    @PostConstruct
+    private void init() {
+        this.path = resource.getPath();
+
+        this.scriptName = resource.getName();
+
+        Resource descriptorResource = resource.getChild("jcr:content");
+        this.fileContent = descriptorResource.getValueMap().get("jcr:data", String.class);
+        if (this.fileContent == null) {
+            throw new IllegalStateException("Bulk patch " + path + " has no content");
+        }
+    }
+
+    public BulkPatchDescriptor getDescriptor() {
+        return BulkPatchDescriptor.parse(getFileContent());
+    }
+
+    @Override
+    public String getProjectName() {
+        if (parentFolder != null) {
+            return parentFolder.getProjectName();
+        }
+        return null;
+    }
+
+    @Override
+    public String getScriptName() {
+        return scriptName;
+    }
+
+    @Override
+    public String getFileContent() {
+        return fileContent;
+    }
+
+    /**
+     * @return md5 of the descriptor, computed on first use
+     */
+    @Override
+    public String getMd5() {
+        if (md5 == null && fileContent != null) {
+            md5 = DigestAlgorithm.MD5.hex(fileContent);
+        }
+        return md5;
+    }
+
+    /**
+     * @param algorithm algorithm of the digest
+     * @return prefixed digest of the descriptor, computed once per algorithm, or null in case it's not in the manifest of the patch
+     */
+    @Override
+    public String getDigest(DigestAlgorithm algorithm) {
+        if (fileContent == null) {
+            return digests.get(algorithm);
+        }
+        return digests.computeIfAbsent(algorithm, key -> key.digest(fileContent));
+    }
+
+    /**
+     * @return md5 of the descriptor without insignificant whitespace, computed on first use
+     */
+    @Override
+    public String getFingerprint() {
+        if (fingerprint == null && fileContent != null) {
+            fingerprint = ScriptFingerprint.of(fileContent);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return the preconditions of the descriptor, none in case the descriptor is invalid
+     */
+    @Override
+    public List<PatchPrecondition> getPreconditions() {
+        try {
+            return getDescriptor().getPreconditions();
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    public void setParentFolder(GroovyPatchFolder parentFolder) {
+        this.parentFolder = parentFolder;
+    }
+
+    @Override
+    public String getResultPath() {
+        StringBuilder sb = new StringBuilder();
+        if (parentFolder != null) {
+            sb.append(parentFolder.getResultPath()).append("/");
+        }
+        sb.append(this.scriptName);
+        return sb.toString();
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return true;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+}
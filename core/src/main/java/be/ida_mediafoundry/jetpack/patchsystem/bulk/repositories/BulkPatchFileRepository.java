@@ -0,0 +1,27 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories;
+
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+
+import java.util.List;
+
+/**
+ * Interface to get bulk patches from the repository.
+ */
+public interface BulkPatchFileRepository {
+
+    /**
+     * Get all bulk patches.
+     *
+     * @return list of all bulk patches
+     */
+    List<BulkPatchFile> getPatches();
+
+    /**
+     * Get 1 specific bulk patch file.
+     *
+     * @param path path of the bulk patch descriptor
+     * @return BulkPatchFile
+     */
+    BulkPatchFile getPatch(String path);
+
+}
@@ -0,0 +1,141 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.PatchFileScanner;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvent;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEventType;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvents;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Component(
+        name = "Jetpack - Bulk Patch File Repository",
+        service = BulkPatchFileRepository.class
+)
+@Designate(ocd = BulkPatchFileRepositoryImpl.Config.class)
+public class BulkPatchFileRepositoryImpl implements BulkPatchFileRepository {
+    private final static Logger LOG = LoggerFactory.getLogger(BulkPatchFileRepositoryImpl.class);
+
+    @ObjectClassDefinition(name = "Jetpack - Bulk Patch File Repository",
+            description = "Discovery of the bulk patches under /apps/patches.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Trust manifest",
+                description = "Discover the bulk patches of a project folder from the " + PatchManifest.NAME + " generated at build time, "
+                        + "instead of reading and hashing all descriptors. Disable when patches are edited after deployment.")
+        boolean trustManifest() default true;
+    }
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
+    private boolean trustManifest = true;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        this.trustManifest = config.trustManifest();
+    }
+
+    @Override
+    public BulkPatchFile getPatch(String path)  {
+        BulkPatchFile patchFile = null;
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(PatchFileScanner.getCredentials())) {
+            Resource resource = resourceResolver.getResource(path);
+            if (resource != null) {
+                patchFile = resource.adaptTo(BulkPatchFile.class);
+                if (patchFile != null) {
+                    GroovyPatchFolder patchFolder = PatchFileScanner.getPatchFolder(resource.getParent());
+                    if (patchFolder != null) {
+                        patchFile.setParentFolder(patchFolder);
+                    }
+                }
+            }
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to get BulkPatchFile", e);
+        }
+
+        return patchFile;
+    }
+
+    @Override
+    public List<BulkPatchFile> getPatches() {
+        PatchEvent event = PatchEvents.begin(PatchEventType.SCAN);
+        long start = System.nanoTime();
+        List<BulkPatchFile> patches = new ArrayList<>();
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(PatchFileScanner.getCredentials())) {
+            Resource root = resourceResolver.getResource(PatchFileScanner.ROOT);
+            if (root != null) {
+                patches = PatchFileScanner.scanFolderForPatches(root, null, BulkPatchFile.EXTENSION,
+                        this::createPatch, this::createPatchesFromManifest);
+            }
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to get BulkPatchFile", e);
+        }
+
+        metrics().time(PatchMetric.DISCOVERY_SCAN, BulkPatchFile.TYPE, System.nanoTime() - start);
+        event.end(PatchFileScanner.ROOT, BulkPatchFile.TYPE, PatchSystemMetrics.ALL, patches.size());
+        return patches;
+    }
+
+    private BulkPatchFile createPatch(Resource resource, GroovyPatchFolder parent) {
+        BulkPatchFile patchFile = resource.adaptTo(BulkPatchFile.class);
+        if (patchFile != null) {
+            patchFile.setParentFolder(parent);
+        }
+        return patchFile;
+    }
+
+    /**
+     * @param folder top level project folder
+     * @return the bulk patches of the manifest of the folder, or null in case it has none, it's invalid, it isn't trusted
+     * or it doesn't list bulk patches
+     */
+    private List<BulkPatchFile> createPatchesFromManifest(Resource folder) {
+        PatchManifest manifest = trustManifest ? PatchFileScanner.getManifest(folder) : null;
+        if (manifest == null || manifest.getBulkPatches() == null) {
+            return null;
+        }
+
+        Map<String, GroovyPatchFolder> patchFolders = PatchFileScanner.getPatchFolders(manifest);
+        List<BulkPatchFile> patchFiles = new ArrayList<>();
+        for (PatchManifest.Patch patch : manifest.getBulkPatches()) {
+            GroovyPatchFolder parent = patchFolders.get(StringUtils.substringBeforeLast(patch.getPath(), "/"));
+            patchFiles.add(BulkPatchFile.fromManifest(PatchFileScanner.ROOT + "/" + patch.getPath(), patch, parent));
+        }
+        return patchFiles;
+    }
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
+    }
+}
@@ -0,0 +1,19 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.services;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.List;
+
+public interface BulkPatchSystemService {
+
+    boolean isPatchSystemReady();
+
+    List<PatchFile> getPatchesToExecute();
+
+    List<PatchFileWithResultResource> getPatches(ResourceResolver resourceResolver);
+
+    GroovyPatchResult runPatch(String patchPath);
+}
@@ -0,0 +1,301 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchDescriptor;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.services.BulkPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.BatchSaver;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.QueryIterator;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.PatchUtils;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import be.ida_mediafoundry.jetpack.patchsystem.utils.DateUtils;
+import groovy.lang.Closure;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component(
+        immediate = true,
+        name = "Jetpack - Bulk Patch System Service",
+        configurationPolicy = ConfigurationPolicy.IGNORE,
+        service = { BulkPatchSystemService.class },
+        property={
+                Constants.SERVICE_DESCRIPTION + "=Service for accessing bulk patches, results and run them without groovy.",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+
+        })
+public class BulkPatchSystemServiceImpl implements BulkPatchSystemService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkPatchSystemServiceImpl.class);
+
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    @Reference
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Reference
+    private BulkPatchFileRepository patchFileRepository;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    /**
+     * @param patchPath path of the bulk patch descriptor
+     * @return result of the patch, or null in case the patch doesn't exist
+     */
+    @Override
+    public GroovyPatchResult runPatch(String patchPath) {
+        BulkPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+        if (patchFile == null) {
+            LOG.warn("Bulk patch {} not found", patchPath);
+            return null;
+        }
+        GroovyPatchResult linkedResult = patchResultRepository.linkResult(patchFile);
+        if (linkedResult != null) {
+            return linkedResult;
+        }
+        GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
+
+        long start = System.currentTimeMillis();
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            Session session = resourceResolver.adaptTo(Session.class);
+            if (session == null) {
+                throw new IllegalStateException("No session available for the patch system user");
+            }
+
+            BulkPatchDescriptor descriptor = patchFile.getDescriptor();
+            BatchSaver batchSaver = new BatchSaver(session);
+            batchSaver.setMaxChanges(descriptor.getBatchSize());
+            QueryIterator queryIterator = new QueryIterator(session);
+            queryIterator.setPageSize(descriptor.getBatchSize());
+
+            try {
+                BulkUpdate bulkUpdate = new BulkUpdate(descriptor, batchSaver);
+                if (Query.JCR_SQL2.equals(descriptor.getLanguage())) {
+                    //the saved pages change the result of the query, paging with an offset would skip matches
+                    String keyProperty = StringUtils.defaultIfBlank(descriptor.getKeyProperty(), QueryIterator.PATH_KEY);
+                    queryIterator.eachByKey(descriptor.getQuery(), keyProperty, bulkUpdate);
+                } else {
+                    queryIterator.each(descriptor.getQuery(), descriptor.getLanguage(), bulkUpdate);
+                }
+                batchSaver.flush();
+
+                patchResult.setStatus(PatchStatus.SUCCESS);
+                patchResult.setOutput(bulkUpdate.getSummary());
+            } finally {
+                setStatistics(patchResult, batchSaver, queryIterator);
+            }
+        } catch (Exception e) {
+            LOG.error("Could not execute bulk patch " + patchPath, e);
+            patchResult.setStatus(PatchStatus.ERROR);
+            patchResult.setOutput(ExceptionUtils.getStackTrace(e));
+        }
+
+        patchResult.setRunningTime(DateUtils.formattedRunningTime(System.currentTimeMillis() - start));
+        patchResultRepository.updateResult(patchResult);
+
+        return patchResult;
+    }
+
+    @Override
+    public List<PatchFile> getPatchesToExecute() {
+        return patchFileRepository.getPatches()
+                                  .stream()
+                                  .filter(this::isExecutable)
+                                  .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<PatchFileWithResultResource> getPatches(final ResourceResolver resourceResolver) {
+        return patchFileRepository.getPatches()
+                .stream()
+                .map(patchFile -> {
+                    GroovyPatchResult patchResult = patchResultRepository.getResult(patchFile);
+                    boolean diff = PatchUtils.isDiff(patchFile, patchResult);
+                    return new PatchFileWithResultResource(resourceResolver, patchFile, patchResult, diff);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Bulk patches run natively, they don't need the Groovy Console.
+     *
+     * @return always true
+     */
+    @Override
+    public boolean isPatchSystemReady() {
+        return true;
+    }
+
+    /**
+     * Will check if the patch is executable.
+     * Patches are only executable if no result is found
+     * OR when the descriptor is different from the saved result (=modified patches)
+     * OR when the patch was skipped, so its preconditions are evaluated again.
+     *
+     * @param patchFile patch file to check
+     * @return true in case it's a new, modified or skipped patch.
+     */
+    private boolean isExecutable(BulkPatchFile patchFile) {
+        GroovyPatchResult patchResult = patchResultRepository.getResult(patchFile);
+        if (patchResult == null || PatchStatus.SKIPPED.isOfStatus(patchResult)) {
+            return true;
+        } else {
+            return PatchUtils.isDiff(patchFile, patchResult);
+        }
+    }
+
+    private void setStatistics(GroovyPatchResult patchResult, BatchSaver batchSaver, QueryIterator queryIterator) {
+        if (batchSaver.getCommitCount() > 0) {
+            patchResult.setCommitCount(batchSaver.getCommitCount());
+            patchResult.setCommitTime(DateUtils.formattedRunningTime(batchSaver.getCommitTime()));
+        }
+        if (queryIterator.getPages() > 0) {
+            patchResult.setRowsRead(queryIterator.getRowsRead());
+            patchResult.setQueryTime(DateUtils.formattedRunningTime(queryIterator.getQueryTime()));
+        }
+    }
+
+    private Map<String, Object> getCredentials() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return credentials;
+    }
+
+    /**
+     * Applies the operations of the descriptor on every matching node, and counts the changes per operation.
+     */
+    static class BulkUpdate extends Closure<Object> {
+
+        private final BulkPatchDescriptor descriptor;
+        private final BatchSaver batchSaver;
+        private final long[] operationCounts;
+
+        private long matchedNodes;
+        private long updatedNodes;
+
+        BulkUpdate(BulkPatchDescriptor descriptor, BatchSaver batchSaver) {
+            super(null);
+            this.descriptor = descriptor;
+            this.batchSaver = batchSaver;
+            this.operationCounts = new long[descriptor.getOperations().size()];
+        }
+
+        public Object doCall(Node node) throws RepositoryException {
+            matchedNodes++;
+
+            boolean changed = false;
+            List<BulkPatchDescriptor.Operation> operations = descriptor.getOperations();
+            for (int i = 0; i < operations.size(); i++) {
+                if (apply(node, operations.get(i))) {
+                    operationCounts[i]++;
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                updatedNodes++;
+                batchSaver.changed();
+            }
+            return null;
+        }
+
+        private boolean apply(Node node, BulkPatchDescriptor.Operation operation) throws RepositoryException {
+            String property = operation.getProperty();
+            switch (operation.getType()) {
+                case SET:
+                    setProperty(node, property, operation.getValue());
+                    return true;
+                case RENAME:
+                    if (!node.hasProperty(property)) {
+                        return false;
+                    }
+                    Property source = node.getProperty(property);
+                    if (source.isMultiple()) {
+                        node.setProperty(operation.getTo(), source.getValues());
+                    } else {
+                        node.setProperty(operation.getTo(), source.getValue());
+                    }
+                    source.remove();
+                    return true;
+                case REMOVE:
+                    if (!node.hasProperty(property)) {
+                        return false;
+                    }
+                    node.getProperty(property).remove();
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void setProperty(Node node, String property, Object value) throws RepositoryException {
+            if (value instanceof Boolean) {
+                node.setProperty(property, (Boolean) value);
+            } else if (value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+                    node.setProperty(property, (long) number);
+                } else {
+                    node.setProperty(property, number);
+                }
+            } else if (value instanceof List) {
+                String[] values = ((List<?>) value).stream()
+                        .map(BulkUpdate::toString)
+                        .toArray(String[]::new);
+                node.setProperty(property, values);
+            } else {
+                node.setProperty(property, value.toString());
+            }
+        }
+
+        private static String toString(Object value) {
+            if (value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                if (number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE) {
+                    return String.valueOf((long) number);
+                }
+            }
+            return String.valueOf(value);
+        }
+
+        String getSummary() {
+            StringBuilder summary = new StringBuilder()
+                    .append("Matched ").append(matchedNodes).append(" node(s), updated ").append(updatedNodes).append(" node(s)");
+            List<BulkPatchDescriptor.Operation> operations = descriptor.getOperations();
+            for (int i = 0; i < operations.size(); i++) {
+                BulkPatchDescriptor.Operation operation = operations.get(i);
+                summary.append("\n").append(operation.getType().name().toLowerCase()).append(" ").append(operation.getProperty());
+                if (operation.getTo() != null && operation.getType() == BulkPatchDescriptor.OperationType.RENAME) {
+                    summary.append(" -> ").append(operation.getTo());
+                }
+                summary.append(": ").append(operationCounts[i]);
+            }
+            return summary.toString();
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package be.ida_mediafoundry.jetpack.patchsystem.executors;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.services.BulkPatchSystemService;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvent;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEventType;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvents;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchProgressListener;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.services.OnDeployScriptSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchPreconditionService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
@@ -18,7 +30,11 @@ import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author : maartentutak
@@ -43,50 +59,291 @@ public class PatchJobExecutor implements JobExecutor {
             policyOption = ReferencePolicyOption.GREEDY)
     private OnDeployScriptSystemService onDeployScriptSystemService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchSystemService bulkPatchSystemService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchPreconditionService patchPreconditionService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemStateService patchSystemStateService;
+
     @Override
     public JobExecutionResult process(Job job, JobExecutionContext context) {
+        PatchEvent jobEvent = PatchEvents.begin(PatchEventType.JOB);
+        long start = System.nanoTime();
+        if (job.getCreated() != null) {
+            long queueWait = System.currentTimeMillis() - job.getCreated().getTimeInMillis();
+            metrics().time(PatchMetric.QUEUE_WAIT, TimeUnit.MILLISECONDS.toNanos(Math.max(queueWait, 0)));
+        }
+
+        if (patchSystemStateService != null) {
+            patchSystemStateService.jobStarted(job.getId());
+        }
 
         JobExecutionResult result = context.result().succeeded();
+        List<String> patchPaths = job.getProperty(JetpackConstants.PATCH_PATHS, List.class);
 
         try {
-            List<String> patchPaths = job.getProperty(JetpackConstants.PATCH_PATHS, List.class);
             List<String> types = job.getProperty(JetpackConstants.TYPES, List.class);
 
             if (CollectionUtils.isNotEmpty(patchPaths)) {
-                executePatches(patchPaths, types, context);
+                Map<String, String> compilationErrors = compileGroovyPatches(patchPaths, types);
+                Map<String, String> blockedPatches = compilationErrors.isEmpty()
+                        ? analyzeGroovyPatches(patchPaths, types) : Collections.emptyMap();
+                if (!compilationErrors.isEmpty()) {
+                    compilationErrors.forEach((patchPath, error) ->
+                            context.log("Compilation failed for patch '{0}' - ERROR '{1}'", patchPath, error));
+                    //a compilation error fails again on every retry, the job is cancelled instead of failed
+                    result = context.result()
+                            .message("Compilation failed for " + compilationErrors.size() + " patch(es), no patches were executed")
+                            .cancelled();
+                } else if (!blockedPatches.isEmpty()) {
+                    blockedPatches.forEach((patchPath, queryPlan) ->
+                            context.log("Patch '{0}' is blocked by its query plan - PLAN '{1}'", patchPath, queryPlan));
+                    //a blocked query plan is blocked again on every retry, the job is cancelled instead of failed
+                    result = context.result()
+                            .message("Query plans blocked " + blockedPatches.size() + " patch(es), no patches were executed")
+                            .cancelled();
+                } else {
+                    Map<String, String> failedPreconditions = evaluatePreconditions(patchPaths, types);
+                    if (!executePatches(patchPaths, types, failedPreconditions, context)) {
+                        result = context.result().message("Patch job was stopped, not all patches were executed").cancelled();
+                    }
+                }
             }
         } catch (Exception e) {
             result = context.result().message(e.getMessage()).failed();
             LOG.error("Error during PatchJobExecutor", e);
+        } finally {
+            //the compiled classes of the job no longer have to be kept in the script cache
+            if (groovyPatchSystemService != null && patchPaths != null) {
+                groovyPatchSystemService.releasePatches(patchPaths);
+            }
+            //results of the job are written behind, persist them before the job ends
+            if (patchResultRepository != null) {
+                patchResultRepository.flush();
+            }
+            metrics().time(PatchMetric.JOB_EXECUTION, System.nanoTime() - start);
+            jobEvent.end(job.getId(), PatchSystemMetrics.ALL, PatchSystemMetrics.ALL, patchPaths != null ? patchPaths.size() : 0);
+            if (patchSystemStateService != null) {
+                patchSystemStateService.jobFinished();
+            }
         }
 
         return result;
     }
 
-    private void executePatches(List<String> patchPaths, List<String> types, JobExecutionContext context) {
+    /**
+     * Pre-flight stage: compile all groovy patches before any of the patches is executed,
+     * so a script with a compilation error doesn't leave the content half patched.
+     *
+     * @param patchPaths paths of the patches in the job
+     * @param types types of the patches in the job
+     * @return compilation errors keyed by patch path
+     */
+    private Map<String, String> compileGroovyPatches(List<String> patchPaths, List<String> types) {
+        List<String> groovyPatchPaths = getGroovyPatchPaths(patchPaths, types);
+        if (groovyPatchPaths.isEmpty() || groovyPatchSystemService == null || !groovyPatchSystemService.isPatchSystemReady()) {
+            return Collections.emptyMap();
+        }
+        return groovyPatchSystemService.compilePatches(groovyPatchPaths);
+    }
+
+    /**
+     * Pre-flight stage: explain the literal queries of all groovy patches before any of the patches is executed,
+     * so a patch that is blocked by its query plan doesn't leave the content half patched.
+     *
+     * @param patchPaths paths of the patches in the job
+     * @param types types of the patches in the job
+     * @return plan summaries of the blocked patches keyed by patch path
+     */
+    private Map<String, String> analyzeGroovyPatches(List<String> patchPaths, List<String> types) {
+        List<String> groovyPatchPaths = getGroovyPatchPaths(patchPaths, types);
+        if (groovyPatchPaths.isEmpty() || groovyPatchSystemService == null || !groovyPatchSystemService.isPatchSystemReady()) {
+            return Collections.emptyMap();
+        }
+        return groovyPatchSystemService.analyzePatches(groovyPatchPaths);
+    }
+
+    private static List<String> getGroovyPatchPaths(List<String> patchPaths, List<String> types) {
+        List<String> groovyPatchPaths = new ArrayList<>();
+        for (int i = 0; i < patchPaths.size(); i++) {
+            if (GroovyPatchFile.TYPE.equals(types.get(i))) {
+                groovyPatchPaths.add(patchPaths.get(i));
+            }
+        }
+        return groovyPatchPaths;
+    }
+
+    /**
+     * Evaluate the cheap preconditions of all patches in one batch, before any of the patches is executed.
+     *
+     * @param patchPaths paths of the patches in the job
+     * @param types types of the patches in the job
+     * @return the failed precondition keyed by patch path, for the patches to skip
+     */
+    private Map<String, String> evaluatePreconditions(List<String> patchPaths, List<String> types) {
+        if (patchPreconditionService == null) {
+            return Collections.emptyMap();
+        }
+        return patchPreconditionService.evaluatePreconditions(patchPaths, types);
+    }
+
+    /**
+     * Execute the patches in order. A stopped job, e.g. cancelled through JMX, stops before the next patch or group.
+     *
+     * @return true in case all patches were executed, false in case the job was stopped
+     */
+    private boolean executePatches(List<String> patchPaths, List<String> types, Map<String, String> failedPreconditions,
+                                   JobExecutionContext context) {
         int progressCounter = 1;
         context.initProgress(patchPaths.size(), ETA);
 
+        List<String> transactionalGroups = new ArrayList<>();
         for (int i = 0; i < patchPaths.size(); i++) {
+            transactionalGroups.add(getTransactionalGroup(patchPaths.get(i), types.get(i)));
+        }
+
+        int i = 0;
+        while (i < patchPaths.size()) {
+            if (context.isStopped()) {
+                context.log("Patch job stopped - {0} patch(es) not executed", patchPaths.size() - i);
+                return false;
+            }
+
             String patchPath = patchPaths.get(i);
             String type = types.get(i);
 
+            String transactionalGroup = transactionalGroups.get(i);
+            if (transactionalGroup != null) {
+                List<String> spanPaths = new ArrayList<>();
+                while (i < patchPaths.size() && transactionalGroup.equals(transactionalGroups.get(i))) {
+                    spanPaths.add(patchPaths.get(i++));
+                }
+                //patches skipped by a precondition stay part of their group, they just don't run in it
+                List<String> groupPaths = new ArrayList<>();
+                for (String spanPath : spanPaths) {
+                    if (!failedPreconditions.containsKey(spanPath)) {
+                        groupPaths.add(spanPath);
+                    }
+                }
+
+                List<GroovyPatchResult> patchResults = Collections.emptyList();
+                long patchTime = 0;
+                if (!groupPaths.isEmpty()) {
+                    context.log("Executing transactional group '{0}' of {1} patch(es)", transactionalGroup, groupPaths.size());
+                    patchStarted(transactionalGroup);
+                    PatchEvent groupEvent = PatchEvents.begin(PatchEventType.EXECUTE);
+                    long groupStart = System.nanoTime();
+                    patchResults = groovyPatchSystemService.runPatchGroup(groupPaths,
+                            message -> context.log("Group '{0}' - PROGRESS '{1}'", transactionalGroup, message));
+                    //the patches of a group run in one session, each patch is timed at the average of the group
+                    patchTime = (System.nanoTime() - groupStart) / groupPaths.size();
+                    groupEvent.end(transactionalGroup, type, PatchSystemMetrics.getProject(patchPath), getOutputSize(patchResults));
+                }
+
+                //the group returns a result, or null, for every path of the group in order
+                int j = 0;
+                for (String spanPath : spanPaths) {
+                    PatchResult patchResult;
+                    if (failedPreconditions.containsKey(spanPath)) {
+                        context.log("Skipping patch '{0}' - PRECONDITION '{1}'", spanPath, failedPreconditions.get(spanPath));
+                        patchResult = patchPreconditionService.skipPatch(spanPath, type, failedPreconditions.get(spanPath));
+                    } else {
+                        metrics().time(PatchMetric.PATCH_EXECUTION, type, PatchSystemMetrics.getProject(spanPath), patchTime);
+                        patchResult = j < patchResults.size() ? patchResults.get(j) : null;
+                        j++;
+                    }
+                    context.incrementProgressCount(progressCounter++);
+                    logResult(context, spanPath, type, patchResult);
+                    patchExecuted(spanPath, patchResult);
+                }
+                continue;
+            }
+
             context.log("Executing patch '{0}' of type '{1}'", patchPath, types);
+            patchStarted(patchPath);
 
+            PatchEvent patchEvent = PatchEvents.begin(PatchEventType.EXECUTE);
+            long patchStart = System.nanoTime();
             PatchResult patchResult = null;
-            if (GroovyPatchFile.TYPE.equals(type) && groovyPatchSystemService != null) {
-                patchResult = groovyPatchSystemService.runPatch(patchPath);
+            if (failedPreconditions.containsKey(patchPath)) {
+                context.log("Skipping patch '{0}' - PRECONDITION '{1}'", patchPath, failedPreconditions.get(patchPath));
+                patchResult = patchPreconditionService.skipPatch(patchPath, type, failedPreconditions.get(patchPath));
+            } else if (GroovyPatchFile.TYPE.equals(type) && groovyPatchSystemService != null) {
+                PatchProgressListener progressListener = message -> context.log("Patch '{0}' - PROGRESS '{1}'", patchPath, message);
+                patchResult = groovyPatchSystemService.runPatch(patchPath, progressListener);
             } else if (OnDeployPatchFile.TYPE.equals(type) && onDeployScriptSystemService != null) {
                 patchResult = onDeployScriptSystemService.runPatch(patchPath);
+            } else if (BulkPatchFile.TYPE.equals(type) && bulkPatchSystemService != null) {
+                patchResult = bulkPatchSystemService.runPatch(patchPath);
             }
+            metrics().time(PatchMetric.PATCH_EXECUTION, type, PatchSystemMetrics.getProject(patchPath), System.nanoTime() - patchStart);
+            patchEvent.end(patchPath, type, PatchSystemMetrics.getProject(patchPath), getOutputSize(patchResult));
 
             context.incrementProgressCount(progressCounter++);
+            logResult(context, patchPath, type, patchResult);
+            patchExecuted(patchPath, patchResult);
+            i++;
+        }
+        return true;
+    }
 
-            if (patchResult != null) {
-                context.log("Executed patch '{0}' - RESULT '{1}' - RUNNING TIME '{2}'", patchPath, patchResult.getStatus(), patchResult.getRunningTime());
-            } else {
-                context.log("Not Executed patch '{0}' - No runner found for type '{1}'", patchPath, type);
-            }
+    /**
+     * @return the transactional group of a groovy patch, null in case the patch runs on its own
+     */
+    private String getTransactionalGroup(String patchPath, String type) {
+        if (!GroovyPatchFile.TYPE.equals(type) || groovyPatchSystemService == null) {
+            return null;
         }
+        return groovyPatchSystemService.getTransactionalGroup(patchPath);
+    }
+
+    private void logResult(JobExecutionContext context, String patchPath, String type, PatchResult patchResult) {
+        if (patchResult != null) {
+            context.log("Executed patch '{0}' - RESULT '{1}' - RUNNING TIME '{2}'", patchPath, patchResult.getStatus(), patchResult.getRunningTime());
+        } else {
+            context.log("Not Executed patch '{0}' - No runner found for type '{1}'", patchPath, type);
+        }
+    }
+
+    private void patchStarted(String patchPath) {
+        if (patchSystemStateService != null) {
+            patchSystemStateService.patchStarted(patchPath);
+        }
+    }
+
+    private void patchExecuted(String patchPath, PatchResult patchResult) {
+        if (patchSystemStateService != null) {
+            patchSystemStateService.patchExecuted(patchPath, patchResult);
+        }
+    }
+
+    private static long getOutputSize(List<? extends PatchResult> patchResults) {
+        long outputSize = 0;
+        for (PatchResult patchResult : patchResults) {
+            outputSize += getOutputSize(patchResult);
+        }
+        return outputSize;
+    }
+
+    private static long getOutputSize(PatchResult patchResult) {
+        return patchResult != null && patchResult.getOutput() != null ? patchResult.getOutput().length() : 0;
+    }
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,180 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Script binding that saves the session in batches, instead of once at the end or once per node.
+ * The script reports its changes, the session is saved every {@code maxChanges} changes
+ * or when the reported transient state exceeds {@code maxBytes}.
+ *
+ * <pre>
+ * nodes.each { node ->
+ *     node.setProperty("migrated", true)
+ *     batchSaver.changed()
+ * }
+ * </pre>
+ *
+ * Saves that fail because of a merge conflict are retried after rebasing the session on the latest state.
+ * Pending changes are saved when the script finishes without errors.
+ */
+public class BatchSaver {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSaver.class);
+
+    public static final String BINDING_NAME = "batchSaver";
+
+    public static final int DEFAULT_MAX_CHANGES = 1000;
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private final Session session;
+
+    private int maxChanges = DEFAULT_MAX_CHANGES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private boolean commitDeferred;
+
+    private int pendingChanges;
+    private long pendingBytes;
+
+    private int commitCount;
+    private int retryCount;
+    private long commitTime;
+
+    public BatchSaver(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Report a change, the session is saved in case the batch is full.
+     */
+    public void changed() throws RepositoryException {
+        changed(0);
+    }
+
+    /**
+     * Report a change of the provided size, the session is saved in case the batch is full.
+     *
+     * @param bytes estimated size of the change in bytes
+     */
+    public void changed(long bytes) throws RepositoryException {
+        pendingChanges++;
+        pendingBytes += bytes;
+
+        if (pendingChanges >= maxChanges || pendingBytes >= maxBytes) {
+            save();
+        }
+    }
+
+    /**
+     * Save the pending changes, in case changes were reported since the last save.
+     */
+    public void flush() throws RepositoryException {
+        if (pendingChanges > 0) {
+            save();
+        }
+    }
+
+    /**
+     * Forget the pending changes, after the session was reverted because the batch couldn't be saved.
+     */
+    public void discard() {
+        pendingChanges = 0;
+        pendingBytes = 0;
+    }
+
+    /**
+     * Save the session. A merge conflict is retried after refreshing the session with its transient changes kept.
+     * When the commit is deferred, the batch is closed without saving.
+     */
+    public void save() throws RepositoryException {
+        if (commitDeferred) {
+            pendingChanges = 0;
+            pendingBytes = 0;
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            int attempt = 0;
+            while (true) {
+                try {
+                    session.save();
+                    break;
+                } catch (InvalidItemStateException e) {
+                    if (attempt++ >= maxRetries) {
+                        throw e;
+                    }
+                    LOG.debug("Merge conflict while saving batch, retry {} of {}", attempt, maxRetries, e);
+                    retryCount++;
+                    session.refresh(true);
+                }
+            }
+            commitCount++;
+            pendingChanges = 0;
+            pendingBytes = 0;
+        } finally {
+            commitTime += System.currentTimeMillis() - start;
+        }
+    }
+
+    public int getMaxChanges() {
+        return maxChanges;
+    }
+
+    public void setMaxChanges(int maxChanges) {
+        this.maxChanges = Math.max(1, maxChanges);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public boolean isCommitDeferred() {
+        return commitDeferred;
+    }
+
+    /**
+     * Defer the commit to the owner of the session, e.g. a transactional group of patches that is saved at once.
+     *
+     * @param commitDeferred true to never save the session
+     */
+    public void setCommitDeferred(boolean commitDeferred) {
+        this.commitDeferred = commitDeferred;
+    }
+
+    public int getPendingChanges() {
+        return pendingChanges;
+    }
+
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return total time spent saving, in milliseconds
+     */
+    public long getCommitTime() {
+        return commitTime;
+    }
+}
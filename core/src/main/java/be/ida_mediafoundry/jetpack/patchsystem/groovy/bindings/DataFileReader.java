@@ -0,0 +1,254 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchProgressListener;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import groovy.lang.Closure;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Script binding that streams the records of a CSV or JSON data file shipped next to the patch,
+ * straight from the repository binary, so large data files are never kept in memory.
+ *
+ * <pre>
+ * dataFiles.eachRecord("users.csv") { record ->
+ *     getNode("/home/users/" + record.id).setProperty("email", record.email)
+ * }
+ * </pre>
+ *
+ * CSV files need a header line, every record is a map of header to value.
+ * JSON files contain an array of objects, or one object after the other (newline delimited JSON).
+ * A change is reported to the {@link BatchSaver} for every record, so the session is saved in batches,
+ * and the progress is reported every {@code progressInterval} records.
+ */
+public class DataFileReader {
+
+    public static final String BINDING_NAME = "dataFiles";
+
+    public static final int DEFAULT_PROGRESS_INTERVAL = 10000;
+    public static final char DEFAULT_SEPARATOR = ',';
+
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String JSON_EXTENSION = ".json";
+    private static final String NDJSON_EXTENSION = ".ndjson";
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Session session;
+    private final String folderPath;
+    private final BatchSaver batchSaver;
+    private final PatchProgressListener progressListener;
+
+    private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private char separator = DEFAULT_SEPARATOR;
+
+    private long recordsRead;
+
+    /**
+     * @param session session to read the data files with
+     * @param folderPath folder of the patch, relative file names are resolved against it
+     * @param batchSaver batch saver to report the records to, can be null
+     * @param progressListener listener to report the progress to
+     */
+    public DataFileReader(Session session, String folderPath, BatchSaver batchSaver, PatchProgressListener progressListener) {
+        this.session = session;
+        this.folderPath = folderPath;
+        this.batchSaver = batchSaver;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Stream the records of the data file.
+     *
+     * @param fileName name of the file in the patch folder, or absolute path
+     * @param closure closure called with every record
+     * @return number of records read
+     */
+    public long eachRecord(String fileName, Closure<?> closure) throws RepositoryException, IOException {
+        String path = fileName.startsWith("/") ? fileName : folderPath + "/" + fileName;
+        Node content = session.getNode(path).getNode(Node.JCR_CONTENT);
+        Binary binary = content.getProperty(Property.JCR_DATA).getBinary();
+
+        try (InputStream stream = binary.getStream();
+             Reader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            RecordHandler handler = new RecordHandler(fileName, closure);
+            String lowerCasePath = path.toLowerCase();
+            if (lowerCasePath.endsWith(CSV_EXTENSION)) {
+                readCsv(skipByteOrderMark(reader), handler);
+            } else if (lowerCasePath.endsWith(JSON_EXTENSION) || lowerCasePath.endsWith(NDJSON_EXTENSION)) {
+                readJson(skipByteOrderMark(reader), handler);
+            } else {
+                throw new IllegalArgumentException("Unsupported data file, only csv and json files can be streamed: " + path);
+            }
+
+            if (batchSaver != null) {
+                batchSaver.flush();
+            }
+            progressListener.progress(handler.records + " records of '" + fileName + "' processed");
+            return handler.records;
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    private void readJson(Reader reader, RecordHandler handler) throws IOException, RepositoryException {
+        Gson gson = new Gson();
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+
+        boolean array = jsonReader.peek() == JsonToken.BEGIN_ARRAY;
+        if (array) {
+            jsonReader.beginArray();
+        }
+        while (jsonReader.hasNext() && jsonReader.peek() != JsonToken.END_DOCUMENT) {
+            handler.handle(gson.fromJson(jsonReader, Object.class));
+        }
+        if (array) {
+            jsonReader.endArray();
+        }
+    }
+
+    private void readCsv(Reader reader, RecordHandler handler) throws IOException, RepositoryException {
+        List<String> header = readCsvLine(reader);
+        if (header == null) {
+            return;
+        }
+
+        List<String> values;
+        while ((values = readCsvLine(reader)) != null) {
+            if (values.size() == 1 && values.get(0).isEmpty()) {
+                continue;
+            }
+            Map<String, String> record = new LinkedHashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                record.put(header.get(i), i < values.size() ? values.get(i) : null);
+            }
+            handler.handle(record);
+        }
+    }
+
+    /**
+     * Read one CSV line (RFC 4180): quoted values can contain separators, escaped quotes and line breaks.
+     *
+     * @return the values of the line, or null at the end of the file
+     */
+    private List<String> readCsvLine(Reader reader) throws IOException {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean read = false;
+
+        int c;
+        while ((c = reader.read()) != -1) {
+            read = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        value.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    value.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                values.add(value.toString());
+                value.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                value.append((char) c);
+            }
+        }
+
+        if (!read) {
+            return null;
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private Reader skipByteOrderMark(Reader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != BYTE_ORDER_MARK) {
+            reader.reset();
+        }
+        return reader;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = Math.max(1, progressInterval);
+    }
+
+    public char getSeparator() {
+        return separator;
+    }
+
+    public void setSeparator(char separator) {
+        this.separator = separator;
+    }
+
+    public void setSeparator(String separator) {
+        if (StringUtils.length(separator) != 1) {
+            throw new IllegalArgumentException("CSV separator must be 1 character: " + separator);
+        }
+        this.separator = separator.charAt(0);
+    }
+
+    /**
+     * @return number of records read from all data files
+     */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    private class RecordHandler {
+
+        private final String fileName;
+        private final Closure<?> closure;
+
+        private long records;
+
+        private RecordHandler(String fileName, Closure<?> closure) {
+            this.fileName = fileName;
+            this.closure = closure;
+        }
+
+        private void handle(Object record) throws RepositoryException {
+            closure.call(record);
+            records++;
+            recordsRead++;
+
+            if (batchSaver != null) {
+                batchSaver.changed();
+            }
+            if (records % progressInterval == 0) {
+                progressListener.progress(records + " records of '" + fileName + "' processed");
+            }
+        }
+    }
+}
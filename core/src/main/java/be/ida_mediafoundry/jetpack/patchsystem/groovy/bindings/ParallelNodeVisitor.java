@@ -0,0 +1,342 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import groovy.lang.Closure;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Script binding that visits the nodes below a root path or the nodes of a query on a bounded pool of workers.
+ * The paths are collected lazily into partitions of {@code partitionSize} nodes. Every partition is processed with
+ * its own service resolver and {@link BatchSaver}, so the changes of a partition are saved in batches of {@code batchSize}.
+ *
+ * <pre>
+ * parallelVisitor.visit("/content/dam") { node ->
+ *     node.setProperty("migrated", true)
+ * }
+ * </pre>
+ *
+ * The closure is called concurrently and should not modify shared state.
+ * Errors are collected per partition, a failing node doesn't stop the other nodes from being visited.
+ * When a batch can't be saved, its changes are reverted and reported as an error, the partition continues with the next batch.
+ * The partitions save their own changes, so visits are rejected when the commit is deferred, e.g. in a transactional group.
+ */
+public class ParallelNodeVisitor {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelNodeVisitor.class);
+
+    public static final String BINDING_NAME = "parallelVisitor";
+
+    public static final int DEFAULT_PARTITION_SIZE = 1000;
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_THREADS = 4;
+
+    /**
+     * Opens a new resource resolver for a partition.
+     */
+    @FunctionalInterface
+    public interface ResourceResolverProvider {
+        ResourceResolver getResourceResolver() throws LoginException;
+    }
+
+    private final ResourceResolver resourceResolver;
+    private final ResourceResolverProvider resourceResolverProvider;
+    private final VisitStatistics statistics = new VisitStatistics();
+
+    private int threads = Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors());
+    private int partitionSize = DEFAULT_PARTITION_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean commitDeferred;
+
+    /**
+     * @param resourceResolver resource resolver of the script, used to find the nodes to visit
+     * @param resourceResolverProvider provider of the resource resolvers of the partitions
+     */
+    public ParallelNodeVisitor(ResourceResolver resourceResolver, ResourceResolverProvider resourceResolverProvider) {
+        this.resourceResolver = resourceResolver;
+        this.resourceResolverProvider = resourceResolverProvider;
+    }
+
+    /**
+     * Visit the root node and all its descendants.
+     *
+     * @param rootPath path of the root node
+     * @param closure closure called with every node
+     * @return statistics of this visit
+     */
+    public VisitStatistics visit(String rootPath, Closure<?> closure) {
+        checkVisitAllowed();
+        Resource root = resourceResolver.getResource(rootPath);
+        if (root == null) {
+            LOG.warn("Root {} doesn't exist, nothing to visit", rootPath);
+            return new VisitStatistics();
+        }
+        return visit(new DescendantPaths(root), closure);
+    }
+
+    /**
+     * Visit the nodes of the query.
+     *
+     * @param statement JCR-SQL2 statement
+     * @param closure closure called with every node
+     * @return statistics of this visit
+     */
+    public VisitStatistics visitQuery(String statement, Closure<?> closure) throws RepositoryException {
+        return visitQuery(statement, Query.JCR_SQL2, closure);
+    }
+
+    /**
+     * Visit the nodes of the query.
+     *
+     * @param statement query statement
+     * @param language query language
+     * @param closure closure called with every node
+     * @return statistics of this visit
+     */
+    public VisitStatistics visitQuery(String statement, String language, Closure<?> closure) throws RepositoryException {
+        checkVisitAllowed();
+        Session session = resourceResolver.adaptTo(Session.class);
+        if (session == null) {
+            throw new RepositoryException("No session available to execute the query");
+        }
+
+        NodeIterator nodes = session.getWorkspace().getQueryManager().createQuery(statement, language).execute().getNodes();
+        return visit(new NodePaths(nodes), closure);
+    }
+
+    private VisitStatistics visit(Iterator<String> paths, Closure<?> closure) {
+        VisitStatistics visitStatistics = new VisitStatistics();
+        long start = System.currentTimeMillis();
+
+        //the queue is bounded as well, when all workers are busy the script thread processes the partition itself
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            int partition = 0;
+            while (paths.hasNext()) {
+                List<String> partitionPaths = new ArrayList<>(partitionSize);
+                while (paths.hasNext() && partitionPaths.size() < partitionSize) {
+                    partitionPaths.add(paths.next());
+                }
+
+                int partitionNumber = ++partition;
+                Closure<?> partitionClosure = (Closure<?>) closure.clone();
+                executor.execute(() -> processPartition(partitionNumber, partitionPaths, partitionClosure, visitStatistics));
+            }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        visitStatistics.addDuration(System.currentTimeMillis() - start);
+        statistics.add(visitStatistics);
+        return visitStatistics;
+    }
+
+    private void checkVisitAllowed() {
+        if (commitDeferred) {
+            throw new IllegalStateException("The patch is part of a transactional group, "
+                    + "the parallel visitor saves its partitions with their own sessions and can't be used");
+        }
+    }
+
+    private void processPartition(int partition, List<String> paths, Closure<?> closure, VisitStatistics visitStatistics) {
+        List<String> errors = new ArrayList<>();
+        long visitedNodes = 0;
+        int failedBatches = 0;
+        BatchSaver batchSaver = null;
+
+        try (ResourceResolver partitionResolver = resourceResolverProvider.getResourceResolver()) {
+            Session session = partitionResolver.adaptTo(Session.class);
+            if (session == null) {
+                throw new RepositoryException("No session available for partition " + partition);
+            }
+
+            batchSaver = new BatchSaver(session);
+            batchSaver.setMaxChanges(batchSize);
+
+            for (String path : paths) {
+                try {
+                    closure.call(session.getNode(path));
+                    visitedNodes++;
+                } catch (Exception e) {
+                    LOG.debug("Error while visiting {}", path, e);
+                    errors.add(path + " - " + e.getMessage());
+                    continue;
+                }
+
+                try {
+                    batchSaver.changed();
+                } catch (RepositoryException e) {
+                    failedBatches++;
+                    revertBatch(partition, partitionResolver, batchSaver, errors, e);
+                }
+            }
+
+            try {
+                batchSaver.flush();
+            } catch (RepositoryException e) {
+                failedBatches++;
+                revertBatch(partition, partitionResolver, batchSaver, errors, e);
+            }
+        } catch (LoginException | RepositoryException | RuntimeException e) {
+            LOG.error("Error while processing partition {}", partition, e);
+            errors.add(e.getMessage());
+        }
+
+        int commitCount = batchSaver != null ? batchSaver.getCommitCount() : 0;
+        long commitTime = batchSaver != null ? batchSaver.getCommitTime() : 0;
+        visitStatistics.addPartition(partition, visitedNodes, errors, failedBatches, commitCount, commitTime);
+    }
+
+    /**
+     * Revert the pending changes of a batch that couldn't be saved, otherwise every later save of the partition
+     * fails on the same changes.
+     */
+    private static void revertBatch(int partition, ResourceResolver partitionResolver, BatchSaver batchSaver,
+                                    List<String> errors, RepositoryException e) {
+        LOG.error("Saving a batch of partition {} failed, reverting {} changes", partition, batchSaver.getPendingChanges(), e);
+        errors.add("batch of " + batchSaver.getPendingChanges() + " changes reverted - " + e.getMessage());
+        partitionResolver.revert();
+        batchSaver.discard();
+    }
+
+    private static void awaitTermination(ThreadPoolExecutor executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.debug("Waiting for {} partitions to finish", executor.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return aggregated statistics of all visits of the script
+     */
+    public VisitStatistics getStatistics() {
+        return statistics;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getPartitionSize() {
+        return partitionSize;
+    }
+
+    public void setPartitionSize(int partitionSize) {
+        this.partitionSize = Math.max(1, partitionSize);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean isCommitDeferred() {
+        return commitDeferred;
+    }
+
+    /**
+     * Defer the commit to the owner of the script session, e.g. a transactional group of patches that is saved at once.
+     * The partitions can't be part of that commit, visits are rejected.
+     *
+     * @param commitDeferred true to reject visits
+     */
+    public void setCommitDeferred(boolean commitDeferred) {
+        this.commitDeferred = commitDeferred;
+    }
+
+    /**
+     * Paths of a resource and its descendants, depth first. Only the child iterators of the current branch are kept.
+     */
+    private static class DescendantPaths implements Iterator<String> {
+
+        private final Deque<Iterator<Resource>> branch = new ArrayDeque<>();
+        private Resource next;
+
+        DescendantPaths(Resource root) {
+            this.next = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            while (!branch.isEmpty()) {
+                Iterator<Resource> children = branch.peek();
+                if (children.hasNext()) {
+                    next = children.next();
+                    return true;
+                }
+                branch.pop();
+            }
+            return false;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Resource current = next;
+            next = null;
+            branch.push(current.listChildren());
+            return current.getPath();
+        }
+    }
+
+    /**
+     * Paths of the nodes of a query result, read lazily.
+     */
+    private static class NodePaths implements Iterator<String> {
+
+        private final NodeIterator nodes;
+
+        NodePaths(NodeIterator nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nodes.hasNext();
+        }
+
+        @Override
+        public String next() {
+            Node node = nodes.nextNode();
+            try {
+                return node.getPath();
+            } catch (RepositoryException e) {
+                throw new IllegalStateException("Couldn't get path of query result", e);
+            }
+        }
+    }
+}
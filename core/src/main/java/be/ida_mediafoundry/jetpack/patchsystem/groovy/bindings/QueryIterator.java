@@ -0,0 +1,203 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import groovy.lang.Closure;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Script binding that iterates the nodes of a query lazily, page by page, so the result set is never kept in memory.
+ *
+ * <pre>
+ * queryIterator.each("SELECT * FROM [cq:Page] WHERE ISDESCENDANTNODE('/content/site')") { node ->
+ *     node.getNode("jcr:content").setProperty("migrated", true)
+ *     batchSaver.changed()
+ * }
+ * </pre>
+ *
+ * Paging with an offset makes the repository skip all previous rows for every page. For very large result sets
+ * {@link #eachByKey(String, String, Closure)} pages on a sortable, unique property instead (keyset pagination).
+ */
+public class QueryIterator {
+
+    public static final String BINDING_NAME = "queryIterator";
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Key to page on the path of the nodes, for queries without a unique property.
+     */
+    public static final String PATH_KEY = "jcr:path";
+
+    private static final String KEY_VARIABLE = "lastKey";
+    private static final Pattern WHERE = Pattern.compile("\\bWHERE\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY = Pattern.compile("\\bORDER\\s+BY\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Session session;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    private long rowsRead;
+    private int pages;
+    private long queryTime;
+
+    public QueryIterator(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Iterate the nodes of the JCR-SQL2 query, page by page.
+     *
+     * @param statement JCR-SQL2 statement
+     * @param closure closure called with every node
+     * @return number of nodes read
+     */
+    public long each(String statement, Closure<?> closure) throws RepositoryException {
+        return each(statement, Query.JCR_SQL2, closure);
+    }
+
+    /**
+     * Iterate the nodes of the query, page by page.
+     * When the closure changes the nodes so they no longer match the query, rows shift between pages:
+     * use {@link #eachByKey(String, String, Closure)} in that case.
+     *
+     * @param statement query statement
+     * @param language query language
+     * @param closure closure called with every node
+     * @return number of nodes read
+     */
+    public long each(String statement, String language, Closure<?> closure) throws RepositoryException {
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+
+        long read = 0;
+        int pageRows;
+        do {
+            Query query = queryManager.createQuery(statement, language);
+            query.setLimit(pageSize);
+            query.setOffset(read);
+
+            pageRows = iteratePage(query, closure, null);
+            read += pageRows;
+        } while (pageRows == pageSize);
+        return read;
+    }
+
+    /**
+     * Iterate the nodes of the JCR-SQL2 query, page by page, using keyset pagination:
+     * every page continues after the key of the last node of the previous page, instead of skipping rows.
+     * The key property should be unique, nodes without the property are not returned.
+     * Use {@link #PATH_KEY} to page on the path of the nodes.
+     *
+     * @param statement JCR-SQL2 statement, without ORDER BY
+     * @param keyProperty sortable, unique property to page on
+     * @param closure closure called with every node
+     * @return number of nodes read
+     */
+    public long eachByKey(String statement, String keyProperty, Closure<?> closure) throws RepositoryException {
+        if (ORDER_BY.matcher(statement).find()) {
+            throw new IllegalArgumentException("Statement for keyset pagination can't have an ORDER BY: " + statement);
+        }
+
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        String firstPage = statement + " ORDER BY [" + keyProperty + "]";
+        String nextPage = keyCondition(statement, "[" + keyProperty + "] > $" + KEY_VARIABLE) + " ORDER BY [" + keyProperty + "]";
+
+        long read = 0;
+        Value[] lastKey = new Value[1];
+        String[] lastPath = new String[1];
+        int pageRows;
+        do {
+            Query query = queryManager.createQuery(lastKey[0] == null ? firstPage : nextPage, Query.JCR_SQL2);
+            if (lastKey[0] != null) {
+                query.bindValue(KEY_VARIABLE, lastKey[0]);
+            }
+            query.setLimit(pageSize);
+
+            pageRows = iteratePage(query, closure, node -> {
+                if (PATH_KEY.equals(keyProperty)) {
+                    lastPath[0] = node.getPath();
+                } else if (node.hasProperty(keyProperty)) {
+                    lastKey[0] = node.getProperty(keyProperty).getValue();
+                }
+            });
+            if (lastPath[0] != null) {
+                lastKey[0] = session.getValueFactory().createValue(lastPath[0]);
+            }
+            read += pageRows;
+        } while (pageRows == pageSize && lastKey[0] != null);
+        return read;
+    }
+
+    /**
+     * Add the key condition to the statement. The original condition is put between parentheses,
+     * otherwise the key condition only applies to the last operand of an OR.
+     */
+    private static String keyCondition(String statement, String keyCondition) {
+        Matcher where = WHERE.matcher(statement);
+        if (!where.find()) {
+            return statement + " WHERE " + keyCondition;
+        }
+        return statement.substring(0, where.end()) + " (" + statement.substring(where.end()).trim() + ") AND " + keyCondition;
+    }
+
+    private int iteratePage(Query query, Closure<?> closure, KeyCollector keyCollector) throws RepositoryException {
+        long start = System.currentTimeMillis();
+        NodeIterator nodes = query.execute().getNodes();
+        queryTime += System.currentTimeMillis() - start;
+        pages++;
+
+        int pageRows = 0;
+        while (true) {
+            start = System.currentTimeMillis();
+            boolean hasNext = nodes.hasNext();
+            Node node = hasNext ? nodes.nextNode() : null;
+            queryTime += System.currentTimeMillis() - start;
+
+            if (node == null) {
+                return pageRows;
+            }
+
+            pageRows++;
+            rowsRead++;
+            if (keyCollector != null) {
+                keyCollector.collect(node);
+            }
+            closure.call(node);
+        }
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * @return time spent executing the queries and reading their rows, in milliseconds
+     */
+    public long getQueryTime() {
+        return queryTime;
+    }
+
+    @FunctionalInterface
+    private interface KeyCollector {
+        void collect(Node node) throws RepositoryException;
+    }
+}
@@ -0,0 +1,117 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Aggregated statistics of the partitions processed by the {@link ParallelNodeVisitor}.
+ * Partitions are processed concurrently, so all updates are synchronized.
+ */
+public class VisitStatistics {
+
+    static final int MAX_ERRORS = 100;
+
+    private int partitions;
+    private long visitedNodes;
+    private int errorCount;
+    private int failedBatches;
+    private final List<String> errors = new ArrayList<>();
+    private int commitCount;
+    private long commitTime;
+    private long duration;
+
+    synchronized void addPartition(int partition, long visitedNodes, List<String> errors, int failedBatches,
+                                   int commitCount, long commitTime) {
+        this.partitions++;
+        this.failedBatches += failedBatches;
+        this.visitedNodes += visitedNodes;
+        this.commitCount += commitCount;
+        this.commitTime += commitTime;
+        this.errorCount += errors.size();
+
+        for (String error : errors) {
+            if (this.errors.size() < MAX_ERRORS) {
+                this.errors.add("partition " + partition + ": " + error);
+            }
+        }
+    }
+
+    synchronized void addDuration(long duration) {
+        this.duration += duration;
+    }
+
+    synchronized void add(VisitStatistics statistics) {
+        synchronized (statistics) {
+            this.partitions += statistics.partitions;
+            this.visitedNodes += statistics.visitedNodes;
+            this.errorCount += statistics.errorCount;
+            this.failedBatches += statistics.failedBatches;
+            this.commitCount += statistics.commitCount;
+            this.commitTime += statistics.commitTime;
+            this.duration += statistics.duration;
+
+            for (String error : statistics.errors) {
+                if (this.errors.size() < MAX_ERRORS) {
+                    this.errors.add(error);
+                }
+            }
+        }
+    }
+
+    public synchronized int getPartitions() {
+        return partitions;
+    }
+
+    public synchronized long getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return number of batches that couldn't be saved and were reverted
+     */
+    public synchronized int getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * @return the first {@value #MAX_ERRORS} errors, prefixed with their partition
+     */
+    public synchronized List<String> getErrors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public synchronized int getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * @return total time spent saving over all partitions, in milliseconds
+     */
+    public synchronized long getCommitTime() {
+        return commitTime;
+    }
+
+    /**
+     * @return wall clock time of the visits, in milliseconds
+     */
+    public synchronized long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return visited nodes per second
+     */
+    public synchronized double getThroughput() {
+        return duration > 0 ? visitedNodes * 1000d / duration : visitedNodes;
+    }
+
+    public synchronized String getFormattedThroughput() {
+        return String.format(Locale.ENGLISH, "%.1f nodes/s", getThroughput());
+    }
+}
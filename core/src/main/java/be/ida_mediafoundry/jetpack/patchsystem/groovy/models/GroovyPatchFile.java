@@ -1,17 +1,26 @@
 package be.ida_mediafoundry.jetpack.patchsystem.groovy.models;
 
-import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
-import org.apache.commons.codec.digest.DigestUtils;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ScriptFingerprint;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchPrecondition;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.Self;
 
 import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @Model(adaptables = Resource.class)
-public class GroovyPatchFile implements PatchFile {
+public class GroovyPatchFile implements ContentPatchFile {
 
     public static final String TYPE = "groovy";
+    public static final String EXTENSION = ".groovy";
+
     @Self
     private Resource resource;
 
@@ -20,9 +29,38 @@ public class GroovyPatchFile implements PatchFile {
     private String scriptName;
     private String fileContent;
     private String md5;
+    private final Map<DigestAlgorithm, String> digests = new EnumMap<>(DigestAlgorithm.class);
+    private String fingerprint;
+    private PrecompiledScript precompiledScript;
+    private Supplier<PrecompiledScript> precompiledScriptLoader;
 
     private GroovyPatchFolder parentFolder;
 
+    /**
+     * Create the patch file from its entry in the manifest, without reading the script.
+     * The content of the patch isn't available, the patch is compared on the md5, digests and fingerprint of the manifest.
+     *
+     * @param path path of the patch
+     * @param entry entry of the patch in the manifest
+     * @param parentFolder folder of the patch, or null
+     * @return patch file
+     */
+    public static GroovyPatchFile fromManifest(String path, PatchManifest.Patch entry, GroovyPatchFolder parentFolder) {
+        GroovyPatchFile patchFile = new GroovyPatchFile();
+        patchFile.path = path;
+        patchFile.scriptName = StringUtils.substringAfterLast(path, "/");
+        patchFile.md5 = entry.getMd5();
+        patchFile.fingerprint = entry.getFingerprint();
+        for (Map.Entry<String, String> digest : entry.getDigests().entrySet()) {
+            DigestAlgorithm algorithm = DigestAlgorithm.fromDigest(digest.getValue());
+            if (algorithm != null) {
+                patchFile.digests.put(algorithm, digest.getValue());
+            }
+        }
+        patchFile.parentFolder = parentFolder;
+        return patchFile;
+    }
+
     @PostConstruct
     private void init() {
         this.path = resource.getPath();
@@ -31,8 +69,9 @@ public class GroovyPatchFile implements PatchFile {
 
         Resource scriptResource = resource.getChild("jcr:content");
         this.fileContent = scriptResource.getValueMap().get("jcr:data", String.class);
-
-        this.md5 = DigestUtils.md5Hex(this.fileContent);
+        if (this.fileContent == null) {
+            throw new IllegalStateException("Patch " + path + " has no content");
+        }
     }
 
     @Override
@@ -48,19 +87,90 @@ public class GroovyPatchFile implements PatchFile {
         return scriptName;
     }
 
+    @Override
     public String getFileContent() {
         return fileContent;
     }
 
+    /**
+     * @return md5 of the script, computed on first use
+     */
+    @Override
     public String getMd5() {
+        if (md5 == null && fileContent != null) {
+            md5 = DigestAlgorithm.MD5.hex(fileContent);
+        }
         return md5;
     }
 
+    /**
+     * @param algorithm algorithm of the digest
+     * @return prefixed digest of the script, computed once per algorithm, or null in case it's not in the manifest of the patch
+     */
+    @Override
+    public String getDigest(DigestAlgorithm algorithm) {
+        if (fileContent == null) {
+            return digests.get(algorithm);
+        }
+        return digests.computeIfAbsent(algorithm, key -> key.digest(fileContent));
+    }
+
+    /**
+     * @return md5 of the script without comments and insignificant whitespace, computed on first use
+     */
+    @Override
+    public String getFingerprint() {
+        if (fingerprint == null && fileContent != null) {
+            fingerprint = ScriptFingerprint.of(fileContent);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return classes of the script compiled at build time, loaded on first use, or null in case the script wasn't precompiled
+     */
+    public PrecompiledScript getPrecompiledScript() {
+        if (precompiledScript == null && precompiledScriptLoader != null) {
+            precompiledScript = precompiledScriptLoader.get();
+            precompiledScriptLoader = null;
+        }
+        return precompiledScript;
+    }
+
+    public void setPrecompiledScript(PrecompiledScript precompiledScript) {
+        this.precompiledScript = precompiledScript;
+        this.precompiledScriptLoader = null;
+    }
+
+    /**
+     * @param precompiledScriptLoader loads the classes of the script compiled at build time, called once on first use
+     */
+    public void setPrecompiledScriptLoader(Supplier<PrecompiledScript> precompiledScriptLoader) {
+        this.precompiledScript = null;
+        this.precompiledScriptLoader = precompiledScriptLoader;
+    }
+
+    /**
+     * @return the {@code @precondition} declarations in the comments of the script
+     */
+    @Override
+    public List<PatchPrecondition> getPreconditions() {
+        return PatchPrecondition.fromScript(fileContent);
+    }
+
     @Override
     public String getPath() {
         return path;
     }
 
+    /**
+     * @return path of the transactional folder the patch belongs to, or null in case the patch runs on its own
+     */
+    public String getTransactionalGroup() {
+        GroovyPatchFolder transactionalFolder = parentFolder != null ? parentFolder.getTransactionalFolder() : null;
+        return transactionalFolder != null ? transactionalFolder.getPath() : null;
+    }
+
     public void setParentFolder(GroovyPatchFolder parentFolder) {
         this.parentFolder = parentFolder;
     }
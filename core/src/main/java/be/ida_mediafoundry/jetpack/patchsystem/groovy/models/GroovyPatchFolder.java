@@ -17,16 +17,39 @@ public class GroovyPatchFolder {
     @ValueMapValue(name = "jcr:title", optional = true)
     private String projectName;
 
+    @ValueMapValue(optional = true)
+    private Boolean transactional;
+
+    private String path;
     private String folderName;
 
     private GroovyPatchFolder parent;
 
+    /**
+     * Create the folder from its entry in the manifest.
+     *
+     * @param path path of the folder
+     * @param entry entry of the folder in the manifest
+     * @param parent parent folder, or null for a top level folder
+     * @return folder
+     */
+    public static GroovyPatchFolder fromManifest(String path, PatchManifest.Folder entry, GroovyPatchFolder parent) {
+        GroovyPatchFolder patchFolder = new GroovyPatchFolder();
+        patchFolder.path = path;
+        patchFolder.folderName = StringUtils.substringAfterLast(path, "/");
+        patchFolder.projectName = StringUtils.defaultIfBlank(entry.getTitle(), patchFolder.folderName);
+        patchFolder.transactional = entry.isTransactional();
+        patchFolder.parent = parent;
+        return patchFolder;
+    }
+
     @PostConstruct
     private void init() {
         if (StringUtils.isBlank(projectName)) {
             this.projectName = resource.getName();
         }
 
+        this.path = resource.getPath();
         this.folderName = resource.getName();
     }
 
@@ -37,6 +60,26 @@ public class GroovyPatchFolder {
         return projectName;
     }
 
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isTransactional() {
+        return Boolean.TRUE.equals(transactional);
+    }
+
+    /**
+     * Find the transactional group of the folder: the closest folder, this folder or a parent, with {@code transactional=true}.
+     *
+     * @return the transactional folder, or null in case the folder isn't part of a transactional group
+     */
+    public GroovyPatchFolder getTransactionalFolder() {
+        if (isTransactional()) {
+            return this;
+        }
+        return parent != null ? parent.getTransactionalFolder() : null;
+    }
+
     public void setParent(GroovyPatchFolder parent) {
         this.parent = parent;
     }
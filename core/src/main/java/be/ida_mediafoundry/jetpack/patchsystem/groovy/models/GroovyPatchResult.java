@@ -37,6 +37,14 @@ public class GroovyPatchResult implements PatchResult {
     @Optional
     private String md5;
 
+    @Inject
+    @Optional
+    private String digest;
+
+    @Inject
+    @Optional
+    private String fingerprint;
+
     @Inject
     @Optional
     private String output;
@@ -45,6 +53,70 @@ public class GroovyPatchResult implements PatchResult {
     @Optional
     private String runningTime;
 
+    @Inject
+    @Optional
+    private String queryPlan;
+
+    @Inject
+    @Optional
+    private boolean queryPlanFlagged;
+
+    @Inject
+    @Optional
+    private Integer commitCount;
+
+    @Inject
+    @Optional
+    private String commitTime;
+
+    @Inject
+    @Optional
+    private Long rowsRead;
+
+    @Inject
+    @Optional
+    private String queryTime;
+
+    @Inject
+    @Optional
+    private Long visitedNodes;
+
+    @Inject
+    @Optional
+    private String visitThroughput;
+
+    @Inject
+    @Optional
+    private String visitErrors;
+
+    @Inject
+    @Optional
+    private String linkedResult;
+
+    @Inject
+    @Optional
+    private String cpuTime;
+
+    @Inject
+    @Optional
+    private Long allocatedBytes;
+
+    @Inject
+    @Optional
+    private Long jcrReads;
+
+    @Inject
+    @Optional
+    private Long jcrWrites;
+
+    @Inject
+    @Optional
+    private Long jcrQueries;
+
+    @Inject
+    @Optional
+    private Long jcrSaves;
+
     public GroovyPatchResult() {
     }
 
@@ -56,6 +128,39 @@ public class GroovyPatchResult implements PatchResult {
         initModel();
     }
 
+    /**
+     * Copy the result, e.g. to persist it while the original is still updated.
+     *
+     * @param source result to copy
+     */
+    public GroovyPatchResult(GroovyPatchResult source) {
+        this.id = source.id;
+        this.status = source.status;
+        this.startDate = source.startDate != null ? (Calendar) source.startDate.clone() : null;
+        this.endDate = source.endDate != null ? (Calendar) source.endDate.clone() : null;
+        this.md5 = source.md5;
+        this.digest = source.digest;
+        this.fingerprint = source.fingerprint;
+        this.output = source.output;
+        this.runningTime = source.runningTime;
+        this.queryPlan = source.queryPlan;
+        this.queryPlanFlagged = source.queryPlanFlagged;
+        this.commitCount = source.commitCount;
+        this.commitTime = source.commitTime;
+        this.rowsRead = source.rowsRead;
+        this.queryTime = source.queryTime;
+        this.visitedNodes = source.visitedNodes;
+        this.visitThroughput = source.visitThroughput;
+        this.visitErrors = source.visitErrors;
+        this.linkedResult = source.linkedResult;
+        this.cpuTime = source.cpuTime;
+        this.allocatedBytes = source.allocatedBytes;
+        this.jcrReads = source.jcrReads;
+        this.jcrWrites = source.jcrWrites;
+        this.jcrQueries = source.jcrQueries;
+        this.jcrSaves = source.jcrSaves;
+    }
+
     @PostConstruct
     protected void initModel() {
         if (StringUtils.isBlank(this.runningTime)) {
@@ -83,6 +188,17 @@ public class GroovyPatchResult implements PatchResult {
         return md5;
     }
 
+    /**
+     * @return prefixed digest of the executed patch, or null in case the result only has an md5
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
     public String getOutput() {
         return output;
     }
@@ -91,6 +207,86 @@ public class GroovyPatchResult implements PatchResult {
         return runningTime;
     }
 
+    @Override
+    public String getQueryPlan() {
+        return queryPlan;
+    }
+
+    @Override
+    public boolean isQueryPlanFlagged() {
+        return queryPlanFlagged;
+    }
+
+    @Override
+    public Integer getCommitCount() {
+        return commitCount;
+    }
+
+    @Override
+    public String getCommitTime() {
+        return commitTime;
+    }
+
+    @Override
+    public Long getRowsRead() {
+        return rowsRead;
+    }
+
+    @Override
+    public String getQueryTime() {
+        return queryTime;
+    }
+
+    @Override
+    public Long getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    @Override
+    public String getVisitThroughput() {
+        return visitThroughput;
+    }
+
+    @Override
+    public String getVisitErrors() {
+        return visitErrors;
+    }
+
+    @Override
+    public String getLinkedResult() {
+        return linkedResult;
+    }
+
+    @Override
+    public String getCpuTime() {
+        return cpuTime;
+    }
+
+    @Override
+    public Long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public Long getJcrReads() {
+        return jcrReads;
+    }
+
+    @Override
+    public Long getJcrWrites() {
+        return jcrWrites;
+    }
+
+    @Override
+    public Long getJcrQueries() {
+        return jcrQueries;
+    }
+
+    @Override
+    public Long getJcrSaves() {
+        return jcrSaves;
+    }
+
     public void setStatus(PatchStatus status) {
         this.status = status.displayName();
     }
@@ -107,6 +303,14 @@ public class GroovyPatchResult implements PatchResult {
         this.md5 = md5;
     }
 
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     public void setOutput(String output) {
         this.output = output;
     }
@@ -115,4 +319,68 @@ public class GroovyPatchResult implements PatchResult {
         this.runningTime = runningTime;
     }
 
+    public void setQueryPlan(String queryPlan) {
+        this.queryPlan = queryPlan;
+    }
+
+    public void setQueryPlanFlagged(boolean queryPlanFlagged) {
+        this.queryPlanFlagged = queryPlanFlagged;
+    }
+
+    public void setCommitCount(Integer commitCount) {
+        this.commitCount = commitCount;
+    }
+
+    public void setCommitTime(String commitTime) {
+        this.commitTime = commitTime;
+    }
+
+    public void setRowsRead(Long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public void setQueryTime(String queryTime) {
+        this.queryTime = queryTime;
+    }
+
+    public void setVisitedNodes(Long visitedNodes) {
+        this.visitedNodes = visitedNodes;
+    }
+
+    public void setVisitThroughput(String visitThroughput) {
+        this.visitThroughput = visitThroughput;
+    }
+
+    public void setVisitErrors(String visitErrors) {
+        this.visitErrors = visitErrors;
+    }
+
+    public void setLinkedResult(String linkedResult) {
+        this.linkedResult = linkedResult;
+    }
+
+    public void setCpuTime(String cpuTime) {
+        this.cpuTime = cpuTime;
+    }
+
+    public void setAllocatedBytes(Long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public void setJcrReads(Long jcrReads) {
+        this.jcrReads = jcrReads;
+    }
+
+    public void setJcrWrites(Long jcrWrites) {
+        this.jcrWrites = jcrWrites;
+    }
+
+    public void setJcrQueries(Long jcrQueries) {
+        this.jcrQueries = jcrQueries;
+    }
+
+    public void setJcrSaves(Long jcrSaves) {
+        this.jcrSaves = jcrSaves;
+    }
+
 }
@@ -0,0 +1,85 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query plans of the literal queries found in a groovy patch.
+ */
+public class GroovyQueryAnalysis {
+
+    private final List<QueryPlan> queryPlans = new ArrayList<>();
+
+    public void addQueryPlan(QueryPlan queryPlan) {
+        queryPlans.add(queryPlan);
+    }
+
+    public List<QueryPlan> getQueryPlans() {
+        return Collections.unmodifiableList(queryPlans);
+    }
+
+    /**
+     * @return true in case one of the queries traverses the repository or uses a low-selectivity index
+     */
+    public boolean isFlagged() {
+        return queryPlans.stream().anyMatch(QueryPlan::isFlagged);
+    }
+
+    /**
+     * @return readable summary of all query plans, null in case the patch has no literal queries
+     */
+    public String getSummary() {
+        if (queryPlans.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (QueryPlan queryPlan : queryPlans) {
+            if (sb.length() > 0) {
+                sb.append("\n\n");
+            }
+            sb.append("[").append(queryPlan.getLanguage()).append("] ").append(queryPlan.getStatement()).append("\n");
+            sb.append("plan: ").append(queryPlan.getPlan());
+            if (queryPlan.isFlagged()) {
+                sb.append("\n").append("WARNING: ").append(queryPlan.getWarning());
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class QueryPlan {
+
+        private final String statement;
+        private final String language;
+        private final String plan;
+        private final String warning;
+
+        public QueryPlan(String statement, String language, String plan, String warning) {
+            this.statement = statement;
+            this.language = language;
+            this.plan = plan;
+            this.warning = warning;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        public String getPlan() {
+            return plan;
+        }
+
+        public String getWarning() {
+            return warning;
+        }
+
+        public boolean isFlagged() {
+            return warning != null;
+        }
+    }
+}
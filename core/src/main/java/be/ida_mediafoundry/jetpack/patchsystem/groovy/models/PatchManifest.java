@@ -0,0 +1,196 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.models;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifest of the groovy and bulk patches of a project folder, generated at build time by the patch-system-maven-plugin.
+ * It is deployed as {@value #NAME} in the top level folder of the project under /apps/patches,
+ * so the patches of the project are discovered by reading one file, without reading and hashing the scripts.
+ *
+ * <pre>
+ * {
+ *   "version": 2,
+ *   "folders": [
+ *     {"path": "project-A", "title": "Project A", "transactional": false}
+ *   ],
+ *   "patches": [
+ *     {"path": "project-A/script-1.groovy", "order": 0, "size": 1024, "md5": "9180daf1...", "fingerprint": "3f2a...",
+ *      "digests": {"sha256": "sha256:ba78...", "murmur3": "murmur3:6f1c..."}}
+ *   ],
+ *   "bulkPatches": [
+ *     {"path": "project-A/migrate.bulk.json", "order": 0, "size": 256, "md5": "5d41402a...", "fingerprint": "8c7d...",
+ *      "digests": {...}}
+ *   ]
+ * }
+ * </pre>
+ *
+ * Paths are relative to /apps/patches, the patches are listed in their declared order.
+ * Manifests of version 1 don't list the bulk patches.
+ */
+public class PatchManifest {
+
+    public static final String NAME = "patches-manifest.json";
+    public static final int VERSION = 2;
+
+    private static final int FIRST_VERSION = 1;
+
+    private int version;
+    private List<Folder> folders = new ArrayList<>();
+    private List<Patch> patches = new ArrayList<>();
+    private List<Patch> bulkPatches = new ArrayList<>();
+
+    public PatchManifest() {
+        this.version = VERSION;
+    }
+
+    /**
+     * @param json json manifest
+     * @return manifest with the patches sorted on their order, without bulk patches in case of a version 1 manifest
+     * @throws IllegalArgumentException in case the manifest is invalid or of an unsupported version
+     */
+    public static PatchManifest parse(String json) {
+        PatchManifest manifest;
+        try {
+            manifest = new Gson().fromJson(json, PatchManifest.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Invalid patch manifest: " + e.getMessage(), e);
+        }
+
+        if (manifest == null || manifest.version < FIRST_VERSION || manifest.version > VERSION) {
+            throw new IllegalArgumentException("Invalid patch manifest: unsupported version");
+        }
+        if (manifest.folders == null) {
+            manifest.folders = new ArrayList<>();
+        }
+        if (manifest.patches == null) {
+            manifest.patches = new ArrayList<>();
+        }
+        if (manifest.version == FIRST_VERSION) {
+            manifest.bulkPatches = null;
+        } else if (manifest.bulkPatches == null) {
+            manifest.bulkPatches = new ArrayList<>();
+        }
+
+        validateAndSort(manifest.patches);
+        if (manifest.bulkPatches != null) {
+            validateAndSort(manifest.bulkPatches);
+        }
+        return manifest;
+    }
+
+    private static void validateAndSort(List<Patch> patches) {
+        for (Patch patch : patches) {
+            if (patch.path == null || patch.md5 == null) {
+                throw new IllegalArgumentException("Invalid patch manifest: patch without path or md5");
+            }
+        }
+        patches.sort(Comparator.comparingInt(Patch::getOrder));
+    }
+
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public List<Folder> getFolders() {
+        return folders;
+    }
+
+    public List<Patch> getPatches() {
+        return patches;
+    }
+
+    /**
+     * @return the bulk patch descriptors, or null in case the manifest was generated before bulk patches were listed
+     */
+    public List<Patch> getBulkPatches() {
+        return bulkPatches;
+    }
+
+    public static class Folder {
+
+        private String path;
+        private String title;
+        private boolean transactional;
+
+        public Folder() {
+        }
+
+        public Folder(String path, String title, boolean transactional) {
+            this.path = path;
+            this.title = title;
+            this.transactional = transactional;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public boolean isTransactional() {
+            return transactional;
+        }
+    }
+
+    public static class Patch {
+
+        private String path;
+        private int order;
+        private long size;
+        private String md5;
+        private String fingerprint;
+        private Map<String, String> digests = new LinkedHashMap<>();
+
+        public Patch() {
+        }
+
+        public Patch(String path, int order, long size, String md5, String fingerprint) {
+            this.path = path;
+            this.order = order;
+            this.size = size;
+            this.md5 = md5;
+            this.fingerprint = fingerprint;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getOrder() {
+            return order;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * @return prefixed digests of the script keyed by algorithm prefix
+         */
+        public Map<String, String> getDigests() {
+            return digests != null ? digests : new LinkedHashMap<>();
+        }
+    }
+}
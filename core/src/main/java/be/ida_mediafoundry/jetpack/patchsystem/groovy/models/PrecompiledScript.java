@@ -0,0 +1,124 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Classes of a groovy patch compiled at build time by the patch-system-maven-plugin.
+ * They are deployed as a jar next to the script, e.g. script-1.groovy{@value #EXTENSION}, with the md5 of the compiled script
+ * in the manifest of the jar. The classes are only used when the md5 matches the deployed script, byte for byte.
+ */
+public class PrecompiledScript {
+
+    public static final String EXTENSION = ".jar";
+
+    //md5 of the exact content of the compiled script
+    static final String FINGERPRINT_ATTRIBUTE = "Patch-Fingerprint";
+    static final String SCRIPT_CLASS_ATTRIBUTE = "Patch-Script-Class";
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final String md5;
+    private final String scriptClassName;
+    private final Map<String, byte[]> classes;
+
+    /**
+     * @param md5 md5 of the compiled script
+     * @param scriptClassName name of the script class
+     * @param classes bytecode keyed by class name, including the closures and inner classes of the script
+     */
+    public PrecompiledScript(String md5, String scriptClassName, Map<String, byte[]> classes) {
+        this.md5 = md5;
+        this.scriptClassName = scriptClassName;
+        this.classes = Collections.unmodifiableMap(new LinkedHashMap<>(classes));
+    }
+
+    /**
+     * @param inputStream jar with the compiled classes, not closed
+     * @return the precompiled script
+     * @throws IOException in case the jar can't be read or isn't a precompiled script
+     */
+    public static PrecompiledScript read(InputStream inputStream) throws IOException {
+        JarInputStream jar = new JarInputStream(inputStream);
+        Manifest manifest = jar.getManifest();
+        if (manifest == null) {
+            throw new IOException("Precompiled script without manifest");
+        }
+
+        String md5 = manifest.getMainAttributes().getValue(FINGERPRINT_ATTRIBUTE);
+        String scriptClassName = manifest.getMainAttributes().getValue(SCRIPT_CLASS_ATTRIBUTE);
+        if (md5 == null || scriptClassName == null) {
+            throw new IOException("Precompiled script without md5 or script class");
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        JarEntry entry;
+        while ((entry = jar.getNextJarEntry()) != null) {
+            if (entry.getName().endsWith(CLASS_EXTENSION)) {
+                String className = entry.getName().substring(0, entry.getName().length() - CLASS_EXTENSION.length()).replace('/', '.');
+                classes.put(className, readEntry(jar));
+            }
+        }
+        return new PrecompiledScript(md5, scriptClassName, classes);
+    }
+
+    /**
+     * @param outputStream stream to write the jar to, not closed
+     * @throws IOException in case the jar can't be written
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue(FINGERPRINT_ATTRIBUTE, md5);
+        manifest.getMainAttributes().putValue(SCRIPT_CLASS_ATTRIBUTE, scriptClassName);
+
+        JarOutputStream jar = new JarOutputStream(outputStream, manifest);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            JarEntry jarEntry = new JarEntry(entry.getKey().replace('.', '/') + CLASS_EXTENSION);
+            //fixed time, so the jar only changes when the classes change
+            jarEntry.setTime(0);
+            jar.putNextEntry(jarEntry);
+            jar.write(entry.getValue());
+            jar.closeEntry();
+        }
+        jar.finish();
+    }
+
+    private static byte[] readEntry(JarInputStream jar) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = jar.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return md5 of the compiled script
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    public String getScriptClassName() {
+        return scriptClassName;
+    }
+
+    /**
+     * @return bytecode keyed by class name
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+}
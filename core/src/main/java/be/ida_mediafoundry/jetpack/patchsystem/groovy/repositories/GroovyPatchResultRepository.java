@@ -1,16 +1,57 @@
 package be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories;
 
-import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
+
+import java.util.List;
 
 /**
  * Interface to get patch results from the repository, but also update or create patch results.
  */
 public interface GroovyPatchResultRepository {
 
-    GroovyPatchResult getResult(GroovyPatchFile patchFile);
+    GroovyPatchResult getResult(ContentPatchFile patchFile);
+
+    GroovyPatchResult createResult(ContentPatchFile patchFile);
+
+    /**
+     * Link a patch without result to a successful result with the same content, in case results are content-addressed.
+     * The lookup queries the results, so it's only done by the job that runs the patch, not when results are read.
+     *
+     * @param patchFile patch file that is about to run
+     * @return the persisted result linked to the earlier result, or null in case the patch has to run
+     */
+    GroovyPatchResult linkResult(ContentPatchFile patchFile);
 
-    GroovyPatchResult createResult(GroovyPatchFile patchFile);
+    /**
+     * Create a RUNNING result for the patch, without persisting it.
+     *
+     * @param patchFile patch file to create the result for
+     * @return the new result
+     */
+    GroovyPatchResult newResult(ContentPatchFile patchFile);
 
     void updateResult(GroovyPatchResult patchResult);
+
+    /**
+     * Persist the results together, with the same end date.
+     *
+     * @param patchResults results to persist
+     */
+    void updateResults(List<GroovyPatchResult> patchResults);
+
+    /**
+     * Persist the pending results synchronously, e.g. at the end of a job.
+     * Results are only pending when write-behind is enabled.
+     */
+    void flush();
+
+    /**
+     * @return lookups of results that were served from the pending results, and that were read from the repository,
+     * or null in case the repository keeps no results in memory
+     */
+    default CacheStatistics getStatistics() {
+        return null;
+    }
 }
@@ -2,19 +2,35 @@ package be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
-import com.day.crx.JcrConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.PatchFileScanner;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvent;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEventType;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvents;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,30 +38,51 @@ import java.util.Map;
         name = "Jetpack - Groovy Patch File Repository",
         service = GroovyPatchFileRepository.class
 )
+@Designate(ocd = GroovyPatchFileRepositoryImpl.Config.class)
 public class GroovyPatchFileRepositoryImpl implements GroovyPatchFileRepository {
     private final static Logger LOG = LoggerFactory.getLogger(GroovyPatchFileRepositoryImpl.class);
 
-    private static final String ROOT = "/apps/patches";
+    @ObjectClassDefinition(name = "Jetpack - Groovy Patch File Repository",
+            description = "Discovery of the groovy patches under /apps/patches.")
+    public @interface Config {
 
-    private static final String DEFAULT_USER = "jetpack-patch-system";
-    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+        @AttributeDefinition(name = "Trust manifest",
+                description = "Discover the patches of a project folder from the " + PatchManifest.NAME + " generated at build time, "
+                        + "instead of reading and hashing all scripts. Disable when patches are edited after deployment.")
+        boolean trustManifest() default true;
+    }
 
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
+    private boolean trustManifest = true;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        this.trustManifest = config.trustManifest();
+    }
+
     @Override
     public GroovyPatchFile getPatch(String path)  {
         GroovyPatchFile patchFile = null;
 
-        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(PatchFileScanner.getCredentials())) {
             Resource resource = resourceResolver.getResource(path);
             if (resource != null) {
                 patchFile = resource.adaptTo(GroovyPatchFile.class);
                 if (patchFile != null) {
-                    GroovyPatchFolder patchFolder = getPatchFolder(resource.getParent());
+                    GroovyPatchFolder patchFolder = PatchFileScanner.getPatchFolder(resource.getParent());
                     if (patchFolder != null) {
                         patchFile.setParentFolder(patchFolder);
                     }
+                    //the jar is only read when the script isn't in the script cache yet
+                    String scriptPath = resource.getPath();
+                    patchFile.setPrecompiledScriptLoader(() -> loadPrecompiledScript(scriptPath));
                 }
             }
         } catch (LoginException e) {
@@ -55,68 +92,86 @@ public class GroovyPatchFileRepositoryImpl implements GroovyPatchFileRepository
         return patchFile;
     }
 
-    private GroovyPatchFolder getPatchFolder(Resource resource) {
-        GroovyPatchFolder patchFolder = resource.adaptTo(GroovyPatchFolder.class);
+    /**
+     * @param path path of the script
+     * @return the classes compiled at build time, deployed next to the script, or null in case there are none
+     */
+    private PrecompiledScript loadPrecompiledScript(String path) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(PatchFileScanner.getCredentials())) {
+            Resource resource = resourceResolver.getResource(path);
+            return resource != null ? getPrecompiledScript(resource) : null;
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to get the precompiled classes of {}", path, e);
+            return null;
+        }
+    }
 
-        if (resource.getPath().equals(ROOT)) {
+    private PrecompiledScript getPrecompiledScript(Resource resource) {
+        Resource jarResource = resource.getParent() != null
+                ? resource.getParent().getChild(resource.getName() + PrecompiledScript.EXTENSION)
+                : null;
+        InputStream inputStream = jarResource != null ? jarResource.adaptTo(InputStream.class) : null;
+        if (inputStream == null) {
             return null;
         }
 
-        if (resource.getParent() != null && !resource.getParent().getPath().equals(ROOT)) {
-            GroovyPatchFolder parentPatchFolder = getPatchFolder(resource.getParent());
-            if (parentPatchFolder != null) {
-                patchFolder.setParent(parentPatchFolder);
-            }
+        try (InputStream jar = inputStream) {
+            return PrecompiledScript.read(jar);
+        } catch (IOException e) {
+            LOG.warn("Ignoring the precompiled classes of {}, the script is compiled: {}", resource.getPath(), e.getMessage());
+            return null;
         }
-        return patchFolder;
     }
 
     @Override
     public List<GroovyPatchFile> getPatches() {
+        PatchEvent event = PatchEvents.begin(PatchEventType.SCAN);
+        long start = System.nanoTime();
         List<GroovyPatchFile> patches = new ArrayList<>();
 
-        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
-            Resource root = resourceResolver.getResource(ROOT);
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(PatchFileScanner.getCredentials())) {
+            Resource root = resourceResolver.getResource(PatchFileScanner.ROOT);
             if (root != null) {
-                patches = scanFolderForPatches(root, null);
+                patches = PatchFileScanner.scanFolderForPatches(root, null, GroovyPatchFile.EXTENSION,
+                        this::createPatch, this::createPatchesFromManifest);
             }
         } catch (LoginException e) {
             LOG.error("Couldn't login to get GroovyPatchFile", e);
         }
 
+        metrics().time(PatchMetric.DISCOVERY_SCAN, GroovyPatchFile.TYPE, System.nanoTime() - start);
+        event.end(PatchFileScanner.ROOT, GroovyPatchFile.TYPE, PatchSystemMetrics.ALL, patches.size());
         return patches;
     }
 
-    private List<GroovyPatchFile> scanFolderForPatches(Resource resource, GroovyPatchFolder parent) {
-        List<GroovyPatchFile> patchFiles = new ArrayList<>();
+    private GroovyPatchFile createPatch(Resource resource, GroovyPatchFolder parent) {
+        GroovyPatchFile patchFile = resource.adaptTo(GroovyPatchFile.class);
+        if (patchFile != null) {
+            patchFile.setParentFolder(parent);
+        }
+        return patchFile;
+    }
 
-        Iterable<Resource> subResources = resource.getChildren();
-        for (Resource subResource : subResources) {
-            if (subResource.getResourceType().equals(JcrConstants.NT_FOLDER)
-                    || subResource.getResourceType().equals("sling:Folder")
-                    || subResource.getResourceType().equals("sling:OrderedFolder")) {
-                GroovyPatchFolder patchFolder = subResource.adaptTo(GroovyPatchFolder.class);
-                if (patchFolder != null) {
-                    patchFolder.setParent(parent);
-                    patchFiles.addAll(scanFolderForPatches(subResource, patchFolder));
-                }
-            } else if (subResource.getResourceType().equals(JcrConstants.NT_FILE)
-                    && subResource.getName().endsWith(".groovy")) {
-                GroovyPatchFile patchFile = subResource.adaptTo(GroovyPatchFile.class);
-                if (patchFile != null) {
-                    patchFile.setParentFolder(parent);
-                    patchFiles.add(patchFile);
-                }
-            }
+    /**
+     * @param folder top level project folder
+     * @return the patches of the manifest of the folder, or null in case it has none, it's invalid or it isn't trusted
+     */
+    private List<GroovyPatchFile> createPatchesFromManifest(Resource folder) {
+        PatchManifest manifest = trustManifest ? PatchFileScanner.getManifest(folder) : null;
+        if (manifest == null) {
+            return null;
         }
 
+        Map<String, GroovyPatchFolder> patchFolders = PatchFileScanner.getPatchFolders(manifest);
+        List<GroovyPatchFile> patchFiles = new ArrayList<>();
+        for (PatchManifest.Patch patch : manifest.getPatches()) {
+            GroovyPatchFolder parent = patchFolders.get(StringUtils.substringBeforeLast(patch.getPath(), "/"));
+            patchFiles.add(GroovyPatchFile.fromManifest(PatchFileScanner.ROOT + "/" + patch.getPath(), patch, parent));
+        }
         return patchFiles;
     }
 
-    private Map<String, Object> getCredentials() {
-        Map<String, Object> credentials = new HashMap<>();
-        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
-        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
-        return credentials;
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
     }
 }
@@ -1,19 +1,58 @@
 package be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.DataFileReader;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.PatchUtils;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvent;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEventType;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvents;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
 import be.ida_mediafoundry.jetpack.carve.manager.ModelManager;
 import be.ida_mediafoundry.jetpack.carve.manager.exception.ModelManagerException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component(
         name = "Jetpack - Groovy Patch Result Repository",
@@ -22,16 +61,151 @@ import java.util.Calendar;
                 Constants.SERVICE_DESCRIPTION + ":String=Repository for Patch Results (CRUD).",
                 Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
         })
+@Designate(ocd = GroovyPatchResultRepositoryImpl.Config.class)
 public class GroovyPatchResultRepositoryImpl implements GroovyPatchResultRepository {
     private final static Logger LOG = LoggerFactory.getLogger(GroovyPatchResultRepositoryImpl.class);
 
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    static final String RESULTS_PATH = "/var/patches/completed";
+    static final String MD5_QUERY = "SELECT * FROM [nt:base] AS result WHERE ISDESCENDANTNODE(result, '" + RESULTS_PATH + "')"
+            + " AND result.[md5] = $md5 AND result.[status] = 'SUCCESS'";
+    static final String DIGEST_QUERY = "SELECT * FROM [nt:base] AS result WHERE ISDESCENDANTNODE(result, '" + RESULTS_PATH + "')"
+            + " AND result.[digest] = $digest AND result.[status] = 'SUCCESS'";
+
+    static final int DEFAULT_BATCH_SIZE = 20;
+    static final int DEFAULT_FLUSH_INTERVAL = 5;
+
+    @ObjectClassDefinition(name = "Jetpack - Groovy Patch Result Repository",
+            description = "Persistence of the patch results.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Write-behind",
+                description = "Collect the result updates in memory and persist them in batches, instead of persisting every update.")
+        boolean writeBehind() default true;
+
+        @AttributeDefinition(name = "Batch size",
+                description = "Number of pending results that triggers a flush.")
+        int batchSize() default DEFAULT_BATCH_SIZE;
+
+        @AttributeDefinition(name = "Flush interval",
+                description = "Interval in seconds to flush the pending results, 0 to only flush on batch size and at the end of a job.")
+        int flushInterval() default DEFAULT_FLUSH_INTERVAL;
+
+        @AttributeDefinition(name = "Content-addressed",
+                description = "Recognise a patch without result as executed when a patch with the same content (md5) already succeeded, "
+                        + "for example after the patch was moved or renamed. The job gets a result linked to the earlier result for the patch, "
+                        + "instead of running it again. Patches that read data files always run.")
+        boolean contentAddressed() default false;
+
+        @AttributeDefinition(name = "Normalized fingerprint",
+                description = "Store the md5 of the script without comments and insignificant whitespace next to the md5 of the results. "
+                        + "A patch of which only comments or formatting changed is then not executed again.")
+        boolean normalizedFingerprint() default false;
+
+        @AttributeDefinition(name = "Digest algorithm",
+                description = "Algorithm to detect changes in the content of patches. Results created with another algorithm are migrated "
+                        + "in the background after activation when the patch is unchanged, "
+                        + "results of modified patches keep their algorithm until the patch runs again.",
+                options = {
+                        @Option(label = "MD5", value = "md5"),
+                        @Option(label = "SHA-256", value = "sha256"),
+                        @Option(label = "Murmur3 128-bit (fast, non-cryptographic)", value = "murmur3")
+                })
+        String digestAlgorithm() default "md5";
+    }
+
     @Reference
     private ModelManager modelManager; //Carve
 
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyPatchFileRepository patchFileRepository;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchFileRepository bulkPatchFileRepository;
+
+    private volatile boolean writeBehind;
+    private volatile boolean contentAddressed;
+    private volatile boolean normalizedFingerprint;
+    private volatile DigestAlgorithm digestAlgorithm = DigestAlgorithm.MD5;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    //copies of the pending results keyed by id, the last update of a result replaces the earlier ones
+    private final Map<String, GroovyPatchResult> pendingResults = new LinkedHashMap<>();
+    //results taken by a flush that are not written yet, guarded by the lock of the pending results
+    private final Map<String, GroovyPatchResult> flushingResults = new HashMap<>();
+    //only 1 flush writes at a time, so an older copy of a result is never written after a newer one
+    private final Object flushLock = new Object();
+
+    private final AtomicLong pendingHits = new AtomicLong();
+    private final AtomicLong pendingMisses = new AtomicLong();
+
+    //flushes the pending results and migrates the digests after activation
+    private ScheduledExecutorService resultWriter;
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        deactivate();
+
+        this.writeBehind = config.writeBehind();
+        this.batchSize = Math.max(1, config.batchSize());
+        this.contentAddressed = config.contentAddressed();
+        this.normalizedFingerprint = config.normalizedFingerprint();
+        this.digestAlgorithm = DigestAlgorithm.fromName(config.digestAlgorithm());
+
+        boolean scheduledFlush = writeBehind && config.flushInterval() > 0;
+        boolean migration = digestAlgorithm != DigestAlgorithm.MD5;
+        if (scheduledFlush || migration) {
+            resultWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "jetpack-patch-result-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (migration) {
+            resultWriter.execute(this::migrateDigests);
+        }
+        if (scheduledFlush) {
+            resultWriter.scheduleWithFixedDelay(this::flush, config.flushInterval(), config.flushInterval(), TimeUnit.SECONDS);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (resultWriter != null) {
+            resultWriter.shutdownNow();
+            resultWriter = null;
+        }
+        flush();
+    }
+
     @Override
-    public GroovyPatchResult getResult(GroovyPatchFile patchFile) {
+    public GroovyPatchResult getResult(ContentPatchFile patchFile) {
         GroovyPatchResult patchResult = null;
 
+        synchronized (pendingResults) {
+            GroovyPatchResult pendingResult = pendingResults.get(patchFile.getResultPath());
+            if (pendingResult == null) {
+                pendingResult = flushingResults.get(patchFile.getResultPath());
+            }
+            if (pendingResult != null) {
+                pendingHits.incrementAndGet();
+                return pendingResult;
+            }
+        }
+        pendingMisses.incrementAndGet();
+
         try {
             patchResult = modelManager.retrieve(GroovyPatchResult.class, patchFile.getResultPath());
         } catch (ModelManagerException e) {
@@ -42,25 +216,265 @@ public class GroovyPatchResultRepositoryImpl implements GroovyPatchResultReposit
     }
 
     @Override
-    public GroovyPatchResult createResult(GroovyPatchFile patchFile) {
+    public GroovyPatchResult createResult(ContentPatchFile patchFile) {
+        GroovyPatchResult patchResult = newResult(patchFile);
+        persist(patchResult);
+        return patchResult;
+    }
+
+    @Override
+    public GroovyPatchResult newResult(ContentPatchFile patchFile) {
         GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
-        patchResult.setMd5(patchFile.getMd5());
+        setContentIdentity(patchResult, patchFile);
+        return patchResult;
+    }
 
-        try {
-            modelManager.persist(patchResult);
-        } catch (ModelManagerException e) {
-            LOG.error("Couldn't persist GroovyPatchResult", e);
+    @Override
+    public void updateResults(List<GroovyPatchResult> patchResults) {
+        Calendar endDate = Calendar.getInstance();
+        for (GroovyPatchResult patchResult : patchResults) {
+            patchResult.setEndDate(endDate);
+            persist(patchResult);
         }
-        return patchResult;
     }
 
     @Override
     public void updateResult(GroovyPatchResult patchResult) {
+        patchResult.setEndDate(Calendar.getInstance());
+        persist(patchResult);
+    }
+
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            List<GroovyPatchResult> patchResults;
+            synchronized (pendingResults) {
+                if (pendingResults.isEmpty()) {
+                    return;
+                }
+                patchResults = new ArrayList<>(pendingResults.values());
+                flushingResults.putAll(pendingResults);
+                pendingResults.clear();
+            }
+
+            //the results are written outside the lock, lookups of the pending results don't wait for the repository
+            LOG.debug("Flushing {} patch result(s)", patchResults.size());
+            try {
+                for (GroovyPatchResult patchResult : patchResults) {
+                    write(patchResult);
+                }
+            } finally {
+                synchronized (pendingResults) {
+                    for (GroovyPatchResult patchResult : patchResults) {
+                        flushingResults.remove(patchResult.getId(), patchResult);
+                    }
+                }
+            }
+            metrics().update(PatchMetric.RESULT_FLUSH, GroovyPatchFile.TYPE, patchResults.size());
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        synchronized (pendingResults) {
+            return new CacheStatistics(pendingHits.get(), pendingMisses.get(), pendingResults.size());
+        }
+    }
+
+    /**
+     * Look up a successful result with the same content as the patch and record a result for the patch linked to it.
+     * Only patches without result are linked. Patches that read data files aren't linked either,
+     * the same script reads other data when it's moved to another folder.
+     *
+     * @param patchFile patch file that is about to run
+     * @return the linked result, or null in case no patch with the same content succeeded
+     */
+    @Override
+    public GroovyPatchResult linkResult(ContentPatchFile patchFile) {
+        if (!contentAddressed || StringUtils.contains(patchFile.getFileContent(), DataFileReader.BINDING_NAME)
+                || getResult(patchFile) != null) {
+            return null;
+        }
+
+        GroovyPatchResult earlierResult = findSuccessfulResult(patchFile);
+        if (earlierResult == null) {
+            return null;
+        }
+
+        String linkedResult = StringUtils.defaultIfBlank(earlierResult.getLinkedResult(), earlierResult.getId());
+        LOG.info("Patch {} has the same content as the successful result {}, the patch is not executed again", patchFile.getPath(), linkedResult);
+
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.SUCCESS, earlierResult.getStartDate());
+        patchResult.setEndDate(earlierResult.getEndDate());
+        patchResult.setRunningTime(earlierResult.getRunningTime());
+        setContentIdentity(patchResult, patchFile);
+        patchResult.setLinkedResult(linkedResult);
+        patchResult.setOutput("Not executed, the patch has the same content as the successful result " + linkedResult + ".");
+        persist(patchResult);
+        return patchResult;
+    }
+
+    private GroovyPatchResult findSuccessfulResult(ContentPatchFile patchFile) {
+        boolean md5 = digestAlgorithm == DigestAlgorithm.MD5;
+        String value = md5 ? patchFile.getMd5() : patchFile.getDigest(digestAlgorithm);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+
+        synchronized (pendingResults) {
+            List<GroovyPatchResult> unwrittenResults = new ArrayList<>(pendingResults.values());
+            unwrittenResults.addAll(flushingResults.values());
+            for (GroovyPatchResult pendingResult : unwrittenResults) {
+                String pendingValue = md5 ? pendingResult.getMd5() : pendingResult.getDigest();
+                if (value.equals(pendingValue) && PatchStatus.SUCCESS.isOfStatus(pendingResult)) {
+                    return pendingResult;
+                }
+            }
+        }
+
+        String resultId = null;
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            Session session = resourceResolver.adaptTo(Session.class);
+            if (session == null) {
+                return null;
+            }
+
+            QueryManager queryManager = session.getWorkspace().getQueryManager();
+            Query query = queryManager.createQuery(md5 ? MD5_QUERY : DIGEST_QUERY, Query.JCR_SQL2);
+            query.bindValue(md5 ? "md5" : "digest", session.getValueFactory().createValue(value));
+            query.setLimit(1);
+            RowIterator rows = query.execute().getRows();
+            if (rows.hasNext()) {
+                resultId = StringUtils.removeStart(rows.nextRow().getPath(), RESULTS_PATH + "/");
+            }
+        } catch (LoginException | RepositoryException e) {
+            LOG.error("Couldn't look up GroovyPatchResult by content", e);
+        }
+
+        if (resultId == null) {
+            return null;
+        }
+
+        try {
+            return modelManager.retrieve(GroovyPatchResult.class, resultId);
+        } catch (ModelManagerException e) {
+            LOG.error("Couldn't get GroovyPatchResult", e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the md5, or the digest in case another algorithm is configured, and the fingerprint of the patch on the result.
+     */
+    private void setContentIdentity(GroovyPatchResult patchResult, ContentPatchFile patchFile) {
+        if (digestAlgorithm == DigestAlgorithm.MD5) {
+            patchResult.setMd5(patchFile.getMd5());
+        } else {
+            patchResult.setDigest(patchFile.getDigest(digestAlgorithm));
+        }
+        if (normalizedFingerprint) {
+            patchResult.setFingerprint(patchFile.getFingerprint());
+        }
+    }
+
+    /**
+     * One-off task after activation: migrate the results of all patches to the configured digest algorithm,
+     * so reading the results never writes. The task stops when the repository is deactivated.
+     */
+    void migrateDigests() {
+        List<ContentPatchFile> patchFiles = new ArrayList<>();
+        GroovyPatchFileRepository groovyPatches = this.patchFileRepository;
+        if (groovyPatches != null) {
+            patchFiles.addAll(groovyPatches.getPatches());
+        }
+        BulkPatchFileRepository bulkPatches = this.bulkPatchFileRepository;
+        if (bulkPatches != null) {
+            patchFiles.addAll(bulkPatches.getPatches());
+        }
+
+        int migrated = 0;
+        for (ContentPatchFile patchFile : patchFiles) {
+            if (Thread.currentThread().isInterrupted()) {
+                LOG.info("Migration of the results to {} stopped, {} result(s) migrated", digestAlgorithm.getPrefix(), migrated);
+                return;
+            }
+            GroovyPatchResult patchResult = getResult(patchFile);
+            if (patchResult != null && migrateDigest(patchFile, patchResult)) {
+                migrated++;
+            }
+        }
+        flush();
+        LOG.info("Migrated {} result(s) of {} patch(es) to {}", migrated, patchFiles.size(), digestAlgorithm.getPrefix());
+    }
+
+    /**
+     * Store the digest of the configured algorithm on a finished result of an unchanged patch,
+     * so the result is compared with the configured algorithm from now on.
+     *
+     * @return true in case the result was migrated
+     */
+    private boolean migrateDigest(ContentPatchFile patchFile, GroovyPatchResult patchResult) {
+        if (digestAlgorithm == DigestAlgorithm.MD5
+                || DigestAlgorithm.fromDigest(patchResult.getDigest()) == digestAlgorithm
+                || PatchStatus.RUNNING.isOfStatus(patchResult)
+                || StringUtils.isBlank(patchResult.getMd5()) && StringUtils.isBlank(patchResult.getDigest())
+                || patchFile.getDigest(digestAlgorithm) == null
+                || !PatchUtils.isSameContent(patchFile, patchResult)) {
+            return false;
+        }
+
+        LOG.debug("Migrating the result of patch {} to {}", patchFile.getPath(), digestAlgorithm.getPrefix());
+        GroovyPatchResult migratedResult = new GroovyPatchResult(patchResult);
+        migratedResult.setDigest(patchFile.getDigest(digestAlgorithm));
+        persist(migratedResult);
+        return true;
+    }
+
+    /**
+     * Persist the result, or keep a copy as pending result in case of write-behind.
+     * The copy is owned by the repository, the caller can keep updating the result while the copy is written.
+     * The pending results are persisted when the batch is full.
+     *
+     * @param patchResult result to persist
+     */
+    private void persist(GroovyPatchResult patchResult) {
+        if (!writeBehind) {
+            write(patchResult);
+            return;
+        }
+
+        boolean batchFull;
+        synchronized (pendingResults) {
+            pendingResults.put(patchResult.getId(), new GroovyPatchResult(patchResult));
+            batchFull = pendingResults.size() >= batchSize;
+        }
+        if (batchFull) {
+            flush();
+        }
+    }
+
+    private void write(GroovyPatchResult patchResult) {
+        PatchEvent event = PatchEvents.begin(PatchEventType.RESULT_PERSIST);
+        long start = System.nanoTime();
         try {
-            patchResult.setEndDate(Calendar.getInstance());
             modelManager.persist(patchResult);
         } catch (ModelManagerException e) {
             LOG.error("Couldn't persist GroovyPatchResult", e);
         }
+        //the id of a result starts with the folder of its project
+        String project = StringUtils.contains(patchResult.getId(), "/") ? StringUtils.substringBefore(patchResult.getId(), "/") : null;
+        metrics().time(PatchMetric.RESULT_PERSIST, GroovyPatchFile.TYPE, project, System.nanoTime() - start);
+        event.end(patchResult.getId(), GroovyPatchFile.TYPE, project, StringUtils.length(patchResult.getOutput()));
+    }
+
+    private Map<String, Object> getCredentials() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return credentials;
+    }
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,12 @@ package be.ida_mediafoundry.jetpack.patchsystem.groovy.services;
 
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchProgressListener;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
 import org.apache.sling.api.resource.ResourceResolver;
 
 import java.util.List;
+import java.util.Map;
 
 public interface GroovyPatchSystemService {
 
@@ -16,4 +18,59 @@ public interface GroovyPatchSystemService {
     List<PatchFileWithResultResource> getPatches(ResourceResolver resourceResolver);
 
     GroovyPatchResult runPatch(String patchPath);
+
+    /**
+     * Run the patch, the script bindings report their progress to the listener.
+     *
+     * @param patchPath path of the patch to run
+     * @param progressListener listener to report the progress to
+     * @return result of the patch
+     */
+    GroovyPatchResult runPatch(String patchPath, PatchProgressListener progressListener);
+
+    /**
+     * Run the patches of a transactional group in one session. The session is saved once, after all patches succeeded.
+     * When a patch fails, the changes of all patches of the group are rolled back and all results are marked as failed.
+     * The results are persisted together, after the group is committed or rolled back.
+     *
+     * @param patchPaths paths of the patches of the group, in order of execution
+     * @param progressListener listener to report the progress to
+     * @return results of the patches, in the order of the paths, null for a patch that isn't found
+     */
+    List<GroovyPatchResult> runPatchGroup(List<String> patchPaths, PatchProgressListener progressListener);
+
+    /**
+     * @param patchPath path of the patch
+     * @return path of the transactional folder of the patch, or null in case the patch runs on its own
+     */
+    String getTransactionalGroup(String patchPath);
+
+    /**
+     * Compile the scripts of the provided patches concurrently, without running them.
+     * The compiled classes are pinned in the script cache, so running the patches afterwards doesn't compile them again,
+     * also when the job has more patches than the max entries of the cache.
+     *
+     * @param patchPaths paths of the patches to compile
+     * @return compilation errors keyed by patch path, empty in case all patches compiled
+     * @see #releasePatches(List)
+     */
+    Map<String, String> compilePatches(List<String> patchPaths);
+
+    /**
+     * Explain the literal queries of the provided patches, without running them.
+     * The plan summaries are stored on the results when the patches run. A blocked patch gets a failed result with its plan summary.
+     *
+     * @param patchPaths paths of the patches to analyze
+     * @return plan summaries of the patches that are blocked by their query plan keyed by patch path,
+     * empty in case no patch is blocked
+     * @see #releasePatches(List)
+     */
+    Map<String, String> analyzePatches(List<String> patchPaths);
+
+    /**
+     * Unpin the compiled classes and drop the query analyses of the provided patches, at the end of the job that compiled them.
+     *
+     * @param patchPaths paths of the compiled and analyzed patches
+     */
+    void releasePatches(List<String> patchPaths);
 }
\ No newline at end of file
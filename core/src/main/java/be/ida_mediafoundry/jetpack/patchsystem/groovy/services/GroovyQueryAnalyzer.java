@@ -0,0 +1,26 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyQueryAnalysis;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Analyzes the literal JCR-SQL2 and XPath queries of a groovy patch before it runs,
+ * by explaining them through the query manager of the repository.
+ */
+public interface GroovyQueryAnalyzer {
+
+    /**
+     * Explain the literal queries of the patch script.
+     *
+     * @param patchFile patch file to analyze
+     * @param resourceResolver resource resolver used to explain the queries
+     * @return analysis with the query plans, empty in case the patch has no literal queries
+     */
+    GroovyQueryAnalysis analyze(GroovyPatchFile patchFile, ResourceResolver resourceResolver);
+
+    /**
+     * @return true in case patches with flagged queries should not be executed
+     */
+    boolean isBlockingFlaggedQueries();
+}
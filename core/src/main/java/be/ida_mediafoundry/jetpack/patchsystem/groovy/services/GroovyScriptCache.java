@@ -0,0 +1,60 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import groovy.lang.Script;
+
+/**
+ * Cache of compiled patch scripts, keyed by the md5 of the script content.
+ * A script is only compiled once per content version, re-runs of the same content reuse the compiled class.
+ */
+public interface GroovyScriptCache {
+
+    /**
+     * Get the compiled script class for the provided patch file.
+     * The script is compiled and cached in case no class was found for the md5 of the patch file.
+     * Classes compiled at build time are loaded instead of compiling, when their fingerprint matches the patch file.
+     *
+     * @param patchFile patch file to get the compiled class for
+     * @return compiled script class
+     * @throws org.codehaus.groovy.control.CompilationFailedException in case the script could not be compiled
+     */
+    Class<? extends Script> getScriptClass(GroovyPatchFile patchFile);
+
+    /**
+     * Remove the compiled script class with the provided md5 and release its classloader, once it isn't pinned.
+     *
+     * @param md5 md5 of the script content
+     */
+    void invalidate(String md5);
+
+    /**
+     * Remove all compiled script classes and release their classloaders.
+     * Pinned classes are removed, but their classloaders are only released when they are unpinned.
+     */
+    void clear();
+
+    /**
+     * Pin the compiled script class of the md5, e.g. for the duration of a job or while the script runs.
+     * A pinned class isn't evicted when the max entries are exceeded, and its classloader isn't released until it is unpinned.
+     * Pins are counted, every pin needs an unpin.
+     *
+     * @param md5 md5 of the script content
+     */
+    void pin(String md5);
+
+    /**
+     * @param md5 md5 of the script content that was pinned
+     */
+    void unpin(String md5);
+
+    /**
+     * @return number of compiled script classes in the cache
+     */
+    int size();
+
+    /**
+     * @return lookups of compiled script classes that were served from the cache, and that were compiled or loaded
+     */
+    CacheStatistics getStatistics();
+}
@@ -1,29 +1,76 @@
 package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.BatchSaver;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.DataFileReader;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.ParallelNodeVisitor;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.QueryIterator;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings.VisitStatistics;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyQueryAnalysis;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.JcrOperationCounter;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.PatchUtils;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ThreadUsage;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvent;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEventType;
+import be.ida_mediafoundry.jetpack.patchsystem.jfr.PatchEvents;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
 import be.ida_mediafoundry.jetpack.patchsystem.models.*;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyQueryAnalyzer;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyScriptCache;
+import be.ida_mediafoundry.jetpack.patchsystem.utils.DateUtils;
 import com.icfolson.aem.groovy.console.GroovyConsoleService;
+import com.icfolson.aem.groovy.console.api.BindingVariable;
+import com.icfolson.aem.groovy.console.api.ScriptContext;
+import com.icfolson.aem.groovy.console.audit.AuditService;
+import com.icfolson.aem.groovy.console.configuration.ConfigurationService;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import com.icfolson.aem.groovy.console.notification.NotificationService;
 import com.icfolson.aem.groovy.console.response.RunScriptResponse;
+import groovy.lang.Binding;
+import groovy.lang.Closure;
+import groovy.lang.Script;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
 import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Component(
@@ -42,6 +89,7 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
 
     private static final String DEFAULT_USER = "jetpack-patch-system";
     private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+    private static final String CHARSET = "UTF-8";
 
     @Reference
     private GroovyPatchResultRepository patchResultRepository;
@@ -54,39 +102,60 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
             policyOption = ReferencePolicyOption.GREEDY)
     private volatile GroovyConsoleService groovyConsoleService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ExtensionService extensionService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile AuditService auditService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile ConfigurationService configurationService;
+
+    private final List<NotificationService> notificationServices = new CopyOnWriteArrayList<>();
+
+    @Reference
+    private GroovyScriptCache groovyScriptCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile GroovyQueryAnalyzer groovyQueryAnalyzer;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private volatile PatchSystemMetrics patchSystemMetrics;
+
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    //md5 of the script cache entries pinned by compilePatches, per patch path
+    private final Map<String, String> pinnedScripts = new ConcurrentHashMap<>();
+    //query analyses of analyzePatches, per patch path, stored on the results when the patches run
+    private final Map<String, GroovyQueryAnalysis> queryAnalyses = new ConcurrentHashMap<>();
+
     @Override
     public GroovyPatchResult runPatch(String patchPath) {
+        return runPatch(patchPath, PatchProgressListener.NONE);
+    }
+
+    @Override
+    public GroovyPatchResult runPatch(String patchPath, PatchProgressListener progressListener) {
         GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+        GroovyPatchResult linkedResult = patchResultRepository.linkResult(patchFile);
+        if (linkedResult != null) {
+            return linkedResult;
+        }
         GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
 
         try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
-            MockSlingHttpServletRequest mockRequest = new MockSlingHttpServletRequest(resourceResolver);
-            MockSlingHttpServletResponse mockResponse = new MockSlingHttpServletResponse();
-
-            if (isPatchSystemReady()) {
-                //run script
-                RunScriptResponse response = groovyConsoleService.runScript(mockRequest, mockResponse, patchFile.getPath());
-
-                patchResult.setRunningTime(response.getRunningTime());
-
-                //process response of script execution
-                if (StringUtils.isBlank(response.getExceptionStackTrace())) {
-                    patchResult.setStatus(PatchStatus.SUCCESS);
-                    if (StringUtils.isNotBlank(response.getOutput())) {
-                        patchResult.setOutput(response.getOutput());
-                    }
-                } else {
-                    patchResult.setStatus(PatchStatus.ERROR);
-                    patchResult.setOutput(response.getExceptionStackTrace());
-                }
-            } else {
-                LOG.error("Groovy Console is not installed.");
-                patchResult.setStatus(PatchStatus.ERROR);
-                patchResult.setOutput("Groovy Console is not installed.");
-            }
+            executePatch(patchFile, patchResult, resourceResolver, progressListener, false);
         } catch (Exception e) {
             LOG.error("Could not execute script", e);
             patchResult.setStatus(PatchStatus.ERROR);
@@ -98,6 +167,136 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
         return patchResult;
     }
 
+    @Override
+    public List<GroovyPatchResult> runPatchGroup(List<String> patchPaths, PatchProgressListener progressListener) {
+        List<GroovyPatchFile> patchFiles = new ArrayList<>();
+        List<GroovyPatchResult> patchResults = new ArrayList<>();
+        for (String patchPath : patchPaths) {
+            GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+            //a patch that isn't found keeps its position, with a null result
+            GroovyPatchResult patchResult = null;
+            if (patchFile != null) {
+                GroovyPatchResult linkedResult = patchResultRepository.linkResult(patchFile);
+                patchResult = linkedResult != null ? linkedResult : patchResultRepository.newResult(patchFile);
+            } else {
+                LOG.warn("Patch {} of the transactional group is not found", patchPath);
+            }
+            patchFiles.add(patchFile);
+            patchResults.add(patchResult);
+        }
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            GroovyPatchFile failedPatch = null;
+            for (int i = 0; i < patchFiles.size() && failedPatch == null; i++) {
+                if (patchFiles.get(i) == null || isLinked(patchResults.get(i))) {
+                    continue;
+                }
+                try {
+                    executePatch(patchFiles.get(i), patchResults.get(i), resourceResolver, progressListener, true);
+                } catch (Exception e) {
+                    LOG.error("Could not execute script", e);
+                    patchResults.get(i).setStatus(PatchStatus.ERROR);
+                    patchResults.get(i).setOutput("Script Execution error, check log files");
+                }
+
+                if (!PatchStatus.SUCCESS.isOfStatus(patchResults.get(i))) {
+                    failedPatch = patchFiles.get(i);
+                }
+            }
+
+            if (failedPatch == null) {
+                resourceResolver.commit();
+            } else {
+                LOG.warn("Patch {} failed, rolling back its transactional group", failedPatch.getPath());
+                resourceResolver.revert();
+                rollBack(patchResults, "Rolled back, patch " + failedPatch.getPath() + " of the transactional group failed.");
+            }
+        } catch (Exception e) {
+            LOG.error("Could not commit transactional group", e);
+            rollBack(patchResults, "Rolled back, the transactional group could not be committed, check log files.");
+        }
+
+        //linked results are already persisted, they aren't part of the group
+        patchResultRepository.updateResults(patchResults.stream()
+                .filter(patchResult -> patchResult != null && !isLinked(patchResult))
+                .collect(Collectors.toList()));
+
+        return patchResults;
+    }
+
+    @Override
+    public String getTransactionalGroup(String patchPath) {
+        GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+        return patchFile != null ? patchFile.getTransactionalGroup() : null;
+    }
+
+    @Override
+    public Map<String, String> compilePatches(List<String> patchPaths) {
+        if (patchPaths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        int threads = Math.min(patchPaths.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> compilations = new ArrayList<>();
+            for (String patchPath : patchPaths) {
+                compilations.add(executor.submit(() -> compilePatch(patchPath)));
+            }
+
+            Map<String, String> compilationErrors = new LinkedHashMap<>();
+            for (int i = 0; i < patchPaths.size(); i++) {
+                String compilationError = getCompilationError(compilations.get(i));
+                if (compilationError != null) {
+                    compilationErrors.put(patchPaths.get(i), compilationError);
+                }
+            }
+            return compilationErrors;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Map<String, String> analyzePatches(List<String> patchPaths) {
+        GroovyQueryAnalyzer queryAnalyzer = this.groovyQueryAnalyzer;
+        if (queryAnalyzer == null || patchPaths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> blockedPatches = new LinkedHashMap<>();
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            for (String patchPath : patchPaths) {
+                GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+                if (patchFile == null) {
+                    continue;
+                }
+
+                GroovyQueryAnalysis queryAnalysis = queryAnalyzer.analyze(patchFile, resourceResolver);
+                queryAnalyses.put(patchPath, queryAnalysis);
+                if (queryAnalysis.isFlagged() && queryAnalyzer.isBlockingFlaggedQueries()) {
+                    LOG.warn("Patch {} is blocked by its query plan", patchPath);
+                    blockPatch(patchFile, queryAnalysis);
+                    blockedPatches.put(patchPath, queryAnalysis.getSummary());
+                }
+            }
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to analyze the queries of the patches", e);
+        }
+        return blockedPatches;
+    }
+
+    @Override
+    public void releasePatches(List<String> patchPaths) {
+        for (String patchPath : patchPaths) {
+            queryAnalyses.remove(patchPath);
+            String md5 = pinnedScripts.remove(patchPath);
+            if (md5 != null) {
+                groovyScriptCache.unpin(md5);
+            }
+        }
+    }
+
     public List<PatchFile> getPatchesToExecute() {
         return patchFileRepository.getPatches()
                                   .stream()
@@ -110,7 +309,7 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
                 .stream()
                 .map(patchFile -> {
                     GroovyPatchResult patchResult = getMatchingPatchResult(patchFile);
-                    boolean diff = PatchUtils.isDiff(patchFile, patchResult);
+                    boolean diff = isDiff(patchFile, patchResult);
                     return new PatchFileWithResultResource(resourceResolver, patchFile, patchResult, diff);
                 })
                 .collect(Collectors.toList());
@@ -129,26 +328,367 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
      * @return result or null
      */
     private GroovyPatchResult getMatchingPatchResult(GroovyPatchFile patchFile) {
-        return patchResultRepository.getResult(patchFile);
+        long start = System.nanoTime();
+        GroovyPatchResult patchResult = patchResultRepository.getResult(patchFile);
+        metrics().time(PatchMetric.DISCOVERY_RESULT_LOOKUP, GroovyPatchFile.TYPE, PatchSystemMetrics.getProject(patchFile.getPath()),
+                System.nanoTime() - start);
+        return patchResult;
+    }
+
+    /**
+     * Compare the content of the patch file with the result, the patch file is hashed on first use.
+     *
+     * @param patchFile patch file to compare
+     * @param patchResult result to compare
+     * @return true in case the groovy file was updated since the result
+     */
+    private boolean isDiff(GroovyPatchFile patchFile, GroovyPatchResult patchResult) {
+        PatchEvent event = PatchEvents.begin(PatchEventType.HASH);
+        long start = System.nanoTime();
+        boolean diff = PatchUtils.isDiff(patchFile, patchResult);
+        String project = PatchSystemMetrics.getProject(patchFile.getPath());
+        metrics().time(PatchMetric.DISCOVERY_HASH, GroovyPatchFile.TYPE, project, System.nanoTime() - start);
+        event.end(patchFile.getPath(), GroovyPatchFile.TYPE, project, StringUtils.length(patchFile.getFileContent()));
+        return diff;
     }
 
     /**
      * Will check if the patch is executable.
      * Patches are only executable if no result is found
-     * OR when the source is different from the saved result (=modified scripts).
+     * OR when the source is different from the saved result (=modified scripts)
+     * OR when the patch was skipped, so its preconditions are evaluated again.
      *
      * @param patchFile patch file to check
-     * @return true in case it's a new or modified script.
+     * @return true in case it's a new, modified or skipped script.
      */
     private boolean isExecutable(GroovyPatchFile patchFile) {
         GroovyPatchResult patchResult = getMatchingPatchResult(patchFile);
-        if (patchResult == null) {
+        if (patchResult == null || PatchStatus.SKIPPED.isOfStatus(patchResult)) {
             return true;
         } else {
-            return PatchUtils.isDiff(patchFile, patchResult);
+            return isDiff(patchFile, patchResult);
+        }
+    }
+
+    /**
+     * Run the patch with the provided resource resolver and store the outcome on the result.
+     *
+     * @param patchFile patch file to run
+     * @param patchResult result to store the outcome on
+     * @param resourceResolver resource resolver to run the script with
+     * @param progressListener listener the script bindings report their progress to
+     * @param commitDeferred true in case the session is saved by the caller, saves of the script are rejected
+     */
+    private void executePatch(GroovyPatchFile patchFile, GroovyPatchResult patchResult, ResourceResolver resourceResolver,
+                              PatchProgressListener progressListener, boolean commitDeferred) throws Exception {
+        //the script gets a resolver that counts its repository operations
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+        operationCounter.setCommitDeferred(commitDeferred);
+        MockSlingHttpServletRequest mockRequest = new MockSlingHttpServletRequest(operationCounter.wrap(resourceResolver));
+        MockSlingHttpServletResponse mockResponse = new MockSlingHttpServletResponse();
+
+        GroovyQueryAnalysis queryAnalysis = patchFile.getPath() != null ? queryAnalyses.get(patchFile.getPath()) : null;
+        if (queryAnalysis != null) {
+            patchResult.setQueryPlan(queryAnalysis.getSummary());
+            patchResult.setQueryPlanFlagged(queryAnalysis.isFlagged());
+        }
+
+        if (isPatchSystemReady()) {
+            //run script
+            ThreadUsage threadUsage = ThreadUsage.start();
+            RunScriptResponse response = runScript(mockRequest, mockResponse, patchFile, patchResult, progressListener, commitDeferred);
+
+            patchResult.setRunningTime(response.getRunningTime());
+            setResourceUsage(patchResult, threadUsage, operationCounter);
+
+            //process response of script execution
+            if (StringUtils.isBlank(response.getExceptionStackTrace())) {
+                patchResult.setStatus(PatchStatus.SUCCESS);
+                if (StringUtils.isNotBlank(response.getOutput())) {
+                    patchResult.setOutput(response.getOutput());
+                }
+            } else {
+                patchResult.setStatus(PatchStatus.ERROR);
+                patchResult.setOutput(response.getExceptionStackTrace());
+            }
+        } else {
+            LOG.error("Groovy Console is not installed.");
+            patchResult.setStatus(PatchStatus.ERROR);
+            patchResult.setOutput("Groovy Console is not installed.");
         }
     }
 
+    /**
+     * Mark all results of a rolled back transactional group as failed. The output of the failed patch is kept.
+     *
+     * @param patchResults results of the group
+     * @param reason reason of the rollback
+     */
+    private void rollBack(List<GroovyPatchResult> patchResults, String reason) {
+        for (GroovyPatchResult patchResult : patchResults) {
+            if (patchResult == null || PatchStatus.ERROR.isOfStatus(patchResult) || isLinked(patchResult)) {
+                continue;
+            }
+            patchResult.setOutput(PatchStatus.RUNNING.isOfStatus(patchResult) ? "Not executed. " + reason : reason);
+            patchResult.setStatus(PatchStatus.ERROR);
+        }
+    }
+
+    /**
+     * @return true in case the result links to the result of a patch with the same content, the patch isn't executed
+     */
+    private static boolean isLinked(GroovyPatchResult patchResult) {
+        return StringUtils.isNotBlank(patchResult.getLinkedResult());
+    }
+
+    /**
+     * Store a failed result with the plan summary for a patch that is blocked by its query plan,
+     * so the console shows why the patch didn't run.
+     *
+     * @param patchFile blocked patch file
+     * @param queryAnalysis analysis of the queries of the patch
+     */
+    private void blockPatch(GroovyPatchFile patchFile, GroovyQueryAnalysis queryAnalysis) {
+        GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
+        patchResult.setStatus(PatchStatus.ERROR);
+        patchResult.setOutput("Patch is blocked, it contains queries without a selective index:\n\n" + queryAnalysis.getSummary());
+        patchResult.setQueryPlan(queryAnalysis.getSummary());
+        patchResult.setQueryPlanFlagged(true);
+        patchResultRepository.updateResult(patchResult);
+    }
+
+    /**
+     * Run the script of the patch file.
+     * When the extensions of the Groovy Console are available, the compiled script class is taken from the script cache,
+     * so the script is only compiled once per content version. Like the Groovy Console does, the run is audited and
+     * the notification services are notified afterwards. Otherwise the Groovy Console compiles and runs the script.
+     *
+     * @param request request used as script context
+     * @param response response used as script context
+     * @param patchFile patch file to run
+     * @param patchResult result to store the statistics of the script bindings on
+     * @param progressListener listener the script bindings report their progress to
+     * @param commitDeferred true in case the session is saved by the caller, the batch saver doesn't save and parallel visits are rejected
+     * @return response of the script execution
+     */
+    private RunScriptResponse runScript(SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                        GroovyPatchFile patchFile, GroovyPatchResult patchResult,
+                                        PatchProgressListener progressListener, boolean commitDeferred) throws UnsupportedEncodingException {
+        ExtensionService extensions = this.extensionService;
+        if (extensions == null) {
+            return groovyConsoleService.runScript(request, response, patchFile.getPath());
+        }
+
+        RunScriptResponse runScriptResponse = runCachedScript(extensions, request, response, patchFile, patchResult,
+                progressListener, commitDeferred);
+        auditAndNotify(runScriptResponse);
+        return runScriptResponse;
+    }
+
+    private RunScriptResponse runCachedScript(ExtensionService extensions,
+                                              SlingHttpServletRequest request, SlingHttpServletResponse response,
+                                              GroovyPatchFile patchFile, GroovyPatchResult patchResult,
+                                              PatchProgressListener progressListener, boolean commitDeferred) throws UnsupportedEncodingException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PrintStream printStream = new PrintStream(outputStream, true, CHARSET);
+        ScriptContext scriptContext = new ScriptContext(request, response, printStream, patchFile.getFileContent(), null);
+
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        BatchSaver batchSaver = session != null ? new BatchSaver(session) : null;
+        if (batchSaver != null) {
+            batchSaver.setCommitDeferred(commitDeferred);
+        }
+        QueryIterator queryIterator = session != null ? new QueryIterator(session) : null;
+        DataFileReader dataFileReader = session != null
+                ? new DataFileReader(session, StringUtils.substringBeforeLast(patchFile.getPath(), "/"), batchSaver, progressListener)
+                : null;
+        ParallelNodeVisitor parallelVisitor = new ParallelNodeVisitor(request.getResourceResolver(),
+                () -> resourceResolverFactory.getServiceResourceResolver(getCredentials()));
+        parallelVisitor.setCommitDeferred(commitDeferred);
+
+        long start = System.currentTimeMillis();
+        boolean pinned = false;
+        try {
+            Binding binding = getBinding(extensions, scriptContext);
+            if (session != null) {
+                binding.setVariable(BatchSaver.BINDING_NAME, batchSaver);
+                binding.setVariable(QueryIterator.BINDING_NAME, queryIterator);
+                binding.setVariable(DataFileReader.BINDING_NAME, dataFileReader);
+            }
+            binding.setVariable(ParallelNodeVisitor.BINDING_NAME, parallelVisitor);
+
+            //the class of a running script is pinned, so its classloader isn't released while it runs
+            groovyScriptCache.pin(patchFile.getMd5());
+            pinned = true;
+            Script script = InvokerHelper.createScript(groovyScriptCache.getScriptClass(patchFile), binding);
+            for (Closure scriptMetaClass : extensions.getScriptMetaClasses(scriptContext)) {
+                DefaultGroovyMethods.metaClass(script, scriptMetaClass);
+            }
+
+            Object result = script.run();
+            if (batchSaver != null) {
+                batchSaver.flush();
+            }
+
+            return new RunScriptResponse(patchFile.getFileContent(), null, result == null ? "" : result.toString(),
+                    outputStream.toString(CHARSET), "", getRunningTime(start), getUserId(request));
+        } catch (Exception | AssertionError e) {
+            LOG.error("Error while running script " + patchFile.getPath(), e);
+            return new RunScriptResponse(patchFile.getFileContent(), null, "",
+                    outputStream.toString(CHARSET), ExceptionUtils.getStackTrace(e), getRunningTime(start), getUserId(request));
+        } finally {
+            if (pinned) {
+                groovyScriptCache.unpin(patchFile.getMd5());
+            }
+            printStream.close();
+            setBindingStatistics(patchResult, batchSaver, queryIterator, parallelVisitor.getStatistics());
+        }
+    }
+
+    /**
+     * Create the audit record of the script run, unless auditing is disabled in the Groovy Console configuration,
+     * and pass the response to the notification services, as the Groovy Console does for the scripts it runs.
+     * A failing audit record doesn't fail the patch.
+     *
+     * @param runScriptResponse response of the script execution
+     */
+    private void auditAndNotify(RunScriptResponse runScriptResponse) {
+        AuditService audit = this.auditService;
+        ConfigurationService configuration = this.configurationService;
+        if (audit != null && configuration != null && !configuration.isAuditDisabled()) {
+            try {
+                audit.createAuditRecord(runScriptResponse);
+            } catch (RepositoryException | PersistenceException e) {
+                LOG.error("Could not create audit record of script run", e);
+            }
+        }
+
+        notificationServices.forEach(notificationService -> notificationService.notify(runScriptResponse));
+    }
+
+    /**
+     * Store the commits, query rows and visits done through the script bindings on the patch result.
+     *
+     * @param patchResult result to store the statistics on
+     * @param batchSaver batch saver of the script, can be null
+     * @param queryIterator query iterator of the script, can be null
+     * @param visitStatistics aggregated statistics of the parallel visits of the script
+     */
+    private void setBindingStatistics(GroovyPatchResult patchResult, BatchSaver batchSaver, QueryIterator queryIterator,
+                                      VisitStatistics visitStatistics) {
+        int commitCount = visitStatistics.getCommitCount();
+        long commitTime = visitStatistics.getCommitTime();
+        if (batchSaver != null) {
+            commitCount += batchSaver.getCommitCount();
+            commitTime += batchSaver.getCommitTime();
+        }
+
+        if (commitCount > 0) {
+            patchResult.setCommitCount(commitCount);
+            patchResult.setCommitTime(DateUtils.formattedRunningTime(commitTime));
+        }
+
+        if (queryIterator != null && queryIterator.getPages() > 0) {
+            patchResult.setRowsRead(queryIterator.getRowsRead());
+            patchResult.setQueryTime(DateUtils.formattedRunningTime(queryIterator.getQueryTime()));
+        }
+
+        if (visitStatistics.getPartitions() > 0) {
+            patchResult.setVisitedNodes(visitStatistics.getVisitedNodes());
+            patchResult.setVisitThroughput(visitStatistics.getFormattedThroughput());
+            if (visitStatistics.getErrorCount() > 0) {
+                String failedBatches = visitStatistics.getFailedBatches() > 0
+                        ? ", " + visitStatistics.getFailedBatches() + " batch(es) reverted" : "";
+                patchResult.setVisitErrors(visitStatistics.getErrorCount() + " error(s) while visiting nodes" + failedBatches + ":\n"
+                        + StringUtils.join(visitStatistics.getErrors(), "\n"));
+            }
+        }
+    }
+
+    /**
+     * Store the CPU time and allocated bytes of the script, and the repository operations it did, on the patch result.
+     *
+     * @param patchResult result to store the usage on
+     * @param threadUsage usage of the thread that ran the script
+     * @param operationCounter counter of the resolver of the script
+     */
+    private void setResourceUsage(GroovyPatchResult patchResult, ThreadUsage threadUsage, JcrOperationCounter operationCounter) {
+        long cpuTime = threadUsage.getCpuTime();
+        if (cpuTime != ThreadUsage.UNSUPPORTED) {
+            patchResult.setCpuTime(DateUtils.formattedRunningTime(TimeUnit.NANOSECONDS.toMillis(cpuTime)));
+        }
+        long allocatedBytes = threadUsage.getAllocatedBytes();
+        if (allocatedBytes != ThreadUsage.UNSUPPORTED) {
+            patchResult.setAllocatedBytes(allocatedBytes);
+        }
+
+        patchResult.setJcrReads(operationCounter.getReads());
+        patchResult.setJcrWrites(operationCounter.getWrites());
+        patchResult.setJcrQueries(operationCounter.getQueries());
+        patchResult.setJcrSaves(operationCounter.getSaves());
+    }
+
+    /**
+     * Compile the script of the patch into the script cache.
+     *
+     * @param patchPath path of the patch to compile
+     * @return compilation error or null in case the script compiled
+     */
+    private String compilePatch(String patchPath) {
+        GroovyPatchFile patchFile = patchFileRepository.getPatch(patchPath);
+        if (patchFile == null) {
+            return "Patch not found";
+        }
+
+        //the compiled class is kept in the cache until the job releases its patches
+        try {
+            pinScript(patchPath, patchFile.getMd5());
+            groovyScriptCache.getScriptClass(patchFile);
+            return null;
+        } catch (RuntimeException e) {
+            LOG.debug("Could not compile script " + patchPath, e);
+            return e.getMessage();
+        }
+    }
+
+    private void pinScript(String patchPath, String md5) {
+        if (md5 == null) {
+            return;
+        }
+        groovyScriptCache.pin(md5);
+        String previousMd5 = pinnedScripts.put(patchPath, md5);
+        if (previousMd5 != null) {
+            groovyScriptCache.unpin(previousMd5);
+        }
+    }
+
+    private String getCompilationError(Future<String> compilation) {
+        try {
+            return compilation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Compilation interrupted";
+        } catch (ExecutionException e) {
+            return e.getCause().getMessage();
+        }
+    }
+
+    private Binding getBinding(ExtensionService extensions, ScriptContext scriptContext) {
+        Binding binding = new Binding();
+        for (Map.Entry<String, BindingVariable> variable : extensions.getBindingVariables(scriptContext).entrySet()) {
+            binding.setVariable(variable.getKey(), variable.getValue().getValue());
+        }
+        return binding;
+    }
+
+    private String getRunningTime(long start) {
+        return DateUtils.formattedRunningTime(System.currentTimeMillis() - start);
+    }
+
+    private String getUserId(SlingHttpServletRequest request) {
+        return request.getResourceResolver().getUserID();
+    }
+
     private Map<String, Object> getCredentials() {
         Map<String, Object> credentials = new HashMap<>();
         credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
@@ -159,4 +699,37 @@ public class GroovyPatchSystemServiceImpl implements GroovyPatchSystemService {
     protected void unbindGroovyConsole() {
         this.groovyConsoleService = null;
     }
-}
\ No newline at end of file
+
+    protected void bindGroovyQueryAnalyzer(GroovyQueryAnalyzer groovyQueryAnalyzer) {
+        this.groovyQueryAnalyzer = groovyQueryAnalyzer;
+    }
+
+    protected void unbindGroovyQueryAnalyzer(GroovyQueryAnalyzer groovyQueryAnalyzer) {
+        this.groovyQueryAnalyzer = null;
+    }
+
+    protected void bindExtensionService(ExtensionService extensionService) {
+        this.extensionService = extensionService;
+    }
+
+    protected void unbindExtensionService(ExtensionService extensionService) {
+        this.extensionService = null;
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY,
+            unbind = "unbindNotificationService")
+    protected void bindNotificationService(NotificationService notificationService) {
+        notificationServices.add(notificationService);
+    }
+
+    protected void unbindNotificationService(NotificationService notificationService) {
+        notificationServices.remove(notificationService);
+    }
+
+    private PatchSystemMetrics metrics() {
+        PatchSystemMetrics metrics = patchSystemMetrics;
+        return metrics != null ? metrics : PatchSystemMetrics.NONE;
+    }
+}
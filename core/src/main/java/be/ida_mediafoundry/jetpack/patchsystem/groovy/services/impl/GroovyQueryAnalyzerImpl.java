@@ -0,0 +1,216 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyQueryAnalysis;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyQueryAnalyzer;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Component(
+        name = "Jetpack - Groovy Query Analyzer",
+        service = GroovyQueryAnalyzer.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + ":String=Explains the literal queries of groovy patches before they run.",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+@Designate(ocd = GroovyQueryAnalyzerImpl.Config.class)
+public class GroovyQueryAnalyzerImpl implements GroovyQueryAnalyzer {
+    private static final Logger LOG = LoggerFactory.getLogger(GroovyQueryAnalyzerImpl.class);
+
+    private static final String EXPLAIN = "explain ";
+    private static final String PLAN_COLUMN = "plan";
+    private static final String TRAVERSAL = "/* traverse";
+    private static final String DEPRECATED_SQL = "sql";
+
+    //query methods of the JCR QueryManager and Sling ResourceResolver, called with a string literal and a query language
+    private static final Pattern QUERY_CALL = Pattern.compile(
+            "(?:createQuery|findResources|queryResources)\\s*\\(\\s*"
+                    + "(?:'''(.*?)'''|\"\"\"(.*?)\"\"\"|'((?:[^'\\\\\\n]|\\\\.)*)'|\"((?:[^\"\\\\\\n]|\\\\.)*)\")"
+                    + "\\s*,\\s*([\\w.'\"-]+)\\s*\\)",
+            Pattern.DOTALL);
+
+    @ObjectClassDefinition(name = "Jetpack - Groovy Query Analyzer",
+            description = "Explains the literal JCR-SQL2 and XPath queries of groovy patches before they run.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Enabled",
+                description = "Explain the literal queries of groovy patches before they run.")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Block flagged queries",
+                description = "Don't run patches with queries that traverse the repository or use a low-selectivity index.")
+        boolean blockFlaggedQueries() default false;
+
+        @AttributeDefinition(name = "Low-selectivity indexes",
+                description = "Fragments of query plans that indicate a low-selectivity index.")
+        String[] lowSelectivityIndexes() default {"nodeType Index"};
+    }
+
+    private boolean enabled = true;
+    private boolean blockFlaggedQueries;
+    private String[] lowSelectivityIndexes = new String[0];
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        this.enabled = config.enabled();
+        this.blockFlaggedQueries = config.blockFlaggedQueries();
+        this.lowSelectivityIndexes = config.lowSelectivityIndexes() == null ? new String[0] : config.lowSelectivityIndexes();
+    }
+
+    @Override
+    public GroovyQueryAnalysis analyze(GroovyPatchFile patchFile, ResourceResolver resourceResolver) {
+        GroovyQueryAnalysis analysis = new GroovyQueryAnalysis();
+        if (!enabled) {
+            return analysis;
+        }
+
+        List<LiteralQuery> queries = extractQueries(patchFile.getFileContent());
+        Session session = resourceResolver.adaptTo(Session.class);
+        if (queries.isEmpty() || session == null) {
+            return analysis;
+        }
+
+        try {
+            QueryManager queryManager = session.getWorkspace().getQueryManager();
+            for (LiteralQuery query : queries) {
+                analysis.addQueryPlan(explain(queryManager, query));
+            }
+        } catch (RepositoryException e) {
+            LOG.error("Couldn't get the query manager to analyze " + patchFile.getPath(), e);
+        }
+        return analysis;
+    }
+
+    @Override
+    public boolean isBlockingFlaggedQueries() {
+        return enabled && blockFlaggedQueries;
+    }
+
+    private GroovyQueryAnalysis.QueryPlan explain(QueryManager queryManager, LiteralQuery query) {
+        try {
+            RowIterator rows = queryManager.createQuery(EXPLAIN + query.statement, query.language).execute().getRows();
+
+            List<String> plans = new ArrayList<>();
+            while (rows.hasNext()) {
+                Row row = rows.nextRow();
+                plans.add(row.getValue(PLAN_COLUMN).getString());
+            }
+
+            String plan = StringUtils.join(plans, "\n");
+            return new GroovyQueryAnalysis.QueryPlan(query.statement, query.language, plan, getWarning(plan));
+        } catch (RepositoryException e) {
+            LOG.warn("Couldn't explain query {}", query.statement, e);
+            return new GroovyQueryAnalysis.QueryPlan(query.statement, query.language,
+                    "Couldn't explain query: " + e.getMessage(), null);
+        }
+    }
+
+    private String getWarning(String plan) {
+        if (StringUtils.contains(plan, TRAVERSAL)) {
+            return "query traverses the repository, no index is used";
+        }
+        for (String lowSelectivityIndex : lowSelectivityIndexes) {
+            if (StringUtils.isNotBlank(lowSelectivityIndex) && StringUtils.contains(plan, lowSelectivityIndex)) {
+                return "query uses low-selectivity index '" + lowSelectivityIndex + "'";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extract the queries that are passed as a string literal to a query method.
+     * Interpolated strings are skipped, since their statement is only known at runtime.
+     *
+     * @param script groovy script
+     * @return literal queries with their language
+     */
+    static List<LiteralQuery> extractQueries(String script) {
+        List<LiteralQuery> queries = new ArrayList<>();
+        if (StringUtils.isBlank(script)) {
+            return queries;
+        }
+
+        Matcher matcher = QUERY_CALL.matcher(script);
+        while (matcher.find()) {
+            String statement = getStatement(matcher);
+            String language = getLanguage(matcher.group(5));
+            if (statement != null && language != null) {
+                queries.add(new LiteralQuery(statement, language));
+            }
+        }
+        return queries;
+    }
+
+    private static String getStatement(Matcher matcher) {
+        String singleQuoted = matcher.group(1) != null ? matcher.group(1) : matcher.group(3);
+        if (singleQuoted != null) {
+            return unescape(singleQuoted).trim();
+        }
+
+        String doubleQuoted = matcher.group(2) != null ? matcher.group(2) : matcher.group(4);
+        if (doubleQuoted.contains("$")) {
+            return null;
+        }
+        return unescape(doubleQuoted).trim();
+    }
+
+    private static String unescape(String literal) {
+        return literal.replace("\\'", "'").replace("\\\"", "\"");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String getLanguage(String argument) {
+        String language = StringUtils.strip(argument, "'\"");
+        if (language.endsWith("JCR_SQL2") || Query.JCR_SQL2.equals(language)) {
+            return Query.JCR_SQL2;
+        }
+        if (language.endsWith("XPATH") || Query.XPATH.equalsIgnoreCase(language)) {
+            return Query.XPATH;
+        }
+        if (language.endsWith(".SQL") || DEPRECATED_SQL.equalsIgnoreCase(language)) {
+            return Query.SQL;
+        }
+        return null;
+    }
+
+    static class LiteralQuery {
+
+        private final String statement;
+        private final String language;
+
+        LiteralQuery(String statement, String language) {
+            this.statement = statement;
+            this.language = language;
+        }
+
+        String getStatement() {
+            return statement;
+        }
+
+        String getLanguage() {
+            return language;
+        }
+    }
+}
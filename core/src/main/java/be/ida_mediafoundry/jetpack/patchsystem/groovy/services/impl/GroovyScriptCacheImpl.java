@@ -0,0 +1,412 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyScriptCache;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.*;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component(
+        name = "Jetpack - Groovy Script Cache",
+        service = GroovyScriptCache.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + ":String=Cache of compiled patch scripts, keyed by md5.",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+@Designate(ocd = GroovyScriptCacheImpl.Config.class)
+public class GroovyScriptCacheImpl implements GroovyScriptCache {
+    private static final Logger LOG = LoggerFactory.getLogger(GroovyScriptCacheImpl.class);
+
+    private static final String SCRIPT_CLASS_PREFIX = "PatchScript_";
+    private static final String SCRIPT_EXTENSION = ".groovy";
+
+    static final int DEFAULT_MAX_ENTRIES = 200;
+
+    @ObjectClassDefinition(name = "Jetpack - Groovy Script Cache",
+            description = "Cache of compiled patch scripts, keyed by the md5 of the script content.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Max entries",
+                description = "Maximum number of compiled scripts to keep. The least recently used script is released when exceeded, "
+                        + "scripts compiled for the running job are kept until the job ends.")
+        int maxEntries() default DEFAULT_MAX_ENTRIES;
+    }
+
+    @Reference
+    private DynamicClassLoaderManager dynamicClassLoaderManager;
+
+    private volatile ExtensionService extensionService;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    //compiled scripts in access order, the least recently used unpinned scripts are evicted when max entries is exceeded
+    private final Map<String, CompiledScript> compiledScripts = new LinkedHashMap<>(16, 0.75f, true);
+
+    //md5 of the last compiled version per script path, used to release outdated versions of modified scripts
+    private final Map<String, String> md5ByPath = new HashMap<>();
+
+    //pin count per md5, pinned scripts are compiled for the running job or running right now
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    //scripts removed from the cache while they were pinned, released when their md5 is unpinned
+    private final Map<String, List<CompiledScript>> releaseOnUnpin = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Activate
+    @Modified
+    protected void activate(Config config) {
+        this.maxEntries = Math.max(1, config.maxEntries());
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        clear();
+    }
+
+    /**
+     * The compilation customizers of the extension service are applied when a script is compiled,
+     * so the compiled scripts are released when the extension service changes.
+     *
+     * @param extensionService extension service of the Groovy Console
+     */
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY,
+            unbind = "unbindExtensionService")
+    protected void bindExtensionService(ExtensionService extensionService) {
+        this.extensionService = extensionService;
+        clear();
+    }
+
+    protected void unbindExtensionService(ExtensionService extensionService) {
+        if (this.extensionService == extensionService) {
+            this.extensionService = null;
+            clear();
+        }
+    }
+
+    @Override
+    public Class<? extends Script> getScriptClass(GroovyPatchFile patchFile) {
+        String md5 = patchFile.getMd5();
+
+        CompiledScript compiledScript;
+        synchronized (compiledScripts) {
+            compiledScript = compiledScripts.get(md5);
+        }
+
+        if (compiledScript != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            //compile outside of the lock, so scripts with a different md5 can be compiled concurrently
+            compiledScript = compile(patchFile);
+
+            CompiledScript existing;
+            List<CompiledScript> evicted;
+            synchronized (compiledScripts) {
+                existing = compiledScripts.putIfAbsent(md5, compiledScript);
+                evicted = evict(md5);
+            }
+            if (existing != null) {
+                compiledScript.release();
+                compiledScript = existing;
+            }
+            evicted.forEach(CompiledScript::release);
+        }
+
+        registerVersion(patchFile.getPath(), md5);
+        return compiledScript.getScriptClass();
+    }
+
+    @Override
+    public void invalidate(String md5) {
+        CompiledScript compiledScript;
+        synchronized (compiledScripts) {
+            compiledScript = removeUnlessPinned(md5);
+            md5ByPath.values().remove(md5);
+        }
+        if (compiledScript != null) {
+            compiledScript.release();
+        }
+    }
+
+    @Override
+    public void clear() {
+        List<CompiledScript> released = new ArrayList<>();
+        synchronized (compiledScripts) {
+            for (String md5 : new ArrayList<>(compiledScripts.keySet())) {
+                CompiledScript compiledScript = removeUnlessPinned(md5);
+                if (compiledScript != null) {
+                    released.add(compiledScript);
+                }
+            }
+            md5ByPath.clear();
+        }
+        released.forEach(CompiledScript::release);
+    }
+
+    @Override
+    public void pin(String md5) {
+        synchronized (compiledScripts) {
+            pins.merge(md5, 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public void unpin(String md5) {
+        List<CompiledScript> released = Collections.emptyList();
+        synchronized (compiledScripts) {
+            Integer count = pins.get(md5);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                pins.put(md5, count - 1);
+                return;
+            }
+
+            pins.remove(md5);
+            List<CompiledScript> removed = releaseOnUnpin.remove(md5);
+            if (removed != null) {
+                released = removed;
+            }
+            //scripts that were kept over the max entries while pinned can be evicted now
+            released = concat(released, evict(null));
+        }
+        released.forEach(CompiledScript::release);
+    }
+
+    @Override
+    public int size() {
+        synchronized (compiledScripts) {
+            return compiledScripts.size();
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.get(), misses.get(), size());
+    }
+
+    /**
+     * Register the md5 as the current version of the script path.
+     * The compiled class of the previous version is released, unless another script path still has that content.
+     *
+     * @param path path of the script, can be null
+     * @param md5 md5 of the current version
+     */
+    private void registerVersion(String path, String md5) {
+        if (path == null) {
+            return;
+        }
+
+        CompiledScript outdated = null;
+        synchronized (compiledScripts) {
+            String previousMd5 = md5ByPath.put(path, md5);
+            if (previousMd5 != null && !previousMd5.equals(md5) && !md5ByPath.containsValue(previousMd5)) {
+                outdated = removeUnlessPinned(previousMd5);
+            }
+        }
+
+        if (outdated != null) {
+            LOG.debug("Released outdated version of script {}", path);
+            outdated.release();
+        }
+    }
+
+    /**
+     * Remove the least recently used scripts that aren't pinned, until the cache is within its max entries.
+     * Has to be called while holding the lock of the cache, the returned scripts are released outside of it.
+     *
+     * @param keptMd5 md5 of the script that was just added and is about to be returned, or null
+     * @return removed scripts to release
+     */
+    private List<CompiledScript> evict(String keptMd5) {
+        List<CompiledScript> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, CompiledScript>> entries = compiledScripts.entrySet().iterator();
+        while (compiledScripts.size() > maxEntries && entries.hasNext()) {
+            Map.Entry<String, CompiledScript> eldest = entries.next();
+            if (pins.containsKey(eldest.getKey()) || eldest.getKey().equals(keptMd5)) {
+                continue;
+            }
+            LOG.debug("Evicting compiled script {}", eldest.getKey());
+            md5ByPath.values().remove(eldest.getKey());
+            evicted.add(eldest.getValue());
+            entries.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove the script from the cache. The classloader of a pinned script may still be in use,
+     * it is released when the script is unpinned. Has to be called while holding the lock of the cache.
+     *
+     * @return removed script to release, or null in case there is nothing to release now
+     */
+    private CompiledScript removeUnlessPinned(String md5) {
+        CompiledScript compiledScript = compiledScripts.remove(md5);
+        if (compiledScript != null && pins.containsKey(md5)) {
+            releaseOnUnpin.computeIfAbsent(md5, key -> new ArrayList<>()).add(compiledScript);
+            return null;
+        }
+        return compiledScript;
+    }
+
+    private static List<CompiledScript> concat(List<CompiledScript> first, List<CompiledScript> second) {
+        List<CompiledScript> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompiledScript compile(GroovyPatchFile patchFile) {
+        CompiledScript precompiledScript = loadPrecompiled(patchFile);
+        if (precompiledScript != null) {
+            return precompiledScript;
+        }
+
+        long start = System.currentTimeMillis();
+
+        GroovyClassLoader classLoader = new GroovyClassLoader(dynamicClassLoaderManager.getDynamicClassLoader(), getConfiguration());
+        try {
+            Class<? extends Script> scriptClass = classLoader.parseClass(patchFile.getFileContent(),
+                    SCRIPT_CLASS_PREFIX + patchFile.getMd5() + SCRIPT_EXTENSION);
+
+            LOG.debug("Compiled script {} in {} ms", patchFile.getPath(), System.currentTimeMillis() - start);
+            return new CompiledScript(scriptClass, classLoader);
+        } catch (RuntimeException e) {
+            closeQuietly(classLoader);
+            throw e;
+        }
+    }
+
+    /**
+     * Load the classes compiled at build time, in case the md5 of the patch matches the md5 of the script they were compiled from.
+     * A script that only differs in formatting is compiled again, so the line numbers of errors match the deployed script.
+     *
+     * @param patchFile patch file
+     * @return the precompiled script, or null in case the script has to be compiled
+     */
+    private CompiledScript loadPrecompiled(GroovyPatchFile patchFile) {
+        PrecompiledScript precompiledScript = patchFile.getPrecompiledScript();
+        if (precompiledScript == null) {
+            return null;
+        }
+        if (!precompiledScript.getMd5().equals(patchFile.getMd5())) {
+            LOG.info("Precompiled classes of script {} are outdated, the script is compiled", patchFile.getPath());
+            return null;
+        }
+
+        PrecompiledClassLoader classLoader = new PrecompiledClassLoader(dynamicClassLoaderManager.getDynamicClassLoader(),
+                precompiledScript.getClasses());
+        try {
+            Class<?> scriptClass = classLoader.loadClass(precompiledScript.getScriptClassName());
+            LOG.debug("Loaded precompiled script {}", patchFile.getPath());
+            return new CompiledScript(scriptClass.asSubclass(Script.class), classLoader);
+        } catch (ClassNotFoundException | ClassCastException | LinkageError e) {
+            LOG.warn("Couldn't load the precompiled classes of script {}, the script is compiled", patchFile.getPath(), e);
+            closeQuietly(classLoader);
+            return null;
+        }
+    }
+
+    private CompilerConfiguration getConfiguration() {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        if (extensionService != null) {
+            List<CompilationCustomizer> compilationCustomizers = extensionService.getCompilationCustomizers();
+            configuration.addCompilationCustomizers(compilationCustomizers.toArray(new CompilationCustomizer[0]));
+        }
+        return configuration;
+    }
+
+    private static void closeQuietly(GroovyClassLoader classLoader) {
+        try {
+            classLoader.clearCache();
+            classLoader.close();
+        } catch (IOException e) {
+            LOG.warn("Couldn't close script classloader", e);
+        }
+    }
+
+    /**
+     * Isolated classloader that defines the classes of a precompiled script on first use.
+     * The defined classes are registered in the class cache, so they are released together with the classloader.
+     */
+    private static class PrecompiledClassLoader extends GroovyClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        PrecompiledClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = new HashMap<>(classes);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytecode;
+            synchronized (classes) {
+                bytecode = classes.remove(name);
+            }
+            if (bytecode == null) {
+                return super.findClass(name);
+            }
+
+            Class<?> definedClass = defineClass(name, bytecode, 0, bytecode.length);
+            setClassCacheEntry(definedClass);
+            return definedClass;
+        }
+    }
+
+    /**
+     * Compiled script class together with the isolated classloader that defined it.
+     * Releasing the script removes all classes of the classloader (script, closures and inner classes)
+     * from the Groovy meta class registry and closes the classloader, so the classes can be unloaded.
+     */
+    private static class CompiledScript {
+
+        private final Class<? extends Script> scriptClass;
+        private final GroovyClassLoader classLoader;
+
+        CompiledScript(Class<? extends Script> scriptClass, GroovyClassLoader classLoader) {
+            this.scriptClass = scriptClass;
+            this.classLoader = classLoader;
+        }
+
+        Class<? extends Script> getScriptClass() {
+            return scriptClass;
+        }
+
+        void release() {
+            for (Class<?> loadedClass : classLoader.getLoadedClasses()) {
+                InvokerHelper.removeClass(loadedClass);
+            }
+            closeQuietly(classLoader);
+        }
+    }
+}
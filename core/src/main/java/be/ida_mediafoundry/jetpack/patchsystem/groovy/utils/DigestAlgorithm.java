@@ -0,0 +1,101 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import com.google.common.hash.Hashing;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Algorithms to detect changes in the content of a patch.
+ * Digests are stored with the name of the algorithm as prefix, e.g. {@code sha256:9f86d0...},
+ * so a result can always be compared with the algorithm it was created with.
+ */
+public enum DigestAlgorithm {
+
+    /**
+     * The md5 that was always used for patches, results without digest have an md5.
+     */
+    MD5("md5") {
+        @Override
+        public String hex(String content) {
+            return DigestUtils.md5Hex(content);
+        }
+    },
+
+    /**
+     * For integrity: a changed patch can't have the digest of the executed patch.
+     */
+    SHA256("sha256") {
+        @Override
+        public String hex(String content) {
+            return DigestUtils.sha256Hex(content);
+        }
+    },
+
+    /**
+     * Fast non-cryptographic 128-bit hash, for change detection only.
+     */
+    MURMUR3("murmur3") {
+        @Override
+        public String hex(String content) {
+            return Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).toString();
+        }
+    };
+
+    private static final char SEPARATOR = ':';
+
+    private final String prefix;
+
+    DigestAlgorithm(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param content content to hash, as UTF-8
+     * @return hex hash of the content, without prefix
+     */
+    public abstract String hex(String content);
+
+    /**
+     * @param content content to hash, as UTF-8
+     * @return prefixed digest of the content
+     */
+    public String digest(String content) {
+        return prefix + SEPARATOR + hex(content);
+    }
+
+    /**
+     * @param name name of the algorithm, as configured
+     * @return the algorithm, or MD5 in case the name is unknown
+     */
+    public static DigestAlgorithm fromName(String name) {
+        for (DigestAlgorithm algorithm : values()) {
+            if (algorithm.prefix.equalsIgnoreCase(StringUtils.trim(name)) || algorithm.name().equalsIgnoreCase(StringUtils.trim(name))) {
+                return algorithm;
+            }
+        }
+        return MD5;
+    }
+
+    /**
+     * @param digest prefixed digest
+     * @return the algorithm of the digest, or null in case the digest has no known prefix
+     */
+    public static DigestAlgorithm fromDigest(String digest) {
+        String prefix = StringUtils.substringBefore(digest, String.valueOf(SEPARATOR));
+        if (StringUtils.isBlank(prefix) || prefix.equals(digest)) {
+            return null;
+        }
+        for (DigestAlgorithm algorithm : values()) {
+            if (algorithm.prefix.equals(prefix)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,248 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import org.apache.sling.api.resource.ResourceResolver;
+
+import javax.jcr.Session;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the repository operations of a patch script, by wrapping the resource resolver given to the script.
+ * The session adapted from the resolver is wrapped as well, and so are the JCR objects returned by it:
+ * nodes, properties, iterators, the workspace, the query manager and its queries.
+ *
+ * <ul>
+ *     <li>reads: resources and items that are looked up, checked for existence, or returned by an iterator</li>
+ *     <li>writes: resources and items that are created, changed, moved or removed</li>
+ *     <li>queries: queries that are executed</li>
+ *     <li>saves: commits of the resolver and saves of the session</li>
+ * </ul>
+ *
+ * Resources returned by the resolver are not wrapped, the nodes adapted from them are not counted.
+ * When the commit is deferred to the owner of the resolver, e.g. a transactional group, saves and commits are rejected.
+ * That is best-effort: saves through the session of a node adapted from a resource, or through APIs that save with the
+ * unwrapped resolver, e.g. a PageManager with autosave, are neither counted nor rejected.
+ */
+public class JcrOperationCounter {
+
+    private static final Set<String> RESOLVER_READS = new HashSet<>(Arrays.asList(
+            "getResource", "resolve", "listChildren", "getChildren", "getParent", "hasChildren"));
+    private static final Set<String> RESOLVER_WRITES = new HashSet<>(Arrays.asList(
+            "create", "delete", "move", "copy"));
+    private static final Set<String> RESOLVER_QUERIES = new HashSet<>(Arrays.asList(
+            "findResources", "queryResources"));
+
+    private static final Set<String> JCR_READS = new HashSet<>(Arrays.asList(
+            "getItem", "getNode", "getNodes", "getNodeByIdentifier", "getNodeByUUID", "getProperty", "getProperties",
+            "getRootNode", "getParent", "getAncestor", "getReferences", "getWeakReferences",
+            "hasNode", "hasNodes", "hasProperty", "hasProperties", "itemExists", "nodeExists", "propertyExists",
+            "nextNode", "nextProperty"));
+    private static final Set<String> JCR_WRITES = new HashSet<>(Arrays.asList(
+            "addNode", "setProperty", "setValue", "remove", "removeItem", "move", "copy", "clone", "orderBefore",
+            "addMixin", "removeMixin", "setPrimaryType", "importXML", "removeShare", "removeSharedSet"));
+    private static final Set<String> JCR_QUERIES = new HashSet<>(Arrays.asList("execute"));
+    private static final Set<String> JCR_SAVES = new HashSet<>(Arrays.asList("save"));
+
+    private static final String JCR_PACKAGE = "javax.jcr";
+    private static final String JACKRABBIT_PACKAGE = "org.apache.jackrabbit.api";
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+
+    private boolean commitDeferred;
+
+    /**
+     * @param resourceResolver resolver to count the operations of
+     * @return resolver that counts its operations and delegates them to the given resolver
+     */
+    public ResourceResolver wrap(ResourceResolver resourceResolver) {
+        return (ResourceResolver) Proxy.newProxyInstance(JcrOperationCounter.class.getClassLoader(),
+                new Class<?>[] { ResourceResolver.class }, new ResolverHandler(resourceResolver));
+    }
+
+    public boolean isCommitDeferred() {
+        return commitDeferred;
+    }
+
+    /**
+     * Defer the commit to the owner of the resolver, saves of the session and commits of the resolver fail.
+     *
+     * @param commitDeferred true to reject saves and commits
+     */
+    public void setCommitDeferred(boolean commitDeferred) {
+        this.commitDeferred = commitDeferred;
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getQueries() {
+        return queries.get();
+    }
+
+    public long getSaves() {
+        return saves.get();
+    }
+
+    private static void count(String methodName, Set<String> operations, AtomicLong counter) {
+        if (operations.contains(methodName)) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Wrap a JCR object returned by a counted object, other values are returned as they are.
+     */
+    private Object wrapJcr(Object value) {
+        if (value == null || Proxy.isProxyClass(value.getClass())) {
+            return value;
+        }
+
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        collectJcrInterfaces(value.getClass(), interfaces);
+        if (interfaces.isEmpty()) {
+            return value;
+        }
+        try {
+            return Proxy.newProxyInstance(value.getClass().getClassLoader(), interfaces.toArray(new Class<?>[0]),
+                    new JcrHandler(value));
+        } catch (IllegalArgumentException e) {
+            //the interfaces aren't visible to the class loader of the object, its operations aren't counted
+            return value;
+        }
+    }
+
+    private static void collectJcrInterfaces(Class<?> type, Set<Class<?>> interfaces) {
+        if (type == null) {
+            return;
+        }
+        for (Class<?> candidate : type.getInterfaces()) {
+            String name = candidate.getName();
+            if (Modifier.isPublic(candidate.getModifiers()) && (name.startsWith(JCR_PACKAGE) || name.startsWith(JACKRABBIT_PACKAGE))) {
+                interfaces.add(candidate);
+            }
+            collectJcrInterfaces(candidate, interfaces);
+        }
+        collectJcrInterfaces(type.getSuperclass(), interfaces);
+    }
+
+    /**
+     * Arguments that are wrapped objects are unwrapped, the repository only accepts its own objects.
+     */
+    private static Object[] unwrap(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        Object[] unwrapped = args.clone();
+        for (int i = 0; i < unwrapped.length; i++) {
+            Object arg = unwrapped[i];
+            if (arg != null && Proxy.isProxyClass(arg.getClass())) {
+                InvocationHandler handler = Proxy.getInvocationHandler(arg);
+                if (handler instanceof CountingHandler) {
+                    unwrapped[i] = ((CountingHandler) handler).target;
+                }
+            }
+        }
+        return unwrapped;
+    }
+
+    private void checkCommitAllowed(String methodName) {
+        if (commitDeferred) {
+            throw new IllegalStateException("The patch is part of a transactional group, its changes are saved by the group: "
+                    + methodName + " is not allowed");
+        }
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, unwrap(args));
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private abstract static class CountingHandler implements InvocationHandler {
+
+        final Object target;
+
+        CountingHandler(Object target) {
+            this.target = target;
+        }
+    }
+
+    private class ResolverHandler extends CountingHandler {
+
+        ResolverHandler(ResourceResolver resourceResolver) {
+            super(resourceResolver);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            count(methodName, RESOLVER_READS, reads);
+            count(methodName, RESOLVER_WRITES, writes);
+            count(methodName, RESOLVER_QUERIES, queries);
+            if ("commit".equals(methodName)) {
+                checkCommitAllowed(methodName);
+                saves.incrementAndGet();
+            }
+
+            Object result = invokeTarget(target, method, args);
+            if ("adaptTo".equals(methodName) && args[0] instanceof Class && Session.class.isAssignableFrom((Class<?>) args[0])) {
+                return wrapJcr(result);
+            }
+            return result;
+        }
+    }
+
+    private class JcrHandler extends CountingHandler {
+
+        JcrHandler(Object target) {
+            super(target);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeTarget(target, method, args);
+            }
+
+            String methodName = method.getName();
+            count(methodName, JCR_READS, reads);
+            count(methodName, JCR_WRITES, writes);
+            count(methodName, JCR_QUERIES, queries);
+            if (JCR_SAVES.contains(methodName)) {
+                checkCommitAllowed(methodName);
+                saves.incrementAndGet();
+            }
+
+            Object result = invokeTarget(target, method, args);
+            Class<?> returnType = method.getReturnType();
+            if (!returnType.isInterface() && returnType != Object.class) {
+                return result;
+            }
+
+            Object wrapped = wrapJcr(result);
+            //the next node or property of a plain iterator is a read as well
+            if ("next".equals(methodName) && wrapped != result) {
+                reads.incrementAndGet();
+            }
+            return wrapped;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import com.day.crx.JcrConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Discovery of the patch files under /apps/patches, shared by the patch file repositories:
+ * groovy and bulk patches live in the same project folders.
+ */
+public final class PatchFileScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatchFileScanner.class);
+
+    public static final String ROOT = "/apps/patches";
+
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    private PatchFileScanner() {
+    }
+
+    /**
+     * Scan the folder and its subfolders for patch files with the extension, in their repository order.
+     *
+     * @param resource folder to scan
+     * @param parent patch folder of the folder, null for the root
+     * @param extension extension of the patch files
+     * @param patchFactory creates the patch file of a resource in a patch folder, returns null in case it's not a patch
+     * @param manifestPatches creates the patch files of a top level project folder from its manifest,
+     *                        returns null in case the folder has to be scanned
+     * @param <T> type of the patch files
+     * @return patch files
+     */
+    public static <T> List<T> scanFolderForPatches(Resource resource, GroovyPatchFolder parent, String extension,
+                                                   BiFunction<Resource, GroovyPatchFolder, T> patchFactory,
+                                                   Function<Resource, List<T>> manifestPatches) {
+        List<T> patchFiles = new ArrayList<>();
+
+        Iterable<Resource> subResources = resource.getChildren();
+        for (Resource subResource : subResources) {
+            if (subResource.getResourceType().equals(JcrConstants.NT_FOLDER)
+                    || subResource.getResourceType().equals("sling:Folder")
+                    || subResource.getResourceType().equals("sling:OrderedFolder")) {
+                List<T> projectPatches = parent == null ? manifestPatches.apply(subResource) : null;
+                if (projectPatches != null) {
+                    patchFiles.addAll(projectPatches);
+                    continue;
+                }
+
+                GroovyPatchFolder patchFolder = subResource.adaptTo(GroovyPatchFolder.class);
+                if (patchFolder != null) {
+                    patchFolder.setParent(parent);
+                    patchFiles.addAll(scanFolderForPatches(subResource, patchFolder, extension, patchFactory, manifestPatches));
+                }
+            } else if (subResource.getResourceType().equals(JcrConstants.NT_FILE)
+                    && subResource.getName().endsWith(extension)) {
+                T patchFile = patchFactory.apply(subResource, parent);
+                if (patchFile != null) {
+                    patchFiles.add(patchFile);
+                }
+            }
+        }
+
+        return patchFiles;
+    }
+
+    /**
+     * @param resource folder of a patch file
+     * @return the patch folder with its parents, or null for the root
+     */
+    public static GroovyPatchFolder getPatchFolder(Resource resource) {
+        GroovyPatchFolder patchFolder = resource.adaptTo(GroovyPatchFolder.class);
+
+        if (resource.getPath().equals(ROOT)) {
+            return null;
+        }
+
+        if (resource.getParent() != null && !resource.getParent().getPath().equals(ROOT)) {
+            GroovyPatchFolder parentPatchFolder = getPatchFolder(resource.getParent());
+            if (parentPatchFolder != null) {
+                patchFolder.setParent(parentPatchFolder);
+            }
+        }
+        return patchFolder;
+    }
+
+    /**
+     * @param folder top level project folder
+     * @return the manifest of the folder, or null in case it has none or it's invalid
+     */
+    public static PatchManifest getManifest(Resource folder) {
+        Resource manifestResource = folder.getChild(PatchManifest.NAME + "/" + JcrConstants.JCR_CONTENT);
+        if (manifestResource == null) {
+            return null;
+        }
+
+        try {
+            return PatchManifest.parse(manifestResource.getValueMap().get(JcrConstants.JCR_DATA, String.class));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Ignoring the manifest of {}, the patches are scanned: {}", folder.getPath(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param manifest manifest of a project folder
+     * @return the patch folders of the manifest with their parents, keyed by their path relative to the root
+     */
+    public static Map<String, GroovyPatchFolder> getPatchFolders(PatchManifest manifest) {
+        //folders are listed before their subfolders
+        Map<String, GroovyPatchFolder> patchFolders = new LinkedHashMap<>();
+        for (PatchManifest.Folder folder : manifest.getFolders()) {
+            GroovyPatchFolder parent = patchFolders.get(StringUtils.substringBeforeLast(folder.getPath(), "/"));
+            patchFolders.put(folder.getPath(), GroovyPatchFolder.fromManifest(ROOT + "/" + folder.getPath(), folder, parent));
+        }
+        return patchFolders;
+    }
+
+    /**
+     * @return credentials of the service user that reads the patches
+     */
+    public static Map<String, Object> getCredentials() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return credentials;
+    }
+}
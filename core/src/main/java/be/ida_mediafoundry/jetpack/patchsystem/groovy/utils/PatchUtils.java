@@ -1,7 +1,7 @@
 package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
 
-import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
 import org.apache.commons.lang3.StringUtils;
 
 public abstract class PatchUtils {
@@ -9,12 +9,33 @@ public abstract class PatchUtils {
     /**
      * Check whether there is a difference between the content of the patch file and the earlier created result.
      * Only in case the patch was executed earlier.
+     * The content is compared with the digest algorithm of the result, results without digest are compared on their md5.
+     * When the result has a normalized fingerprint, a patch with the same fingerprint is not different:
+     * only comments or formatting were changed.
      *
      * @param patchFile Patch file to compare
      * @param patchResult Patch result to compare
-     * @return true in case a difference is found and the groovy file was updated.
+     * @return true in case a difference is found and the patch file was updated.
      */
-    public static boolean isDiff(GroovyPatchFile patchFile, GroovyPatchResult patchResult) {
-        return patchResult != null && StringUtils.isNotBlank(patchResult.getMd5()) && !patchFile.getMd5().equals(patchResult.getMd5());
+    public static boolean isDiff(ContentPatchFile patchFile, GroovyPatchResult patchResult) {
+        if (patchResult == null || isSameContent(patchFile, patchResult)) {
+            return false;
+        }
+        return StringUtils.isBlank(patchResult.getFingerprint()) || !patchResult.getFingerprint().equals(patchFile.getFingerprint());
+    }
+
+    /**
+     * @param patchFile Patch file to compare
+     * @param patchResult Patch result to compare
+     * @return true in case the result has the digest (or md5) of the patch file, or in case the result has neither.
+     * The md5 is compared when the digest of the patch isn't known, e.g. when it's not in the manifest of the patch.
+     */
+    public static boolean isSameContent(ContentPatchFile patchFile, GroovyPatchResult patchResult) {
+        DigestAlgorithm algorithm = DigestAlgorithm.fromDigest(patchResult.getDigest());
+        String digest = algorithm != null ? patchFile.getDigest(algorithm) : null;
+        if (algorithm != null && (digest != null || StringUtils.isBlank(patchResult.getMd5()))) {
+            return patchResult.getDigest().equals(digest);
+        }
+        return StringUtils.isBlank(patchResult.getMd5()) || patchFile.getMd5().equals(patchResult.getMd5());
     }
 }
@@ -0,0 +1,419 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fingerprint of the normalized token stream of a script: comments and insignificant whitespace are left out,
+ * so reformatting a script or changing its comments doesn't change the fingerprint.
+ *
+ * <ul>
+ *     <li>line comments, block comments and a leading shebang line are removed</li>
+ *     <li>spaces and tabs are kept as one space, only between two identifier or two operator characters</li>
+ *     <li>line breaks are kept, as they end statements, but empty lines are removed</li>
+ *     <li>string literals, including triple quoted, slashy and dollar slashy strings, are kept as they are,
+ *     together with the code of their {@code ${}} placeholders</li>
+ * </ul>
+ *
+ * A slash starts a slashy string where groovy expects an expression, e.g. after an operator or after {@code return}.
+ * When that depends on the previous line, the fingerprint is the md5 of the script as it is, so a script is never
+ * considered unchanged because its slashy strings were normalized. The same goes for a slash in a placeholder,
+ * which may start a comment or a slashy string with a brace in it.
+ *
+ * The script is read once and the normalized characters are digested in blocks, without building the normalized script.
+ */
+public final class ScriptFingerprint {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int EOF = -1;
+    private static final int MAX_KEYWORD_LENGTH = 6;
+    //keywords after which groovy expects an expression, so a slash starts a slashy string
+    private static final Set<String> EXPRESSION_KEYWORDS = new HashSet<>(Arrays.asList("assert", "case", "else", "in", "return", "throw"));
+
+    private final Source reader;
+    private final MessageDigest digest = DigestUtils.getMd5Digest();
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder word = new StringBuilder(MAX_KEYWORD_LENGTH + 1);
+    private int length;
+    private boolean empty = true;
+    private boolean afterLiteral;
+    private char last;
+
+    private ScriptFingerprint(Source reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @param script content of the script
+     * @return hex md5 of the normalized script, or null in case there is no script
+     */
+    public static String of(String script) {
+        if (script == null) {
+            return null;
+        }
+        try {
+            return new ScriptFingerprint(new Source(new StringReader(script), null)).normalize();
+        } catch (AmbiguousScriptException e) {
+            return DigestAlgorithm.MD5.hex(script);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param reader reader of the script, not closed
+     * @return hex md5 of the normalized script
+     * @throws IOException in case the script can't be read
+     */
+    public static String of(Reader reader) throws IOException {
+        Source source = new Source(reader, DigestUtils.getMd5Digest());
+        try {
+            return new ScriptFingerprint(source).normalize();
+        } catch (AmbiguousScriptException e) {
+            return source.rawMd5();
+        }
+    }
+
+    private String normalize() throws IOException, AmbiguousScriptException {
+        boolean pendingSpace = false;
+        boolean pendingNewline = false;
+
+        if (peek('#', '!')) {
+            skipLine();
+        }
+
+        int c;
+        while ((c = reader.read()) != EOF) {
+            if (c == '\n') {
+                pendingNewline = true;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                pendingSpace = true;
+            } else if (c == '/' && peek('/')) {
+                skipLine();
+                pendingNewline = true;
+            } else if (c == '/' && peek('*')) {
+                reader.read();
+                if (skipBlockComment()) {
+                    pendingNewline = true;
+                } else {
+                    pendingSpace = true;
+                }
+            } else {
+                boolean slashyString = c == '/' && isSlashyString(pendingNewline);
+                boolean dollarSlashyString = c == '$' && peek('/') && (empty || pendingSpace || pendingNewline || !isIdentifierPart(last));
+                if (!empty) {
+                    if (pendingNewline) {
+                        emit('\n');
+                    } else if (pendingSpace && isSameKind(last, (char) c)) {
+                        emit(' ');
+                    }
+                }
+                pendingSpace = false;
+                pendingNewline = false;
+                afterLiteral = false;
+
+                emit((char) c);
+                if (c == '\'' || c == '"') {
+                    copyString((char) c);
+                    afterLiteral = true;
+                } else if (slashyString) {
+                    copySlashyString();
+                    afterLiteral = true;
+                } else if (dollarSlashyString) {
+                    copyDollarSlashyString();
+                    afterLiteral = true;
+                }
+            }
+        }
+
+        digest(length);
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Copy a string literal as it is, the opening quote is already emitted.
+     */
+    private void copyString(char quote) throws IOException, AmbiguousScriptException {
+        boolean tripleQuoted = peek(quote, quote);
+        if (tripleQuoted) {
+            emit((char) reader.read());
+            emit((char) reader.read());
+        }
+
+        int quotes = 0;
+        int c;
+        while ((c = reader.read()) != EOF) {
+            emit((char) c);
+            if (c == '\\') {
+                int escapedChar = reader.read();
+                if (escapedChar == EOF) {
+                    return;
+                }
+                emit((char) escapedChar);
+                quotes = 0;
+            } else if (quote == '"' && c == '$' && peek('{')) {
+                emit((char) reader.read());
+                copyPlaceholder();
+                quotes = 0;
+            } else if (c == quote) {
+                quotes++;
+                if (!tripleQuoted || quotes == 3) {
+                    return;
+                }
+            } else {
+                quotes = 0;
+            }
+        }
+    }
+
+    /**
+     * @param pendingNewline true in case the slash is the first character of a line
+     * @return true in case the slash starts a slashy string, false in case it's a division
+     * @throws AmbiguousScriptException in case that depends on the previous line
+     */
+    private boolean isSlashyString(boolean pendingNewline) throws AmbiguousScriptException {
+        if (empty) {
+            return true;
+        }
+        if (pendingNewline) {
+            throw new AmbiguousScriptException();
+        }
+        if (afterLiteral || last == ')' || last == ']' || last == '}') {
+            return false;
+        }
+        if (isIdentifierPart(last)) {
+            return EXPRESSION_KEYWORDS.contains(word.toString());
+        }
+        return true;
+    }
+
+    /**
+     * Copy a slashy string as it is, the opening slash is already emitted. Only a slash is escaped.
+     */
+    private void copySlashyString() throws IOException, AmbiguousScriptException {
+        int c;
+        while ((c = reader.read()) != EOF) {
+            emit((char) c);
+            if (c == '\\' && peek('/')) {
+                emit((char) reader.read());
+            } else if (c == '$' && peek('{')) {
+                emit((char) reader.read());
+                copyPlaceholder();
+            } else if (c == '/') {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy a dollar slashy string as it is, the opening dollar is already emitted. A dollar escapes a dollar or a slash.
+     */
+    private void copyDollarSlashyString() throws IOException, AmbiguousScriptException {
+        emit((char) reader.read());
+        int c;
+        while ((c = reader.read()) != EOF) {
+            emit((char) c);
+            if (c == '$' && (peek('$') || peek('/'))) {
+                emit((char) reader.read());
+            } else if (c == '$' && peek('{')) {
+                emit((char) reader.read());
+                copyPlaceholder();
+            } else if (c == '/' && peek('$')) {
+                emit((char) reader.read());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the code of a placeholder as it is, the opening brace is already emitted.
+     * String literals in the placeholder are copied with their own placeholders.
+     *
+     * @throws AmbiguousScriptException in case the placeholder contains a slash
+     */
+    private void copyPlaceholder() throws IOException, AmbiguousScriptException {
+        int depth = 1;
+        int c;
+        while ((c = reader.read()) != EOF) {
+            emit((char) c);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return;
+            } else if (c == '\'' || c == '"') {
+                copyString((char) c);
+            } else if (c == '/') {
+                throw new AmbiguousScriptException();
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = reader.read()) != EOF && c != '\n') {
+            //skip
+        }
+    }
+
+    /**
+     * @return true in case the comment spans multiple lines
+     */
+    private boolean skipBlockComment() throws IOException {
+        boolean multiline = false;
+        int c;
+        while ((c = reader.read()) != EOF) {
+            if (c == '\n') {
+                multiline = true;
+            } else if (c == '*' && peek('/')) {
+                reader.read();
+                break;
+            }
+        }
+        return multiline;
+    }
+
+    private boolean peek(char expected) throws IOException {
+        return reader.peek(0) == expected;
+    }
+
+    private boolean peek(char first, char second) throws IOException {
+        return reader.peek(0) == first && reader.peek(1) == second;
+    }
+
+    private static boolean isSameKind(char previous, char c) {
+        return isIdentifierPart(previous) && isIdentifierPart(c) || isOperator(previous) && isOperator(c);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isOperator(char c) {
+        return "+-*/%=<>!&|^~?:.".indexOf(c) >= 0;
+    }
+
+    private void emit(char c) {
+        buffer[length++] = c;
+        last = c;
+        if (!isIdentifierPart(c)) {
+            word.setLength(0);
+        } else if (word.length() <= MAX_KEYWORD_LENGTH) {
+            word.append(c);
+        }
+        empty = false;
+        if (length == BUFFER_SIZE) {
+            //keep a high surrogate with its low surrogate, so the block encodes correctly
+            digest(Character.isHighSurrogate(c) ? BUFFER_SIZE - 1 : BUFFER_SIZE);
+        }
+    }
+
+    private void digest(int count) {
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buffer, 0, count)));
+        System.arraycopy(buffer, count, buffer, 0, length - count);
+        length -= count;
+    }
+
+    /**
+     * The normalized script can't be determined without parsing the script.
+     */
+    private static final class AmbiguousScriptException extends Exception {
+
+        private AmbiguousScriptException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Buffered reader with lookahead, not synchronized.
+     * Optionally digests the script as it is, while it's read.
+     */
+    private static final class Source {
+
+        private final Reader reader;
+        private final MessageDigest rawDigest;
+        private final char[] chars = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        //high surrogate at the end of the last block, digested with the next block
+        private char pendingHighSurrogate;
+
+        private Source(Reader reader, MessageDigest rawDigest) {
+            this.reader = reader;
+            this.rawDigest = rawDigest;
+        }
+
+        /**
+         * @return hex md5 of the complete script as it is
+         */
+        private String rawMd5() throws IOException {
+            char[] rest = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(rest)) != EOF) {
+                digestRaw(rest, 0, read);
+            }
+            if (pendingHighSurrogate != 0) {
+                rawDigest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(new char[]{pendingHighSurrogate})));
+            }
+            return Hex.encodeHexString(rawDigest.digest());
+        }
+
+        private void digestRaw(char[] block, int offset, int count) {
+            StringBuilder chars = new StringBuilder(count + 1);
+            if (pendingHighSurrogate != 0) {
+                chars.append(pendingHighSurrogate);
+                pendingHighSurrogate = 0;
+            }
+            chars.append(block, offset, count);
+            if (chars.length() > 0 && Character.isHighSurrogate(chars.charAt(chars.length() - 1))) {
+                pendingHighSurrogate = chars.charAt(chars.length() - 1);
+                chars.setLength(chars.length() - 1);
+            }
+            rawDigest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(chars)));
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill(1)) {
+                return EOF;
+            }
+            return chars[position++];
+        }
+
+        private int peek(int offset) throws IOException {
+            if (position + offset >= limit && !fill(offset + 1)) {
+                return EOF;
+            }
+            return chars[position + offset];
+        }
+
+        /**
+         * @return true in case at least the number of characters is available
+         */
+        private boolean fill(int count) throws IOException {
+            System.arraycopy(chars, position, chars, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < count) {
+                int read = reader.read(chars, limit, chars.length - limit);
+                if (read == EOF) {
+                    return false;
+                }
+                if (rawDigest != null) {
+                    digestRaw(chars, limit, read);
+                }
+                limit += read;
+            }
+            return true;
+        }
+    }
+}
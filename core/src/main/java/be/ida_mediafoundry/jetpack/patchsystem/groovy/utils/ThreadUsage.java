@@ -0,0 +1,90 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * CPU time and allocated bytes of the current thread since the usage was started, read from the {@link ThreadMXBean}.
+ * Work the script hands off to other threads, e.g. the partitions of the parallel node visitor, isn't included.
+ *
+ * <pre>
+ * ThreadUsage usage = ThreadUsage.start();
+ * runScript();
+ * long cpuTime = usage.getCpuTime();
+ * </pre>
+ */
+public final class ThreadUsage {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = isCpuTimeSupported();
+    private static final boolean ALLOCATED_BYTES_SUPPORTED = isAllocatedBytesSupported();
+
+    private final long threadId;
+    private final long cpuTimeStart;
+    private final long allocatedBytesStart;
+
+    private ThreadUsage() {
+        threadId = Thread.currentThread().getId();
+        cpuTimeStart = getCurrentCpuTime();
+        allocatedBytesStart = getCurrentAllocatedBytes();
+    }
+
+    public static ThreadUsage start() {
+        return new ThreadUsage();
+    }
+
+    /**
+     * @return CPU time in nanoseconds of the thread since the start, or {@link #UNSUPPORTED}
+     */
+    public long getCpuTime() {
+        return cpuTimeStart == UNSUPPORTED ? UNSUPPORTED : getCurrentCpuTime() - cpuTimeStart;
+    }
+
+    /**
+     * @return bytes allocated by the thread since the start, or {@link #UNSUPPORTED}
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytesStart == UNSUPPORTED ? UNSUPPORTED : getCurrentAllocatedBytes() - allocatedBytesStart;
+    }
+
+    private long getCurrentCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getThreadCpuTime(threadId) : UNSUPPORTED;
+    }
+
+    private long getCurrentAllocatedBytes() {
+        return ALLOCATED_BYTES_SUPPORTED
+                ? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(threadId)
+                : UNSUPPORTED;
+    }
+
+    private static boolean isCpuTimeSupported() {
+        try {
+            if (THREAD_MX_BEAN.isThreadCpuTimeSupported() && !THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+                THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+            }
+            return THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Allocated bytes are only available through the HotSpot extension of the ThreadMXBean.
+     */
+    private static boolean isAllocatedBytesSupported() {
+        try {
+            if (!(THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean)) {
+                return false;
+            }
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+            if (threadMXBean.isThreadAllocatedMemorySupported() && !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                threadMXBean.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threadMXBean.isThreadAllocatedMemoryEnabled();
+        } catch (UnsupportedOperationException | SecurityException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JFR event classes, only loaded when the jdk.jfr package is available.
+ */
+final class JfrPatchEvents {
+
+    private JfrPatchEvents() {
+    }
+
+    static PatchEvent begin(PatchEventType eventType) {
+        AbstractPatchEvent event;
+        switch (eventType) {
+            case SCAN:
+                event = new PatchScanEvent();
+                break;
+            case HASH:
+                event = new PatchHashEvent();
+                break;
+            case EXECUTE:
+                event = new PatchExecuteEvent();
+                break;
+            case RESULT_PERSIST:
+                event = new PatchResultPersistEvent();
+                break;
+            default:
+                event = new PatchJobEvent();
+                break;
+        }
+
+        //a disabled event is dropped right away, so the phase isn't timed twice
+        if (!event.isEnabled()) {
+            return PatchEvent.NONE;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Enabled(false)
+    @StackTrace(false)
+    @Category({ "Jetpack", "Patch System" })
+    abstract static class AbstractPatchEvent extends Event implements PatchEvent {
+
+        @Label("Path")
+        String path;
+
+        @Label("Type")
+        String type;
+
+        @Label("Project")
+        String project;
+
+        @Override
+        public void end(String path, String type, String project, long size) {
+            end();
+            if (shouldCommit()) {
+                this.path = path;
+                this.type = type;
+                this.project = project;
+                setSize(size);
+                commit();
+            }
+        }
+
+        abstract void setSize(long size);
+    }
+
+    @Name(PatchEventType.PREFIX + "PatchScan")
+    @Label("Patch Scan")
+    @Description("Scan of the repository for patch files")
+    static class PatchScanEvent extends AbstractPatchEvent {
+
+        @Label("Patches")
+        long patches;
+
+        @Override
+        void setSize(long size) {
+            patches = size;
+        }
+    }
+
+    @Name(PatchEventType.PREFIX + "PatchHash")
+    @Label("Patch Hash")
+    @Description("Hash of a patch file to compare it with its result")
+    static class PatchHashEvent extends AbstractPatchEvent {
+
+        @Label("Script Size")
+        @DataAmount
+        long bytes;
+
+        @Override
+        void setSize(long size) {
+            bytes = size;
+        }
+    }
+
+    @Name(PatchEventType.PREFIX + "PatchExecute")
+    @Label("Patch Execute")
+    @Description("Execution of a patch or transactional group")
+    static class PatchExecuteEvent extends AbstractPatchEvent {
+
+        @Label("Output Size")
+        @DataAmount
+        long bytes;
+
+        @Override
+        void setSize(long size) {
+            bytes = size;
+        }
+    }
+
+    @Name(PatchEventType.PREFIX + "PatchResultPersist")
+    @Label("Patch Result Persist")
+    @Description("Persist of a patch result")
+    static class PatchResultPersistEvent extends AbstractPatchEvent {
+
+        @Label("Output Size")
+        @DataAmount
+        long bytes;
+
+        @Override
+        void setSize(long size) {
+            bytes = size;
+        }
+    }
+
+    @Name(PatchEventType.PREFIX + "PatchJob")
+    @Label("Patch Job")
+    @Description("Execution of a patch job")
+    static class PatchJobEvent extends AbstractPatchEvent {
+
+        @Label("Patches")
+        long patches;
+
+        @Override
+        void setSize(long size) {
+            patches = size;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jfr;
+
+/**
+ * A phase of the patch system that is being recorded, started by {@link PatchEvents#begin(PatchEventType)}.
+ */
+public interface PatchEvent {
+
+    /**
+     * Event that records nothing, used when JFR isn't available or the event isn't enabled.
+     */
+    PatchEvent NONE = (path, type, project, size) -> {
+        //nothing is recorded
+    };
+
+    /**
+     * End the phase and commit the event in case it is enabled in the running recording.
+     *
+     * @param path path of the patch, or of the scanned folder
+     * @param type type of the patches
+     * @param project project of the patch, or {@link be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics#ALL}
+     * @param size size of the phase, see {@link PatchEventType}
+     */
+    void end(String path, String type, String project, long size);
+}
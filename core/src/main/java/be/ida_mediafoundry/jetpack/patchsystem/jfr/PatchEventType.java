@@ -0,0 +1,41 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jfr;
+
+/**
+ * JFR events of the phases of the patch system.
+ * The name is the name of the event in a recording, the size passed to {@link PatchEvent#end} differs per event.
+ */
+public enum PatchEventType {
+
+    /**
+     * Scan of the repository for patch files, the size is the number of patches found.
+     */
+    SCAN("PatchScan"),
+    /**
+     * Hash of a patch file to compare it with its result, the size is the script size in bytes.
+     */
+    HASH("PatchHash"),
+    /**
+     * Execution of a patch or transactional group, the size is the output size in bytes.
+     */
+    EXECUTE("PatchExecute"),
+    /**
+     * Persist of a patch result, the size is the output size in bytes.
+     */
+    RESULT_PERSIST("PatchResultPersist"),
+    /**
+     * Execution of a patch job, the size is the number of patches in the job.
+     */
+    JOB("PatchJob");
+
+    public static final String PREFIX = "be.ida_mediafoundry.jetpack.";
+
+    private final String name;
+
+    PatchEventType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return PREFIX + name;
+    }
+}
@@ -0,0 +1,35 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jfr;
+
+/**
+ * Starts the JFR events of the patch system.
+ * The events are disabled by default and have to be enabled in the settings of a recording.
+ * When the JVM has no JFR, or the bundle can't see the jdk.jfr package, all events are {@link PatchEvent#NONE}.
+ */
+public final class PatchEvents {
+
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private PatchEvents() {
+    }
+
+    /**
+     * @param eventType phase that starts
+     * @return the started event, or {@link PatchEvent#NONE} in case the event isn't recorded
+     */
+    public static PatchEvent begin(PatchEventType eventType) {
+        return AVAILABLE ? JfrPatchEvents.begin(eventType) : PatchEvent.NONE;
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PatchEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jmx;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+import java.util.Date;
+
+/**
+ * Live state of the patch system and operations on it, for monitoring agents and operations staff.
+ * All attributes are read from memory, polling them doesn't touch the repository.
+ */
+@Description("Jetpack - Patch System")
+public interface PatchSystemMBean {
+
+    @Description("Number of patches in the index, -1 until the index is built")
+    int getTotalPatches();
+
+    @Description("Number of new or modified patches in the index, -1 until the index is built")
+    int getPendingPatches();
+
+    @Description("Number of patches in the index of which the last execution failed, -1 until the index is built")
+    int getFailedPatches();
+
+    @Description("Moment the index was last rebuilt, or listed by the console")
+    Date getIndexDate();
+
+    @Description("Id of the running patch job")
+    String getCurrentJob();
+
+    @Description("Path of the running patch or transactional group")
+    String getCurrentPatch();
+
+    @Description("Duration in milliseconds of the last finished patch job, -1 in case no job finished yet")
+    long getLastJobDuration();
+
+    @Description("Share of the compiled script lookups served from the script cache")
+    double getScriptCacheHitRatio();
+
+    @Description("Share of the result lookups served from the pending (written behind) results")
+    double getResultCacheHitRatio();
+
+    @Description("Trigger all new or modified patches")
+    String triggerNewPatches();
+
+    @Description("Stop the running patch job before its next patch")
+    String cancelJob();
+
+    @Description("Rebuild the index from the patches and results in the repository")
+    String rebuildIndex();
+}
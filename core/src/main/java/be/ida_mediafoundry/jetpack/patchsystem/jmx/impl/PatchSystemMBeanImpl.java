@@ -0,0 +1,131 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jmx.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyScriptCache;
+import be.ida_mediafoundry.jetpack.patchsystem.jmx.PatchSystemMBean;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.SimplePatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemJobService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import org.apache.sling.event.jobs.JobManager;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+@Component(
+        service = DynamicMBean.class,
+        property = {
+                "jmx.objectname=be.ida_mediafoundry.jetpack:type=PatchSystem"
+        })
+public class PatchSystemMBeanImpl extends AnnotatedStandardMBean implements PatchSystemMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatchSystemMBeanImpl.class);
+
+    @Reference
+    private PatchSystemStateService patchSystemStateService;
+
+    @Reference
+    private PatchSystemJobService patchSystemJobService;
+
+    @Reference
+    private JobManager jobManager;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyScriptCache groovyScriptCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyPatchResultRepository patchResultRepository;
+
+    public PatchSystemMBeanImpl() throws NotCompliantMBeanException {
+        super(PatchSystemMBean.class);
+    }
+
+    @Override
+    public int getTotalPatches() {
+        return patchSystemStateService.getTotalPatches();
+    }
+
+    @Override
+    public int getPendingPatches() {
+        return patchSystemStateService.getPendingPatches();
+    }
+
+    @Override
+    public int getFailedPatches() {
+        return patchSystemStateService.getFailedPatches();
+    }
+
+    @Override
+    public Date getIndexDate() {
+        Calendar indexDate = patchSystemStateService.getIndexDate();
+        return indexDate != null ? indexDate.getTime() : null;
+    }
+
+    @Override
+    public String getCurrentJob() {
+        return patchSystemStateService.getCurrentJob();
+    }
+
+    @Override
+    public String getCurrentPatch() {
+        return patchSystemStateService.getCurrentPatch();
+    }
+
+    @Override
+    public long getLastJobDuration() {
+        return patchSystemStateService.getLastJobDuration();
+    }
+
+    @Override
+    public double getScriptCacheHitRatio() {
+        return groovyScriptCache != null ? getHitRatio(groovyScriptCache.getStatistics()) : 0;
+    }
+
+    @Override
+    public double getResultCacheHitRatio() {
+        return patchResultRepository != null ? getHitRatio(patchResultRepository.getStatistics()) : 0;
+    }
+
+    @Override
+    public String triggerNewPatches() {
+        List<SimplePatchFile> patches = patchSystemJobService.executeNewPatches();
+        if (patches == null) {
+            return "Could not trigger patches.";
+        }
+        LOG.info("Triggered {} patch(es) through JMX", patches.size());
+        return patches.isEmpty() ? "No patches found to trigger." : "Triggered " + patches.size() + " patch(es).";
+    }
+
+    @Override
+    public String cancelJob() {
+        String jobId = patchSystemStateService.getCurrentJob();
+        if (jobId == null) {
+            return "No patch job is running.";
+        }
+
+        LOG.info("Stopping patch job {} through JMX", jobId);
+        jobManager.stopJobById(jobId);
+        return "Stopping patch job " + jobId + " before its next patch.";
+    }
+
+    @Override
+    public String rebuildIndex() {
+        return "Indexed " + patchSystemStateService.rebuildIndex() + " patch(es).";
+    }
+
+    private static double getHitRatio(CacheStatistics statistics) {
+        return statistics != null ? statistics.getHitRatio() : 0;
+    }
+}
@@ -0,0 +1,53 @@
+package be.ida_mediafoundry.jetpack.patchsystem.metrics;
+
+/**
+ * Timers and histograms of the phases of the patch system.
+ * The name is the Sling Metrics name, the labels of a metric are added to it as extra segments.
+ */
+public enum PatchMetric {
+
+    DISCOVERY("discovery", Kind.TIMER, "Time to discover the patches to execute of a type."),
+    DISCOVERY_SCAN("discovery.scan", Kind.TIMER, "Time to scan the repository for patch files."),
+    DISCOVERY_HASH("discovery.hash", Kind.TIMER, "Time to hash a patch file and compare it with its result."),
+    DISCOVERY_RESULT_LOOKUP("discovery.result_lookup", Kind.TIMER, "Time to look up the result of a patch file."),
+    DISCOVERED_PATCHES("discovery.patches", Kind.HISTOGRAM, "Number of patches to execute found by a discovery."),
+    TRIGGER("trigger", Kind.TIMER, "Time to add a patch job."),
+    TRIGGERED_PATCHES("trigger.patches", Kind.HISTOGRAM, "Number of patches in an added patch job."),
+    QUEUE_WAIT("job.queue_wait", Kind.TIMER, "Time between adding a patch job and the start of its execution."),
+    JOB_EXECUTION("job.execution", Kind.TIMER, "Time to execute a patch job."),
+    PATCH_EXECUTION("patch.execution", Kind.TIMER, "Time to execute a patch."),
+    RESULT_PERSIST("result.persist", Kind.TIMER, "Time to persist a patch result."),
+    RESULT_FLUSH("result.flush", Kind.HISTOGRAM, "Number of pending patch results persisted by a flush."),
+    LIST_REQUEST("request.list", Kind.TIMER, "Time to handle a request of the list servlet."),
+    CHECK_REQUEST("request.check", Kind.TIMER, "Time to handle a request of the check servlet."),
+    TRIGGER_REQUEST("request.trigger", Kind.TIMER, "Time to handle a request of the trigger servlet.");
+
+    /**
+     * Timers measure durations in nanoseconds, histograms measure counts.
+     */
+    public enum Kind {
+        TIMER, HISTOGRAM
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final String description;
+
+    PatchMetric(String name, Kind kind, String description) {
+        this.name = name;
+        this.kind = kind;
+        this.description = description;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,85 @@
+package be.ida_mediafoundry.jetpack.patchsystem.metrics;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Records the timers and histograms of the patch system, labelled by patch type and project.
+ */
+public interface PatchSystemMetrics {
+
+    /**
+     * Label value of a metric that isn't recorded for a single patch type or project.
+     */
+    String ALL = "all";
+
+    /**
+     * Metrics that record nothing, used when the metrics aren't available.
+     */
+    PatchSystemMetrics NONE = new PatchSystemMetrics() {
+        @Override
+        public void time(PatchMetric metric, String type, String project, long nanos) {
+            //nothing is recorded
+        }
+
+        @Override
+        public void update(PatchMetric metric, String type, String project, long value) {
+            //nothing is recorded
+        }
+
+        @Override
+        public void writePrometheus(Writer writer) {
+            //nothing is recorded
+        }
+    };
+
+    /**
+     * @param metric timer to update
+     * @param type type of the patches, or {@link #ALL}
+     * @param project project of the patches, or {@link #ALL}
+     * @param nanos measured duration in nanoseconds
+     */
+    void time(PatchMetric metric, String type, String project, long nanos);
+
+    /**
+     * @param metric histogram to update
+     * @param type type of the patches, or {@link #ALL}
+     * @param project project of the patches, or {@link #ALL}
+     * @param value measured value
+     */
+    void update(PatchMetric metric, String type, String project, long value);
+
+    /**
+     * Write all recorded metrics in the Prometheus text format.
+     *
+     * @param writer writer of the response
+     * @throws IOException in case the metrics can't be written
+     */
+    void writePrometheus(Writer writer) throws IOException;
+
+    default void time(PatchMetric metric, long nanos) {
+        time(metric, ALL, ALL, nanos);
+    }
+
+    default void time(PatchMetric metric, String type, long nanos) {
+        time(metric, type, ALL, nanos);
+    }
+
+    default void update(PatchMetric metric, String type, long value) {
+        update(metric, type, ALL, value);
+    }
+
+    /**
+     * @param patchPath path of a patch script, or the class name of an on-deploy script
+     * @return the top level folder under /apps/patches, or the package of the class
+     */
+    static String getProject(String patchPath) {
+        if (StringUtils.startsWith(patchPath, "/")) {
+            String[] segments = StringUtils.split(patchPath, "/");
+            return segments.length > 3 ? segments[2] : ALL;
+        }
+        return StringUtils.contains(patchPath, ".") ? StringUtils.substringBeforeLast(patchPath, ".") : ALL;
+    }
+}
@@ -0,0 +1,148 @@
+package be.ida_mediafoundry.jetpack.patchsystem.metrics.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Sampling;
+import com.codahale.metrics.Snapshot;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.metrics.Histogram;
+import org.apache.sling.commons.metrics.Metric;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Patch system metrics registered with Sling Metrics, which also exposes them as MBeans in the org.apache.sling JMX domain.
+ * The labels are part of the metric name, e.g. jetpack.patchsystem.patch.execution.groovy.myproject.
+ */
+@Component(
+        name = "Jetpack - Patch System Metrics",
+        service = PatchSystemMetrics.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=Timers and histograms of the patch system",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+public class PatchSystemMetricsImpl implements PatchSystemMetrics {
+
+    static final String PREFIX = "jetpack.patchsystem.";
+
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.99 };
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Reference
+    private MetricsService metricsService;
+
+    private final Map<String, LabelledMetric> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public void time(PatchMetric metric, String type, String project, long nanos) {
+        if (metric.getKind() != PatchMetric.Kind.TIMER) {
+            throw new IllegalArgumentException(metric + " is not a timer");
+        }
+        LabelledMetric labelledMetric = getMetric(metric, type, project);
+        ((Timer) labelledMetric.metric).update(nanos, TimeUnit.NANOSECONDS);
+        labelledMetric.sum.add(nanos);
+    }
+
+    @Override
+    public void update(PatchMetric metric, String type, String project, long value) {
+        if (metric.getKind() != PatchMetric.Kind.HISTOGRAM) {
+            throw new IllegalArgumentException(metric + " is not a histogram");
+        }
+        LabelledMetric labelledMetric = getMetric(metric, type, project);
+        ((Histogram) labelledMetric.metric).update(value);
+        labelledMetric.sum.add(value);
+    }
+
+    @Override
+    public void writePrometheus(Writer writer) throws IOException {
+        Map<String, LabelledMetric> sortedMetrics = new TreeMap<>(metrics);
+
+        for (PatchMetric metric : PatchMetric.values()) {
+            String name = getPrometheusName(metric);
+            boolean described = false;
+
+            for (LabelledMetric labelledMetric : sortedMetrics.values()) {
+                Sampling sampling = labelledMetric.patchMetric == metric ? getSampling(labelledMetric) : null;
+                if (sampling == null) {
+                    continue;
+                }
+
+                if (!described) {
+                    writer.write("# HELP " + name + " " + metric.getDescription() + "\n");
+                    writer.write("# TYPE " + name + " summary\n");
+                    described = true;
+                }
+                writeSummary(writer, name, labelledMetric, sampling.getSnapshot(), ((Counting) sampling).getCount());
+            }
+        }
+    }
+
+    private void writeSummary(Writer writer, String name, LabelledMetric labelledMetric, Snapshot snapshot, long count) throws IOException {
+        String labels = "type=\"" + escape(labelledMetric.type) + "\",project=\"" + escape(labelledMetric.project) + "\"";
+        double scale = labelledMetric.patchMetric.getKind() == PatchMetric.Kind.TIMER ? NANOS_PER_SECOND : 1;
+
+        for (double quantile : QUANTILES) {
+            writer.write(name + "{" + labels + ",quantile=\"" + quantile + "\"} " + snapshot.getValue(quantile) / scale + "\n");
+        }
+        writer.write(name + "_sum{" + labels + "} " + labelledMetric.sum.sum() / scale + "\n");
+        writer.write(name + "_count{" + labels + "} " + count + "\n");
+    }
+
+    /**
+     * @return the Dropwizard metric behind the Sling metric, null in case Sling Metrics doesn't record
+     */
+    private static Sampling getSampling(LabelledMetric labelledMetric) {
+        if (labelledMetric.patchMetric.getKind() == PatchMetric.Kind.TIMER) {
+            return labelledMetric.metric.adaptTo(com.codahale.metrics.Timer.class);
+        }
+        return labelledMetric.metric.adaptTo(com.codahale.metrics.Histogram.class);
+    }
+
+    private LabelledMetric getMetric(PatchMetric patchMetric, String type, String project) {
+        String labelledType = StringUtils.defaultIfBlank(type, ALL);
+        String labelledProject = StringUtils.defaultIfBlank(project, ALL);
+        String name = PREFIX + patchMetric.getName() + "." + labelledType + "." + labelledProject;
+
+        return metrics.computeIfAbsent(name, key -> new LabelledMetric(patchMetric, labelledType, labelledProject,
+                patchMetric.getKind() == PatchMetric.Kind.TIMER ? metricsService.timer(key) : metricsService.histogram(key)));
+    }
+
+    private static String getPrometheusName(PatchMetric metric) {
+        String name = (PREFIX + metric.getName()).replace('.', '_');
+        return metric.getKind() == PatchMetric.Kind.TIMER ? name + "_seconds" : name;
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class LabelledMetric {
+
+        private final PatchMetric patchMetric;
+        private final String type;
+        private final String project;
+        private final Metric metric;
+        //the reservoir of the metric only keeps a sample, the sum of the summary is kept next to it
+        private final LongAdder sum = new LongAdder();
+
+        LabelledMetric(PatchMetric patchMetric, String type, String project, Metric metric) {
+            this.patchMetric = patchMetric;
+            this.type = type;
+            this.project = project;
+            this.metric = metric;
+        }
+    }
+}
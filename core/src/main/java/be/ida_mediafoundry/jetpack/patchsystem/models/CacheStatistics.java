@@ -0,0 +1,40 @@
+package be.ida_mediafoundry.jetpack.patchsystem.models;
+
+/**
+ * Hits and misses of an in-memory cache since the start of its service.
+ */
+public class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final int size;
+
+    public CacheStatistics(long hits, long misses, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of entries in the cache
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return share of the lookups served from the cache, 0 in case there were no lookups
+     */
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,35 @@
+package be.ida_mediafoundry.jetpack.patchsystem.models;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+
+import java.util.List;
+
+/**
+ * Patch file under /apps/patches that is identified by its content: a groovy script or a bulk patch descriptor.
+ * The results of these patches are stored by the md5 or digest of the content, so a modified patch runs again.
+ */
+public interface ContentPatchFile extends PatchFile {
+
+    /**
+     * @return content of the patch, or null in case the patch was discovered from a manifest without reading it
+     */
+    String getFileContent();
+
+    String getMd5();
+
+    /**
+     * @param algorithm algorithm of the digest
+     * @return prefixed digest of the content, or null in case it's not known
+     */
+    String getDigest(DigestAlgorithm algorithm);
+
+    /**
+     * @return md5 of the content without comments and insignificant whitespace
+     */
+    String getFingerprint();
+
+    /**
+     * @return the preconditions that have to be met before the patch runs
+     */
+    List<PatchPrecondition> getPreconditions();
+}
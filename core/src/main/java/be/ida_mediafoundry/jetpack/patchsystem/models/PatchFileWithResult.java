@@ -2,6 +2,7 @@ package be.ida_mediafoundry.jetpack.patchsystem.models;
 
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchFile;
 import com.day.cq.commons.date.RelativeTimeFormat;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
@@ -52,6 +53,54 @@ public class PatchFileWithResult {
     @ValueMapValue(name="runningTime", optional = true)
     private String runningTime;
 
+    @ValueMapValue(name="queryPlan", optional = true)
+    private String queryPlan;
+
+    @ValueMapValue(name="queryPlanFlagged", optional = true)
+    private boolean queryPlanFlagged;
+
+    @ValueMapValue(name="commitCount", optional = true)
+    private Integer commitCount;
+
+    @ValueMapValue(name="commitTime", optional = true)
+    private String commitTime;
+
+    @ValueMapValue(name="rowsRead", optional = true)
+    private Long rowsRead;
+
+    @ValueMapValue(name="queryTime", optional = true)
+    private String queryTime;
+
+    @ValueMapValue(name="visitedNodes", optional = true)
+    private Long visitedNodes;
+
+    @ValueMapValue(name="visitThroughput", optional = true)
+    private String visitThroughput;
+
+    @ValueMapValue(name="visitErrors", optional = true)
+    private String visitErrors;
+
+    @ValueMapValue(name="linkedResult", optional = true)
+    private String linkedResult;
+
+    @ValueMapValue(name="cpuTime", optional = true)
+    private String cpuTime;
+
+    @ValueMapValue(name="allocatedBytes", optional = true)
+    private Long allocatedBytes;
+
+    @ValueMapValue(name="jcrReads", optional = true)
+    private Long jcrReads;
+
+    @ValueMapValue(name="jcrWrites", optional = true)
+    private Long jcrWrites;
+
+    @ValueMapValue(name="jcrQueries", optional = true)
+    private Long jcrQueries;
+
+    @ValueMapValue(name="jcrSaves", optional = true)
+    private Long jcrSaves;
+
     private String statusClass;
     private String dateExecuted;
     private String path;
@@ -122,6 +171,73 @@ public class PatchFileWithResult {
         return runningTime;
     }
 
+    public String getQueryPlan() {
+        return queryPlan;
+    }
+
+    public boolean isQueryPlanFlagged() {
+        return queryPlanFlagged;
+    }
+
+    public Integer getCommitCount() {
+        return commitCount;
+    }
+
+    public String getCommitTime() {
+        return commitTime;
+    }
+
+    public Long getRowsRead() {
+        return rowsRead;
+    }
+
+    public String getQueryTime() {
+        return queryTime;
+    }
+
+    public Long getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    public String getVisitThroughput() {
+        return visitThroughput;
+    }
+
+    public String getVisitErrors() {
+        return visitErrors;
+    }
+
+    public String getLinkedResult() {
+        return linkedResult;
+    }
+
+    public String getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * @return allocated bytes in a readable size, e.g. "12 MB", or null
+     */
+    public String getAllocated() {
+        return allocatedBytes != null ? FileUtils.byteCountToDisplaySize(allocatedBytes) : null;
+    }
+
+    public Long getJcrReads() {
+        return jcrReads;
+    }
+
+    public Long getJcrWrites() {
+        return jcrWrites;
+    }
+
+    public Long getJcrQueries() {
+        return jcrQueries;
+    }
+
+    public Long getJcrSaves() {
+        return jcrSaves;
+    }
+
     public boolean isRunnable() {
         return runnable;
     }
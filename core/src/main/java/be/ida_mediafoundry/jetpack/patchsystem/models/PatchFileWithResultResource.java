@@ -22,6 +22,24 @@ public class PatchFileWithResultResource extends SyntheticResource {
         this.modified = modified;
     }
 
+    public PatchFile getPatchFile() {
+        return patchFile;
+    }
+
+    /**
+     * @return result of the patch, or null in case the patch wasn't executed
+     */
+    public PatchResult getPatchResult() {
+        return patchResult;
+    }
+
+    /**
+     * @return true in case the patch was modified since it was executed
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
     @Override
     public <AdapterType> AdapterType adaptTo(Class<AdapterType> type) {
         if (type.getName().equals(ValueMap.class.getName())) {
@@ -57,6 +75,46 @@ public class PatchFileWithResultResource extends SyntheticResource {
             properties.put("output", patchResult.getOutput());
             properties.put("runningTime", patchResult.getRunningTime());
 
+            if (patchResult.getQueryPlan() != null) {
+                properties.put("queryPlan", patchResult.getQueryPlan());
+                properties.put("queryPlanFlagged", patchResult.isQueryPlanFlagged());
+            }
+
+            if (patchResult.getCommitCount() != null) {
+                properties.put("commitCount", patchResult.getCommitCount());
+                properties.put("commitTime", patchResult.getCommitTime());
+            }
+
+            if (patchResult.getRowsRead() != null) {
+                properties.put("rowsRead", patchResult.getRowsRead());
+                properties.put("queryTime", patchResult.getQueryTime());
+            }
+
+            if (patchResult.getVisitedNodes() != null) {
+                properties.put("visitedNodes", patchResult.getVisitedNodes());
+                properties.put("visitThroughput", patchResult.getVisitThroughput());
+                properties.put("visitErrors", patchResult.getVisitErrors());
+            }
+
+            if (patchResult.getCpuTime() != null) {
+                properties.put("cpuTime", patchResult.getCpuTime());
+            }
+
+            if (patchResult.getAllocatedBytes() != null) {
+                properties.put("allocatedBytes", patchResult.getAllocatedBytes());
+            }
+
+            if (patchResult.getJcrReads() != null) {
+                properties.put("jcrReads", patchResult.getJcrReads());
+                properties.put("jcrWrites", patchResult.getJcrWrites());
+                properties.put("jcrQueries", patchResult.getJcrQueries());
+                properties.put("jcrSaves", patchResult.getJcrSaves());
+            }
+
+            if (patchResult.getLinkedResult() != null) {
+                properties.put("linkedResult", patchResult.getLinkedResult());
+            }
+
             if (modified && !PatchStatus.RUNNING.isOfStatus(patchResult)) {
                 properties.put("status", PatchStatus.RERUN.displayName());
             } else {
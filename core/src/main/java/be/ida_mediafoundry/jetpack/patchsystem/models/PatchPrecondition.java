@@ -0,0 +1,98 @@
+package be.ida_mediafoundry.jetpack.patchsystem.models;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cheap check that must pass before a patch is executed, patches with a failing precondition are skipped.
+ *
+ * <pre>
+ * // @precondition query SELECT * FROM [cq:PageContent] WHERE ISDESCENDANTNODE('/content/site') AND [migrated] IS NULL
+ * // @precondition exists /content/site/jcr:content
+ * // @precondition missing /content/site/jcr:content/migrated
+ * </pre>
+ */
+public class PatchPrecondition {
+
+    private static final Pattern DECLARATION = Pattern.compile(
+            "^\\s*(?://+|/?\\*+)?\\s*@precondition\\s+(\\w+)\\s+(.+?)\\s*(?:\\*/)?\\s*$", Pattern.MULTILINE);
+
+    public enum Type {
+        /** the JCR-SQL2 query must return at least one row */
+        QUERY,
+        /** the node or property must exist */
+        EXISTS,
+        /** the node or property must not exist */
+        MISSING
+    }
+
+    private final Type type;
+    private final String expression;
+
+    public PatchPrecondition(Type type, String expression) {
+        this.type = type;
+        this.expression = expression;
+    }
+
+    /**
+     * Parse one precondition, e.g. {@code missing /content/site/jcr:content/migrated}.
+     *
+     * @param declaration type followed by its expression
+     * @return precondition
+     * @throws IllegalArgumentException in case the type is unknown or the expression is missing
+     */
+    public static PatchPrecondition parse(String declaration) {
+        String type = StringUtils.substringBefore(StringUtils.trim(declaration), " ");
+        String expression = StringUtils.trim(StringUtils.substringAfter(StringUtils.trim(declaration), " "));
+        if (StringUtils.isBlank(expression)) {
+            throw new IllegalArgumentException("Invalid precondition, no expression: " + declaration);
+        }
+        for (Type value : Type.values()) {
+            if (value.name().equalsIgnoreCase(type)) {
+                return new PatchPrecondition(value, expression);
+            }
+        }
+        throw new IllegalArgumentException("Invalid precondition, unknown type '" + type + "': " + declaration);
+    }
+
+    /**
+     * Find the {@code @precondition} declarations in the comments of a script.
+     * Unknown declarations are ignored.
+     *
+     * @param script content of the script
+     * @return preconditions in order of declaration
+     */
+    public static List<PatchPrecondition> fromScript(String script) {
+        List<PatchPrecondition> preconditions = new ArrayList<>();
+        if (script == null) {
+            return preconditions;
+        }
+
+        Matcher matcher = DECLARATION.matcher(script);
+        while (matcher.find()) {
+            try {
+                preconditions.add(parse(matcher.group(1) + " " + matcher.group(2)));
+            } catch (IllegalArgumentException e) {
+                // not a precondition of the patch system
+            }
+        }
+        return preconditions;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return type.name().toLowerCase() + " " + expression;
+    }
+}
@@ -0,0 +1,12 @@
+package be.ida_mediafoundry.jetpack.patchsystem.models;
+
+/**
+ * Receives progress messages of a running patch, e.g. to log them in the status of the patch job.
+ */
+@FunctionalInterface
+public interface PatchProgressListener {
+
+    PatchProgressListener NONE = message -> { };
+
+    void progress(String message);
+}
@@ -20,6 +20,118 @@ public interface PatchResult {
 
     String getRunningTime();
 
+    /**
+     * @return summary of the query plans of the literal queries in the patch, or null
+     */
+    default String getQueryPlan() {
+        return null;
+    }
+
+    /**
+     * @return true in case one of the queries in the patch traverses the repository or uses a low-selectivity index
+     */
+    default boolean isQueryPlanFlagged() {
+        return false;
+    }
+
+    /**
+     * @return number of batched saves done by the patch, or null
+     */
+    default Integer getCommitCount() {
+        return null;
+    }
+
+    /**
+     * @return total time spent in batched saves by the patch, or null
+     */
+    default String getCommitTime() {
+        return null;
+    }
+
+    /**
+     * @return number of rows read by the query iterator of the patch, or null
+     */
+    default Long getRowsRead() {
+        return null;
+    }
+
+    /**
+     * @return time spent by the query iterator of the patch, or null
+     */
+    default String getQueryTime() {
+        return null;
+    }
+
+    /**
+     * @return number of nodes visited by the parallel node visitor of the patch, or null
+     */
+    default Long getVisitedNodes() {
+        return null;
+    }
+
+    /**
+     * @return throughput of the parallel node visitor of the patch, or null
+     */
+    default String getVisitThroughput() {
+        return null;
+    }
+
+    /**
+     * @return errors of the parallel node visitor of the patch, or null
+     */
+    default String getVisitErrors() {
+        return null;
+    }
+
+    /**
+     * @return id of the earlier result with the same content this result is linked to, or null in case the patch was executed
+     */
+    default String getLinkedResult() {
+        return null;
+    }
+
+    /**
+     * @return CPU time of the thread that ran the patch, or null
+     */
+    default String getCpuTime() {
+        return null;
+    }
+
+    /**
+     * @return bytes allocated by the thread that ran the patch, or null
+     */
+    default Long getAllocatedBytes() {
+        return null;
+    }
+
+    /**
+     * @return number of resources and items read through the resolver and session of the patch, or null
+     */
+    default Long getJcrReads() {
+        return null;
+    }
+
+    /**
+     * @return number of resources and items written through the resolver and session of the patch, or null
+     */
+    default Long getJcrWrites() {
+        return null;
+    }
+
+    /**
+     * @return number of queries executed through the resolver and session of the patch, or null
+     */
+    default Long getJcrQueries() {
+        return null;
+    }
+
+    /**
+     * @return number of commits and saves of the resolver and session of the patch, or null
+     */
+    default Long getJcrSaves() {
+        return null;
+    }
+
     default boolean isError() {
         return PatchStatus.ERROR.isOfStatus(this);
     }
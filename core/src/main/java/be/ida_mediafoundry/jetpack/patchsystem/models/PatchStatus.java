@@ -10,7 +10,8 @@ public enum PatchStatus {
     SUCCESS("SUCCESS", "success"),
     RUNNING("RUNNING", "warning"),
     RERUN("RE-RUN", "info"),
-    NEW("NEW", "new");
+    NEW("NEW", "new"),
+    SKIPPED("SKIPPED", "skipped");
 
     private String name;
     private String cssClass;
@@ -0,0 +1,29 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services;
+
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+
+import java.util.List;
+import java.util.Map;
+
+public interface PatchPreconditionService {
+
+    /**
+     * Evaluate the preconditions of all provided patches in one batch, with one session.
+     * Patches without preconditions, or of a type without preconditions, always pass.
+     *
+     * @param patchPaths paths of the patches
+     * @param types types of the patches
+     * @return the failed precondition keyed by patch path, for the patches that should be skipped
+     */
+    Map<String, String> evaluatePreconditions(List<String> patchPaths, List<String> types);
+
+    /**
+     * Record a SKIPPED result for the patch, without executing it.
+     *
+     * @param patchPath path of the patch
+     * @param type type of the patch
+     * @param failedPrecondition precondition that failed
+     * @return the skipped result, or null in case the patch isn't found
+     */
+    PatchResult skipPatch(String patchPath, String type, String failedPrecondition);
+}
@@ -0,0 +1,79 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services;
+
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * In-memory state of the patch system: an index of the patches with the state of their results, and the running job.
+ * The index is built on request and kept up to date by the patch jobs and by the console,
+ * so reading the state doesn't touch the repository.
+ */
+public interface PatchSystemStateService {
+
+    /**
+     * Rebuild the index from the patches and results in the repository.
+     *
+     * @return number of indexed patches
+     */
+    int rebuildIndex();
+
+    /**
+     * Replace the index with the listed patches, e.g. when the console lists all patches.
+     *
+     * @param patches all patches with their results
+     */
+    void index(List<PatchFileWithResultResource> patches);
+
+    void jobStarted(String jobId);
+
+    /**
+     * @param patchPath path of the patch, or of the transactional group, that is executed
+     */
+    void patchStarted(String patchPath);
+
+    /**
+     * @param patchPath path of the executed patch
+     * @param patchResult result of the patch, or null in case the patch didn't run
+     */
+    void patchExecuted(String patchPath, PatchResult patchResult);
+
+    void jobFinished();
+
+    /**
+     * @return number of indexed patches, or -1 in case there is no index yet
+     */
+    int getTotalPatches();
+
+    /**
+     * @return number of new or modified patches, or -1 in case there is no index yet
+     */
+    int getPendingPatches();
+
+    /**
+     * @return number of patches of which the last execution failed, or -1 in case there is no index yet
+     */
+    int getFailedPatches();
+
+    /**
+     * @return moment the index was last rebuilt or replaced, or null in case there is no index yet
+     */
+    Calendar getIndexDate();
+
+    /**
+     * @return id of the running patch job, or null in case no job is running
+     */
+    String getCurrentJob();
+
+    /**
+     * @return path of the running patch, or null in case no patch is running
+     */
+    String getCurrentPatch();
+
+    /**
+     * @return duration in milliseconds of the last finished patch job, or -1 in case no job finished yet
+     */
+    long getLastJobDuration();
+}
@@ -0,0 +1,147 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchPrecondition;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchPreconditionService;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component(
+        name = "Jetpack - Patch Precondition Service",
+        service = PatchPreconditionService.class,
+        property = {
+                Constants.SERVICE_DESCRIPTION + ":String=Service evaluating the preconditions of patches before they run.",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+public class PatchPreconditionServiceImpl implements PatchPreconditionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatchPreconditionServiceImpl.class);
+
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyPatchFileRepository groovyPatchFileRepository;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchFileRepository bulkPatchFileRepository;
+
+    @Override
+    public Map<String, String> evaluatePreconditions(List<String> patchPaths, List<String> types) {
+        Map<String, String> failedPreconditions = new LinkedHashMap<>();
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            Session session = resourceResolver.adaptTo(Session.class);
+            if (session == null) {
+                LOG.warn("No session available, preconditions are not evaluated");
+                return Collections.emptyMap();
+            }
+
+            for (int i = 0; i < patchPaths.size(); i++) {
+                ContentPatchFile patchFile = getPatch(patchPaths.get(i), types.get(i));
+                if (patchFile == null) {
+                    continue;
+                }
+
+                for (PatchPrecondition precondition : patchFile.getPreconditions()) {
+                    if (!isMet(precondition, session, patchFile)) {
+                        failedPreconditions.put(patchFile.getPath(), precondition.toString());
+                        break;
+                    }
+                }
+            }
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to evaluate the preconditions", e);
+        }
+
+        return failedPreconditions;
+    }
+
+    @Override
+    public PatchResult skipPatch(String patchPath, String type, String failedPrecondition) {
+        ContentPatchFile patchFile = getPatch(patchPath, type);
+        if (patchFile == null) {
+            return null;
+        }
+
+        GroovyPatchResult patchResult = patchResultRepository.createResult(patchFile);
+        patchResult.setStatus(PatchStatus.SKIPPED);
+        patchResult.setOutput("Patch is skipped, precondition is not met: " + failedPrecondition);
+        patchResultRepository.updateResult(patchResult);
+        return patchResult;
+    }
+
+    /**
+     * Evaluate the precondition. A precondition that can't be evaluated is considered met,
+     * so the patch runs like it would without preconditions.
+     */
+    private boolean isMet(PatchPrecondition precondition, Session session, ContentPatchFile patchFile) {
+        try {
+            switch (precondition.getType()) {
+                case QUERY:
+                    Query query = session.getWorkspace().getQueryManager().createQuery(precondition.getExpression(), Query.JCR_SQL2);
+                    query.setLimit(1);
+                    return query.execute().getRows().hasNext();
+                case EXISTS:
+                    return session.itemExists(precondition.getExpression());
+                case MISSING:
+                    return !session.itemExists(precondition.getExpression());
+                default:
+                    return true;
+            }
+        } catch (RepositoryException | RuntimeException e) {
+            LOG.warn("Couldn't evaluate precondition '{}' of patch {}, the patch is executed", precondition, patchFile.getPath(), e);
+            return true;
+        }
+    }
+
+    private ContentPatchFile getPatch(String patchPath, String type) {
+        if (GroovyPatchFile.TYPE.equals(type) && groovyPatchFileRepository != null) {
+            return groovyPatchFileRepository.getPatch(patchPath);
+        } else if (BulkPatchFile.TYPE.equals(type) && bulkPatchFileRepository != null) {
+            return bulkPatchFileRepository.getPatch(patchPath);
+        }
+        return null;
+    }
+
+    private Map<String, Object> getCredentials() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return credentials;
+    }
+}
@@ -1,8 +1,10 @@
 package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
 
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.services.BulkPatchSystemService;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.services.OnDeployScriptSystemService;
 import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemDataSourceService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
 import com.adobe.granite.ui.components.ComponentHelper;
 import com.adobe.granite.ui.components.Config;
@@ -40,6 +42,14 @@ public class PatchSystemDataSourceServiceImpl implements PatchSystemDataSourceSe
             policyOption = ReferencePolicyOption.GREEDY)
     private OnDeployScriptSystemService onDeployScriptSystemService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchSystemService bulkPatchSystemService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemStateService patchSystemStateService;
+
     @Override
     public DataSource getDataSource(HttpServletRequest request, Object cmp, Resource resource) {
         ExpressionHelper ex = ((ComponentHelper)cmp).getExpressionHelper();
@@ -91,7 +101,14 @@ public class PatchSystemDataSourceServiceImpl implements PatchSystemDataSourceSe
         if (onDeployScriptSystemService != null) {
             patches.addAll(onDeployScriptSystemService.getPatches(resourceResolver));
         }
+        if (bulkPatchSystemService != null) {
+            patches.addAll(bulkPatchSystemService.getPatches(resourceResolver));
+        }
 
+        //the console lists all patches, keep the in-memory index up to date with them
+        if (patchSystemStateService != null) {
+            patchSystemStateService.index(patches);
+        }
         return patches;
     }
 }
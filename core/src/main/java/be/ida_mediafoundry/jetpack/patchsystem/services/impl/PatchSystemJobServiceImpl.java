@@ -1,10 +1,14 @@
 package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.services.BulkPatchSystemService;
 import be.ida_mediafoundry.jetpack.patchsystem.executors.JobResult;
 import be.ida_mediafoundry.jetpack.patchsystem.executors.PatchJobExecutor;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.models.SimplePatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchFile;
@@ -23,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Component(
@@ -48,6 +53,14 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
             policyOption = ReferencePolicyOption.GREEDY)
     private OnDeployScriptSystemService onDeployScriptSystemService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchSystemService bulkPatchSystemService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
     @Override
     public boolean executePatch(String patchPath, String type) {
         return executePatches(Collections.singletonList(new SimplePatchFile(type, patchPath)));
@@ -71,7 +84,10 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
             properties.put(JetpackConstants.PATCH_PATHS, patchPaths);
             properties.put(JetpackConstants.TYPES, types);
 
+            long start = System.nanoTime();
             Job job =  jobManager.addJob(PatchJobExecutor.TOPIC, properties);
+            metrics().time(PatchMetric.TRIGGER, System.nanoTime() - start);
+            metrics().update(PatchMetric.TRIGGERED_PATCHES, PatchSystemMetrics.ALL, patchFiles.size());
             return job != null;
         }
         return false;
@@ -105,6 +121,10 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
             readyStates.put(OnDeployPatchFile.TYPE, onDeployScriptSystemService.isPatchSystemReady());
         }
 
+        if (bulkPatchSystemService != null) {
+            readyStates.put(BulkPatchFile.TYPE, bulkPatchSystemService.isPatchSystemReady());
+        }
+
         return readyStates;
     }
 
@@ -113,11 +133,15 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
         List<PatchFile> patchFiles = new ArrayList<>();
 
         if (groovyPatchSystemService != null && groovyPatchSystemService.isPatchSystemReady()) {
-            patchFiles.addAll(groovyPatchSystemService.getPatchesToExecute());
+            patchFiles.addAll(discover(GroovyPatchFile.TYPE, groovyPatchSystemService::getPatchesToExecute));
         }
 
         if (onDeployScriptSystemService != null && onDeployScriptSystemService.isPatchSystemReady()) {
-            patchFiles.addAll(onDeployScriptSystemService.getPatchesToExecute());
+            patchFiles.addAll(discover(OnDeployPatchFile.TYPE, onDeployScriptSystemService::getPatchesToExecute));
+        }
+
+        if (bulkPatchSystemService != null && bulkPatchSystemService.isPatchSystemReady()) {
+            patchFiles.addAll(discover(BulkPatchFile.TYPE, bulkPatchSystemService::getPatchesToExecute));
         }
 
         return patchFiles
@@ -126,6 +150,19 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * @param type type of the patches
+     * @param discovery discovery of the patches to execute of the type
+     * @return the patches to execute, timed and counted in the metrics
+     */
+    private List<PatchFile> discover(String type, Supplier<List<PatchFile>> discovery) {
+        long start = System.nanoTime();
+        List<PatchFile> patchFiles = discovery.get();
+        metrics().time(PatchMetric.DISCOVERY, type, System.nanoTime() - start);
+        metrics().update(PatchMetric.DISCOVERED_PATCHES, type, patchFiles.size());
+        return patchFiles;
+    }
+
     @Override
     public JobResult getPatchSystemStatus() {
         Collection<Job> jobs = jobManager.findJobs(JobManager.QueryType.ALL, PatchJobExecutor.TOPIC, 1, null);
@@ -147,7 +184,15 @@ public class PatchSystemJobServiceImpl implements PatchSystemJobService {
         this.onDeployScriptSystemService = null;
     }
 
+    protected void unbindBulkPatchSystemService() {
+        this.bulkPatchSystemService = null;
+    }
+
     protected void unbindGroovyPatchSystemService() {
         this.groovyPatchSystemService = null;
     }
-}
\ No newline at end of file
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
+    }
+}
@@ -0,0 +1,212 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.services.BulkPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.services.OnDeployScriptSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component(
+        name = "Jetpack - Patch System State Service",
+        service = { PatchSystemStateService.class },
+        property = {
+                Constants.SERVICE_DESCRIPTION + "=In-memory state of the patches and the running patch job",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+public class PatchSystemStateServiceImpl implements PatchSystemStateService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatchSystemStateServiceImpl.class);
+
+    private static final int NO_INDEX = -1;
+
+    private static final String DEFAULT_USER = "jetpack-patch-system";
+    private static final String DEFAULT_SERVICE = "be.ida_mediafoundry.jetpack.patch-system.core";
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private GroovyPatchSystemService groovyPatchSystemService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private OnDeployScriptSystemService onDeployScriptSystemService;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private BulkPatchSystemService bulkPatchSystemService;
+
+    //state of the patches keyed by path, replaced as a whole when the index is rebuilt
+    private volatile Map<String, IndexedPatch> index = new ConcurrentHashMap<>();
+    private volatile Calendar indexDate;
+    //patches executed since the index was replaced, the patches of a new index may have been read before they were executed
+    private final Map<String, IndexedPatch> executedPatches = new HashMap<>();
+    private final Object indexLock = new Object();
+
+    private volatile String currentJob;
+    private volatile String currentPatch;
+    private volatile long jobStart;
+    private volatile long lastJobDuration = -1;
+
+    @Override
+    public int rebuildIndex() {
+        List<PatchFileWithResultResource> patches = new ArrayList<>();
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(getCredentials())) {
+            if (groovyPatchSystemService != null) {
+                patches.addAll(groovyPatchSystemService.getPatches(resourceResolver));
+            }
+            if (onDeployScriptSystemService != null) {
+                patches.addAll(onDeployScriptSystemService.getPatches(resourceResolver));
+            }
+            if (bulkPatchSystemService != null) {
+                patches.addAll(bulkPatchSystemService.getPatches(resourceResolver));
+            }
+        } catch (LoginException e) {
+            LOG.error("Couldn't login to rebuild the patch index", e);
+            return index.size();
+        }
+
+        index(patches);
+        return patches.size();
+    }
+
+    @Override
+    public void index(List<PatchFileWithResultResource> patches) {
+        Map<String, IndexedPatch> newIndex = new ConcurrentHashMap<>();
+        for (PatchFileWithResultResource patch : patches) {
+            PatchResult patchResult = patch.getPatchResult();
+            newIndex.put(patch.getPatchFile().getPath(),
+                    new IndexedPatch(patchResult == null || patch.isModified() || PatchStatus.SKIPPED.isOfStatus(patchResult),
+                            patchResult != null && patchResult.isError()));
+        }
+
+        synchronized (indexLock) {
+            for (Map.Entry<String, IndexedPatch> executedPatch : executedPatches.entrySet()) {
+                newIndex.replace(executedPatch.getKey(), executedPatch.getValue());
+            }
+            executedPatches.clear();
+            index = newIndex;
+            indexDate = Calendar.getInstance();
+        }
+    }
+
+    @Override
+    public void jobStarted(String jobId) {
+        currentJob = jobId;
+        jobStart = System.currentTimeMillis();
+    }
+
+    @Override
+    public void patchStarted(String patchPath) {
+        currentPatch = patchPath;
+    }
+
+    @Override
+    public void patchExecuted(String patchPath, PatchResult patchResult) {
+        currentPatch = null;
+
+        if (patchResult == null) {
+            return;
+        }
+        //a skipped patch is evaluated again by the next job
+        IndexedPatch executedPatch = new IndexedPatch(PatchStatus.SKIPPED.isOfStatus(patchResult), patchResult.isError());
+        synchronized (indexLock) {
+            executedPatches.put(patchPath, executedPatch);
+            //only patches of an existing index are updated, a partial index would show wrong counts
+            if (indexDate != null) {
+                index.put(patchPath, executedPatch);
+            }
+        }
+    }
+
+    @Override
+    public void jobFinished() {
+        lastJobDuration = System.currentTimeMillis() - jobStart;
+        currentJob = null;
+        currentPatch = null;
+    }
+
+    @Override
+    public int getTotalPatches() {
+        if (indexDate == null) {
+            return NO_INDEX;
+        }
+        return index.size();
+    }
+
+    @Override
+    public int getPendingPatches() {
+        if (indexDate == null) {
+            return NO_INDEX;
+        }
+        return (int) index.values().stream().filter(patch -> patch.pending).count();
+    }
+
+    @Override
+    public int getFailedPatches() {
+        if (indexDate == null) {
+            return NO_INDEX;
+        }
+        return (int) index.values().stream().filter(patch -> patch.failed).count();
+    }
+
+    @Override
+    public Calendar getIndexDate() {
+        return indexDate;
+    }
+
+    @Override
+    public String getCurrentJob() {
+        return currentJob;
+    }
+
+    @Override
+    public String getCurrentPatch() {
+        return currentPatch;
+    }
+
+    @Override
+    public long getLastJobDuration() {
+        return lastJobDuration;
+    }
+
+    private Map<String, Object> getCredentials() {
+        Map<String, Object> credentials = new HashMap<>();
+        credentials.put(ResourceResolverFactory.USER, DEFAULT_USER);
+        credentials.put(ResourceResolverFactory.SUBSERVICE, DEFAULT_SERVICE);
+        return credentials;
+    }
+
+    private static class IndexedPatch {
+
+        private final boolean pending;
+        private final boolean failed;
+
+        IndexedPatch(boolean pending, boolean failed) {
+            this.pending = pending;
+            this.failed = failed;
+        }
+    }
+}
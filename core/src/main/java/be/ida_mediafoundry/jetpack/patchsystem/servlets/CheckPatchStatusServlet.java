@@ -1,6 +1,8 @@
 package be.ida_mediafoundry.jetpack.patchsystem.servlets;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
 import be.ida_mediafoundry.jetpack.patchsystem.executors.JobResult;
 import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemJobService;
 import com.google.gson.Gson;
@@ -11,6 +13,8 @@ import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,8 +39,13 @@ public class CheckPatchStatusServlet extends SlingAllMethodsServlet {
     @Reference
     private PatchSystemJobService patchSystemJobService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
     @Override
     protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+        long start = System.nanoTime();
         response.setContentType(JetpackConstants.APPLICATION_JSON);
 
         try {
@@ -44,6 +53,8 @@ public class CheckPatchStatusServlet extends SlingAllMethodsServlet {
         } catch (Exception e) {
             LOG.error("Error during CheckPatchStatusServlet", e);
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            metrics().time(PatchMetric.CHECK_REQUEST, System.nanoTime() - start);
         }
     }
 
@@ -54,4 +65,8 @@ public class CheckPatchStatusServlet extends SlingAllMethodsServlet {
         response.getWriter().write(gson.toJson(jobResult));
         response.setStatus(HttpServletResponse.SC_OK);
     }
-}
\ No newline at end of file
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
+    }
+}
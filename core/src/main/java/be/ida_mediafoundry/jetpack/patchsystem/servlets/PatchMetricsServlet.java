@@ -0,0 +1,50 @@
+package be.ida_mediafoundry.jetpack.patchsystem.servlets;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.ServletResolverConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Timers and histograms of the patch system in the Prometheus text format.
+ */
+@Component(
+        service = { Servlet.class },
+        property = {
+                ServletResolverConstants.SLING_SERVLET_PATHS + "=/services/patches/metrics",
+                Constants.SERVICE_DESCRIPTION + "=Patch system metrics in the Prometheus text format",
+                Constants.SERVICE_VENDOR + ":String=" + JetpackConstants.VENDOR,
+        })
+public class PatchMetricsServlet extends SlingAllMethodsServlet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PatchMetricsServlet.class);
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    @Reference
+    private PatchSystemMetrics patchSystemMetrics;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+        response.setContentType(CONTENT_TYPE);
+        response.setCharacterEncoding("UTF-8");
+
+        try {
+            patchSystemMetrics.writePrometheus(response.getWriter());
+            response.setStatus(HttpServletResponse.SC_OK);
+        } catch (Exception e) {
+            LOG.error("Error during PatchMetricsServlet", e);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package be.ida_mediafoundry.jetpack.patchsystem.servlets;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
 import be.ida_mediafoundry.jetpack.patchsystem.models.SimplePatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemJobService;
 import be.ida_mediafoundry.jetpack.patchsystem.servlets.responsemodels.TriggerResponse;
@@ -13,6 +15,8 @@ import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,8 +42,13 @@ public class TriggerNewPatchesServlet extends SlingAllMethodsServlet {
     @Reference
     private PatchSystemJobService patchSystemJobService;
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+            policyOption = ReferencePolicyOption.GREEDY)
+    private PatchSystemMetrics patchSystemMetrics;
+
     @Override
     protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+        long start = System.nanoTime();
         try {
             if (isValid(request)) {
                 response.setContentType(JetpackConstants.APPLICATION_JSON);
@@ -50,6 +59,8 @@ public class TriggerNewPatchesServlet extends SlingAllMethodsServlet {
         } catch (Exception e) {
             LOG.error("Error during TriggerNewPatchesServlet", e);
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            metrics().time(PatchMetric.TRIGGER_REQUEST, System.nanoTime() - start);
         }
     }
 
@@ -76,4 +87,8 @@ public class TriggerNewPatchesServlet extends SlingAllMethodsServlet {
         Gson gson = new Gson();
         response.getWriter().write(gson.toJson(triggerResponse));
     }
-}
\ No newline at end of file
+
+    private PatchSystemMetrics metrics() {
+        return patchSystemMetrics != null ? patchSystemMetrics : PatchSystemMetrics.NONE;
+    }
+}
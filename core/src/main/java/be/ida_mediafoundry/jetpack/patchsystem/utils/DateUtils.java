@@ -27,14 +27,16 @@ public class DateUtils {
         if (startDate != null && endDate != null) {
             long end = endDate.getTimeInMillis();
             long start = startDate.getTimeInMillis();
-            long diff = Math.abs(end - start);
-
-            Date date = new Date(diff);
-            DateFormat formatter = new SimpleDateFormat("HH:mm:ss.SSS");
-            formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-            return formatter.format(date);
+            return formattedRunningTime(Math.abs(end - start));
         }
         return null;
     }
 
+    public static String formattedRunningTime(long durationInMillis) {
+        Date date = new Date(durationInMillis);
+        DateFormat formatter = new SimpleDateFormat("HH:mm:ss.SSS");
+        formatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return formatter.format(date);
+    }
+
 }
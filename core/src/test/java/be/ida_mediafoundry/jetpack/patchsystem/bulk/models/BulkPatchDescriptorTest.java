@@ -0,0 +1,93 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.models;
+
+import org.junit.Test;
+
+import javax.jcr.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class BulkPatchDescriptorTest {
+
+    @Test
+    public void testParse() {
+        //given
+        String json = "{\"query\": \"SELECT * FROM [cq:PageContent]\", \"keyProperty\": \"jcr:uuid\", \"batchSize\": 200,"
+                + " \"operations\": ["
+                + "{\"op\": \"set\", \"property\": \"migrated\", \"value\": true},"
+                + "{\"op\": \"RENAME\", \"property\": \"oldTitle\", \"to\": \"jcr:title\"},"
+                + "{\"op\": \"remove\", \"property\": \"obsolete\"}]}";
+
+        //test
+        BulkPatchDescriptor descriptor = BulkPatchDescriptor.parse(json);
+
+        //check
+        assertThat(descriptor.getQuery()).isEqualTo("SELECT * FROM [cq:PageContent]");
+        assertThat(descriptor.getLanguage()).isEqualTo(Query.JCR_SQL2);
+        assertThat(descriptor.getKeyProperty()).isEqualTo("jcr:uuid");
+        assertThat(descriptor.getBatchSize()).isEqualTo(200);
+        assertThat(descriptor.getOperations())
+                .extracting(BulkPatchDescriptor.Operation::getType, BulkPatchDescriptor.Operation::getProperty,
+                        BulkPatchDescriptor.Operation::getValue, BulkPatchDescriptor.Operation::getTo)
+                .containsExactly(
+                        tuple(BulkPatchDescriptor.OperationType.SET, "migrated", true, null),
+                        tuple(BulkPatchDescriptor.OperationType.RENAME, "oldTitle", null, "jcr:title"),
+                        tuple(BulkPatchDescriptor.OperationType.REMOVE, "obsolete", null, null));
+    }
+
+    @Test
+    public void testParse_defaultBatchSize() {
+        //test
+        BulkPatchDescriptor descriptor = BulkPatchDescriptor.parse(
+                "{\"query\": \"SELECT * FROM [nt:base]\", \"operations\": [{\"op\": \"remove\", \"property\": \"obsolete\"}]}");
+
+        //check
+        assertThat(descriptor.getBatchSize()).isEqualTo(BulkPatchDescriptor.DEFAULT_BATCH_SIZE);
+        assertThat(descriptor.getKeyProperty()).isNull();
+    }
+
+    @Test
+    public void testParse_noQuery() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse("{\"operations\": [{\"op\": \"remove\", \"property\": \"obsolete\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid bulk patch descriptor: no query");
+    }
+
+    @Test
+    public void testParse_noOperations() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse("{\"query\": \"SELECT * FROM [nt:base]\"}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid bulk patch descriptor: no operations");
+    }
+
+    @Test
+    public void testParse_unknownOperation() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse(
+                "{\"query\": \"SELECT * FROM [nt:base]\", \"operations\": [{\"op\": \"move\", \"property\": \"a\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid bulk patch operation: unknown op 'move'");
+    }
+
+    @Test
+    public void testParse_renameWithoutTarget() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse(
+                "{\"query\": \"SELECT * FROM [nt:base]\", \"operations\": [{\"op\": \"rename\", \"property\": \"a\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid bulk patch operation: no name to rename property 'a' to");
+    }
+
+    @Test
+    public void testParse_removeWithoutSql2Query() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse(
+                "{\"query\": \"//element(*, cq:PageContent)\", \"language\": \"xpath\", \"operations\": [{\"op\": \"remove\", \"property\": \"obsolete\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("needs a JCR-SQL2 query");
+    }
+
+    @Test
+    public void testParse_invalidJson() {
+        assertThatThrownBy(() -> BulkPatchDescriptor.parse("{\"query\": "))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,285 @@
+package be.ida_mediafoundry.jetpack.patchsystem.bulk.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchDescriptor;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkPatchSystemServiceImplTest {
+
+    private static final String PATCH_PATH = "/apps/patches/project/migrate.bulk.json";
+
+    @InjectMocks
+    private BulkPatchSystemServiceImpl patchSystemService;
+
+    @Mock
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Mock
+    private BulkPatchFileRepository patchFileRepository;
+
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Mock
+    private BulkPatchFile patchFile;
+
+    private GroovyPatchResult patchResult;
+
+    @Before
+    public void setUp() {
+        patchResult = new GroovyPatchResult("/var/patches/completed/project/migrate.bulk.json", PatchStatus.RUNNING, Calendar.getInstance());
+    }
+
+    @Test
+    public void testRunPatch() throws Exception {
+        //given
+        Session session = givenPatch("{\"query\": \"SELECT * FROM [cq:PageContent]\", \"batchSize\": 2, \"operations\": ["
+                + "{\"op\": \"set\", \"property\": \"migrated\", \"value\": true},"
+                + "{\"op\": \"set\", \"property\": \"tags\", \"value\": [\"a\", 2]},"
+                + "{\"op\": \"rename\", \"property\": \"oldTitle\", \"to\": \"jcr:title\"},"
+                + "{\"op\": \"remove\", \"property\": \"obsolete\"}]}");
+        Node first = createNode("/content/site/first/jcr:content");
+        Node second = createNode("/content/site/second/jcr:content");
+        Property oldTitle = mock(Property.class);
+        Value title = mock(Value.class);
+        given(first.hasProperty("oldTitle")).willReturn(true);
+        given(first.getProperty("oldTitle")).willReturn(oldTitle);
+        given(oldTitle.getValue()).willReturn(title);
+        Property obsolete = mock(Property.class);
+        given(second.hasProperty("obsolete")).willReturn(true);
+        given(second.getProperty("obsolete")).willReturn(obsolete);
+        QueryManager queryManager = givenQueryManager(session);
+        Query page1 = createQuery(first, second);
+        Query page2 = createQuery();
+        given(queryManager.createQuery("SELECT * FROM [cq:PageContent] ORDER BY [jcr:path]", Query.JCR_SQL2)).willReturn(page1);
+        given(queryManager.createQuery("SELECT * FROM [cq:PageContent] WHERE [jcr:path] > $lastKey ORDER BY [jcr:path]", Query.JCR_SQL2))
+                .willReturn(page2);
+        Value lastKey = givenPathValue(session, "/content/site/second/jcr:content");
+
+        //test
+        GroovyPatchResult result = patchSystemService.runPatch(PATCH_PATH);
+
+        //check
+        assertThat(result.getStatus()).isEqualTo("SUCCESS");
+        assertThat(result.getOutput()).isEqualTo("Matched 2 node(s), updated 2 node(s)"
+                + "\nset migrated: 2\nset tags: 2\nrename oldTitle -> jcr:title: 1\nremove obsolete: 1");
+        assertThat(result.getCommitCount()).isEqualTo(1);
+        assertThat(result.getRowsRead()).isEqualTo(2);
+        assertThat(result.getRunningTime()).isNotNull();
+        verify(first).setProperty("migrated", true);
+        verify(first).setProperty("tags", new String[]{"a", "2"});
+        verify(first).setProperty("jcr:title", title);
+        verify(oldTitle).remove();
+        verify(second).setProperty("migrated", true);
+        verify(obsolete).remove();
+        verify(session).save();
+        verify(page2).bindValue("lastKey", lastKey);
+        verify(patchResultRepository).updateResult(result);
+    }
+
+    @Test
+    public void testRunPatch_pagedOnKeyProperty() throws Exception {
+        //given
+        Session session = givenPatch("{\"query\": \"SELECT * FROM [cq:PageContent]\", \"keyProperty\": \"jcr:uuid\", \"operations\": ["
+                + "{\"op\": \"remove\", \"property\": \"obsolete\"}]}");
+        Node node = mock(Node.class);
+        QueryManager queryManager = givenQueryManager(session);
+        Query page = createQuery(node);
+        given(queryManager.createQuery("SELECT * FROM [cq:PageContent] ORDER BY [jcr:uuid]", Query.JCR_SQL2)).willReturn(page);
+
+        //test
+        GroovyPatchResult result = patchSystemService.runPatch(PATCH_PATH);
+
+        //check
+        assertThat(result.getStatus()).isEqualTo("SUCCESS");
+        assertThat(result.getOutput()).isEqualTo("Matched 1 node(s), updated 0 node(s)\nremove obsolete: 0");
+        verify(session, never()).save();
+    }
+
+    @Test
+    public void testRunPatch_invalidDescriptor() throws Exception {
+        //given
+        given(patchFileRepository.getPatch(PATCH_PATH)).willReturn(patchFile);
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willReturn(resourceResolver);
+        Session session = mock(Session.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(patchFile.getDescriptor()).willThrow(new IllegalArgumentException("Invalid bulk patch descriptor: no query"));
+
+        //test
+        GroovyPatchResult result = patchSystemService.runPatch(PATCH_PATH);
+
+        //check
+        assertThat(result.getStatus()).isEqualTo("ERROR");
+        assertThat(result.getOutput()).contains("Invalid bulk patch descriptor: no query");
+        verify(session, never()).save();
+        verify(patchResultRepository).updateResult(result);
+    }
+
+    @Test
+    public void testRunPatch_failingOperationKeepsCommittedBatches() throws Exception {
+        //given
+        Session session = givenPatch("{\"query\": \"SELECT * FROM [cq:PageContent]\", \"batchSize\": 1, \"operations\": ["
+                + "{\"op\": \"set\", \"property\": \"migrated\", \"value\": 1}]}");
+        Node first = createNode("/content/site/first/jcr:content");
+        Node second = createNode("/content/site/second/jcr:content");
+        given(second.setProperty("migrated", 1L)).willThrow(new RepositoryException("locked"));
+        QueryManager queryManager = givenQueryManager(session);
+        Query page1 = createQuery(first);
+        Query page2 = createQuery(second);
+        given(queryManager.createQuery("SELECT * FROM [cq:PageContent] ORDER BY [jcr:path]", Query.JCR_SQL2)).willReturn(page1);
+        given(queryManager.createQuery("SELECT * FROM [cq:PageContent] WHERE [jcr:path] > $lastKey ORDER BY [jcr:path]", Query.JCR_SQL2))
+                .willReturn(page2);
+        givenPathValue(session, "/content/site/first/jcr:content");
+
+        //test
+        GroovyPatchResult result = patchSystemService.runPatch(PATCH_PATH);
+
+        //check
+        assertThat(result.getStatus()).isEqualTo("ERROR");
+        assertThat(result.getOutput()).contains("locked");
+        assertThat(result.getCommitCount()).isEqualTo(1);
+        verify(first).setProperty("migrated", 1L);
+        verify(session, times(1)).save();
+    }
+
+    @Test
+    public void testRunPatch_patchNotFound() {
+        //given
+        given(patchFileRepository.getPatch(PATCH_PATH)).willReturn(null);
+
+        //test
+        GroovyPatchResult result = patchSystemService.runPatch(PATCH_PATH);
+
+        //check
+        assertThat(result).isNull();
+        verify(patchResultRepository, never()).createResult(any());
+    }
+
+    @Test
+    public void testGetPatchesToExecute() {
+        //given
+        BulkPatchFile newPatch = mock(BulkPatchFile.class);
+        BulkPatchFile executedPatch = mock(BulkPatchFile.class);
+        given(executedPatch.getMd5()).willReturn("md5");
+        given(patchFileRepository.getPatches()).willReturn(Arrays.asList(newPatch, executedPatch));
+        GroovyPatchResult executedResult = new GroovyPatchResult("/var/patches/completed/executed", PatchStatus.SUCCESS, Calendar.getInstance());
+        executedResult.setMd5("md5");
+        given(patchResultRepository.getResult(executedPatch)).willReturn(executedResult);
+
+        //test
+        List<PatchFile> patches = patchSystemService.getPatchesToExecute();
+
+        //check
+        assertThat(patches).containsExactly(newPatch);
+    }
+
+    @Test
+    public void testGetPatchesToExecute_skipped() {
+        //given
+        BulkPatchFile skippedPatch = mock(BulkPatchFile.class);
+        given(patchFileRepository.getPatches()).willReturn(Collections.singletonList(skippedPatch));
+        GroovyPatchResult skippedResult = new GroovyPatchResult("/var/patches/completed/skipped", PatchStatus.SKIPPED, Calendar.getInstance());
+        skippedResult.setMd5("md5");
+        given(patchResultRepository.getResult(skippedPatch)).willReturn(skippedResult);
+
+        //test
+        List<PatchFile> patches = patchSystemService.getPatchesToExecute();
+
+        //check
+        assertThat(patches).containsExactly(skippedPatch);
+    }
+
+    @Test
+    public void testIsPatchSystemReady() {
+        assertThat(patchSystemService.isPatchSystemReady()).isTrue();
+    }
+
+    private Session givenPatch(String json) throws LoginException {
+        given(patchFileRepository.getPatch(PATCH_PATH)).willReturn(patchFile);
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        given(patchFile.getDescriptor()).willReturn(BulkPatchDescriptor.parse(json));
+
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willReturn(resourceResolver);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        return session;
+    }
+
+    private static QueryManager givenQueryManager(Session session) throws RepositoryException {
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+        return queryManager;
+    }
+
+    private static Value givenPathValue(Session session, String path) throws RepositoryException {
+        ValueFactory valueFactory = mock(ValueFactory.class);
+        Value value = mock(Value.class);
+        given(session.getValueFactory()).willReturn(valueFactory);
+        given(valueFactory.createValue(path)).willReturn(value);
+        return value;
+    }
+
+    private static Query createQuery(Node... nodes) throws RepositoryException {
+        Query query = mock(Query.class);
+        QueryResult queryResult = mock(QueryResult.class);
+        given(query.execute()).willReturn(queryResult);
+
+        NodeIterator nodeIterator = mock(NodeIterator.class);
+        Iterator<Node> iterator = Arrays.asList(nodes).iterator();
+        given(nodeIterator.hasNext()).willAnswer(invocation -> iterator.hasNext());
+        given(nodeIterator.nextNode()).willAnswer(invocation -> iterator.next());
+        given(queryResult.getNodes()).willReturn(nodeIterator);
+        return query;
+    }
+
+    private static Node createNode(String path) throws RepositoryException {
+        Node node = mock(Node.class);
+        given(node.getPath()).willReturn(path);
+        return node;
+    }
+}
@@ -2,9 +2,13 @@ package be.ida_mediafoundry.jetpack.patchsystem.executors;
 
 import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchProgressListener;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.models.OnDeployPatchResult;
 import be.ida_mediafoundry.jetpack.patchsystem.ondeploy.services.OnDeployScriptSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchPreconditionService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutionResult;
@@ -15,12 +19,19 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PatchJobExecutorTest {
@@ -34,6 +45,15 @@ public class PatchJobExecutorTest {
     @Mock
     private OnDeployScriptSystemService onDeployScriptSystemService;
 
+    @Mock
+    private PatchPreconditionService patchPreconditionService;
+
+    @Mock
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Mock
+    private PatchSystemStateService patchSystemStateService;
+
     @Mock
     private Job job;
 
@@ -63,7 +83,7 @@ public class PatchJobExecutorTest {
         given(resultBuilder.message(anyString())).willReturn(resultBuilder);
         given(resultBuilder.failed()).willReturn(failedJobExecutionResult);
 
-        given(groovyPatchSystemService.runPatch("/path/to/script-1.groovy")).willThrow(new IllegalArgumentException("Error"));
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-1.groovy"), any(PatchProgressListener.class))).willThrow(new IllegalArgumentException("Error"));
 
         List<String> patchFiles = new ArrayList<>();
         patchFiles.add("/path/to/script-1.groovy");
@@ -77,6 +97,7 @@ public class PatchJobExecutorTest {
         JobExecutionResult result = patchJobExecutor.process(job, context);
         assertThat(result).isNotNull();
         assertThat(result).isEqualTo(failedJobExecutionResult);
+        verify(patchResultRepository).flush();
     }
 
     @Test
@@ -87,7 +108,7 @@ public class PatchJobExecutorTest {
         JobExecutionResult failedJobExecutionResult = mock(JobExecutionResult.class);
         given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
 
-        given(groovyPatchSystemService.runPatch("/path/to/script-1.groovy")).willReturn(new GroovyPatchResult());
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-1.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
 
         List<String> patchFiles = new ArrayList<>();
         patchFiles.add("/path/to/script-1.groovy");
@@ -111,8 +132,8 @@ public class PatchJobExecutorTest {
         JobExecutionResult failedJobExecutionResult = mock(JobExecutionResult.class);
         given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
 
-        given(groovyPatchSystemService.runPatch("/path/to/script-1.groovy")).willReturn(new GroovyPatchResult());
-        given(groovyPatchSystemService.runPatch("/path/to/script-2.groovy")).willReturn(new GroovyPatchResult());
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-1.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-2.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
 
         List<String> patchFiles = new ArrayList<>();
         patchFiles.add("/path/to/script-1.groovy");
@@ -163,7 +184,7 @@ public class PatchJobExecutorTest {
         JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
         given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
 
-        given(groovyPatchSystemService.runPatch("/path/to/script-1.groovy")).willReturn(new GroovyPatchResult());
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-1.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
         given(onDeployScriptSystemService.runPatch("be.ida.OnDeployScript2")).willReturn(new OnDeployPatchResult());
 
         List<String> patchFiles = new ArrayList<>();
@@ -203,4 +224,208 @@ public class PatchJobExecutorTest {
         assertThat(result).isNotNull();
         assertThat(result).isEqualTo(successJobExecutionResult);
     }
+
+    @Test
+    public void testProcess_GroovyScripts_compilationFailed() {
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
+        JobExecutionResult cancelledJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
+        given(resultBuilder.message(anyString())).willReturn(resultBuilder);
+        given(resultBuilder.cancelled()).willReturn(cancelledJobExecutionResult);
+
+        List<String> patchFiles = new ArrayList<>();
+        patchFiles.add("/path/to/script-1.groovy");
+        patchFiles.add("be.ida.OnDeployScript2");
+        patchFiles.add("/path/to/script-3.groovy");
+
+        List<String> typeList = new ArrayList<>();
+        typeList.add("groovy");
+        typeList.add("onDeployScript");
+        typeList.add("groovy");
+
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(patchFiles);
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(typeList);
+
+        given(groovyPatchSystemService.isPatchSystemReady()).willReturn(true);
+        given(groovyPatchSystemService.compilePatches(Arrays.asList("/path/to/script-1.groovy", "/path/to/script-3.groovy")))
+                .willReturn(Collections.singletonMap("/path/to/script-3.groovy", "unexpected token: }"));
+
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+        assertThat(result).isEqualTo(cancelledJobExecutionResult);
+        verify(groovyPatchSystemService, never()).runPatch(anyString(), any(PatchProgressListener.class));
+        verify(onDeployScriptSystemService, never()).runPatch(anyString());
+        verify(groovyPatchSystemService, never()).analyzePatches(any());
+        verify(groovyPatchSystemService).releasePatches(patchFiles);
+    }
+
+    @Test
+    public void testProcess_GroovyScripts_blockedByQueryPlan() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
+        JobExecutionResult cancelledJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
+        given(resultBuilder.message(anyString())).willReturn(resultBuilder);
+        given(resultBuilder.cancelled()).willReturn(cancelledJobExecutionResult);
+
+        List<String> patchFiles = Arrays.asList("/path/to/script-1.groovy", "be.ida.OnDeployScript2", "/path/to/script-3.groovy");
+        List<String> typeList = Arrays.asList("groovy", "onDeployScript", "groovy");
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(patchFiles);
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(typeList);
+
+        List<String> groovyPatchFiles = Arrays.asList("/path/to/script-1.groovy", "/path/to/script-3.groovy");
+        given(groovyPatchSystemService.isPatchSystemReady()).willReturn(true);
+        given(groovyPatchSystemService.compilePatches(groovyPatchFiles)).willReturn(Collections.emptyMap());
+        given(groovyPatchSystemService.analyzePatches(groovyPatchFiles))
+                .willReturn(Collections.singletonMap("/path/to/script-3.groovy", "plan: [nt:base] as [a] /* traverse \"*\" */"));
+
+        //test
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+
+        //check
+        assertThat(result).isEqualTo(cancelledJobExecutionResult);
+        verify(groovyPatchSystemService, never()).runPatch(anyString(), any(PatchProgressListener.class));
+        verify(onDeployScriptSystemService, never()).runPatch(anyString());
+        verify(patchPreconditionService, never()).evaluatePreconditions(any(), any());
+        verify(groovyPatchSystemService).releasePatches(patchFiles);
+    }
+
+    @Test
+    public void testProcess_GroovyScripts_preconditionFailed() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
+
+        List<String> patchFiles = Arrays.asList("/path/to/script-1.groovy", "/path/to/script-2.groovy");
+        List<String> typeList = Arrays.asList("groovy", "groovy");
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(patchFiles);
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(typeList);
+
+        given(patchPreconditionService.evaluatePreconditions(patchFiles, typeList))
+                .willReturn(Collections.singletonMap("/path/to/script-1.groovy", "missing /content/migrated"));
+        given(patchPreconditionService.skipPatch("/path/to/script-1.groovy", "groovy", "missing /content/migrated")).willReturn(new GroovyPatchResult());
+        given(groovyPatchSystemService.runPatch(eq("/path/to/script-2.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
+
+        //test
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+
+        //check
+        assertThat(result).isEqualTo(successJobExecutionResult);
+        verify(groovyPatchSystemService, never()).runPatch(eq("/path/to/script-1.groovy"), any(PatchProgressListener.class));
+        verify(patchPreconditionService).skipPatch("/path/to/script-1.groovy", "groovy", "missing /content/migrated");
+    }
+
+    @Test
+    public void testProcess_GroovyScripts_transactionalGroup() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
+
+        List<String> patchFiles = Arrays.asList("/apps/patches/config/1.groovy", "/apps/patches/config/2.groovy", "/apps/patches/content/3.groovy");
+        List<String> typeList = Arrays.asList("groovy", "groovy", "groovy");
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(patchFiles);
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(typeList);
+
+        given(groovyPatchSystemService.getTransactionalGroup("/apps/patches/config/1.groovy")).willReturn("/apps/patches/config");
+        given(groovyPatchSystemService.getTransactionalGroup("/apps/patches/config/2.groovy")).willReturn("/apps/patches/config");
+        given(groovyPatchSystemService.runPatchGroup(eq(Arrays.asList("/apps/patches/config/1.groovy", "/apps/patches/config/2.groovy")), any(PatchProgressListener.class)))
+                .willReturn(Arrays.asList(new GroovyPatchResult(), new GroovyPatchResult()));
+        given(groovyPatchSystemService.runPatch(eq("/apps/patches/content/3.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
+
+        //test
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+
+        //check
+        assertThat(result).isEqualTo(successJobExecutionResult);
+        verify(groovyPatchSystemService, never()).runPatch(eq("/apps/patches/config/1.groovy"), any(PatchProgressListener.class));
+        verify(context).incrementProgressCount(3);
+    }
+
+    @Test
+    public void testProcess_GroovyScripts_transactionalGroup_preconditionFailed() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        JobExecutionResult successJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.succeeded()).willReturn(successJobExecutionResult);
+
+        List<String> patchFiles = Arrays.asList("/apps/patches/config/1.groovy", "/apps/patches/config/2.groovy", "/apps/patches/config/3.groovy");
+        List<String> typeList = Arrays.asList("groovy", "groovy", "groovy");
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(patchFiles);
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(typeList);
+
+        given(patchPreconditionService.evaluatePreconditions(patchFiles, typeList))
+                .willReturn(Collections.singletonMap("/apps/patches/config/2.groovy", "missing /content/migrated"));
+        given(patchPreconditionService.skipPatch("/apps/patches/config/2.groovy", "groovy", "missing /content/migrated")).willReturn(new GroovyPatchResult());
+        for (String patchFile : patchFiles) {
+            given(groovyPatchSystemService.getTransactionalGroup(patchFile)).willReturn("/apps/patches/config");
+        }
+        given(groovyPatchSystemService.runPatchGroup(eq(Arrays.asList("/apps/patches/config/1.groovy", "/apps/patches/config/3.groovy")), any(PatchProgressListener.class)))
+                .willReturn(Arrays.asList(new GroovyPatchResult(), new GroovyPatchResult()));
+
+        //test
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+
+        //check
+        assertThat(result).isEqualTo(successJobExecutionResult);
+        verify(groovyPatchSystemService).runPatchGroup(anyList(), any(PatchProgressListener.class));
+        verify(groovyPatchSystemService, never()).runPatch(anyString(), any(PatchProgressListener.class));
+        verify(patchPreconditionService).skipPatch("/apps/patches/config/2.groovy", "groovy", "missing /content/migrated");
+        verify(context).incrementProgressCount(3);
+    }
+
+    @Test
+    public void testProcess_GroovyScript_reportsState() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        given(resultBuilder.succeeded()).willReturn(mock(JobExecutionResult.class));
+
+        given(job.getId()).willReturn("job-1");
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(Collections.singletonList("/apps/patches/content/1.groovy"));
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(Collections.singletonList("groovy"));
+        GroovyPatchResult patchResult = new GroovyPatchResult();
+        given(groovyPatchSystemService.runPatch(eq("/apps/patches/content/1.groovy"), any(PatchProgressListener.class))).willReturn(patchResult);
+
+        //test
+        patchJobExecutor.process(job, context);
+
+        //check
+        verify(patchSystemStateService).jobStarted("job-1");
+        verify(patchSystemStateService).patchStarted("/apps/patches/content/1.groovy");
+        verify(patchSystemStateService).patchExecuted("/apps/patches/content/1.groovy", patchResult);
+        verify(patchSystemStateService).jobFinished();
+    }
+
+    @Test
+    public void testProcess_GroovyScripts_stopped() {
+        //given
+        JobExecutionContext.ResultBuilder resultBuilder = mock(JobExecutionContext.ResultBuilder.class);
+        given(context.result()).willReturn(resultBuilder);
+        given(resultBuilder.succeeded()).willReturn(mock(JobExecutionResult.class));
+        given(resultBuilder.message(anyString())).willReturn(resultBuilder);
+        JobExecutionResult cancelledJobExecutionResult = mock(JobExecutionResult.class);
+        given(resultBuilder.cancelled()).willReturn(cancelledJobExecutionResult);
+
+        given(job.getProperty(JetpackConstants.PATCH_PATHS, List.class)).willReturn(Arrays.asList("/apps/patches/content/1.groovy", "/apps/patches/content/2.groovy"));
+        given(job.getProperty(JetpackConstants.TYPES, List.class)).willReturn(Arrays.asList("groovy", "groovy"));
+        given(groovyPatchSystemService.runPatch(eq("/apps/patches/content/1.groovy"), any(PatchProgressListener.class))).willReturn(new GroovyPatchResult());
+        given(context.isStopped()).willReturn(false, true);
+
+        //test
+        JobExecutionResult result = patchJobExecutor.process(job, context);
+
+        //check
+        assertThat(result).isEqualTo(cancelledJobExecutionResult);
+        verify(groovyPatchSystemService, never()).runPatch(eq("/apps/patches/content/2.groovy"), any(PatchProgressListener.class));
+        verify(patchResultRepository).flush();
+        verify(patchSystemStateService).jobFinished();
+    }
 }
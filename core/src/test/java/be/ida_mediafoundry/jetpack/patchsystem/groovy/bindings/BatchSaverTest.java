@@ -0,0 +1,113 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.willDoNothing;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchSaverTest {
+
+    @Mock
+    private Session session;
+
+    private BatchSaver batchSaver;
+
+    @Before
+    public void setUp() {
+        batchSaver = new BatchSaver(session);
+    }
+
+    @Test
+    public void testChanged_savedPerBatch() throws RepositoryException {
+        //given
+        batchSaver.setMaxChanges(10);
+
+        //test
+        for (int i = 0; i < 25; i++) {
+            batchSaver.changed();
+        }
+
+        //check
+        verify(session, times(2)).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(2);
+        assertThat(batchSaver.getPendingChanges()).isEqualTo(5);
+
+        batchSaver.flush();
+        verify(session, times(3)).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(3);
+        assertThat(batchSaver.getPendingChanges()).isEqualTo(0);
+    }
+
+    @Test
+    public void testChanged_savedWhenMaxBytesExceeded() throws RepositoryException {
+        //given
+        batchSaver.setMaxBytes(1000);
+
+        //test
+        batchSaver.changed(400);
+        batchSaver.changed(400);
+        batchSaver.changed(400);
+
+        //check
+        verify(session, times(1)).save();
+        assertThat(batchSaver.getPendingChanges()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFlush_noChanges() throws RepositoryException {
+        //test
+        batchSaver.flush();
+
+        //check
+        verify(session, never()).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSave_mergeConflict_retried() throws RepositoryException {
+        //given
+        willThrow(new InvalidItemStateException("OakState0001: Unresolved conflicts"))
+                .willDoNothing()
+                .given(session).save();
+
+        //test
+        batchSaver.changed();
+        batchSaver.flush();
+
+        //check
+        verify(session).refresh(true);
+        verify(session, times(2)).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(1);
+        assertThat(batchSaver.getRetryCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSave_mergeConflict_retriesExhausted() throws RepositoryException {
+        //given
+        batchSaver.setMaxRetries(2);
+        willThrow(new InvalidItemStateException("OakState0001: Unresolved conflicts")).given(session).save();
+
+        //test
+        batchSaver.changed();
+        assertThatThrownBy(() -> batchSaver.flush()).isInstanceOf(InvalidItemStateException.class);
+
+        //check
+        verify(session, times(3)).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(0);
+        assertThat(batchSaver.getPendingChanges()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,137 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import groovy.lang.Closure;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DataFileReaderTest {
+
+    @Mock
+    private Session session;
+
+    private final List<String> progress = new ArrayList<>();
+    private final List<Object> records = new ArrayList<>();
+
+    private DataFileReader dataFileReader;
+
+    @Before
+    public void setUp() {
+        dataFileReader = new DataFileReader(session, "/apps/patches/project", new BatchSaver(session), progress::add);
+        dataFileReader.setProgressInterval(2);
+    }
+
+    @Test
+    public void testEachRecord_csv() throws Exception {
+        //given
+        Binary binary = givenDataFile("/apps/patches/project/users.csv",
+                "\uFEFFid,name,email\r\n1,Jane,jane@example.com\r\n2,\"Doe, John\",\"john \"\"jd\"\"\nat example.com\"\r\n3,Joe\r\n");
+
+        //test
+        long count = dataFileReader.eachRecord("users.csv", collect());
+
+        //check
+        assertThat(count).isEqualTo(3);
+        assertThat(records).hasSize(3);
+        assertThat((Map<Object, Object>) records.get(0)).containsEntry("id", "1").containsEntry("name", "Jane").containsEntry("email", "jane@example.com");
+        assertThat((Map<Object, Object>) records.get(1)).containsEntry("name", "Doe, John").containsEntry("email", "john \"jd\"\nat example.com");
+        assertThat((Map<Object, Object>) records.get(2)).containsEntry("name", "Joe").containsEntry("email", null);
+        assertThat(progress).containsExactly("2 records of 'users.csv' processed", "3 records of 'users.csv' processed");
+        verify(binary).dispose();
+    }
+
+    @Test
+    public void testEachRecord_jsonArray() throws Exception {
+        //given
+        givenDataFile("/apps/patches/data/users.json", "[{\"id\": 1, \"name\": \"Jane\"}, {\"id\": 2, \"name\": \"John\"}]");
+
+        //test
+        long count = dataFileReader.eachRecord("/apps/patches/data/users.json", collect());
+
+        //check
+        assertThat(count).isEqualTo(2);
+        assertThat((Map<Object, Object>) records.get(1)).containsEntry("name", "John");
+    }
+
+    @Test
+    public void testEachRecord_newlineDelimitedJson() throws Exception {
+        //given
+        givenDataFile("/apps/patches/project/users.ndjson", "{\"id\": 1}\n{\"id\": 2}\n{\"id\": 3}\n");
+
+        //test
+        long count = dataFileReader.eachRecord("users.ndjson", collect());
+
+        //check
+        assertThat(count).isEqualTo(3);
+        assertThat(dataFileReader.getRecordsRead()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEachRecord_batchedCommits() throws Exception {
+        //given
+        BatchSaver batchSaver = new BatchSaver(session);
+        batchSaver.setMaxChanges(2);
+        dataFileReader = new DataFileReader(session, "/apps/patches/project", batchSaver, progress::add);
+        givenDataFile("/apps/patches/project/ids.csv", "id\n1\n2\n3\n4\n5\n");
+
+        //test
+        dataFileReader.eachRecord("ids.csv", collect());
+
+        //check
+        verify(session, times(3)).save();
+        assertThat(batchSaver.getCommitCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEachRecord_unsupportedFile() throws Exception {
+        //given
+        givenDataFile("/apps/patches/project/users.xml", "<users/>");
+
+        //test & check
+        assertThatThrownBy(() -> dataFileReader.eachRecord("users.xml", collect()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unsupported data file, only csv and json files can be streamed: /apps/patches/project/users.xml");
+    }
+
+    private Closure<Object> collect() {
+        return new Closure<Object>(null) {
+            public Object doCall(Object record) {
+                return records.add(record);
+            }
+        };
+    }
+
+    private Binary givenDataFile(String path, String content) throws RepositoryException {
+        Node file = mock(Node.class);
+        Node fileContent = mock(Node.class);
+        Property data = mock(Property.class);
+        Binary binary = mock(Binary.class);
+        given(session.getNode(path)).willReturn(file);
+        given(file.getNode(Node.JCR_CONTENT)).willReturn(fileContent);
+        given(fileContent.getProperty(Property.JCR_DATA)).willReturn(data);
+        given(data.getBinary()).willReturn(binary);
+        given(binary.getStream()).willReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return binary;
+    }
+}
@@ -0,0 +1,248 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import groovy.lang.Closure;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParallelNodeVisitorTest {
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    private final AtomicInteger openedResolvers = new AtomicInteger();
+    private final List<Session> partitionSessions = Collections.synchronizedList(new ArrayList<>());
+    private final List<ResourceResolver> partitionResolvers = Collections.synchronizedList(new ArrayList<>());
+    private boolean failFirstSave;
+
+    private ParallelNodeVisitor parallelVisitor;
+
+    @Before
+    public void setUp() {
+        parallelVisitor = new ParallelNodeVisitor(resourceResolver, this::createPartitionResolver);
+        parallelVisitor.setThreads(2);
+        parallelVisitor.setPartitionSize(2);
+    }
+
+    @Test
+    public void testVisit_allDescendantsVisitedInPartitions() throws RepositoryException {
+        //given
+        Resource root = createResource("/content/root",
+                createResource("/content/root/a",
+                        createResource("/content/root/a/a1"),
+                        createResource("/content/root/a/a2")),
+                createResource("/content/root/b"));
+        given(resourceResolver.getResource("/content/root")).willReturn(root);
+
+        Set<String> visitedPaths = ConcurrentHashMap.newKeySet();
+
+        //test
+        VisitStatistics statistics = parallelVisitor.visit("/content/root", new Closure<Object>(null) {
+            public Object doCall(Node node) throws RepositoryException {
+                return visitedPaths.add(node.getPath());
+            }
+        });
+
+        //check
+        assertThat(visitedPaths).containsExactlyInAnyOrder("/content/root", "/content/root/a", "/content/root/a/a1", "/content/root/a/a2", "/content/root/b");
+        assertThat(statistics.getVisitedNodes()).isEqualTo(5);
+        assertThat(statistics.getPartitions()).isEqualTo(3);
+        assertThat(statistics.getCommitCount()).isEqualTo(3);
+        assertThat(statistics.getErrorCount()).isEqualTo(0);
+        assertThat(openedResolvers.get()).isEqualTo(3);
+        for (Session session : partitionSessions) {
+            verify(session, atLeastOnce()).save();
+        }
+    }
+
+    @Test
+    public void testVisit_errorsCollectedPerPartition() {
+        //given
+        Resource root = createResource("/content/root",
+                createResource("/content/root/a"),
+                createResource("/content/root/b"));
+        given(resourceResolver.getResource("/content/root")).willReturn(root);
+
+        //test
+        VisitStatistics statistics = parallelVisitor.visit("/content/root", new Closure<Object>(null) {
+            public Object doCall(Node node) throws RepositoryException {
+                if (node.getPath().endsWith("/a")) {
+                    throw new IllegalStateException("failed");
+                }
+                return null;
+            }
+        });
+
+        //check
+        assertThat(statistics.getVisitedNodes()).isEqualTo(2);
+        assertThat(statistics.getErrorCount()).isEqualTo(1);
+        assertThat(statistics.getErrors()).containsExactly("partition 1: /content/root/a - failed");
+        assertThat(parallelVisitor.getStatistics().getErrorCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testVisit_failedBatchReverted() throws RepositoryException {
+        //given
+        Resource root = createResource("/content/root",
+                createResource("/content/root/a"),
+                createResource("/content/root/b"),
+                createResource("/content/root/c"));
+        given(resourceResolver.getResource("/content/root")).willReturn(root);
+        parallelVisitor.setPartitionSize(4);
+        parallelVisitor.setBatchSize(2);
+        failFirstSave = true;
+
+        //test
+        VisitStatistics statistics = parallelVisitor.visit("/content/root", new Closure<Object>(null) {
+            public Object doCall(Node node) {
+                return null;
+            }
+        });
+
+        //check
+        assertThat(statistics.getVisitedNodes()).isEqualTo(4);
+        assertThat(statistics.getFailedBatches()).isEqualTo(1);
+        assertThat(statistics.getCommitCount()).isEqualTo(1);
+        assertThat(statistics.getErrors()).containsExactly("partition 1: batch of 2 changes reverted - save failed");
+        verify(partitionResolvers.get(0)).revert();
+        verify(partitionSessions.get(0), times(2)).save();
+    }
+
+    @Test
+    public void testVisit_commitDeferred() {
+        //given
+        parallelVisitor.setCommitDeferred(true);
+
+        //test
+        assertThatThrownBy(() -> parallelVisitor.visit("/content/root", new Closure<Object>(null) {
+            public Object doCall(Node node) {
+                return null;
+            }
+        })).isInstanceOf(IllegalStateException.class).hasMessageContaining("transactional group");
+
+        //check
+        assertThat(openedResolvers.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testVisit_rootNotFound() {
+        //test
+        VisitStatistics statistics = parallelVisitor.visit("/content/missing", new Closure<Object>(null) {
+            public Object doCall(Node node) {
+                return null;
+            }
+        });
+
+        //check
+        assertThat(statistics.getPartitions()).isEqualTo(0);
+        assertThat(openedResolvers.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testVisitQuery() throws RepositoryException {
+        //given
+        Session session = mock(Session.class);
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        Query query = mock(Query.class);
+        QueryResult queryResult = mock(QueryResult.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+        given(queryManager.createQuery("SELECT * FROM [cq:Page]", Query.JCR_SQL2)).willReturn(query);
+        given(query.execute()).willReturn(queryResult);
+
+        NodeIterator nodes = createNodeIterator("/content/page-1", "/content/page-2", "/content/page-3");
+        given(queryResult.getNodes()).willReturn(nodes);
+
+        Set<String> visitedPaths = ConcurrentHashMap.newKeySet();
+
+        //test
+        VisitStatistics statistics = parallelVisitor.visitQuery("SELECT * FROM [cq:Page]", new Closure<Object>(null) {
+            public Object doCall(Node node) throws RepositoryException {
+                return visitedPaths.add(node.getPath());
+            }
+        });
+
+        //check
+        assertThat(visitedPaths).containsExactlyInAnyOrder("/content/page-1", "/content/page-2", "/content/page-3");
+        assertThat(statistics.getVisitedNodes()).isEqualTo(3);
+        assertThat(statistics.getPartitions()).isEqualTo(2);
+    }
+
+    private ResourceResolver createPartitionResolver() {
+        openedResolvers.incrementAndGet();
+        ResourceResolver partitionResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        try {
+            given(session.getNode(anyString())).willAnswer(invocation -> createNode(invocation.getArgument(0)));
+            if (failFirstSave) {
+                willThrow(new RepositoryException("save failed")).willDoNothing().given(session).save();
+            }
+        } catch (RepositoryException e) {
+            throw new IllegalStateException(e);
+        }
+        given(partitionResolver.adaptTo(Session.class)).willReturn(session);
+        partitionSessions.add(session);
+        partitionResolvers.add(partitionResolver);
+        return partitionResolver;
+    }
+
+    private static Resource createResource(String path, Resource... children) {
+        Resource resource = mock(Resource.class);
+        given(resource.getPath()).willReturn(path);
+        given(resource.listChildren()).willAnswer(invocation -> Arrays.asList(children).iterator());
+        return resource;
+    }
+
+    private static Node createNode(String path) throws RepositoryException {
+        Node node = mock(Node.class);
+        given(node.getPath()).willReturn(path);
+        return node;
+    }
+
+    private static NodeIterator createNodeIterator(String... paths) throws RepositoryException {
+        List<Node> nodes = new ArrayList<>();
+        for (String path : paths) {
+            nodes.add(createNode(path));
+        }
+
+        NodeIterator nodeIterator = mock(NodeIterator.class);
+        Iterator<Node> iterator = nodes.iterator();
+        given(nodeIterator.hasNext()).willAnswer(invocation -> iterator.hasNext());
+        given(nodeIterator.nextNode()).willAnswer(invocation -> iterator.next());
+        return nodeIterator;
+    }
+}
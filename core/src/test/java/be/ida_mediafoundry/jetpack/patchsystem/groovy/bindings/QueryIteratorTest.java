@@ -0,0 +1,187 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.bindings;
+
+import groovy.lang.Closure;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueryIteratorTest {
+
+    @Mock
+    private Session session;
+    @Mock
+    private QueryManager queryManager;
+
+    private final Map<String, Value> values = new HashMap<>();
+
+    private QueryIterator queryIterator;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        Workspace workspace = mock(Workspace.class);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+
+        queryIterator = new QueryIterator(session);
+        queryIterator.setPageSize(2);
+    }
+
+    @Test
+    public void testEach_pagedWithOffset() throws RepositoryException {
+        //given
+        Query page1 = createQuery("/content/page-1", "/content/page-2");
+        Query page2 = createQuery("/content/page-3");
+        given(queryManager.createQuery("SELECT * FROM [cq:Page]", Query.JCR_SQL2)).willReturn(page1, page2);
+
+        List<String> paths = new ArrayList<>();
+
+        //test
+        long read = queryIterator.each("SELECT * FROM [cq:Page]", collect(paths));
+
+        //check
+        assertThat(read).isEqualTo(3);
+        assertThat(paths).containsExactly("/content/page-1", "/content/page-2", "/content/page-3");
+        verify(page1).setLimit(2);
+        verify(page1).setOffset(0);
+        verify(page2).setOffset(2);
+        assertThat(queryIterator.getRowsRead()).isEqualTo(3);
+        assertThat(queryIterator.getPages()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEachByKey_pagedOnKey() throws RepositoryException {
+        //given
+        Query page1 = createQuery("/content/page-1", "/content/page-2");
+        Query page2 = createQuery("/content/page-3", "/content/page-4");
+        Query page3 = createQuery();
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] WHERE ISDESCENDANTNODE('/content') ORDER BY [jcr:uuid]", Query.JCR_SQL2))
+                .willReturn(page1);
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] WHERE (ISDESCENDANTNODE('/content')) AND [jcr:uuid] > $lastKey ORDER BY [jcr:uuid]", Query.JCR_SQL2))
+                .willReturn(page2, page3);
+
+        List<String> paths = new ArrayList<>();
+
+        //test
+        long read = queryIterator.eachByKey("SELECT * FROM [cq:Page] WHERE ISDESCENDANTNODE('/content')", "jcr:uuid", collect(paths));
+
+        //check
+        assertThat(read).isEqualTo(4);
+        assertThat(paths).containsExactly("/content/page-1", "/content/page-2", "/content/page-3", "/content/page-4");
+        verify(page2).bindValue("lastKey", values.get("/content/page-2"));
+        verify(page3).bindValue("lastKey", values.get("/content/page-4"));
+        assertThat(queryIterator.getPages()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEachByKey_orConditionKeptTogether() throws RepositoryException {
+        //given
+        Query page1 = createQuery("/content/page-1");
+        Query page2 = createQuery();
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] WHERE [a] = 'x' OR [b] = 'y' ORDER BY [jcr:uuid]", Query.JCR_SQL2))
+                .willReturn(page1);
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] WHERE ([a] = 'x' OR [b] = 'y') AND [jcr:uuid] > $lastKey ORDER BY [jcr:uuid]", Query.JCR_SQL2))
+                .willReturn(page2);
+        queryIterator.setPageSize(1);
+
+        List<String> paths = new ArrayList<>();
+
+        //test
+        long read = queryIterator.eachByKey("SELECT * FROM [cq:Page] WHERE [a] = 'x' OR [b] = 'y'", "jcr:uuid", collect(paths));
+
+        //check
+        assertThat(read).isEqualTo(1);
+        assertThat(paths).containsExactly("/content/page-1");
+        verify(page2).bindValue("lastKey", values.get("/content/page-1"));
+    }
+
+    @Test
+    public void testEachByKey_pagedOnPath() throws RepositoryException {
+        //given
+        Query page1 = createQuery("/content/page-1", "/content/page-2");
+        Query page2 = createQuery();
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] ORDER BY [jcr:path]", Query.JCR_SQL2)).willReturn(page1);
+        given(queryManager.createQuery("SELECT * FROM [cq:Page] WHERE [jcr:path] > $lastKey ORDER BY [jcr:path]", Query.JCR_SQL2))
+                .willReturn(page2);
+        ValueFactory valueFactory = mock(ValueFactory.class);
+        Value lastPath = mock(Value.class);
+        given(session.getValueFactory()).willReturn(valueFactory);
+        given(valueFactory.createValue("/content/page-2")).willReturn(lastPath);
+
+        List<String> paths = new ArrayList<>();
+
+        //test
+        long read = queryIterator.eachByKey("SELECT * FROM [cq:Page]", QueryIterator.PATH_KEY, collect(paths));
+
+        //check
+        assertThat(read).isEqualTo(2);
+        assertThat(paths).containsExactly("/content/page-1", "/content/page-2");
+        verify(page2).bindValue("lastKey", lastPath);
+    }
+
+    @Test
+    public void testEachByKey_orderByNotAllowed() {
+        assertThatThrownBy(() -> queryIterator.eachByKey("SELECT * FROM [cq:Page] ORDER BY [jcr:created]", "jcr:uuid", collect(new ArrayList<>())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Query createQuery(String... paths) throws RepositoryException {
+        List<Node> nodes = new ArrayList<>();
+        for (String path : paths) {
+            Node node = mock(Node.class);
+            given(node.getPath()).willReturn(path);
+
+            Value value = mock(Value.class);
+            Property property = mock(Property.class);
+            given(property.getValue()).willReturn(value);
+            given(node.hasProperty("jcr:uuid")).willReturn(true);
+            given(node.getProperty("jcr:uuid")).willReturn(property);
+            values.put(path, value);
+            nodes.add(node);
+        }
+
+        Iterator<Node> iterator = nodes.iterator();
+        NodeIterator nodeIterator = mock(NodeIterator.class);
+        given(nodeIterator.hasNext()).willAnswer(invocation -> iterator.hasNext());
+        given(nodeIterator.nextNode()).willAnswer(invocation -> iterator.next());
+
+        QueryResult queryResult = mock(QueryResult.class);
+        given(queryResult.getNodes()).willReturn(nodeIterator);
+        Query query = mock(Query.class);
+        given(query.execute()).willReturn(queryResult);
+        return query;
+    }
+
+    private static Closure<Object> collect(List<String> paths) {
+        return new Closure<Object>(null) {
+            public Object doCall(Node node) throws RepositoryException {
+                return paths.add(node.getPath());
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.models;
+
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PatchManifestTest {
+
+    @Test
+    public void testParse() {
+        //given
+        String json = "{\"version\": 2,"
+                + " \"folders\": [{\"path\": \"project-A\", \"title\": \"Project A\"}],"
+                + " \"patches\": ["
+                + "   {\"path\": \"project-A/script-2.groovy\", \"order\": 1, \"size\": 20, \"md5\": \"200\"},"
+                + "   {\"path\": \"project-A/script-1.groovy\", \"order\": 0, \"size\": 10, \"md5\": \"100\", \"fingerprint\": \"f100\","
+                + "    \"digests\": {\"sha256\": \"sha256:s100\"}}"
+                + " ],"
+                + " \"bulkPatches\": ["
+                + "   {\"path\": \"project-A/migrate.bulk.json\", \"order\": 0, \"size\": 30, \"md5\": \"300\"}"
+                + " ]}";
+
+        //test
+        PatchManifest manifest = PatchManifest.parse(json);
+
+        //check
+        assertThat(manifest.getFolders()).hasSize(1);
+        assertThat(manifest.getFolders().get(0).getTitle()).isEqualTo("Project A");
+        assertThat(manifest.getFolders().get(0).isTransactional()).isFalse();
+        assertThat(manifest.getPatches()).extracting(PatchManifest.Patch::getPath)
+                .containsExactly("project-A/script-1.groovy", "project-A/script-2.groovy");
+        assertThat(manifest.getPatches().get(0).getSize()).isEqualTo(10);
+        assertThat(manifest.getPatches().get(1).getDigests()).isEmpty();
+        assertThat(manifest.getBulkPatches()).extracting(PatchManifest.Patch::getPath).containsExactly("project-A/migrate.bulk.json");
+    }
+
+    @Test
+    public void testParse_version1() {
+        //given
+        String json = "{\"version\": 1, \"patches\": [{\"path\": \"project-A/script-1.groovy\", \"md5\": \"100\"}]}";
+
+        //test
+        PatchManifest manifest = PatchManifest.parse(json);
+
+        //check
+        assertThat(manifest.getPatches()).hasSize(1);
+        assertThat(manifest.getBulkPatches()).isNull();
+    }
+
+    @Test
+    public void testParse_invalid() {
+        assertThatThrownBy(() -> PatchManifest.parse("{\"version\": 3}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PatchManifest.parse("{\"version\": 2, \"bulkPatches\": [{\"path\": \"a.bulk.json\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PatchManifest.parse("{\"version\": 1, \"patches\": [{\"path\": \"a.groovy\"}]}"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PatchManifest.parse("{version")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testToJson() {
+        //given
+        PatchManifest manifest = new PatchManifest();
+        manifest.getFolders().add(new PatchManifest.Folder("project-A", "Project A", true));
+        PatchManifest.Patch patch = new PatchManifest.Patch("project-A/script-1.groovy", 0, 10, "100", "f100");
+        patch.getDigests().put("sha256", "sha256:s100");
+        manifest.getPatches().add(patch);
+
+        //test
+        PatchManifest parsed = PatchManifest.parse(manifest.toJson());
+
+        //check
+        assertThat(parsed.getFolders().get(0).isTransactional()).isTrue();
+        assertThat(parsed.getPatches().get(0).getFingerprint()).isEqualTo("f100");
+        assertThat(parsed.getPatches().get(0).getDigests()).containsEntry("sha256", "sha256:s100");
+    }
+
+    @Test
+    public void testFromManifest() {
+        //given
+        PatchManifest.Folder folder = new PatchManifest.Folder("project-A", null, true);
+        PatchManifest.Patch patch = new PatchManifest.Patch("project-A/script-1.groovy", 0, 10, "100", "f100");
+        patch.getDigests().put("sha256", "sha256:s100");
+
+        //test
+        GroovyPatchFolder patchFolder = GroovyPatchFolder.fromManifest("/apps/patches/project-A", folder, null);
+        GroovyPatchFile patchFile = GroovyPatchFile.fromManifest("/apps/patches/project-A/script-1.groovy", patch, patchFolder);
+
+        //check
+        assertThat(patchFile.getScriptName()).isEqualTo("script-1.groovy");
+        assertThat(patchFile.getProjectName()).isEqualTo("project-A");
+        assertThat(patchFile.getResultPath()).isEqualTo("project-A/script-1.groovy");
+        assertThat(patchFile.getTransactionalGroup()).isEqualTo("/apps/patches/project-A");
+        assertThat(patchFile.getMd5()).isEqualTo("100");
+        assertThat(patchFile.getFingerprint()).isEqualTo("f100");
+        assertThat(patchFile.getDigest(DigestAlgorithm.SHA256)).isEqualTo("sha256:s100");
+        assertThat(patchFile.getDigest(DigestAlgorithm.MURMUR3)).isNull();
+        assertThat(patchFile.getFileContent()).isNull();
+    }
+
+    @Test
+    public void testFromManifest_bulkPatch() {
+        //given
+        PatchManifest.Folder folder = new PatchManifest.Folder("project-A", "Project A", false);
+        PatchManifest.Patch patch = new PatchManifest.Patch("project-A/migrate.bulk.json", 0, 30, "300", "f300");
+        patch.getDigests().put("sha256", "sha256:s300");
+
+        //test
+        GroovyPatchFolder patchFolder = GroovyPatchFolder.fromManifest("/apps/patches/project-A", folder, null);
+        BulkPatchFile patchFile = BulkPatchFile.fromManifest("/apps/patches/project-A/migrate.bulk.json", patch, patchFolder);
+
+        //check
+        assertThat(patchFile.getScriptName()).isEqualTo("migrate.bulk.json");
+        assertThat(patchFile.getProjectName()).isEqualTo("Project A");
+        assertThat(patchFile.getResultPath()).isEqualTo("project-A/migrate.bulk.json");
+        assertThat(patchFile.getType()).isEqualTo(BulkPatchFile.TYPE);
+        assertThat(patchFile.getMd5()).isEqualTo("300");
+        assertThat(patchFile.getFingerprint()).isEqualTo("f300");
+        assertThat(patchFile.getDigest(DigestAlgorithm.SHA256)).isEqualTo("sha256:s300");
+        assertThat(patchFile.getFileContent()).isNull();
+    }
+}
@@ -2,6 +2,8 @@ package be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
 import io.wcm.testing.mock.aem.junit.AemContext;
 import org.apache.sling.api.resource.Resource;
@@ -11,6 +13,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -110,5 +116,75 @@ public class GroovyPatchFileRepositoryImplTest {
         assertThat(file.getPath()).isEqualTo("/apps/patches/script-4.groovy");
         assertThat(file.getProjectName()).isNull();
         assertThat(file.getResultPath()).isEqualTo("script-4.groovy");
+        assertThat(file.getPrecompiledScript()).isNull();
+    }
+
+    @Test
+    public void testGetPatch_precompiled() throws IOException {
+        GroovyPatchFileRepository repository = context.getService(GroovyPatchFileRepository.class);
+        //given
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        new PrecompiledScript("f400", "PatchScript_f400", Collections.singletonMap("PatchScript_f400", new byte[]{1, 2})).write(jar);
+        context.load().binaryFile(new ByteArrayInputStream(jar.toByteArray()), "/apps/patches/script-4.groovy" + PrecompiledScript.EXTENSION);
+
+        //test
+        GroovyPatchFile file = repository.getPatch("/apps/patches/script-4.groovy");
+
+        //check
+        assertThat(file.getPrecompiledScript()).isNotNull();
+        assertThat(file.getPrecompiledScript().getMd5()).isEqualTo("f400");
+        assertThat(file.getPrecompiledScript().getScriptClassName()).isEqualTo("PatchScript_f400");
+        assertThat(file.getPrecompiledScript().getClasses()).containsOnlyKeys("PatchScript_f400");
+        assertThat(repository.getPatches()).extracting(GroovyPatchFile::getPath).doesNotContain("/apps/patches/script-4.groovy.jar");
+    }
+
+    @Test
+    public void testGetPatch_precompiledLoadedOnUse() throws IOException {
+        GroovyPatchFileRepository repository = context.getService(GroovyPatchFileRepository.class);
+        //given
+        GroovyPatchFile file = repository.getPatch("/apps/patches/script-4.groovy");
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        new PrecompiledScript("f400", "PatchScript_f400", Collections.singletonMap("PatchScript_f400", new byte[]{1, 2})).write(jar);
+        context.load().binaryFile(new ByteArrayInputStream(jar.toByteArray()), "/apps/patches/script-4.groovy" + PrecompiledScript.EXTENSION);
+
+        //test
+        PrecompiledScript precompiledScript = file.getPrecompiledScript();
+
+        //check
+        assertThat(precompiledScript).isNotNull();
+        assertThat(precompiledScript.getMd5()).isEqualTo("f400");
+        assertThat(file.getPrecompiledScript()).isSameAs(precompiledScript);
+    }
+
+    @Test
+    public void testGetPatches_manifest() {
+        GroovyPatchFileRepository repository = context.getService(GroovyPatchFileRepository.class);
+        //given
+        String manifest = "{\"version\": 1,"
+                + " \"folders\": [{\"path\": \"project-C\", \"title\": \"Project C\"}, {\"path\": \"project-C/sub\", \"transactional\": true}],"
+                + " \"patches\": [{\"path\": \"project-C/sub/script-6.groovy\", \"order\": 1, \"md5\": \"600\"},"
+                + " {\"path\": \"project-C/script-5.groovy\", \"order\": 0, \"md5\": \"500\"}]}";
+        context.create().resource("/apps/patches/project-C", "jcr:primaryType", "sling:Folder");
+        context.create().resource("/apps/patches/project-C/" + PatchManifest.NAME, "jcr:primaryType", "nt:file");
+        context.create().resource("/apps/patches/project-C/" + PatchManifest.NAME + "/jcr:content",
+                "jcr:primaryType", "nt:resource", "jcr:data", manifest);
+
+        //test
+        List<GroovyPatchFile> patchFileList = repository.getPatches();
+
+        //check
+        assertThat(patchFileList.size()).isEqualTo(6);
+
+        GroovyPatchFile patchFile5 = patchFileList.get(4);
+        assertThat(patchFile5.getPath()).isEqualTo("/apps/patches/project-C/script-5.groovy");
+        assertThat(patchFile5.getProjectName()).isEqualTo("Project C");
+        assertThat(patchFile5.getResultPath()).isEqualTo("project-C/script-5.groovy");
+        assertThat(patchFile5.getMd5()).isEqualTo("500");
+        assertThat(patchFile5.getTransactionalGroup()).isNull();
+
+        GroovyPatchFile patchFile6 = patchFileList.get(5);
+        assertThat(patchFile6.getProjectName()).isEqualTo("Project C > sub");
+        assertThat(patchFile6.getResultPath()).isEqualTo("project-C/sub/script-6.groovy");
+        assertThat(patchFile6.getTransactionalGroup()).isEqualTo("/apps/patches/project-C/sub");
     }
 }
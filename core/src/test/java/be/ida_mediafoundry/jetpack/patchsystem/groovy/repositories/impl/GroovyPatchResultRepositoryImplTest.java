@@ -5,23 +5,46 @@ import be.ida_mediafoundry.jetpack.carve.manager.exception.ModelManagerException
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
 import io.wcm.testing.mock.aem.junit.AemContext;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
 import java.util.Calendar;
+import java.util.Collections;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.hamcrest.core.IsInstanceOf.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 @RunWith(MockitoJUnitRunner.class)
 public class GroovyPatchResultRepositoryImplTest {
@@ -32,6 +55,12 @@ public class GroovyPatchResultRepositoryImplTest {
     @Mock
     private ModelManager modelManager;
 
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Mock
+    private GroovyPatchFileRepository patchFileRepository;
+
     @Rule
     public final AemContext context = new AemContext();
 
@@ -170,4 +199,306 @@ public class GroovyPatchResultRepositoryImplTest {
         repository.updateResult(patchResult);
         assertThat(patchResult).isNotNull();
     }
+
+    @Test
+    public void testUpdatePatchResult_writeBehind() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(true, 3, 0, false));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-A/script-1.groovy");
+
+        //test
+        GroovyPatchResult patchResult = repository.createResult(patchFile);
+        GroovyPatchResult pendingResult = repository.getResult(patchFile);
+        patchResult.setStatus(PatchStatus.SUCCESS);
+
+        //check
+        assertThat(pendingResult.getStatus()).isEqualTo("RUNNING");
+
+        //test
+        repository.updateResult(patchResult);
+
+        //check
+        assertThat(repository.getResult(patchFile).getStatus()).isEqualTo("SUCCESS");
+        verifyZeroInteractions(modelManager);
+
+        //test
+        repository.flush();
+
+        //check
+        ArgumentCaptor<GroovyPatchResult> persisted = ArgumentCaptor.forClass(GroovyPatchResult.class);
+        verify(modelManager, times(1)).persist(persisted.capture());
+        assertThat(persisted.getValue()).isNotSameAs(patchResult);
+        assertThat(persisted.getValue().getStatus()).isEqualTo("SUCCESS");
+    }
+
+    @Test
+    public void testUpdatePatchResult_writeBehind_batchFull() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(true, 2, 0, false));
+        GroovyPatchResult patchResult1 = new GroovyPatchResult("1", PatchStatus.SUCCESS, Calendar.getInstance());
+        GroovyPatchResult patchResult2 = new GroovyPatchResult("2", PatchStatus.SUCCESS, Calendar.getInstance());
+        GroovyPatchResult patchResult3 = new GroovyPatchResult("3", PatchStatus.SUCCESS, Calendar.getInstance());
+
+        //test
+        repository.updateResult(patchResult1);
+        repository.updateResult(patchResult2);
+        repository.updateResult(patchResult3);
+
+        //check
+        verify(modelManager).persist(withId("1"));
+        verify(modelManager).persist(withId("2"));
+        verify(modelManager, never()).persist(withId("3"));
+
+        //test
+        repository.deactivate();
+
+        //check
+        verify(modelManager).persist(withId("3"));
+    }
+
+    @Test
+    public void testUpdatePatchResult_writeBehindDisabled() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(false, 20, 5, false));
+        GroovyPatchResult patchResult = new GroovyPatchResult("100", PatchStatus.RUNNING, Calendar.getInstance());
+
+        //test
+        repository.updateResult(patchResult);
+
+        //check
+        verify(modelManager).persist(patchResult);
+    }
+
+    @Test
+    public void testGetPatchResult_contentAddressed_pendingResult() {
+        //given
+        repository.activate(createConfig(true, 20, 0, true));
+        GroovyPatchResult earlierResult = new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        earlierResult.setMd5("abc");
+        repository.updateResult(earlierResult);
+
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-B/script-1.groovy");
+        given(patchFile.getMd5()).willReturn("abc");
+
+        //test
+        GroovyPatchResult patchResult = repository.linkResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNotNull();
+        assertThat(patchResult.getId()).isEqualTo("project-B/script-1.groovy");
+        assertThat(patchResult.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResult.getLinkedResult()).isEqualTo("project-A/script-1.groovy");
+        assertThat(repository.getResult(patchFile).getLinkedResult()).isEqualTo("project-A/script-1.groovy");
+    }
+
+    @Test
+    public void testGetPatchResult_contentAddressed_persistedResult() throws Exception {
+        //given
+        repository.activate(createConfig(false, 20, 0, true));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-B/script-1.groovy");
+        given(patchFile.getMd5()).willReturn("abc");
+
+        Query query = mockMd5Query("abc");
+        QueryResult queryResult = mock(QueryResult.class);
+        RowIterator rows = mock(RowIterator.class);
+        Row row = mock(Row.class);
+        given(query.execute()).willReturn(queryResult);
+        given(queryResult.getRows()).willReturn(rows);
+        given(rows.hasNext()).willReturn(true);
+        given(rows.nextRow()).willReturn(row);
+        given(row.getPath()).willReturn("/var/patches/completed/project-A/script-1.groovy");
+
+        GroovyPatchResult earlierResult = new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        given(modelManager.retrieve(GroovyPatchResult.class, "project-A/script-1.groovy")).willReturn(earlierResult);
+
+        //test
+        GroovyPatchResult patchResult = repository.linkResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNotNull();
+        assertThat(patchResult.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResult.getLinkedResult()).isEqualTo("project-A/script-1.groovy");
+        verify(query).setLimit(1);
+        verify(modelManager).persist(patchResult);
+    }
+
+    @Test
+    public void testGetPatchResult_contentAddressed_noMatch() throws Exception {
+        //given
+        repository.activate(createConfig(false, 20, 0, true));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-B/script-1.groovy");
+        given(patchFile.getMd5()).willReturn("abc");
+
+        Query query = mockMd5Query("abc");
+        QueryResult queryResult = mock(QueryResult.class);
+        RowIterator rows = mock(RowIterator.class);
+        given(query.execute()).willReturn(queryResult);
+        given(queryResult.getRows()).willReturn(rows);
+        given(rows.hasNext()).willReturn(false);
+
+        //test
+        GroovyPatchResult patchResult = repository.linkResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNull();
+        verify(modelManager, never()).persist(org.mockito.ArgumentMatchers.any(GroovyPatchResult.class));
+    }
+
+    @Test
+    public void testGetPatchResult_contentAddressed_notLinkedOnRead() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(false, 20, 0, true));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-B/script-1.groovy");
+
+        //test
+        GroovyPatchResult patchResult = repository.getResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNull();
+        verifyZeroInteractions(resourceResolverFactory);
+        verify(modelManager, never()).persist(org.mockito.ArgumentMatchers.any(GroovyPatchResult.class));
+    }
+
+    @Test
+    public void testLinkResult_dataFiles() {
+        //given
+        repository.activate(createConfig(false, 20, 0, true));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("dataFiles.eachRecord(\"users.csv\") { record -> }");
+
+        //test
+        GroovyPatchResult patchResult = repository.linkResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNull();
+        verifyZeroInteractions(resourceResolverFactory);
+    }
+
+    @Test
+    public void testLinkResult_existingResult() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(false, 20, 0, true));
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-A/script-1.groovy");
+        given(modelManager.retrieve(GroovyPatchResult.class, "project-A/script-1.groovy"))
+                .willReturn(new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.ERROR, Calendar.getInstance()));
+
+        //test
+        GroovyPatchResult patchResult = repository.linkResult(patchFile);
+
+        //check
+        assertThat(patchResult).isNull();
+        verifyZeroInteractions(resourceResolverFactory);
+    }
+
+    @Test
+    public void testGetPatchResult_digestNotMigratedOnRead() throws ModelManagerException {
+        //given
+        repository.activate(createConfig(false, 20, 0, false, "sha256"));
+
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-A/script-1.groovy");
+
+        GroovyPatchResult md5Result = new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        md5Result.setMd5("100");
+        given(modelManager.retrieve(GroovyPatchResult.class, "project-A/script-1.groovy")).willReturn(md5Result);
+
+        //test
+        GroovyPatchResult patchResult = repository.getResult(patchFile);
+
+        //check
+        assertThat(patchResult.getDigest()).isNull();
+        verify(modelManager, never()).persist(org.mockito.ArgumentMatchers.any(GroovyPatchResult.class));
+    }
+
+    @Test
+    public void testMigrateDigests_onActivation() throws ModelManagerException {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-A/script-1.groovy");
+        given(patchFile.getMd5()).willReturn("100");
+        given(patchFile.getDigest(DigestAlgorithm.SHA256)).willReturn("sha256:200");
+        given(patchFileRepository.getPatches()).willReturn(Collections.singletonList(patchFile));
+
+        GroovyPatchResult md5Result = new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        md5Result.setMd5("100");
+        given(modelManager.retrieve(GroovyPatchResult.class, "project-A/script-1.groovy")).willReturn(md5Result);
+
+        //test
+        repository.activate(createConfig(false, 20, 0, false, "sha256"));
+
+        //check
+        ArgumentCaptor<GroovyPatchResult> captor = ArgumentCaptor.forClass(GroovyPatchResult.class);
+        verify(modelManager, timeout(5000)).persist(captor.capture());
+        assertThat(captor.getValue().getDigest()).isEqualTo("sha256:200");
+        assertThat(captor.getValue().getMd5()).isEqualTo("100");
+        assertThat(md5Result.getDigest()).isNull();
+        assertThat(repository.newResult(patchFile).getDigest()).isEqualTo("sha256:200");
+    }
+
+    @Test
+    public void testMigrateDigests_modified() throws ModelManagerException {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getResultPath()).willReturn("project-A/script-1.groovy");
+        given(patchFile.getMd5()).willReturn("999");
+        given(patchFile.getDigest(DigestAlgorithm.SHA256)).willReturn("sha256:200");
+        given(patchFileRepository.getPatches()).willReturn(Collections.singletonList(patchFile));
+
+        GroovyPatchResult md5Result = new GroovyPatchResult("project-A/script-1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        md5Result.setMd5("100");
+        given(modelManager.retrieve(GroovyPatchResult.class, "project-A/script-1.groovy")).willReturn(md5Result);
+
+        //test
+        repository.activate(createConfig(false, 20, 0, false, "sha256"));
+
+        //check
+        verify(patchFile, timeout(5000)).getMd5();
+        verify(modelManager, after(500).never()).persist(org.mockito.ArgumentMatchers.any(GroovyPatchResult.class));
+        assertThat(md5Result.getDigest()).isNull();
+    }
+
+    private static GroovyPatchResult withId(String id) {
+        return argThat(patchResult -> patchResult != null && id.equals(patchResult.getId()));
+    }
+
+    private Query mockMd5Query(String md5) throws Exception {
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        ValueFactory valueFactory = mock(ValueFactory.class);
+        Value value = mock(Value.class);
+        Query query = mock(Query.class);
+
+        given(resourceResolverFactory.getServiceResourceResolver(org.mockito.ArgumentMatchers.anyMap())).willReturn(resourceResolver);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+        given(session.getValueFactory()).willReturn(valueFactory);
+        given(valueFactory.createValue(md5)).willReturn(value);
+        given(queryManager.createQuery(GroovyPatchResultRepositoryImpl.MD5_QUERY, Query.JCR_SQL2)).willReturn(query);
+        return query;
+    }
+
+    private static GroovyPatchResultRepositoryImpl.Config createConfig(boolean writeBehind, int batchSize, int flushInterval, boolean contentAddressed) {
+        return createConfig(writeBehind, batchSize, flushInterval, contentAddressed, "md5");
+    }
+
+    private static GroovyPatchResultRepositoryImpl.Config createConfig(boolean writeBehind, int batchSize, int flushInterval, boolean contentAddressed,
+                                                                        String digestAlgorithm) {
+        GroovyPatchResultRepositoryImpl.Config config = mock(GroovyPatchResultRepositoryImpl.Config.class);
+        given(config.writeBehind()).willReturn(writeBehind);
+        given(config.batchSize()).willReturn(batchSize);
+        given(config.flushInterval()).willReturn(flushInterval);
+        given(config.contentAddressed()).willReturn(contentAddressed);
+        given(config.normalizedFingerprint()).willReturn(false);
+        given(config.digestAlgorithm()).willReturn(digestAlgorithm);
+        return config;
+    }
 }
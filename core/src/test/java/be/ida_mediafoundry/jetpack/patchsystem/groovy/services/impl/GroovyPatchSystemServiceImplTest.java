@@ -2,13 +2,23 @@ package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
 
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyQueryAnalysis;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
 import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyQueryAnalyzer;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyScriptCache;
 import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
 import com.icfolson.aem.groovy.console.GroovyConsoleService;
+import com.icfolson.aem.groovy.console.api.BindingVariable;
+import com.icfolson.aem.groovy.console.api.ScriptContext;
+import com.icfolson.aem.groovy.console.audit.AuditService;
+import com.icfolson.aem.groovy.console.configuration.ConfigurationService;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import com.icfolson.aem.groovy.console.notification.NotificationService;
 import com.icfolson.aem.groovy.console.response.RunScriptResponse;
+import groovy.lang.GroovyClassLoader;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
@@ -19,15 +29,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.jcr.Session;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 @RunWith(MockitoJUnitRunner.class)
 public class GroovyPatchSystemServiceImplTest {
@@ -43,6 +63,12 @@ public class GroovyPatchSystemServiceImplTest {
     private GroovyConsoleService groovyConsoleService;
     @Mock
     private ResourceResolverFactory resourceResolverFactory;
+    @Mock
+    private GroovyScriptCache groovyScriptCache;
+    @Mock
+    private AuditService auditService;
+    @Mock
+    private ConfigurationService configurationService;
 
     @Test
     public void test_getPatchesToExecute_2Scripts_alreadyExecuted_notModified() {
@@ -105,6 +131,24 @@ public class GroovyPatchSystemServiceImplTest {
         assertThat(((GroovyPatchFile)patchFilesToExecute.get(0)).getMd5()).isEqualTo("999");
     }
 
+    @Test
+    public void test_getPatchesToExecute_skipped() {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        GroovyPatchResult patchResult = new GroovyPatchResult();
+        patchResult.setMd5("100");
+        patchResult.setStatus(PatchStatus.SKIPPED);
+
+        given(patchResultRepository.getResult(patchFile)).willReturn(patchResult);
+        given(patchFileRepository.getPatches()).willReturn(Collections.singletonList(patchFile));
+
+        //test
+        List<PatchFile> patchFilesToExecute = patchSystemService.getPatchesToExecute();
+
+        //check
+        assertThat(patchFilesToExecute).containsExactly(patchFile);
+    }
+
     @Test
     public void test_getPatchesToExecute_2Scripts_1Executed_1New() {
         //given
@@ -217,6 +261,24 @@ public class GroovyPatchSystemServiceImplTest {
         assertThat(patchResultReturned.getRunningTime()).isEqualTo("3000");
     }
 
+    @Test
+    public void testRunPatch_linkedResult() {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFileRepository.getPatch("/etc/patch/moved.groovy")).willReturn(patchFile);
+        GroovyPatchResult linkedResult = new GroovyPatchResult("moved.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        linkedResult.setLinkedResult("patchfile.groovy");
+        given(patchResultRepository.linkResult(patchFile)).willReturn(linkedResult);
+
+        //test
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/moved.groovy");
+
+        //check
+        assertThat(patchResultReturned).isSameAs(linkedResult);
+        verify(patchResultRepository, never()).createResult(any());
+        verifyZeroInteractions(groovyConsoleService);
+    }
+
     @Test
     public void testRunPatch_patchSystemNotRunning() throws Exception {
         GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
@@ -294,6 +356,389 @@ public class GroovyPatchSystemServiceImplTest {
         assertThat(patchResultReturned.getRunningTime()).isNotBlank();
     }
 
+    @Test
+    public void testRunPatch_compiledScript_success() throws Exception {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("println 'output'");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass("println 'output'"));
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(patchResultReturned).isNotNull();
+        assertThat(patchResultReturned.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResultReturned.getOutput()).isEqualTo("output\n");
+        assertThat(patchResultReturned.getRunningTime()).isNotBlank();
+    }
+
+    @Test
+    public void testRunPatch_compiledScript_failed() throws Exception {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("throw new IllegalStateException('failed')");
+        given(patchFile.getPath()).willReturn("/etc/patch/patchfile.groovy");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass("throw new IllegalStateException('failed')"));
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(patchResultReturned).isNotNull();
+        assertThat(patchResultReturned.getStatus()).isEqualTo("ERROR");
+        assertThat(patchResultReturned.getOutput()).contains("IllegalStateException");
+    }
+
+    @Test
+    public void testRunPatch_compiledScript_auditedAndNotified() throws Exception {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("println 'output'");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass("println 'output'"));
+        patchSystemService.bindExtensionService(createExtensionService());
+        NotificationService notificationService = mock(NotificationService.class);
+        patchSystemService.bindNotificationService(notificationService);
+
+        //test
+        patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        verify(auditService).createAuditRecord(any(RunScriptResponse.class));
+        verify(notificationService).notify(any(RunScriptResponse.class));
+    }
+
+    @Test
+    public void testRunPatch_compiledScript_auditDisabled() throws Exception {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("println 'output'");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass("println 'output'"));
+        given(configurationService.isAuditDisabled()).willReturn(true);
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(patchResultReturned.getStatus()).isEqualTo("SUCCESS");
+        verify(auditService, never()).createAuditRecord(any(RunScriptResponse.class));
+    }
+
+    @Test
+    public void testRunPatch_compiledScript_batchSaver() throws Exception {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn("batchSaver.maxChanges = 2; 5.times { batchSaver.changed() }");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass("batchSaver.maxChanges = 2; 5.times { batchSaver.changed() }"));
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(patchResultReturned.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResultReturned.getCommitCount()).isEqualTo(3);
+        assertThat(patchResultReturned.getCommitTime()).isNotBlank();
+        assertThat(patchResultReturned.getJcrSaves()).isEqualTo(3);
+        assertThat(patchResultReturned.getJcrWrites()).isZero();
+        assertThat(patchResultReturned.getCpuTime()).isNotBlank();
+        assertThat(patchResultReturned.getAllocatedBytes()).isPositive();
+        verify(session, times(3)).save();
+    }
+
+    @Test
+    public void testAnalyzePatches_flaggedQuery_blocked() throws Exception {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        GroovyQueryAnalyzer queryAnalyzer = mock(GroovyQueryAnalyzer.class);
+        given(queryAnalyzer.analyze(patchFile, resourceResolver)).willReturn(createQueryAnalysis("/* traverse \"*\" */", "query traverses the repository"));
+        given(queryAnalyzer.isBlockingFlaggedQueries()).willReturn(true);
+        patchSystemService.bindGroovyQueryAnalyzer(queryAnalyzer);
+
+        //test
+        Map<String, String> blockedPatches = patchSystemService.analyzePatches(Collections.singletonList("/etc/patch/patchfile.groovy"));
+
+        //check
+        assertThat(blockedPatches).containsOnlyKeys("/etc/patch/patchfile.groovy");
+        assertThat(blockedPatches.get("/etc/patch/patchfile.groovy")).contains("/* traverse");
+        assertThat(patchResult.getStatus()).isEqualTo("ERROR");
+        assertThat(patchResult.getOutput()).startsWith("Patch is blocked");
+        assertThat(patchResult.getQueryPlan()).contains("/* traverse");
+        assertThat(patchResult.isQueryPlanFlagged()).isTrue();
+        verify(patchResultRepository).updateResult(patchResult);
+        verify(groovyConsoleService, never()).runScript(any(), any(), anyString());
+    }
+
+    @Test
+    public void testRunPatch_flaggedQuery_notBlocked() throws Exception {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getPath()).willReturn("/etc/patch/patchfile.groovy");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        GroovyQueryAnalyzer queryAnalyzer = mock(GroovyQueryAnalyzer.class);
+        given(queryAnalyzer.analyze(patchFile, resourceResolver)).willReturn(createQueryAnalysis("/* traverse \"*\" */", "query traverses the repository"));
+        given(queryAnalyzer.isBlockingFlaggedQueries()).willReturn(false);
+        patchSystemService.bindGroovyQueryAnalyzer(queryAnalyzer);
+
+        RunScriptResponse response = new RunScriptResponse("script", "data", "result", "output", null, "3000", "userId");
+        given(groovyConsoleService.runScript(any(MockSlingHttpServletRequest.class), any(MockSlingHttpServletResponse.class), eq("/etc/patch/patchfile.groovy"))).willReturn(response);
+
+        //test
+        Map<String, String> blockedPatches = patchSystemService.analyzePatches(Collections.singletonList("/etc/patch/patchfile.groovy"));
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(blockedPatches).isEmpty();
+        assertThat(patchResultReturned.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResultReturned.getQueryPlan()).contains("WARNING: query traverses the repository");
+        assertThat(patchResultReturned.isQueryPlanFlagged()).isTrue();
+        verify(queryAnalyzer, times(1)).analyze(patchFile, resourceResolver);
+    }
+
+    @Test
+    public void testRunPatch_analysisReleased() throws Exception {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getPath()).willReturn("/etc/patch/patchfile.groovy");
+
+        given(patchFileRepository.getPatch("/etc/patch/patchfile.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+
+        GroovyQueryAnalyzer queryAnalyzer = mock(GroovyQueryAnalyzer.class);
+        given(queryAnalyzer.analyze(patchFile, resourceResolver)).willReturn(createQueryAnalysis("/* traverse \"*\" */", "query traverses the repository"));
+        patchSystemService.bindGroovyQueryAnalyzer(queryAnalyzer);
+
+        RunScriptResponse response = new RunScriptResponse("script", "data", "result", "output", null, "3000", "userId");
+        given(groovyConsoleService.runScript(any(MockSlingHttpServletRequest.class), any(MockSlingHttpServletResponse.class), eq("/etc/patch/patchfile.groovy"))).willReturn(response);
+
+        //test
+        patchSystemService.analyzePatches(Collections.singletonList("/etc/patch/patchfile.groovy"));
+        patchSystemService.releasePatches(Collections.singletonList("/etc/patch/patchfile.groovy"));
+        GroovyPatchResult patchResultReturned = patchSystemService.runPatch("/etc/patch/patchfile.groovy");
+
+        //check
+        assertThat(patchResultReturned.getStatus()).isEqualTo("SUCCESS");
+        assertThat(patchResultReturned.getQueryPlan()).isNull();
+    }
+
+    @Test
+    public void testCompilePatches_allErrorsReported() {
+        //given
+        GroovyPatchFile patchFile1 = mock(GroovyPatchFile.class);
+        GroovyPatchFile patchFile2 = mock(GroovyPatchFile.class);
+        GroovyPatchFile patchFile3 = mock(GroovyPatchFile.class);
+        given(patchFileRepository.getPatch("/etc/patch/patchfile-1.groovy")).willReturn(patchFile1);
+        given(patchFileRepository.getPatch("/etc/patch/patchfile-2.groovy")).willReturn(patchFile2);
+        given(patchFileRepository.getPatch("/etc/patch/patchfile-3.groovy")).willReturn(patchFile3);
+
+        given(groovyScriptCache.getScriptClass(patchFile2)).willThrow(new IllegalStateException("unexpected token: }"));
+        given(groovyScriptCache.getScriptClass(patchFile3)).willThrow(new IllegalStateException("unable to resolve class Foo"));
+
+        //test
+        Map<String, String> compilationErrors = patchSystemService.compilePatches(Arrays.asList(
+                "/etc/patch/patchfile-1.groovy", "/etc/patch/patchfile-2.groovy", "/etc/patch/patchfile-3.groovy", "/etc/patch/missing.groovy"));
+
+        //check
+        assertThat(compilationErrors).containsOnlyKeys("/etc/patch/patchfile-2.groovy", "/etc/patch/patchfile-3.groovy", "/etc/patch/missing.groovy");
+        assertThat(compilationErrors.get("/etc/patch/patchfile-2.groovy")).isEqualTo("unexpected token: }");
+        assertThat(compilationErrors.get("/etc/patch/patchfile-3.groovy")).isEqualTo("unable to resolve class Foo");
+        verify(groovyScriptCache).getScriptClass(patchFile1);
+    }
+
+    @Test
+    public void testCompilePatches_noPatches() {
+        //test
+        Map<String, String> compilationErrors = patchSystemService.compilePatches(new ArrayList<>());
+
+        //check
+        assertThat(compilationErrors).isEmpty();
+    }
+
+    @Test
+    public void testRunPatchGroup_committedOnce() throws Exception {
+        //given
+        ResourceResolver resourceResolver = givenPatchGroupResolver();
+        Session session = mock(Session.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        GroovyPatchResult patchResult1 = givenGroupPatch("/apps/patches/project/1.groovy", "batchSaver.maxChanges = 1; 3.times { batchSaver.changed() }");
+        GroovyPatchResult patchResult2 = givenGroupPatch("/apps/patches/project/2.groovy", "println 'done'");
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        List<GroovyPatchResult> patchResults = patchSystemService.runPatchGroup(
+                Arrays.asList("/apps/patches/project/1.groovy", "/apps/patches/project/2.groovy"), patchProgress -> { });
+
+        //check
+        assertThat(patchResults).containsExactly(patchResult1, patchResult2);
+        assertThat(patchResults).extracting(GroovyPatchResult::getStatus).containsExactly("SUCCESS", "SUCCESS");
+        verify(session, never()).save();
+        verify(resourceResolver).commit();
+        verify(resourceResolver, never()).revert();
+        verify(resourceResolverFactory, times(1)).getServiceResourceResolver(any());
+        verify(patchResultRepository).updateResults(patchResults);
+        verify(patchResultRepository, never()).createResult(any());
+    }
+
+    @Test
+    public void testRunPatchGroup_patchNotFound() throws Exception {
+        //given
+        ResourceResolver resourceResolver = givenPatchGroupResolver();
+        GroovyPatchResult patchResult2 = givenGroupPatch("/apps/patches/project/2.groovy", "println 'done'");
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        List<GroovyPatchResult> patchResults = patchSystemService.runPatchGroup(
+                Arrays.asList("/apps/patches/project/1.groovy", "/apps/patches/project/2.groovy"), patchProgress -> { });
+
+        //check
+        assertThat(patchResults).containsExactly(null, patchResult2);
+        assertThat(patchResult2.getStatus()).isEqualTo("SUCCESS");
+        verify(resourceResolver).commit();
+        verify(patchResultRepository).updateResults(Collections.singletonList(patchResult2));
+    }
+
+    @Test
+    public void testRunPatchGroup_rolledBack() throws Exception {
+        //given
+        ResourceResolver resourceResolver = givenPatchGroupResolver();
+        GroovyPatchResult patchResult1 = givenGroupPatch("/apps/patches/project/1.groovy", "println 'done'");
+        GroovyPatchResult patchResult2 = givenGroupPatch("/apps/patches/project/2.groovy", "throw new IllegalStateException('failed')");
+        GroovyPatchResult patchResult3 = givenGroupPatch("/apps/patches/project/3.groovy", null);
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        List<GroovyPatchResult> patchResults = patchSystemService.runPatchGroup(
+                Arrays.asList("/apps/patches/project/1.groovy", "/apps/patches/project/2.groovy", "/apps/patches/project/3.groovy"), patchProgress -> { });
+
+        //check
+        assertThat(patchResults).extracting(GroovyPatchResult::getStatus).containsExactly("ERROR", "ERROR", "ERROR");
+        assertThat(patchResult1.getOutput()).isEqualTo("Rolled back, patch /apps/patches/project/2.groovy of the transactional group failed.");
+        assertThat(patchResult2.getOutput()).contains("IllegalStateException: failed");
+        assertThat(patchResult3.getOutput()).isEqualTo("Not executed. Rolled back, patch /apps/patches/project/2.groovy of the transactional group failed.");
+        verify(resourceResolver).revert();
+        verify(resourceResolver, never()).commit();
+        verify(patchResultRepository).updateResults(patchResults);
+    }
+
+    @Test
+    public void testRunPatchGroup_linkedResultNotExecuted() throws Exception {
+        //given
+        ResourceResolver resourceResolver = givenPatchGroupResolver();
+        GroovyPatchFile linkedPatchFile = mock(GroovyPatchFile.class);
+        given(patchFileRepository.getPatch("/apps/patches/project/1.groovy")).willReturn(linkedPatchFile);
+        GroovyPatchResult linkedResult = new GroovyPatchResult("project/1.groovy", PatchStatus.SUCCESS, Calendar.getInstance());
+        linkedResult.setLinkedResult("old-project/1.groovy");
+        given(patchResultRepository.linkResult(linkedPatchFile)).willReturn(linkedResult);
+        GroovyPatchResult patchResult2 = givenGroupPatch("/apps/patches/project/2.groovy", "throw new IllegalStateException('failed')");
+        patchSystemService.bindExtensionService(createExtensionService());
+
+        //test
+        List<GroovyPatchResult> patchResults = patchSystemService.runPatchGroup(
+                Arrays.asList("/apps/patches/project/1.groovy", "/apps/patches/project/2.groovy"), patchProgress -> { });
+
+        //check
+        assertThat(patchResults).containsExactly(linkedResult, patchResult2);
+        assertThat(patchResults).extracting(GroovyPatchResult::getStatus).containsExactly("SUCCESS", "ERROR");
+        verify(resourceResolver).revert();
+        verify(patchResultRepository, never()).newResult(linkedPatchFile);
+        verify(patchResultRepository).updateResults(Collections.singletonList(patchResult2));
+    }
+
+    private ResourceResolver givenPatchGroupResolver() throws Exception {
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        given(resourceResolverFactory.getServiceResourceResolver(any())).willReturn(resourceResolver);
+        return resourceResolver;
+    }
+
+    private GroovyPatchResult givenGroupPatch(String path, String script) {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFileRepository.getPatch(path)).willReturn(patchFile);
+        if (script != null) {
+            given(patchFile.getFileContent()).willReturn(script);
+            given(patchFile.getPath()).willReturn(path);
+            given(groovyScriptCache.getScriptClass(patchFile)).willReturn(new GroovyClassLoader().parseClass(script));
+        }
+
+        GroovyPatchResult patchResult = new GroovyPatchResult(path, PatchStatus.RUNNING, Calendar.getInstance());
+        given(patchResultRepository.newResult(patchFile)).willReturn(patchResult);
+        return patchResult;
+    }
+
+    private static ExtensionService createExtensionService() {
+        ExtensionService extensionService = mock(ExtensionService.class);
+        given(extensionService.getBindingVariables(any(ScriptContext.class))).willAnswer(invocation -> {
+            ScriptContext scriptContext = invocation.getArgument(0);
+            Map<String, BindingVariable> bindingVariables = new HashMap<>();
+            bindingVariables.put("out", new BindingVariable(scriptContext.getPrintStream()));
+            return bindingVariables;
+        });
+        given(extensionService.getScriptMetaClasses(any(ScriptContext.class))).willReturn(new ArrayList<>());
+        return extensionService;
+    }
+
+    private static GroovyQueryAnalysis createQueryAnalysis(String plan, String warning) {
+        GroovyQueryAnalysis queryAnalysis = new GroovyQueryAnalysis();
+        queryAnalysis.addQueryPlan(new GroovyQueryAnalysis.QueryPlan("SELECT * FROM [nt:base]", "JCR-SQL2", plan, warning));
+        return queryAnalysis;
+    }
+
     private static GroovyPatchResult createPatchResult(String id, String md5) {
         GroovyPatchResult patchResult = new GroovyPatchResult(id, PatchStatus.RUNNING, Calendar.getInstance());
         patchResult.setMd5(md5);
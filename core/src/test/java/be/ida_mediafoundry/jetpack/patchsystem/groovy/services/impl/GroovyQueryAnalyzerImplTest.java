@@ -0,0 +1,188 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyQueryAnalysis;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GroovyQueryAnalyzerImplTest {
+
+    @InjectMocks
+    private GroovyQueryAnalyzerImpl queryAnalyzer;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+    @Mock
+    private QueryManager queryManager;
+
+    @Before
+    public void setUp() {
+        queryAnalyzer.activate(createConfig(true, false));
+    }
+
+    @Test
+    public void testExtractQueries() {
+        //given
+        String script = "def q = queryManager.createQuery(\"SELECT * FROM [cq:Page] AS p WHERE ISDESCENDANTNODE(p, '/content')\", Query.JCR_SQL2)\n"
+                + "resourceResolver.findResources('/jcr:root/content//element(*, dam:Asset)', 'xpath')\n"
+                + "resourceResolver.findResources(\"SELECT * FROM [nt:base] WHERE [sling:resourceType] = '${type}'\", 'JCR-SQL2')\n"
+                + "queryManager.createQuery('''SELECT * FROM [nt:unstructured]\n  WHERE [foo] = 'bar' ''', \"JCR-SQL2\")\n"
+                + "queryManager.createQuery(statement, Query.JCR_SQL2)";
+
+        //test
+        List<GroovyQueryAnalyzerImpl.LiteralQuery> queries = GroovyQueryAnalyzerImpl.extractQueries(script);
+
+        //check
+        assertThat(queries).hasSize(3);
+        assertThat(queries.get(0).getStatement()).isEqualTo("SELECT * FROM [cq:Page] AS p WHERE ISDESCENDANTNODE(p, '/content')");
+        assertThat(queries.get(0).getLanguage()).isEqualTo(Query.JCR_SQL2);
+        assertThat(queries.get(1).getStatement()).isEqualTo("/jcr:root/content//element(*, dam:Asset)");
+        assertThat(queries.get(1).getLanguage()).isEqualTo(Query.XPATH);
+        assertThat(queries.get(2).getStatement()).isEqualTo("SELECT * FROM [nt:unstructured]\n  WHERE [foo] = 'bar'");
+        assertThat(queries.get(2).getLanguage()).isEqualTo(Query.JCR_SQL2);
+    }
+
+    @Test
+    public void testAnalyze_traversal_flagged() throws RepositoryException {
+        //given
+        givenPlan("explain SELECT * FROM [nt:base] WHERE [foo] = 'bar'",
+                "[nt:base] as [a] /* traverse \"*\" where [a].[foo] = 'bar' */");
+
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("queryManager.createQuery(\"SELECT * FROM [nt:base] WHERE [foo] = 'bar'\", Query.JCR_SQL2)"), resourceResolver);
+
+        //check
+        assertThat(analysis.isFlagged()).isTrue();
+        assertThat(analysis.getSummary()).contains("/* traverse").contains("WARNING: query traverses the repository");
+    }
+
+    @Test
+    public void testAnalyze_lowSelectivityIndex_flagged() throws RepositoryException {
+        //given
+        givenPlan("explain SELECT * FROM [cq:Page]",
+                "[cq:Page] as [a] /* nodeType Index: nodeType Filter(query=SELECT * FROM [cq:Page]) */");
+
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("queryManager.createQuery('SELECT * FROM [cq:Page]', 'JCR-SQL2')"), resourceResolver);
+
+        //check
+        assertThat(analysis.isFlagged()).isTrue();
+        assertThat(analysis.getSummary()).contains("low-selectivity index 'nodeType Index'");
+    }
+
+    @Test
+    public void testAnalyze_index_notFlagged() throws RepositoryException {
+        //given
+        givenPlan("explain SELECT * FROM [dam:Asset] WHERE [jcr:content/metadata/dc:format] = 'image/png'",
+                "[dam:Asset] as [a] /* lucene:damAssetLucene(/oak:index/damAssetLucene) +jcr:content/metadata/dc:format:image/png */");
+
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("queryManager.createQuery(\"SELECT * FROM [dam:Asset] WHERE [jcr:content/metadata/dc:format] = 'image/png'\", Query.JCR_SQL2)"), resourceResolver);
+
+        //check
+        assertThat(analysis.isFlagged()).isFalse();
+        assertThat(analysis.getQueryPlans()).hasSize(1);
+        assertThat(analysis.getSummary()).contains("lucene:damAssetLucene");
+    }
+
+    @Test
+    public void testAnalyze_explainFailed_notFlagged() throws RepositoryException {
+        //given
+        givenQueryManager();
+        given(queryManager.createQuery(anyString(), anyString())).willThrow(new RepositoryException("Parse error"));
+
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("queryManager.createQuery('SELECT FROM', 'JCR-SQL2')"), resourceResolver);
+
+        //check
+        assertThat(analysis.isFlagged()).isFalse();
+        assertThat(analysis.getSummary()).contains("Couldn't explain query: Parse error");
+    }
+
+    @Test
+    public void testAnalyze_noQueries() {
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("println 'hello'"), resourceResolver);
+
+        //check
+        assertThat(analysis.getQueryPlans()).isEmpty();
+        assertThat(analysis.getSummary()).isNull();
+    }
+
+    @Test
+    public void testAnalyze_disabled() throws RepositoryException {
+        //given
+        queryAnalyzer.activate(createConfig(false, true));
+
+        //test
+        GroovyQueryAnalysis analysis = queryAnalyzer.analyze(createPatchFile("queryManager.createQuery('SELECT * FROM [nt:base]', 'JCR-SQL2')"), resourceResolver);
+
+        //check
+        assertThat(analysis.getQueryPlans()).isEmpty();
+        assertThat(queryAnalyzer.isBlockingFlaggedQueries()).isFalse();
+        verify(queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    private void givenQueryManager() throws RepositoryException {
+        Session session = mock(Session.class);
+        Workspace workspace = mock(Workspace.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+    }
+
+    private void givenPlan(String statement, String plan) throws RepositoryException {
+        givenQueryManager();
+        Query query = mock(Query.class);
+        QueryResult queryResult = mock(QueryResult.class);
+        RowIterator rows = mock(RowIterator.class);
+        Row row = mock(Row.class);
+        Value value = mock(Value.class);
+
+        given(queryManager.createQuery(statement, Query.JCR_SQL2)).willReturn(query);
+        given(query.execute()).willReturn(queryResult);
+        given(queryResult.getRows()).willReturn(rows);
+        given(rows.hasNext()).willReturn(true, false);
+        given(rows.nextRow()).willReturn(row);
+        given(row.getValue("plan")).willReturn(value);
+        given(value.getString()).willReturn(plan);
+    }
+
+    private static GroovyPatchFile createPatchFile(String content) {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getFileContent()).willReturn(content);
+        return patchFile;
+    }
+
+    private static GroovyQueryAnalyzerImpl.Config createConfig(boolean enabled, boolean blockFlaggedQueries) {
+        GroovyQueryAnalyzerImpl.Config config = mock(GroovyQueryAnalyzerImpl.Config.class);
+        given(config.enabled()).willReturn(enabled);
+        given(config.blockFlaggedQueries()).willReturn(blockFlaggedQueries);
+        given(config.lowSelectivityIndexes()).willReturn(new String[]{"nodeType Index"});
+        return config;
+    }
+}
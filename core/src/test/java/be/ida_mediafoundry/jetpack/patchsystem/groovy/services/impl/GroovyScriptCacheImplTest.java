@@ -0,0 +1,298 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
+import com.icfolson.aem.groovy.console.extension.ExtensionService;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GroovyScriptCacheImplTest {
+
+    @InjectMocks
+    private GroovyScriptCacheImpl scriptCache;
+
+    @Mock
+    private DynamicClassLoaderManager dynamicClassLoaderManager;
+
+    @Before
+    public void setUp() {
+        given(dynamicClassLoaderManager.getDynamicClassLoader()).willReturn(getClass().getClassLoader());
+        scriptCache.activate(createConfig(2));
+    }
+
+    @Test
+    public void testGetScriptClass_sameContent_compiledOnce() {
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        Class<? extends Script> scriptClass2 = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+
+        assertThat(scriptClass1).isNotNull();
+        assertThat(scriptClass2).isSameAs(scriptClass1);
+        assertThat(scriptCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetScriptClass_modifiedContent_compiledAgain() {
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        Class<? extends Script> scriptClass2 = scriptCache.getScriptClass(createPatchFile("200", "return 2"));
+
+        assertThat(scriptClass2).isNotSameAs(scriptClass1);
+        assertThat(scriptCache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetScriptClass_maxEntriesExceeded_leastRecentlyUsedEvicted() {
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        Class<? extends Script> scriptClass2 = scriptCache.getScriptClass(createPatchFile("200", "return 2"));
+
+        //use script 1 again, so script 2 becomes the least recently used
+        scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        scriptCache.getScriptClass(createPatchFile("300", "return 3"));
+
+        assertThat(scriptCache.size()).isEqualTo(2);
+        assertThat(scriptCache.getScriptClass(createPatchFile("100", "return 1"))).isSameAs(scriptClass1);
+        assertThat(scriptCache.getScriptClass(createPatchFile("200", "return 2"))).isNotSameAs(scriptClass2);
+    }
+
+    @Test
+    public void testGetScriptClass_pinned_notEvicted() {
+        scriptCache.pin("100");
+        scriptCache.pin("200");
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        Class<? extends Script> scriptClass2 = scriptCache.getScriptClass(createPatchFile("200", "return 2"));
+        scriptCache.getScriptClass(createPatchFile("300", "return 3"));
+
+        //pinned scripts are kept over the max entries
+        assertThat(scriptCache.size()).isEqualTo(3);
+        assertThat(scriptCache.getScriptClass(createPatchFile("100", "return 1"))).isSameAs(scriptClass1);
+        assertThat(scriptCache.getScriptClass(createPatchFile("200", "return 2"))).isSameAs(scriptClass2);
+
+        scriptCache.unpin("100");
+        scriptCache.unpin("200");
+
+        assertThat(scriptCache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testInvalidate_pinned_releasedOnUnpin() throws Exception {
+        scriptCache.pin("100");
+        scriptCache.pin("100");
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        GroovyClassLoader classLoader = (GroovyClassLoader) scriptClass.getClassLoader();
+
+        scriptCache.invalidate("100");
+        scriptCache.unpin("100");
+
+        //the class is still pinned once, e.g. by the running script
+        assertThat(scriptCache.size()).isZero();
+        assertThat(classLoader.getLoadedClasses()).isNotEmpty();
+
+        scriptCache.unpin("100");
+
+        assertThat(classLoader.getLoadedClasses()).isEmpty();
+    }
+
+    @Test
+    public void testGetScriptClass_compilationError() {
+        GroovyPatchFile patchFile = createPatchFile("100", "def x = {");
+
+        assertThatThrownBy(() -> scriptCache.getScriptClass(patchFile)).isInstanceOf(CompilationFailedException.class);
+        assertThat(scriptCache.size()).isZero();
+    }
+
+    @Test
+    public void testGetScriptClass_modifiedScript_outdatedVersionReleased() {
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("/apps/patches/script.groovy", "100", "return 1"));
+        scriptCache.getScriptClass(createPatchFile("/apps/patches/script.groovy", "200", "return 2"));
+
+        assertThat(scriptCache.size()).isEqualTo(1);
+        assertThat(scriptCache.getScriptClass(createPatchFile("/apps/patches/script.groovy", "100", "return 1"))).isNotSameAs(scriptClass1);
+    }
+
+    @Test
+    public void testGetScriptClass_modifiedScript_sameContentOnOtherPathKept() {
+        Class<? extends Script> scriptClass1 = scriptCache.getScriptClass(createPatchFile("/apps/patches/a/script.groovy", "100", "return 1"));
+        scriptCache.getScriptClass(createPatchFile("/apps/patches/b/script.groovy", "100", "return 1"));
+        scriptCache.getScriptClass(createPatchFile("/apps/patches/a/script.groovy", "200", "return 2"));
+
+        assertThat(scriptCache.getScriptClass(createPatchFile("/apps/patches/b/script.groovy", "100", "return 1"))).isSameAs(scriptClass1);
+    }
+
+    @Test
+    public void testGetScriptClass_thousandsOfPatches_loadedClassesBounded() {
+        ClassLoadingMXBean classLoadingMXBean = ManagementFactory.getClassLoadingMXBean();
+        scriptCache.activate(createConfig(50));
+
+        //warm up, so the Groovy runtime classes are loaded before counting
+        runSyntheticPatches(0, 100);
+        long loadedClassesBefore = getLoadedClassCountAfterGc(classLoadingMXBean);
+
+        //every synthetic patch defines 2 classes: the script and a closure
+        runSyntheticPatches(100, 2000);
+        long loadedClassesAfter = getLoadedClassCountAfterGc(classLoadingMXBean);
+
+        assertThat(scriptCache.size()).isEqualTo(50);
+        assertThat(loadedClassesAfter - loadedClassesBefore).isLessThan(1000);
+    }
+
+    @Test
+    public void testGetScriptClass_precompiled_loadedInsteadOfCompiled() {
+        GroovyPatchFile patchFile = createPatchFile("100", "[1, 2].collect { it * 2 }.sum()");
+        given(patchFile.getPrecompiledScript()).willReturn(precompile("100", "[1, 2].collect { it * 2 }.sum()"));
+
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(patchFile);
+
+        assertThat(scriptClass.getName()).isEqualTo("PatchScript_100");
+        assertThat(scriptClass.getClassLoader().getClass().getSimpleName()).isEqualTo("PrecompiledClassLoader");
+        assertThat(InvokerHelper.createScript(scriptClass, new Binding()).run()).isEqualTo(6);
+        assertThat(scriptCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGetScriptClass_precompiledOutdated_compiled() {
+        //only the formatting changed, the script is compiled so the line numbers match the deployed script
+        GroovyPatchFile patchFile = createPatchFile("200", "\n\nreturn 2");
+        given(patchFile.getPrecompiledScript()).willReturn(precompile("100", "return 2"));
+
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(patchFile);
+
+        assertThat(scriptClass.getName()).isEqualTo("PatchScript_200");
+        assertThat(InvokerHelper.createScript(scriptClass, new Binding()).run()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetScriptClass_precompiledInvalid_compiled() {
+        GroovyPatchFile patchFile = createPatchFile("100", "return 1");
+        given(patchFile.getPrecompiledScript()).willReturn(new PrecompiledScript("100", "PatchScript_100", Collections.emptyMap()));
+
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(patchFile);
+
+        assertThat(scriptClass.getName()).isEqualTo("PatchScript_100");
+        assertThat(scriptClass.getClassLoader().getClass().getSimpleName()).isNotEqualTo("PrecompiledClassLoader");
+    }
+
+    @Test
+    public void testInvalidate() {
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+
+        scriptCache.invalidate("100");
+
+        assertThat(scriptCache.size()).isZero();
+        assertThat(scriptCache.getScriptClass(createPatchFile("100", "return 1"))).isNotSameAs(scriptClass);
+    }
+
+    @Test
+    public void testClear() {
+        scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+        scriptCache.getScriptClass(createPatchFile("200", "return 2"));
+
+        scriptCache.clear();
+
+        assertThat(scriptCache.size()).isZero();
+    }
+
+    @Test
+    public void testBindExtensionService_compiledAgainWithCustomizers() {
+        Class<? extends Script> scriptClass = scriptCache.getScriptClass(createPatchFile("100", "return 1"));
+
+        scriptCache.bindExtensionService(createExtensionService());
+
+        assertThat(scriptCache.size()).isZero();
+        assertThat(scriptCache.getScriptClass(createPatchFile("100", "return 1"))).isNotSameAs(scriptClass);
+        Class<? extends Script> customizedScriptClass = scriptCache.getScriptClass(createPatchFile("200", "return new AtomicLong(2)"));
+        assertThat(InvokerHelper.createScript(customizedScriptClass, new Binding()).run()).hasToString("2");
+    }
+
+    @Test
+    public void testUnbindExtensionService_compiledAgainWithoutCustomizers() {
+        ExtensionService extensionService = createExtensionService();
+        scriptCache.bindExtensionService(extensionService);
+        scriptCache.getScriptClass(createPatchFile("100", "return new AtomicLong(1)"));
+
+        scriptCache.unbindExtensionService(extensionService);
+
+        assertThat(scriptCache.size()).isZero();
+        assertThatThrownBy(() -> scriptCache.getScriptClass(createPatchFile("100", "return new AtomicLong(1)")))
+                .isInstanceOf(CompilationFailedException.class);
+    }
+
+    private void runSyntheticPatches(int from, int to) {
+        for (int i = from; i < to; i++) {
+            GroovyPatchFile patchFile = createPatchFile("/apps/patches/synthetic/script-" + i + ".groovy",
+                    "md5-" + i, "def values = [" + i + ", 1].collect { it * 2 }; return values.sum()");
+            Script script = InvokerHelper.createScript(scriptCache.getScriptClass(patchFile), new Binding());
+            assertThat(script.run()).isEqualTo(i * 2 + 2);
+        }
+    }
+
+    private static long getLoadedClassCountAfterGc(ClassLoadingMXBean classLoadingMXBean) {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return classLoadingMXBean.getLoadedClassCount();
+    }
+
+    private static PrecompiledScript precompile(String md5, String content) {
+        CompilationUnit compilationUnit = new CompilationUnit();
+        compilationUnit.addSource("PatchScript_" + md5 + ".groovy", content);
+        compilationUnit.compile(Phases.CLASS_GENERATION);
+
+        Map<String, byte[]> classes = new HashMap<>();
+        for (Object compiledClass : compilationUnit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) compiledClass;
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return new PrecompiledScript(md5, "PatchScript_" + md5, classes);
+    }
+
+    private static GroovyPatchFile createPatchFile(String path, String md5, String content) {
+        GroovyPatchFile patchFile = createPatchFile(md5, content);
+        given(patchFile.getPath()).willReturn(path);
+        return patchFile;
+    }
+
+    private static GroovyPatchFile createPatchFile(String md5, String content) {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getMd5()).willReturn(md5);
+        given(patchFile.getFileContent()).willReturn(content);
+        return patchFile;
+    }
+
+    private static ExtensionService createExtensionService() {
+        ExtensionService extensionService = mock(ExtensionService.class);
+        given(extensionService.getCompilationCustomizers())
+                .willReturn(Collections.singletonList(new ImportCustomizer().addStarImports("java.util.concurrent.atomic")));
+        return extensionService;
+    }
+
+    private static GroovyScriptCacheImpl.Config createConfig(int maxEntries) {
+        GroovyScriptCacheImpl.Config config = mock(GroovyScriptCacheImpl.Config.class);
+        given(config.maxEntries()).willReturn(maxEntries);
+        return config;
+    }
+}
@@ -0,0 +1,64 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class DigestAlgorithmTest {
+
+    @Test
+    public void testDigest() {
+        assertThat(DigestAlgorithm.MD5.digest("abc")).isEqualTo("md5:900150983cd24fb0d6963f7d28e17f72");
+        assertThat(DigestAlgorithm.SHA256.digest("abc")).isEqualTo("sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        assertThat(DigestAlgorithm.MURMUR3.digest("abc")).startsWith("murmur3:").hasSize("murmur3:".length() + 32);
+        assertThat(DigestAlgorithm.MURMUR3.digest("abc")).isNotEqualTo(DigestAlgorithm.MURMUR3.digest("abd"));
+    }
+
+    @Test
+    public void testFromDigest() {
+        assertThat(DigestAlgorithm.fromDigest("sha256:ba7816bf")).isEqualTo(DigestAlgorithm.SHA256);
+        assertThat(DigestAlgorithm.fromDigest("murmur3:ba7816bf")).isEqualTo(DigestAlgorithm.MURMUR3);
+        assertThat(DigestAlgorithm.fromDigest("900150983cd24fb0d6963f7d28e17f72")).isNull();
+        assertThat(DigestAlgorithm.fromDigest("crc32:ba7816bf")).isNull();
+        assertThat(DigestAlgorithm.fromDigest(null)).isNull();
+    }
+
+    @Test
+    public void testFromName() {
+        assertThat(DigestAlgorithm.fromName("sha256")).isEqualTo(DigestAlgorithm.SHA256);
+        assertThat(DigestAlgorithm.fromName(" MURMUR3 ")).isEqualTo(DigestAlgorithm.MURMUR3);
+        assertThat(DigestAlgorithm.fromName("unknown")).isEqualTo(DigestAlgorithm.MD5);
+        assertThat(DigestAlgorithm.fromName(null)).isEqualTo(DigestAlgorithm.MD5);
+    }
+
+    @Test
+    public void testIsSameContent() {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getMd5()).willReturn("100");
+        given(patchFile.getDigest(DigestAlgorithm.SHA256)).willReturn("sha256:200");
+
+        GroovyPatchResult md5Result = new GroovyPatchResult("1", PatchStatus.SUCCESS, Calendar.getInstance());
+        md5Result.setMd5("100");
+
+        GroovyPatchResult digestResult = new GroovyPatchResult("2", PatchStatus.SUCCESS, Calendar.getInstance());
+        digestResult.setMd5("999");
+        digestResult.setDigest("sha256:200");
+
+        GroovyPatchResult modifiedResult = new GroovyPatchResult("3", PatchStatus.SUCCESS, Calendar.getInstance());
+        modifiedResult.setDigest("sha256:999");
+
+        //test + check
+        assertThat(PatchUtils.isSameContent(patchFile, md5Result)).isTrue();
+        assertThat(PatchUtils.isSameContent(patchFile, digestResult)).isTrue();
+        assertThat(PatchUtils.isSameContent(patchFile, modifiedResult)).isFalse();
+        assertThat(PatchUtils.isDiff(patchFile, modifiedResult)).isTrue();
+    }
+}
@@ -0,0 +1,146 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Test;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class JcrOperationCounterTest {
+
+    @Test
+    public void testWrap_sessionOperations() throws RepositoryException {
+        //given
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        Node root = mock(Node.class);
+        Node child = mock(Node.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getNode("/content")).willReturn(root);
+        given(root.addNode("child")).willReturn(child);
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+
+        //test
+        Session countingSession = operationCounter.wrap(resourceResolver).adaptTo(Session.class);
+        Node node = countingSession.getNode("/content");
+        node.addNode("child").setProperty("migrated", true);
+        countingSession.save();
+
+        //check
+        assertThat(operationCounter.getReads()).isEqualTo(1);
+        assertThat(operationCounter.getWrites()).isEqualTo(2);
+        assertThat(operationCounter.getQueries()).isZero();
+        assertThat(operationCounter.getSaves()).isEqualTo(1);
+        verify(child).setProperty("migrated", true);
+        verify(session).save();
+    }
+
+    @Test
+    public void testWrap_query() throws RepositoryException {
+        //given
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        Query query = mock(Query.class);
+        QueryResult queryResult = mock(QueryResult.class);
+        NodeIterator nodeIterator = mock(NodeIterator.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+        given(queryManager.createQuery("SELECT * FROM [cq:Page]", Query.JCR_SQL2)).willReturn(query);
+        given(query.execute()).willReturn(queryResult);
+        given(queryResult.getNodes()).willReturn(nodeIterator);
+        given(nodeIterator.hasNext()).willReturn(true, true, false);
+        given(nodeIterator.next()).willReturn(mock(Node.class), mock(Node.class));
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+
+        //test
+        Session countingSession = operationCounter.wrap(resourceResolver).adaptTo(Session.class);
+        NodeIterator nodes = countingSession.getWorkspace().getQueryManager()
+                .createQuery("SELECT * FROM [cq:Page]", Query.JCR_SQL2).execute().getNodes();
+        while (nodes.hasNext()) {
+            nodes.next();
+        }
+
+        //check
+        assertThat(operationCounter.getQueries()).isEqualTo(1);
+        //the nodes of the result and the call to get them
+        assertThat(operationCounter.getReads()).isEqualTo(3);
+    }
+
+    @Test
+    public void testWrap_resolverOperations() throws PersistenceException {
+        //given
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+
+        //test
+        ResourceResolver countingResolver = operationCounter.wrap(resourceResolver);
+        countingResolver.getResource("/content");
+        countingResolver.findResources("SELECT * FROM [cq:Page]", Query.JCR_SQL2);
+        countingResolver.commit();
+        countingResolver.getUserID();
+
+        //check
+        assertThat(operationCounter.getReads()).isEqualTo(1);
+        assertThat(operationCounter.getQueries()).isEqualTo(1);
+        assertThat(operationCounter.getSaves()).isEqualTo(1);
+        verify(resourceResolver).commit();
+    }
+
+    @Test
+    public void testWrap_unwrapsArguments() throws RepositoryException {
+        //given
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        Node node = mock(Node.class);
+        Node target = mock(Node.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        given(session.getNode("/content/a")).willReturn(node);
+        given(session.getNode("/content/b")).willReturn(target);
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+
+        //test
+        Session countingSession = operationCounter.wrap(resourceResolver).adaptTo(Session.class);
+        countingSession.getNode("/content/a").setProperty("reference", countingSession.getNode("/content/b"));
+
+        //check
+        verify(node).setProperty("reference", target);
+    }
+
+    @Test
+    public void testWrap_commitDeferred() throws RepositoryException, PersistenceException {
+        //given
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        JcrOperationCounter operationCounter = new JcrOperationCounter();
+        operationCounter.setCommitDeferred(true);
+
+        //test
+        ResourceResolver countingResolver = operationCounter.wrap(resourceResolver);
+        Session countingSession = countingResolver.adaptTo(Session.class);
+
+        //check
+        assertThatThrownBy(countingSession::save).isInstanceOf(IllegalStateException.class).hasMessageContaining("transactional group");
+        assertThatThrownBy(countingResolver::commit).isInstanceOf(IllegalStateException.class).hasMessageContaining("transactional group");
+        assertThat(operationCounter.getSaves()).isZero();
+        verify(session, never()).save();
+        verify(resourceResolver, never()).commit();
+    }
+}
@@ -0,0 +1,128 @@
+package be.ida_mediafoundry.jetpack.patchsystem.groovy.utils;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Calendar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ScriptFingerprintTest {
+
+    private static final String SCRIPT = "def path = '/content/site'\n"
+            + "def node = session.getNode(path)\n"
+            + "node.setProperty(\"migrated\", true)\n";
+
+    @Test
+    public void testOf_commentsAndFormatting() {
+        //given
+        String reformatted = "#!/usr/bin/env groovy\n"
+                + "/*\n * Migrate the site\n */\n"
+                + "def   path='/content/site'   // root of the site\n"
+                + "\n\n"
+                + "\tdef node = session.getNode( path )\r\n"
+                + "node.setProperty(\"migrated\", /* flag */ true)";
+
+        //test + check
+        assertThat(ScriptFingerprint.of(reformatted)).isEqualTo(ScriptFingerprint.of(SCRIPT));
+    }
+
+    @Test
+    public void testOf_semanticChange() {
+        assertThat(ScriptFingerprint.of(SCRIPT.replace("true", "false"))).isNotEqualTo(ScriptFingerprint.of(SCRIPT));
+        assertThat(ScriptFingerprint.of(SCRIPT.replace("def node", "defnode"))).isNotEqualTo(ScriptFingerprint.of(SCRIPT));
+        assertThat(ScriptFingerprint.of("x = a - -b")).isNotEqualTo(ScriptFingerprint.of("x = a--b"));
+    }
+
+    @Test
+    public void testOf_strings() {
+        //comment markers and whitespace in string literals are part of the script
+        assertThat(ScriptFingerprint.of("def url = 'http://localhost'")).isNotEqualTo(ScriptFingerprint.of("def url = 'http:'"));
+        assertThat(ScriptFingerprint.of("def s = \"a  b\"")).isNotEqualTo(ScriptFingerprint.of("def s = \"a b\""));
+        assertThat(ScriptFingerprint.of("def s = 'it\\'s // ok'")).isNotEqualTo(ScriptFingerprint.of("def s = 'it\\'s'"));
+        assertThat(ScriptFingerprint.of("def s = '''a\n\n// b'''")).isNotEqualTo(ScriptFingerprint.of("def s = '''a\n'''"));
+        assertThat(ScriptFingerprint.of("def s = ''  // empty")).isEqualTo(ScriptFingerprint.of("def s = ''"));
+    }
+
+    @Test
+    public void testOf_placeholders() {
+        //string literals in the placeholders of a GString are part of the script
+        assertThat(ScriptFingerprint.of("def s = \"${a.replace(\" \", \"_\")}\""))
+                .isNotEqualTo(ScriptFingerprint.of("def s = \"${a.replace(\"\", \"_\")}\""));
+        assertThat(ScriptFingerprint.of("def s = \"paths: ${paths.join(\", \")}\""))
+                .isNotEqualTo(ScriptFingerprint.of("def s = \"paths: ${paths.join(\",\")}\""));
+        assertThat(ScriptFingerprint.of("def s = \"\"\"${ [a].collect { \"${it} \" }.join() }  //\"\"\""))
+                .isNotEqualTo(ScriptFingerprint.of("def s = \"\"\"${ [a].collect { \"${it}\" }.join() }  //\"\"\""));
+        assertThat(ScriptFingerprint.of("def p = /${a.join(\", \")}/")).isNotEqualTo(ScriptFingerprint.of("def p = /${a.join(\",\")}/"));
+        assertThat(ScriptFingerprint.of("def p = $/${a.join(\", \")}/$")).isNotEqualTo(ScriptFingerprint.of("def p = $/${a.join(\",\")}/$"));
+        //code after the GString is still normalized
+        assertThat(ScriptFingerprint.of("def s = \"${a}\"   // comment")).isEqualTo(ScriptFingerprint.of("def s = \"${a}\""));
+        //a slash in a placeholder may start a comment or a slashy string
+        String script = "def s = \"${a /*}*/ }\"";
+        assertThat(ScriptFingerprint.of(script)).isEqualTo(DigestAlgorithm.MD5.hex(script));
+    }
+
+    @Test
+    public void testOf_slashyStrings() {
+        //comment markers and whitespace in slashy strings are part of the script
+        assertThat(ScriptFingerprint.of("def p = /a  \\/\\/ b/")).isNotEqualTo(ScriptFingerprint.of("def p = /a \\/\\/ b/"));
+        assertThat(ScriptFingerprint.of("def p = /a \\/* b/ * 2 /* c */")).isNotEqualTo(ScriptFingerprint.of("def p = /a \\/ * 2"));
+        assertThat(ScriptFingerprint.of("return /http:\\/\\/a  b/")).isNotEqualTo(ScriptFingerprint.of("return /http:\\/\\/a b/"));
+        assertThat(ScriptFingerprint.of("def p = $/a  // b/$")).isNotEqualTo(ScriptFingerprint.of("def p = $/a /$"));
+        assertThat(ScriptFingerprint.of("def p = $/a $/ //  b/$")).isNotEqualTo(ScriptFingerprint.of("def p = $/a $/ // b/$"));
+        //divisions are still normalized
+        assertThat(ScriptFingerprint.of("def x = a / b / 2 // half")).isEqualTo(ScriptFingerprint.of("def x = a/b/2"));
+        assertThat(ScriptFingerprint.of("def x = (a)  / b")).isEqualTo(ScriptFingerprint.of("def x = (a)/b"));
+    }
+
+    @Test
+    public void testOf_ambiguousSlash() throws IOException {
+        //given
+        String script = "def x = a\n/ b  / 2";
+
+        //test + check
+        assertThat(ScriptFingerprint.of(script)).isEqualTo(DigestAlgorithm.MD5.hex(script));
+        assertThat(ScriptFingerprint.of(new StringReader(script))).isEqualTo(DigestAlgorithm.MD5.hex(script));
+    }
+
+    @Test
+    public void testOf_largeScript() {
+        //given
+        String script = StringUtils.repeat("node.setProperty('title', '\u00e9t\u00e9 \ud83d\ude00') // comment\n", 2000);
+
+        //test + check
+        assertThat(ScriptFingerprint.of(script)).isEqualTo(ScriptFingerprint.of(script.replace(" // comment", "")));
+        assertThat(ScriptFingerprint.of((String) null)).isNull();
+    }
+
+    @Test
+    public void testIsDiff_normalizedFingerprint() {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getMd5()).willReturn("200");
+        given(patchFile.getFingerprint()).willReturn("fingerprint");
+
+        GroovyPatchResult sameFingerprint = new GroovyPatchResult("1", PatchStatus.SUCCESS, Calendar.getInstance());
+        sameFingerprint.setMd5("100");
+        sameFingerprint.setFingerprint("fingerprint");
+
+        GroovyPatchResult otherFingerprint = new GroovyPatchResult("2", PatchStatus.SUCCESS, Calendar.getInstance());
+        otherFingerprint.setMd5("100");
+        otherFingerprint.setFingerprint("other");
+
+        GroovyPatchResult noFingerprint = new GroovyPatchResult("3", PatchStatus.SUCCESS, Calendar.getInstance());
+        noFingerprint.setMd5("100");
+
+        //test + check
+        assertThat(PatchUtils.isDiff(patchFile, sameFingerprint)).isFalse();
+        assertThat(PatchUtils.isDiff(patchFile, otherFingerprint)).isTrue();
+        assertThat(PatchUtils.isDiff(patchFile, noFingerprint)).isTrue();
+    }
+}
@@ -0,0 +1,55 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PatchEventsTest {
+
+    @Test
+    public void testBegin_disabledByDefault() {
+        //test
+        PatchEvent event = PatchEvents.begin(PatchEventType.EXECUTE);
+
+        //check
+        assertThat(PatchEvents.isAvailable()).isTrue();
+        assertThat(event).isSameAs(PatchEvent.NONE);
+    }
+
+    @Test
+    public void testBegin_enabled() throws IOException {
+        Path file = Files.createTempFile("patch-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            //given
+            recording.enable(PatchEventType.EXECUTE.getName()).withThreshold(Duration.ZERO);
+            recording.start();
+
+            //test
+            PatchEvents.begin(PatchEventType.EXECUTE).end("/apps/patches/project/1.groovy", "groovy", "project", 42);
+            PatchEvents.begin(PatchEventType.HASH).end("/apps/patches/project/1.groovy", "groovy", "project", 10);
+            recording.stop();
+            recording.dump(file);
+
+            //check
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertThat(events).hasSize(1);
+            RecordedEvent event = events.get(0);
+            assertThat(event.getEventType().getName()).isEqualTo("be.ida_mediafoundry.jetpack.PatchExecute");
+            assertThat(event.getString("path")).isEqualTo("/apps/patches/project/1.groovy");
+            assertThat(event.getString("type")).isEqualTo("groovy");
+            assertThat(event.getString("project")).isEqualTo("project");
+            assertThat(event.getLong("bytes")).isEqualTo(42);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
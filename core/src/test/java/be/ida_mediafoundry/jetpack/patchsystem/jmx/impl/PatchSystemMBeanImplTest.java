@@ -0,0 +1,121 @@
+package be.ida_mediafoundry.jetpack.patchsystem.jmx.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyScriptCache;
+import be.ida_mediafoundry.jetpack.patchsystem.models.CacheStatistics;
+import be.ida_mediafoundry.jetpack.patchsystem.models.SimplePatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemJobService;
+import be.ida_mediafoundry.jetpack.patchsystem.services.PatchSystemStateService;
+import org.apache.sling.event.jobs.JobManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PatchSystemMBeanImplTest {
+
+    @InjectMocks
+    private PatchSystemMBeanImpl patchSystemMBean;
+
+    @Mock
+    private PatchSystemStateService patchSystemStateService;
+
+    @Mock
+    private PatchSystemJobService patchSystemJobService;
+
+    @Mock
+    private JobManager jobManager;
+
+    @Mock
+    private GroovyScriptCache groovyScriptCache;
+
+    @Mock
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Test
+    public void testCancelJob() {
+        //given
+        given(patchSystemStateService.getCurrentJob()).willReturn("job-1");
+
+        //test
+        String message = patchSystemMBean.cancelJob();
+
+        //check
+        verify(jobManager).stopJobById("job-1");
+        assertThat(message).contains("job-1");
+    }
+
+    @Test
+    public void testCancelJob_noJob() {
+        //test
+        String message = patchSystemMBean.cancelJob();
+
+        //check
+        verify(jobManager, never()).stopJobById(any());
+        assertThat(message).isEqualTo("No patch job is running.");
+    }
+
+    @Test
+    public void testTriggerNewPatches() {
+        //given
+        given(patchSystemJobService.executeNewPatches())
+                .willReturn(Arrays.asList(mock(SimplePatchFile.class), mock(SimplePatchFile.class)));
+
+        //test
+        String message = patchSystemMBean.triggerNewPatches();
+
+        //check
+        assertThat(message).isEqualTo("Triggered 2 patch(es).");
+    }
+
+    @Test
+    public void testTriggerNewPatches_noPatches() {
+        //given
+        given(patchSystemJobService.executeNewPatches()).willReturn(Collections.emptyList());
+
+        //test
+        String message = patchSystemMBean.triggerNewPatches();
+
+        //check
+        assertThat(message).isEqualTo("No patches found to trigger.");
+    }
+
+    @Test
+    public void testRebuildIndex() {
+        //given
+        given(patchSystemStateService.rebuildIndex()).willReturn(3);
+
+        //test
+        String message = patchSystemMBean.rebuildIndex();
+
+        //check
+        assertThat(message).isEqualTo("Indexed 3 patch(es).");
+    }
+
+    @Test
+    public void testHitRatios() {
+        //given
+        given(groovyScriptCache.getStatistics()).willReturn(new CacheStatistics(3, 1, 2));
+        given(patchResultRepository.getStatistics()).willReturn(null);
+
+        //test
+        double scriptCacheHitRatio = patchSystemMBean.getScriptCacheHitRatio();
+        double resultCacheHitRatio = patchSystemMBean.getResultCacheHitRatio();
+
+        //check
+        assertThat(scriptCacheHitRatio).isEqualTo(0.75);
+        assertThat(resultCacheHitRatio).isZero();
+    }
+}
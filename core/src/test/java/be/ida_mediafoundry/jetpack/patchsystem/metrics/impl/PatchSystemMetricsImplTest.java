@@ -0,0 +1,231 @@
+package be.ida_mediafoundry.jetpack.patchsystem.metrics.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchMetric;
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.sling.commons.metrics.Histogram;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PatchSystemMetricsImplTest {
+
+    @InjectMocks
+    private PatchSystemMetricsImpl patchSystemMetrics;
+
+    @Mock
+    private MetricsService metricsService;
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    private void givenTimers() {
+        given(metricsService.timer(anyString())).willAnswer(invocation -> new DropwizardTimer(registry.timer(invocation.getArgument(0))));
+    }
+
+    private void givenHistograms() {
+        given(metricsService.histogram(anyString())).willAnswer(invocation -> new DropwizardHistogram(registry.histogram(invocation.getArgument(0))));
+    }
+
+    @Test
+    public void testTime_registersLabelledTimer() {
+        //given
+        givenTimers();
+
+        //test
+        patchSystemMetrics.time(PatchMetric.PATCH_EXECUTION, "groovy", "myproject", TimeUnit.MILLISECONDS.toNanos(5));
+        patchSystemMetrics.time(PatchMetric.PATCH_EXECUTION, "groovy", "myproject", TimeUnit.MILLISECONDS.toNanos(7));
+
+        //check
+        verify(metricsService).timer("jetpack.patchsystem.patch.execution.groovy.myproject");
+        assertThat(registry.timer("jetpack.patchsystem.patch.execution.groovy.myproject").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testTime_blankLabels() {
+        //given
+        givenTimers();
+
+        //test
+        patchSystemMetrics.time(PatchMetric.TRIGGER, null, "", 1000);
+
+        //check
+        assertThat(registry.timer("jetpack.patchsystem.trigger.all.all").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTime_histogram() {
+        //test & check
+        assertThatThrownBy(() -> patchSystemMetrics.time(PatchMetric.DISCOVERED_PATCHES, 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testUpdate_registersLabelledHistogram() {
+        //given
+        givenHistograms();
+
+        //test
+        patchSystemMetrics.update(PatchMetric.DISCOVERED_PATCHES, "groovy", 12);
+
+        //check
+        assertThat(registry.histogram("jetpack.patchsystem.discovery.patches.groovy.all").getSnapshot().getMax()).isEqualTo(12);
+    }
+
+    @Test
+    public void testWritePrometheus() throws IOException {
+        //given
+        givenTimers();
+        givenHistograms();
+        patchSystemMetrics.time(PatchMetric.PATCH_EXECUTION, "groovy", "myproject", TimeUnit.MILLISECONDS.toNanos(250));
+        patchSystemMetrics.update(PatchMetric.DISCOVERED_PATCHES, "groovy", 3);
+        StringWriter writer = new StringWriter();
+
+        //test
+        patchSystemMetrics.writePrometheus(writer);
+
+        //check
+        assertThat(writer.toString()).isEqualTo(
+                "# HELP jetpack_patchsystem_discovery_patches Number of patches to execute found by a discovery.\n"
+                + "# TYPE jetpack_patchsystem_discovery_patches summary\n"
+                + "jetpack_patchsystem_discovery_patches{type=\"groovy\",project=\"all\",quantile=\"0.5\"} 3.0\n"
+                + "jetpack_patchsystem_discovery_patches{type=\"groovy\",project=\"all\",quantile=\"0.75\"} 3.0\n"
+                + "jetpack_patchsystem_discovery_patches{type=\"groovy\",project=\"all\",quantile=\"0.95\"} 3.0\n"
+                + "jetpack_patchsystem_discovery_patches{type=\"groovy\",project=\"all\",quantile=\"0.99\"} 3.0\n"
+                + "jetpack_patchsystem_discovery_patches_sum{type=\"groovy\",project=\"all\"} 3.0\n"
+                + "jetpack_patchsystem_discovery_patches_count{type=\"groovy\",project=\"all\"} 1\n"
+                + "# HELP jetpack_patchsystem_patch_execution_seconds Time to execute a patch.\n"
+                + "# TYPE jetpack_patchsystem_patch_execution_seconds summary\n"
+                + "jetpack_patchsystem_patch_execution_seconds{type=\"groovy\",project=\"myproject\",quantile=\"0.5\"} 0.25\n"
+                + "jetpack_patchsystem_patch_execution_seconds{type=\"groovy\",project=\"myproject\",quantile=\"0.75\"} 0.25\n"
+                + "jetpack_patchsystem_patch_execution_seconds{type=\"groovy\",project=\"myproject\",quantile=\"0.95\"} 0.25\n"
+                + "jetpack_patchsystem_patch_execution_seconds{type=\"groovy\",project=\"myproject\",quantile=\"0.99\"} 0.25\n"
+                + "jetpack_patchsystem_patch_execution_seconds_sum{type=\"groovy\",project=\"myproject\"} 0.25\n"
+                + "jetpack_patchsystem_patch_execution_seconds_count{type=\"groovy\",project=\"myproject\"} 1\n");
+    }
+
+    @Test
+    public void testWritePrometheus_escapesLabels() throws IOException {
+        //given
+        givenTimers();
+        patchSystemMetrics.time(PatchMetric.PATCH_EXECUTION, "groovy", "my \"project\"", 1000);
+        StringWriter writer = new StringWriter();
+
+        //test
+        patchSystemMetrics.writePrometheus(writer);
+
+        //check
+        assertThat(writer.toString()).contains("project=\"my \\\"project\\\"\"");
+    }
+
+    @Test
+    public void testWritePrometheus_slingMetricsNotRecording() throws IOException {
+        //given
+        given(metricsService.timer(anyString())).willReturn(mock(Timer.class));
+        patchSystemMetrics.time(PatchMetric.PATCH_EXECUTION, "groovy", "myproject", 1000);
+        StringWriter writer = new StringWriter();
+
+        //test
+        patchSystemMetrics.writePrometheus(writer);
+
+        //check
+        assertThat(writer.toString()).isEmpty();
+    }
+
+    @Test
+    public void testGetProject() {
+        //test & check
+        assertThat(PatchSystemMetrics.getProject("/apps/patches/myproject/release-1/script.groovy")).isEqualTo("myproject");
+        assertThat(PatchSystemMetrics.getProject("/apps/patches/script.groovy")).isEqualTo(PatchSystemMetrics.ALL);
+        assertThat(PatchSystemMetrics.getProject("com.myproject.ondeploy.scripts.MyScript")).isEqualTo("com.myproject.ondeploy.scripts");
+        assertThat(PatchSystemMetrics.getProject("MyScript")).isEqualTo(PatchSystemMetrics.ALL);
+        assertThat(PatchSystemMetrics.getProject(null)).isEqualTo(PatchSystemMetrics.ALL);
+    }
+
+    /**
+     * Sling timer of a Dropwizard timer, as registered by Sling Metrics.
+     */
+    private static class DropwizardTimer implements Timer {
+
+        private final com.codahale.metrics.Timer timer;
+
+        DropwizardTimer(com.codahale.metrics.Timer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        public void update(long duration, TimeUnit unit) {
+            timer.update(duration, unit);
+        }
+
+        @Override
+        public Context time() {
+            com.codahale.metrics.Timer.Context context = timer.time();
+            return new Context() {
+                @Override
+                public long stop() {
+                    return context.stop();
+                }
+
+                @Override
+                public void close() {
+                    context.close();
+                }
+            };
+        }
+
+        @Override
+        public long getCount() {
+            return timer.getCount();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adaptTo(Class<A> type) {
+            return type == com.codahale.metrics.Timer.class ? (A) timer : null;
+        }
+    }
+
+    /**
+     * Sling histogram of a Dropwizard histogram, as registered by Sling Metrics.
+     */
+    private static class DropwizardHistogram implements Histogram {
+
+        private final com.codahale.metrics.Histogram histogram;
+
+        DropwizardHistogram(com.codahale.metrics.Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void update(long value) {
+            histogram.update(value);
+        }
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adaptTo(Class<A> type) {
+            return type == com.codahale.metrics.Histogram.class ? (A) histogram : null;
+        }
+    }
+}
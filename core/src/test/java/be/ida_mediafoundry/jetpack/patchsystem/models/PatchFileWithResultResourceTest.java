@@ -97,6 +97,47 @@ public class PatchFileWithResultResourceTest {
         assertThat(patchFileWithResult.getRunningTime()).isEqualTo("200");
     }
 
+    @Test
+    public void test_finalResult_resourceUsage() {
+        Resource scriptResource = context.resourceResolver().getResource("/apps/patches/project-A/script-1.groovy");
+        GroovyPatchFile patchFile = scriptResource.adaptTo(GroovyPatchFile.class);
+
+        Resource folderResource = context.resourceResolver().getResource("/apps/patches/project-A");
+        GroovyPatchFolder patchFolder = folderResource.adaptTo(GroovyPatchFolder.class);
+
+        patchFile.setParentFolder(patchFolder);
+
+        Calendar calendar = Calendar.getInstance();
+        GroovyPatchResult patchResult = new GroovyPatchResult("1000", PatchStatus.RUNNING, calendar);
+        patchResult.setStatus(PatchStatus.SUCCESS);
+        patchResult.setEndDate(calendar);
+        patchResult.setCpuTime("00:00:01.500");
+        patchResult.setAllocatedBytes(2L * 1024 * 1024);
+        patchResult.setJcrReads(120L);
+        patchResult.setJcrWrites(30L);
+        patchResult.setJcrQueries(2L);
+        patchResult.setJcrSaves(3L);
+
+        PatchFileWithResultResource patchFileWithResultResource = new PatchFileWithResultResource(context.resourceResolver(),
+                patchFile, patchResult, false);
+
+        //test 1
+        ValueMap valueMap = patchFileWithResultResource.getValueMap();
+        assertThat(valueMap.get("cpuTime")).isEqualTo("00:00:01.500");
+        assertThat(valueMap.get("jcrReads")).isEqualTo(120L);
+
+        //test
+        context.request().setResource(patchFileWithResultResource);
+        PatchFileWithResult patchFileWithResult = context.request().adaptTo(PatchFileWithResult.class);
+        assertThat(patchFileWithResult).isNotNull();
+        assertThat(patchFileWithResult.getCpuTime()).isEqualTo("00:00:01.500");
+        assertThat(patchFileWithResult.getAllocated()).isEqualTo("2 MB");
+        assertThat(patchFileWithResult.getJcrReads()).isEqualTo(120L);
+        assertThat(patchFileWithResult.getJcrWrites()).isEqualTo(30L);
+        assertThat(patchFileWithResult.getJcrQueries()).isEqualTo(2L);
+        assertThat(patchFileWithResult.getJcrSaves()).isEqualTo(3L);
+    }
+
     @Test
     public void test_finalResult_Error_notModified() {
         Resource scriptResource = context.resourceResolver().getResource("/apps/patches/project-A/script-1.groovy");
@@ -0,0 +1,60 @@
+package be.ida_mediafoundry.jetpack.patchsystem.models;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class PatchPreconditionTest {
+
+    @Test
+    public void testFromScript() {
+        //given
+        String script = "/*\n"
+                + " * Migrate the site.\n"
+                + " * @precondition query SELECT * FROM [cq:PageContent] WHERE [migrated] IS NULL\n"
+                + " */\n"
+                + "// @precondition exists /content/site\n"
+                + "//@precondition MISSING /content/site/jcr:content/migrated\n"
+                + "// @precondition unknown /content\n"
+                + "println '@precondition exists /content/other'\n";
+
+        //test
+        List<PatchPrecondition> preconditions = PatchPrecondition.fromScript(script);
+
+        //check
+        assertThat(preconditions)
+                .extracting(PatchPrecondition::getType, PatchPrecondition::getExpression)
+                .containsExactly(
+                        tuple(PatchPrecondition.Type.QUERY, "SELECT * FROM [cq:PageContent] WHERE [migrated] IS NULL"),
+                        tuple(PatchPrecondition.Type.EXISTS, "/content/site"),
+                        tuple(PatchPrecondition.Type.MISSING, "/content/site/jcr:content/migrated"));
+    }
+
+    @Test
+    public void testFromScript_noPreconditions() {
+        assertThat(PatchPrecondition.fromScript("println 'hello'")).isEmpty();
+        assertThat(PatchPrecondition.fromScript(null)).isEmpty();
+    }
+
+    @Test
+    public void testParse() {
+        PatchPrecondition precondition = PatchPrecondition.parse("missing /content/site/jcr:content/migrated");
+
+        assertThat(precondition.getType()).isEqualTo(PatchPrecondition.Type.MISSING);
+        assertThat(precondition.toString()).isEqualTo("missing /content/site/jcr:content/migrated");
+    }
+
+    @Test
+    public void testParse_invalid() {
+        assertThatThrownBy(() -> PatchPrecondition.parse("exists"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid precondition, no expression: exists");
+        assertThatThrownBy(() -> PatchPrecondition.parse("equals /content a"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid precondition, unknown type 'equals': equals /content a");
+    }
+}
@@ -0,0 +1,150 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.models.BulkPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.bulk.repositories.BulkPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchFileRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchPrecondition;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PatchPreconditionServiceImplTest {
+
+    @InjectMocks
+    private PatchPreconditionServiceImpl patchPreconditionService;
+
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Mock
+    private GroovyPatchResultRepository patchResultRepository;
+
+    @Mock
+    private GroovyPatchFileRepository groovyPatchFileRepository;
+
+    @Mock
+    private BulkPatchFileRepository bulkPatchFileRepository;
+
+    @Test
+    public void testEvaluatePreconditions() throws Exception {
+        //given
+        Session session = givenSession();
+        GroovyPatchFile migrated = givenGroovyPatch("/apps/patches/migrated.groovy", "missing /content/site/migrated");
+        GroovyPatchFile notMigrated = givenGroovyPatch("/apps/patches/not-migrated.groovy", "missing /content/other/migrated");
+        GroovyPatchFile noPreconditions = mock(GroovyPatchFile.class);
+        given(groovyPatchFileRepository.getPatch("/apps/patches/plain.groovy")).willReturn(noPreconditions);
+        BulkPatchFile bulkPatch = mock(BulkPatchFile.class);
+        given(bulkPatch.getPath()).willReturn("/apps/patches/pages.bulk.json");
+        given(bulkPatch.getPreconditions()).willReturn(Collections.singletonList(
+                PatchPrecondition.parse("query SELECT * FROM [cq:PageContent] WHERE [migrated] IS NULL")));
+        given(bulkPatchFileRepository.getPatch("/apps/patches/pages.bulk.json")).willReturn(bulkPatch);
+
+        given(session.itemExists("/content/site/migrated")).willReturn(true);
+        given(session.itemExists("/content/other/migrated")).willReturn(false);
+        Query query = givenQuery(session, "SELECT * FROM [cq:PageContent] WHERE [migrated] IS NULL", false);
+
+        //test
+        Map<String, String> failedPreconditions = patchPreconditionService.evaluatePreconditions(
+                Arrays.asList(migrated.getPath(), notMigrated.getPath(), "/apps/patches/plain.groovy", "/apps/patches/pages.bulk.json", "be.ida.OnDeployScript"),
+                Arrays.asList("groovy", "groovy", "groovy", "bulk", "ondeploy"));
+
+        //check
+        assertThat(failedPreconditions).containsOnly(
+                entry("/apps/patches/migrated.groovy", "missing /content/site/migrated"),
+                entry("/apps/patches/pages.bulk.json", "query SELECT * FROM [cq:PageContent] WHERE [migrated] IS NULL"));
+        verify(query).setLimit(1);
+        verify(resourceResolverFactory).getServiceResourceResolver(anyMap());
+    }
+
+    @Test
+    public void testEvaluatePreconditions_failingEvaluationRunsPatch() throws Exception {
+        //given
+        Session session = givenSession();
+        GroovyPatchFile patchFile = givenGroovyPatch("/apps/patches/invalid.groovy", "exists not a path");
+        given(session.itemExists("not a path")).willThrow(new RepositoryException("invalid path"));
+
+        //test
+        Map<String, String> failedPreconditions = patchPreconditionService.evaluatePreconditions(
+                Collections.singletonList(patchFile.getPath()), Collections.singletonList("groovy"));
+
+        //check
+        assertThat(failedPreconditions).isEmpty();
+    }
+
+    @Test
+    public void testSkipPatch() {
+        //given
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(groovyPatchFileRepository.getPatch("/apps/patches/migrated.groovy")).willReturn(patchFile);
+        GroovyPatchResult patchResult = new GroovyPatchResult("/var/patches/completed/migrated.groovy", PatchStatus.RUNNING, Calendar.getInstance());
+        given(patchResultRepository.createResult(patchFile)).willReturn(patchResult);
+
+        //test
+        PatchResult result = patchPreconditionService.skipPatch("/apps/patches/migrated.groovy", "groovy", "missing /content/site/migrated");
+
+        //check
+        assertThat(result.getStatus()).isEqualTo("SKIPPED");
+        assertThat(result.getOutput()).isEqualTo("Patch is skipped, precondition is not met: missing /content/site/migrated");
+        verify(patchResultRepository).updateResult(patchResult);
+    }
+
+    private Session givenSession() throws Exception {
+        ResourceResolver resourceResolver = mock(ResourceResolver.class);
+        Session session = mock(Session.class);
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willReturn(resourceResolver);
+        given(resourceResolver.adaptTo(Session.class)).willReturn(session);
+        return session;
+    }
+
+    private GroovyPatchFile givenGroovyPatch(String path, String precondition) {
+        GroovyPatchFile patchFile = mock(GroovyPatchFile.class);
+        given(patchFile.getPath()).willReturn(path);
+        given(patchFile.getPreconditions()).willReturn(Collections.singletonList(PatchPrecondition.parse(precondition)));
+        given(groovyPatchFileRepository.getPatch(path)).willReturn(patchFile);
+        return patchFile;
+    }
+
+    private Query givenQuery(Session session, String statement, boolean hasRows) throws RepositoryException {
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        Query query = mock(Query.class);
+        QueryResult queryResult = mock(QueryResult.class);
+        RowIterator rows = mock(RowIterator.class);
+        given(session.getWorkspace()).willReturn(workspace);
+        given(workspace.getQueryManager()).willReturn(queryManager);
+        given(queryManager.createQuery(statement, Query.JCR_SQL2)).willReturn(query);
+        given(query.execute()).willReturn(queryResult);
+        given(queryResult.getRows()).willReturn(rows);
+        given(rows.hasNext()).willReturn(hasRows);
+        return query;
+    }
+}
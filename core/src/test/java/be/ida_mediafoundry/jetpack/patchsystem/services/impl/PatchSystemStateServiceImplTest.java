@@ -0,0 +1,203 @@
+package be.ida_mediafoundry.jetpack.patchsystem.services.impl;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFileWithResultResource;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PatchSystemStateServiceImplTest {
+
+    @InjectMocks
+    private PatchSystemStateServiceImpl patchSystemStateService;
+
+    @Mock
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Mock
+    private GroovyPatchSystemService groovyPatchSystemService;
+
+    @Mock
+    private ResourceResolver resourceResolver;
+
+    @Test
+    public void testRebuildIndex() throws LoginException {
+        //given
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willReturn(resourceResolver);
+        List<PatchFileWithResultResource> patches = Arrays.asList(
+                patch("/apps/patches/1.groovy", null, false),
+                patch("/apps/patches/2.groovy", result(false), false),
+                patch("/apps/patches/3.groovy", result(false), true),
+                patch("/apps/patches/4.groovy", result(true), false));
+        given(groovyPatchSystemService.getPatches(resourceResolver)).willReturn(patches);
+
+        //test
+        int indexed = patchSystemStateService.rebuildIndex();
+
+        //check
+        assertThat(indexed).isEqualTo(4);
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(4);
+        assertThat(patchSystemStateService.getPendingPatches()).isEqualTo(2);
+        assertThat(patchSystemStateService.getFailedPatches()).isEqualTo(1);
+        assertThat(patchSystemStateService.getIndexDate()).isNotNull();
+        verify(resourceResolver).close();
+    }
+
+    @Test
+    public void testRebuildIndex_loginFails() throws LoginException {
+        //given
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willThrow(new LoginException("no service user"));
+
+        //test
+        int indexed = patchSystemStateService.rebuildIndex();
+
+        //check
+        assertThat(indexed).isZero();
+        assertThat(patchSystemStateService.getIndexDate()).isNull();
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testPatchExecuted_updatesIndex() {
+        //given
+        patchSystemStateService.index(Arrays.asList(
+                patch("/apps/patches/1.groovy", null, false),
+                patch("/apps/patches/2.groovy", null, false)));
+
+        //test
+        patchSystemStateService.patchExecuted("/apps/patches/1.groovy", result(false));
+        patchSystemStateService.patchExecuted("/apps/patches/2.groovy", result(true));
+
+        //check
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(2);
+        assertThat(patchSystemStateService.getPendingPatches()).isZero();
+        assertThat(patchSystemStateService.getFailedPatches()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPatchExecuted_duringRebuild() throws LoginException {
+        //given
+        patchSystemStateService.index(Collections.singletonList(patch("/apps/patches/1.groovy", null, false)));
+        given(resourceResolverFactory.getServiceResourceResolver(anyMap())).willReturn(resourceResolver);
+        List<PatchFileWithResultResource> patches = Arrays.asList(
+                patch("/apps/patches/1.groovy", null, false),
+                patch("/apps/patches/2.groovy", null, false));
+        given(groovyPatchSystemService.getPatches(resourceResolver)).willAnswer(invocation -> {
+            //the patch is executed after the rebuild read its result
+            patchSystemStateService.patchExecuted("/apps/patches/1.groovy", result(true));
+            return patches;
+        });
+
+        //test
+        patchSystemStateService.rebuildIndex();
+
+        //check
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(2);
+        assertThat(patchSystemStateService.getPendingPatches()).isEqualTo(1);
+        assertThat(patchSystemStateService.getFailedPatches()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPatchExecuted_skippedStaysPending() {
+        //given
+        patchSystemStateService.index(Collections.singletonList(patch("/apps/patches/1.groovy", null, false)));
+        PatchResult skippedResult = mock(PatchResult.class);
+        given(skippedResult.getStatus()).willReturn(PatchStatus.SKIPPED.displayName());
+
+        //test
+        patchSystemStateService.patchExecuted("/apps/patches/1.groovy", skippedResult);
+
+        //check
+        assertThat(patchSystemStateService.getPendingPatches()).isEqualTo(1);
+        assertThat(patchSystemStateService.getFailedPatches()).isZero();
+    }
+
+    @Test
+    public void testPatchExecuted_noIndex() {
+        //test
+        patchSystemStateService.patchExecuted("/apps/patches/1.groovy", result(false));
+
+        //check
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(-1);
+        assertThat(patchSystemStateService.getPendingPatches()).isEqualTo(-1);
+        assertThat(patchSystemStateService.getFailedPatches()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testIndex_empty() {
+        //test
+        patchSystemStateService.index(Collections.emptyList());
+
+        //check
+        assertThat(patchSystemStateService.getTotalPatches()).isZero();
+        assertThat(patchSystemStateService.getPendingPatches()).isZero();
+        assertThat(patchSystemStateService.getFailedPatches()).isZero();
+    }
+
+    @Test
+    public void testJob() {
+        //test
+        patchSystemStateService.jobStarted("job-1");
+        patchSystemStateService.patchStarted("/apps/patches/1.groovy");
+
+        //check
+        assertThat(patchSystemStateService.getCurrentJob()).isEqualTo("job-1");
+        assertThat(patchSystemStateService.getCurrentPatch()).isEqualTo("/apps/patches/1.groovy");
+        assertThat(patchSystemStateService.getLastJobDuration()).isEqualTo(-1);
+
+        //test
+        patchSystemStateService.patchExecuted("/apps/patches/1.groovy", result(false));
+        patchSystemStateService.jobFinished();
+
+        //check
+        assertThat(patchSystemStateService.getCurrentJob()).isNull();
+        assertThat(patchSystemStateService.getCurrentPatch()).isNull();
+        assertThat(patchSystemStateService.getLastJobDuration()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void testIndex_replacesIndex() {
+        //given
+        patchSystemStateService.index(Arrays.asList(
+                patch("/apps/patches/1.groovy", null, false),
+                patch("/apps/patches/2.groovy", null, false)));
+
+        //test
+        patchSystemStateService.index(Collections.singletonList(patch("/apps/patches/1.groovy", result(false), false)));
+
+        //check
+        assertThat(patchSystemStateService.getTotalPatches()).isEqualTo(1);
+        assertThat(patchSystemStateService.getPendingPatches()).isZero();
+    }
+
+    private PatchFileWithResultResource patch(String path, PatchResult patchResult, boolean modified) {
+        PatchFile patchFile = mock(PatchFile.class);
+        given(patchFile.getPath()).willReturn(path);
+        return new PatchFileWithResultResource(resourceResolver, patchFile, patchResult, modified);
+    }
+
+    private static PatchResult result(boolean error) {
+        PatchResult patchResult = mock(PatchResult.class);
+        given(patchResult.isError()).willReturn(error);
+        return patchResult;
+    }
+}
@@ -0,0 +1,58 @@
+package be.ida_mediafoundry.jetpack.patchsystem.servlets;
+
+import be.ida_mediafoundry.jetpack.patchsystem.metrics.PatchSystemMetrics;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PatchMetricsServletTest {
+
+    @InjectMocks
+    private PatchMetricsServlet servlet;
+
+    @Mock
+    private PatchSystemMetrics patchSystemMetrics;
+
+    @Test
+    public void test_doGet() throws IOException {
+        SlingHttpServletRequest slingHttpServletRequest = mock(SlingHttpServletRequest.class);
+        MockSlingHttpServletResponse slingHttpServletResponse = new MockSlingHttpServletResponse();
+
+        willAnswer(invocation -> {
+            invocation.getArgument(0, Writer.class).write("jetpack_patchsystem_trigger_seconds_count{type=\"all\",project=\"all\"} 1\n");
+            return null;
+        }).given(patchSystemMetrics).writePrometheus(any(Writer.class));
+
+        servlet.doGet(slingHttpServletRequest, slingHttpServletResponse);
+
+        assertThat(slingHttpServletResponse.getOutputAsString()).isEqualTo("jetpack_patchsystem_trigger_seconds_count{type=\"all\",project=\"all\"} 1\n");
+        assertThat(slingHttpServletResponse.getContentType()).startsWith("text/plain");
+        assertThat(slingHttpServletResponse.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void test_doGet_error() throws IOException {
+        SlingHttpServletRequest slingHttpServletRequest = mock(SlingHttpServletRequest.class);
+        MockSlingHttpServletResponse slingHttpServletResponse = new MockSlingHttpServletResponse();
+
+        willThrow(new IOException("closed")).given(patchSystemMetrics).writePrometheus(any(Writer.class));
+
+        servlet.doGet(slingHttpServletRequest, slingHttpServletResponse);
+
+        assertThat(slingHttpServletResponse.getStatus()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,149 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.codehaus.groovy.control.CompilationFailedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the groovy patches of a content package against the compile classpath of the project and fails the build on compile errors.
+ * The classes of every patch are written next to the script as script.groovy{@value PrecompiledScript#EXTENSION},
+ * so the patch system loads them instead of compiling the script, as long as the md5 of the deployed script matches.
+ */
+@Mojo(name = "compile", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE,
+        threadSafe = true)
+public class CompileMojo extends AbstractMojo {
+
+    /**
+     * The jcr_root folder of the content package.
+     */
+    @Parameter(defaultValue = "${project.basedir}/src/main/content/jcr_root", required = true)
+    private File contentDirectory;
+
+    /**
+     * The folder the classes are written to, mirroring the jcr_root folder.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * Path of the patches folder, relative to the jcr_root folder.
+     */
+    @Parameter(defaultValue = "apps/patches", required = true)
+    private String patchesPath;
+
+    /**
+     * Packages imported by default, the star imports of the Groovy Console.
+     */
+    @Parameter
+    private List<String> starImports = new ArrayList<>(Arrays.asList(
+            "com.day.cq.dam.api",
+            "com.day.cq.replication",
+            "com.day.cq.search",
+            "com.day.cq.tagging",
+            "com.day.cq.wcm.api",
+            "javax.jcr",
+            "org.apache.sling.api",
+            "org.apache.sling.api.resource"));
+
+    @Parameter(defaultValue = "${project.compileClasspathElements}", readonly = true, required = true)
+    private List<String> classpathElements;
+
+    @Parameter(property = "patch-system.compile.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping the compilation of the patches");
+            return;
+        }
+
+        Path patchesDirectory = new File(contentDirectory, patchesPath).toPath();
+        if (!Files.isDirectory(patchesDirectory)) {
+            getLog().info("No patches found in " + patchesDirectory);
+            return;
+        }
+
+        List<String> errors = new ArrayList<>();
+        int compiled = 0;
+        try (URLClassLoader classLoader = new URLClassLoader(getClasspath(), getClass().getClassLoader())) {
+            ScriptCompiler compiler = new ScriptCompiler(classLoader, starImports);
+            for (Path script : findScripts(patchesDirectory)) {
+                Path relativePath = patchesDirectory.relativize(script);
+                try {
+                    String content = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+                    PrecompiledScript precompiledScript = compiler.compile(content);
+                    write(precompiledScript, relativePath);
+                    compiled++;
+                } catch (CompilationFailedException e) {
+                    errors.add(relativePath + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Couldn't compile the patches of " + patchesDirectory, e);
+        }
+
+        if (!errors.isEmpty()) {
+            errors.forEach(error -> getLog().error(error));
+            throw new MojoFailureException(errors.size() + " patches don't compile, see the errors above");
+        }
+        getLog().info("Compiled " + compiled + " patches");
+    }
+
+    private void write(PrecompiledScript precompiledScript, Path relativePath) throws IOException {
+        Path scriptDirectory = new File(outputDirectory, patchesPath).toPath().resolve(relativePath).getParent();
+        Files.createDirectories(scriptDirectory);
+        try (OutputStream outputStream = Files.newOutputStream(
+                scriptDirectory.resolve(relativePath.getFileName() + PrecompiledScript.EXTENSION))) {
+            precompiledScript.write(outputStream);
+        }
+    }
+
+    private static List<Path> findScripts(Path patchesDirectory) throws IOException {
+        try (Stream<Path> paths = Files.walk(patchesDirectory)) {
+            return paths
+                    .filter(path -> Files.isRegularFile(path) && path.getFileName().toString().endsWith(PatchScanner.GROOVY_EXTENSION))
+                    .filter(path -> isVisible(patchesDirectory.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isVisible(Path relativePath) {
+        for (Path segment : relativePath) {
+            if (segment.toString().startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private URL[] getClasspath() throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String classpathElement : classpathElements) {
+            urls.add(new File(classpathElement).toURI().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+}
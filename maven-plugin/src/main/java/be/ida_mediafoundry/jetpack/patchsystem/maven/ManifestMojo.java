@@ -0,0 +1,71 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * Writes a {@value PatchManifest#NAME} in every project folder under /apps/patches of a content package,
+ * so the patch system discovers the patches of the project after deploy by reading the manifest.
+ */
+@Mojo(name = "manifest", defaultPhase = LifecyclePhase.PROCESS_RESOURCES, threadSafe = true)
+public class ManifestMojo extends AbstractMojo {
+
+    /**
+     * The jcr_root folder of the content package.
+     */
+    @Parameter(defaultValue = "${project.basedir}/src/main/content/jcr_root", required = true)
+    private File contentDirectory;
+
+    /**
+     * The folder the manifests are written to, mirroring the jcr_root folder.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File outputDirectory;
+
+    /**
+     * Path of the patches folder, relative to the jcr_root folder.
+     */
+    @Parameter(defaultValue = "apps/patches", required = true)
+    private String patchesPath;
+
+    @Parameter(property = "patch-system.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping the patch manifests");
+            return;
+        }
+
+        File patchesDirectory = new File(contentDirectory, patchesPath);
+        if (!patchesDirectory.isDirectory()) {
+            getLog().info("No patches found in " + patchesDirectory);
+            return;
+        }
+
+        try {
+            Map<File, PatchManifest> manifests = new PatchScanner().scan(patchesDirectory);
+            for (Map.Entry<File, PatchManifest> entry : manifests.entrySet()) {
+                File folder = new File(new File(outputDirectory, patchesPath), entry.getKey().getName());
+                File manifestFile = new File(folder, PatchManifest.NAME);
+                Files.createDirectories(folder.toPath());
+                Files.write(manifestFile.toPath(), entry.getValue().toJson().getBytes(StandardCharsets.UTF_8));
+                getLog().info("Wrote " + manifestFile + " with " + entry.getValue().getPatches().size() + " patches and "
+                        + entry.getValue().getBulkPatches().size() + " bulk patches");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Couldn't write the patch manifests of " + patchesDirectory, e);
+        }
+    }
+}
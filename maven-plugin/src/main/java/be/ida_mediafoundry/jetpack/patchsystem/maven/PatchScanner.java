@@ -0,0 +1,189 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ScriptFingerprint;
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scans the patches folder of a content package (FileVault layout) and creates a manifest per top level project folder.
+ */
+public class PatchScanner {
+
+    static final String GROOVY_EXTENSION = ".groovy";
+    static final String BULK_EXTENSION = ".bulk.json";
+
+    private static final String CONTENT_XML = ".content.xml";
+    private static final String JCR_NAMESPACE = "http://www.jcp.org/jcr/1.0";
+    private static final Pattern ESCAPED_XML_NAME = Pattern.compile("_x([0-9a-fA-F]{4})_");
+
+    /**
+     * @param patchesDirectory jcr_root/apps/patches of the content package
+     * @return manifests keyed by the directory of the project folder
+     * @throws IOException in case a patch or folder can't be read
+     */
+    public Map<File, PatchManifest> scan(File patchesDirectory) throws IOException {
+        Map<File, PatchManifest> manifests = new LinkedHashMap<>();
+        for (File child : listChildren(patchesDirectory, null)) {
+            if (isFolder(child)) {
+                PatchManifest manifest = new PatchManifest();
+                scanFolder(child, toRepositoryName(child.getName()), manifest);
+                manifests.put(child, manifest);
+            }
+        }
+        return manifests;
+    }
+
+    private void scanFolder(File directory, String path, PatchManifest manifest) throws IOException {
+        Element properties = readContentXml(directory);
+        String title = properties != null ? getProperty(properties, "jcr:title") : null;
+        boolean transactional = properties != null && Boolean.parseBoolean(getProperty(properties, "transactional"));
+        manifest.getFolders().add(new PatchManifest.Folder(path, title, transactional));
+
+        for (File child : listChildren(directory, properties)) {
+            String childPath = path + "/" + toRepositoryName(child.getName());
+            if (isFolder(child)) {
+                scanFolder(child, childPath, manifest);
+            } else if (child.isFile() && child.getName().endsWith(GROOVY_EXTENSION)) {
+                manifest.getPatches().add(createPatch(child, childPath, manifest.getPatches().size()));
+            } else if (child.isFile() && child.getName().endsWith(BULK_EXTENSION)) {
+                manifest.getBulkPatches().add(createPatch(child, childPath, manifest.getBulkPatches().size()));
+            }
+        }
+    }
+
+    private PatchManifest.Patch createPatch(File file, String path, int order) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        String content = new String(bytes, StandardCharsets.UTF_8);
+
+        PatchManifest.Patch patch = new PatchManifest.Patch(path, order, bytes.length,
+                DigestAlgorithm.MD5.hex(content), ScriptFingerprint.of(content));
+        for (DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+            if (algorithm != DigestAlgorithm.MD5) {
+                patch.getDigests().put(algorithm.getPrefix(), algorithm.digest(content));
+            }
+        }
+        return patch;
+    }
+
+    private static boolean isFolder(File file) {
+        //name.dir directories hold the properties of a file, _jcr_content directories the content of a node
+        return file.isDirectory() && !file.getName().endsWith(".dir") && !file.getName().startsWith("_jcr_") && !file.getName().startsWith(".");
+    }
+
+    /**
+     * List the children in their declared order: the children listed in the .content.xml first, the others by name.
+     */
+    private static List<File> listChildren(File directory, Element properties) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+
+        List<File> children = new ArrayList<>();
+        if (properties != null) {
+            NodeList nodes = properties.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Node node = nodes.item(i);
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    String name = decodeXmlName(node.getNodeName());
+                    for (File file : files) {
+                        if (toRepositoryName(file.getName()).equals(name) && !children.contains(file)) {
+                            children.add(file);
+                        }
+                    }
+                }
+            }
+        }
+        for (File file : files) {
+            if (!children.contains(file)) {
+                children.add(file);
+            }
+        }
+        return children;
+    }
+
+    private static Element readContentXml(File directory) throws IOException {
+        File contentXml = new File(directory, CONTENT_XML);
+        if (!contentXml.isFile()) {
+            return null;
+        }
+
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Document document = builder.parse(contentXml);
+            return document.getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Couldn't read " + contentXml, e);
+        }
+    }
+
+    /**
+     * @return value of the property without its type hint, e.g. {@code {Boolean}true} becomes {@code true}
+     */
+    private static String getProperty(Element properties, String name) {
+        String value = name.startsWith("jcr:")
+                ? properties.getAttributeNS(JCR_NAMESPACE, StringUtils.removeStart(name, "jcr:"))
+                : properties.getAttribute(name);
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+        return value.startsWith("{") ? StringUtils.substringAfter(value, "}") : value;
+    }
+
+    /**
+     * Name of the node for a file or directory name in FileVault, e.g. {@code _cq_dialog} becomes {@code cq:dialog}.
+     */
+    static String toRepositoryName(String platformName) {
+        String name = platformName;
+        if (name.startsWith("_") && name.indexOf('_', 1) > 1 && !name.startsWith("__")) {
+            int end = name.indexOf('_', 1);
+            name = name.substring(1, end) + ":" + name.substring(end + 1);
+        }
+        try {
+            return URLDecoder.decode(name.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return name;
+        }
+    }
+
+    /**
+     * Name of a node for an element name in a .content.xml, e.g. {@code _x0031_0-script.groovy} becomes {@code 10-script.groovy}.
+     */
+    static String decodeXmlName(String elementName) {
+        Matcher matcher = ESCAPED_XML_NAME.matcher(elementName);
+        StringBuffer name = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(name, Matcher.quoteReplacement(String.valueOf((char) Integer.parseInt(matcher.group(1), 16))));
+        }
+        matcher.appendTail(name);
+        return name.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.customizers.ImportCustomizer;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles groovy patches the way the patch system compiles them at runtime, against the classpath of the build.
+ */
+public class ScriptCompiler {
+
+    static final String SCRIPT_CLASS_PREFIX = "PatchScript_";
+    private static final String SCRIPT_EXTENSION = ".groovy";
+
+    private final ClassLoader classLoader;
+    private final CompilerConfiguration configuration;
+
+    /**
+     * @param classLoader classloader with the AEM and Groovy Console API the patches use
+     * @param starImports packages imported by default, like the star imports of the Groovy Console
+     */
+    public ScriptCompiler(ClassLoader classLoader, List<String> starImports) {
+        this.classLoader = classLoader;
+        this.configuration = new CompilerConfiguration();
+
+        ImportCustomizer importCustomizer = new ImportCustomizer();
+        importCustomizer.addStarImports(starImports.toArray(new String[0]));
+        configuration.addCompilationCustomizers(importCustomizer);
+    }
+
+    /**
+     * @param content content of the script
+     * @return the classes of the script, keyed by the md5 of the script, named like the classes compiled at runtime
+     * @throws CompilationFailedException in case the script doesn't compile
+     */
+    public PrecompiledScript compile(String content) {
+        String md5 = DigestAlgorithm.MD5.hex(content);
+        String scriptClassName = SCRIPT_CLASS_PREFIX + md5;
+
+        GroovyClassLoader groovyClassLoader = new GroovyClassLoader(classLoader, configuration);
+        CompilationUnit compilationUnit = new CompilationUnit(configuration, null, groovyClassLoader);
+        compilationUnit.addSource(scriptClassName + SCRIPT_EXTENSION, content);
+        compilationUnit.compile(Phases.CLASS_GENERATION);
+
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (Object compiledClass : compilationUnit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) compiledClass;
+            classes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        return new PrecompiledScript(md5, scriptClassName, classes);
+    }
+}
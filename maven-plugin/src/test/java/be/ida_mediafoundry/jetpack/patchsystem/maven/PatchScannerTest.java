@@ -0,0 +1,129 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PatchManifest;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.ScriptFingerprint;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PatchScannerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File patches;
+
+    @Before
+    public void setUp() throws IOException {
+        patches = temporaryFolder.newFolder("jcr_root", "apps", "patches");
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        //given
+        write("project-A/.content.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\" xmlns:sling=\"http://sling.apache.org/jcr/sling/1.0\"\n"
+                + "    jcr:primaryType=\"sling:OrderedFolder\" jcr:title=\"Project A\" transactional=\"{Boolean}true\">\n"
+                + "    <script-2.groovy/>\n"
+                + "    <_x0031_0-script.groovy/>\n"
+                + "</jcr:root>\n");
+        write("project-A/10-script.groovy", "println 'ten'");
+        write("project-A/script-1.groovy", "println 'one'");
+        write("project-A/script-2.groovy", "// comment\nprintln 'two'");
+        write("project-A/sub/script-3.groovy", "println 'three'");
+        write("project-A/readme.txt", "not a patch");
+        write("project-A/script-1.groovy.dir/.content.xml", "<jcr:root/>");
+        write("project-B/script-4.groovy", "println 'four'");
+
+        //test
+        Map<File, PatchManifest> manifests = new PatchScanner().scan(patches);
+
+        //check
+        assertThat(manifests.keySet()).extracting(File::getName).containsExactly("project-A", "project-B");
+
+        PatchManifest manifest = manifests.get(new File(patches, "project-A"));
+        assertThat(manifest.getFolders()).extracting(PatchManifest.Folder::getPath).containsExactly("project-A", "project-A/sub");
+        assertThat(manifest.getFolders().get(0).getTitle()).isEqualTo("Project A");
+        assertThat(manifest.getFolders().get(0).isTransactional()).isTrue();
+        assertThat(manifest.getFolders().get(1).isTransactional()).isFalse();
+        assertThat(manifest.getPatches()).extracting(PatchManifest.Patch::getPath).containsExactly(
+                "project-A/script-2.groovy", "project-A/10-script.groovy", "project-A/script-1.groovy", "project-A/sub/script-3.groovy");
+        assertThat(manifest.getPatches()).extracting(PatchManifest.Patch::getOrder).containsExactly(0, 1, 2, 3);
+
+        PatchManifest.Patch patch = manifest.getPatches().get(0);
+        String content = "// comment\nprintln 'two'";
+        assertThat(patch.getSize()).isEqualTo(content.length());
+        assertThat(patch.getMd5()).isEqualTo(DigestAlgorithm.MD5.hex(content));
+        assertThat(patch.getFingerprint()).isEqualTo(ScriptFingerprint.of(content));
+        assertThat(patch.getDigests()).containsEntry("sha256", DigestAlgorithm.SHA256.digest(content))
+                .containsEntry("murmur3", DigestAlgorithm.MURMUR3.digest(content));
+
+        assertThat(manifests.get(new File(patches, "project-B")).getPatches()).hasSize(1);
+    }
+
+    @Test
+    public void testScan_bulkPatches() throws IOException {
+        //given
+        String descriptor = "{\"query\": \"SELECT * FROM [cq:PageContent]\", \"operations\": [{\"op\": \"remove\", \"property\": \"a\"}]}";
+        write("project-A/script-1.groovy", "println 'one'");
+        write("project-A/migrate.bulk.json", descriptor);
+        write("project-A/sub/cleanup.bulk.json", descriptor);
+
+        //test
+        PatchManifest manifest = new PatchScanner().scan(patches).get(new File(patches, "project-A"));
+
+        //check
+        assertThat(manifest.getPatches()).extracting(PatchManifest.Patch::getPath).containsExactly("project-A/script-1.groovy");
+        assertThat(manifest.getBulkPatches()).extracting(PatchManifest.Patch::getPath)
+                .containsExactly("project-A/migrate.bulk.json", "project-A/sub/cleanup.bulk.json");
+        assertThat(manifest.getBulkPatches()).extracting(PatchManifest.Patch::getOrder).containsExactly(0, 1);
+        assertThat(manifest.getBulkPatches().get(0).getMd5()).isEqualTo(DigestAlgorithm.MD5.hex(descriptor));
+        assertThat(manifest.getBulkPatches().get(0).getFingerprint()).isEqualTo(ScriptFingerprint.of(descriptor));
+        assertThat(manifest.getBulkPatches().get(0).getDigests()).containsEntry("sha256", DigestAlgorithm.SHA256.digest(descriptor));
+    }
+
+    @Test
+    public void testScan_roundTrip() throws IOException {
+        //given
+        write("project-A/script-1.groovy", "println 'one'");
+
+        //test
+        PatchManifest manifest = new PatchScanner().scan(patches).get(new File(patches, "project-A"));
+        PatchManifest parsed = PatchManifest.parse(manifest.toJson());
+
+        //check
+        assertThat(parsed.getPatches()).hasSize(1);
+        assertThat(parsed.getPatches().get(0).getMd5()).isEqualTo(manifest.getPatches().get(0).getMd5());
+        assertThat(parsed.getBulkPatches()).isEmpty();
+    }
+
+    @Test
+    public void testToRepositoryName() {
+        assertThat(PatchScanner.toRepositoryName("_cq_dialog")).isEqualTo("cq:dialog");
+        assertThat(PatchScanner.toRepositoryName("script%3a1.groovy")).isEqualTo("script:1.groovy");
+        assertThat(PatchScanner.toRepositoryName("script-1.groovy")).isEqualTo("script-1.groovy");
+        assertThat(PatchScanner.toRepositoryName("script+1.groovy")).isEqualTo("script+1.groovy");
+    }
+
+    @Test
+    public void testDecodeXmlName() {
+        assertThat(PatchScanner.decodeXmlName("_x0031_0-script.groovy")).isEqualTo("10-script.groovy");
+        assertThat(PatchScanner.decodeXmlName("script-1.groovy")).isEqualTo("script-1.groovy");
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(patches, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
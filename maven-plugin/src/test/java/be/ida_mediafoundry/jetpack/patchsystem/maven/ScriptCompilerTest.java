@@ -0,0 +1,68 @@
+package be.ida_mediafoundry.jetpack.patchsystem.maven;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.PrecompiledScript;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.utils.DigestAlgorithm;
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ScriptCompilerTest {
+
+    private final ScriptCompiler compiler = new ScriptCompiler(getClass().getClassLoader(), Collections.singletonList("java.util.concurrent"));
+
+    @Test
+    public void testCompile() throws IOException {
+        //given
+        String content = "// sum\ndef values = new ConcurrentHashMap([a: 1, b: 2])\nreturn values.values().collect { it * 2 }.sum()";
+
+        //test
+        PrecompiledScript precompiledScript = compiler.compile(content);
+
+        //check
+        String md5 = DigestAlgorithm.MD5.hex(content);
+        assertThat(precompiledScript.getMd5()).isEqualTo(md5);
+        assertThat(precompiledScript.getScriptClassName()).isEqualTo("PatchScript_" + md5);
+        //script and closure
+        assertThat(precompiledScript.getClasses()).hasSize(2).containsKey("PatchScript_" + md5);
+        assertThat(run(read(precompiledScript))).isEqualTo(6);
+    }
+
+    @Test
+    public void testCompile_compilationError() {
+        assertThatThrownBy(() -> compiler.compile("def x = {")).isInstanceOf(CompilationFailedException.class);
+        assertThatThrownBy(() -> compiler.compile("new UnknownType()")).isInstanceOf(CompilationFailedException.class);
+    }
+
+    /**
+     * Write and read the script, as it is deployed.
+     */
+    private static PrecompiledScript read(PrecompiledScript precompiledScript) throws IOException {
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        precompiledScript.write(jar);
+        return PrecompiledScript.read(new ByteArrayInputStream(jar.toByteArray()));
+    }
+
+    private static Object run(PrecompiledScript precompiledScript) {
+        GroovyClassLoader classLoader = new GroovyClassLoader(ScriptCompilerTest.class.getClassLoader());
+        Class<?> scriptClass = null;
+        for (Map.Entry<String, byte[]> entry : precompiledScript.getClasses().entrySet()) {
+            Class<?> definedClass = classLoader.defineClass(entry.getKey(), entry.getValue());
+            if (entry.getKey().equals(precompiledScript.getScriptClassName())) {
+                scriptClass = definedClass;
+            }
+        }
+        return InvokerHelper.createScript(scriptClass.asSubclass(Script.class), new Binding()).run();
+    }
+}
@@ -0,0 +1,225 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import com.day.crx.JcrConstants;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Loads the files and folders of a content package in FileVault layout into the repository.
+ * Folders get the primary type and simple properties of their .content.xml, files are created as nt:file.
+ * Nodes that are only defined inside a .content.xml, e.g. pages, are not loaded: use a JSON fixture for that content.
+ */
+class ContentLoader {
+
+    static final String JCR_ROOT = "jcr_root";
+    static final String PATCHES_ROOT = "/apps/patches";
+
+    private static final String CONTENT_XML = ".content.xml";
+    private static final String DEFAULT_FOLDER_TYPE = "sling:OrderedFolder";
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private final ResourceResolver resourceResolver;
+
+    ContentLoader(ResourceResolver resourceResolver) {
+        this.resourceResolver = resourceResolver;
+    }
+
+    /**
+     * @param source a content package (zip), its jcr_root folder, a folder containing a jcr_root folder
+     *               or a folder with project folders of patches, loaded under /apps/patches
+     * @return number of files loaded
+     * @throws IOException in case the content can't be read or saved
+     */
+    int load(File source) throws IOException {
+        if (source.isFile()) {
+            return loadPackage(source);
+        }
+
+        File jcrRoot = JCR_ROOT.equals(source.getName()) ? source : new File(source, JCR_ROOT);
+        int files = jcrRoot.isDirectory()
+                ? loadFolder(jcrRoot, "")
+                : loadFolder(source, PATCHES_ROOT);
+        resourceResolver.commit();
+        return files;
+    }
+
+    private int loadPackage(File contentPackage) throws IOException {
+        Path directory = Files.createTempDirectory("patch-system-runner");
+        try (ZipFile zipFile = new ZipFile(contentPackage)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path target = directory.resolve(entry.getName()).normalize();
+                if (!target.startsWith(directory) || !entry.getName().startsWith(JCR_ROOT + "/")) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            return load(directory.resolve(JCR_ROOT).toFile());
+        }
+    }
+
+    private int loadFolder(File directory, String path) throws IOException {
+        if (!path.isEmpty()) {
+            createFolder(path, readProperties(directory));
+        }
+
+        int files = 0;
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return files;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            String name = child.getName();
+            if (name.startsWith(".") || name.endsWith(".dir") || name.startsWith("_jcr_")) {
+                continue;
+            }
+
+            String childPath = path + "/" + toRepositoryName(name);
+            if (child.isDirectory()) {
+                files += loadFolder(child, childPath);
+            } else {
+                createFile(child, childPath);
+                files++;
+            }
+        }
+        return files;
+    }
+
+    private void createFolder(String path, Map<String, Object> properties) throws PersistenceException {
+        Resource resource = resourceResolver.getResource(path);
+        if (resource == null) {
+            String parentPath = StringUtils.substringBeforeLast(path, "/");
+            if (!parentPath.isEmpty() && resourceResolver.getResource(parentPath) == null) {
+                createFolder(parentPath, defaultProperties());
+            }
+            Resource parent = resourceResolver.getResource(StringUtils.defaultIfEmpty(parentPath, "/"));
+            resourceResolver.create(parent, StringUtils.substringAfterLast(path, "/"), properties);
+        } else if (properties.size() > 1) {
+            //folders like /apps exist already, only set the properties
+            ModifiableValueMap existingProperties = resource.adaptTo(ModifiableValueMap.class);
+            if (existingProperties != null) {
+                properties.remove(JcrConstants.JCR_PRIMARYTYPE);
+                existingProperties.putAll(properties);
+            }
+        }
+    }
+
+    private void createFile(File file, String path) throws IOException {
+        Resource parent = resourceResolver.getResource(StringUtils.substringBeforeLast(path, "/"));
+        String name = StringUtils.substringAfterLast(path, "/");
+
+        Map<String, Object> fileProperties = new HashMap<>();
+        fileProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE);
+        Resource fileResource = resourceResolver.create(parent, name, fileProperties);
+
+        Map<String, Object> contentProperties = new HashMap<>();
+        contentProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE);
+        contentProperties.put(JcrConstants.JCR_MIMETYPE, StringUtils.defaultIfEmpty(Files.probeContentType(file.toPath()), DEFAULT_MIME_TYPE));
+        contentProperties.put(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            contentProperties.put(JcrConstants.JCR_DATA, inputStream);
+            resourceResolver.create(fileResource, JcrConstants.JCR_CONTENT, contentProperties);
+        }
+    }
+
+    /**
+     * @return primary type and simple properties of the .content.xml of the folder, without the type hints
+     */
+    private static Map<String, Object> readProperties(File directory) throws IOException {
+        Map<String, Object> properties = defaultProperties();
+
+        File contentXml = new File(directory, CONTENT_XML);
+        if (!contentXml.isFile()) {
+            return properties;
+        }
+
+        Element root;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            root = factory.newDocumentBuilder().parse(contentXml).getDocumentElement();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Couldn't read " + contentXml, e);
+        }
+
+        NamedNodeMap attributes = root.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String name = attribute.getName();
+            if (name.startsWith("xmlns") || JcrConstants.JCR_MIXINTYPES.equals(name) || attribute.getValue().startsWith("[")) {
+                continue;
+            }
+            properties.put(name, toValue(attribute.getValue()));
+        }
+        return properties;
+    }
+
+    private static Map<String, Object> defaultProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(JcrConstants.JCR_PRIMARYTYPE, DEFAULT_FOLDER_TYPE);
+        return properties;
+    }
+
+    private static Object toValue(String value) {
+        if (value.startsWith("{Boolean}")) {
+            return Boolean.valueOf(StringUtils.substringAfter(value, "}"));
+        } else if (value.startsWith("{Long}")) {
+            return Long.valueOf(StringUtils.substringAfter(value, "}"));
+        } else if (value.startsWith("{")) {
+            return StringUtils.substringAfter(value, "}");
+        }
+        return value.replace("\\{", "{");
+    }
+
+    /**
+     * Name of the node for a file or directory name in FileVault, e.g. {@code _cq_dialog} becomes {@code cq:dialog}.
+     */
+    static String toRepositoryName(String platformName) {
+        String name = platformName;
+        if (name.startsWith("_") && name.indexOf('_', 1) > 1 && !name.startsWith("__")) {
+            int end = name.indexOf('_', 1);
+            name = name.substring(1, end) + ":" + name.substring(end + 1);
+        }
+        try {
+            return URLDecoder.decode(name.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.models.ContentPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the results of a run in memory, in the order the patches were started.
+ * The runner starts from an empty repository, so every patch is new.
+ */
+public class InMemoryPatchResultRepository implements GroovyPatchResultRepository {
+
+    private final Map<String, GroovyPatchResult> results = new LinkedHashMap<>();
+
+    @Override
+    public synchronized GroovyPatchResult getResult(ContentPatchFile patchFile) {
+        return results.get(patchFile.getResultPath());
+    }
+
+    @Override
+    public synchronized GroovyPatchResult createResult(ContentPatchFile patchFile) {
+        GroovyPatchResult patchResult = newResult(patchFile);
+        results.put(patchResult.getId(), patchResult);
+        return patchResult;
+    }
+
+    /**
+     * The runner starts from an empty repository, there are no earlier results to link to.
+     */
+    @Override
+    public GroovyPatchResult linkResult(ContentPatchFile patchFile) {
+        return null;
+    }
+
+    @Override
+    public GroovyPatchResult newResult(ContentPatchFile patchFile) {
+        GroovyPatchResult patchResult = new GroovyPatchResult(patchFile.getResultPath(), PatchStatus.RUNNING, Calendar.getInstance());
+        patchResult.setMd5(patchFile.getMd5());
+        return patchResult;
+    }
+
+    @Override
+    public synchronized void updateResult(GroovyPatchResult patchResult) {
+        patchResult.setEndDate(Calendar.getInstance());
+        results.put(patchResult.getId(), patchResult);
+    }
+
+    @Override
+    public synchronized void updateResults(List<GroovyPatchResult> patchResults) {
+        Calendar endDate = Calendar.getInstance();
+        for (GroovyPatchResult patchResult : patchResults) {
+            patchResult.setEndDate(endDate);
+            results.put(patchResult.getId(), patchResult);
+        }
+    }
+
+    @Override
+    public void flush() {
+        //nothing is written behind
+    }
+
+    /**
+     * @return the results of the run, in the order the patches were started
+     */
+    public synchronized List<GroovyPatchResult> getResults() {
+        return new ArrayList<>(results.values());
+    }
+}
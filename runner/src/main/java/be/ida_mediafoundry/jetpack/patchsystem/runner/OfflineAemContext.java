@@ -0,0 +1,23 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import io.wcm.testing.mock.aem.context.AemContextImpl;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+
+/**
+ * AEM mock context backed by an in-memory Oak repository, outside of a JUnit rule.
+ */
+class OfflineAemContext extends AemContextImpl implements AutoCloseable {
+
+    OfflineAemContext() {
+        setResourceResolverType(ResourceResolverType.JCR_OAK);
+    }
+
+    void start() {
+        setUp();
+    }
+
+    @Override
+    public void close() {
+        tearDown();
+    }
+}
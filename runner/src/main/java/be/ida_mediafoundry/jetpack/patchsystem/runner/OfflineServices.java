@@ -0,0 +1,64 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Stand-ins for the AEM services the Groovy Console references, which don't exist in the in-memory repository.
+ */
+final class OfflineServices {
+
+    private OfflineServices() {
+    }
+
+    /**
+     * @return a service of which every method fails, for services the runner can't offer, e.g. the QueryBuilder
+     */
+    static <T> T unsupported(Class<T> serviceClass) {
+        return createProxy(serviceClass, (proxy, method, args) -> {
+            throw new UnsupportedOperationException(serviceClass.getSimpleName() + "." + method.getName()
+                    + " is not available in the patch system runner");
+        });
+    }
+
+    /**
+     * @return a service that ignores every call, for services without effect offline, e.g. the Replicator
+     */
+    static <T> T noOperation(Class<T> serviceClass) {
+        return createProxy(serviceClass, (proxy, method, args) -> getDefaultValue(method.getReturnType()));
+    }
+
+    private static <T> T createProxy(Class<T> serviceClass, InvocationHandler handler) {
+        return serviceClass.cast(Proxy.newProxyInstance(OfflineServices.class.getClassLoader(), new Class<?>[]{serviceClass},
+                (proxy, method, args) -> isObjectMethod(method)
+                        ? invokeObjectMethod(serviceClass, proxy, method, args)
+                        : handler.invoke(proxy, method, args)));
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        return method.getDeclaringClass() == Object.class;
+    }
+
+    private static Object invokeObjectMethod(Class<?> serviceClass, Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "Offline " + serviceClass.getName();
+        }
+    }
+
+    private static Object getDefaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,223 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import be.ida_mediafoundry.jetpack.patchsystem.JetpackConstants;
+import be.ida_mediafoundry.jetpack.patchsystem.executors.PatchJobExecutor;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchFolder;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.GroovyPatchResultRepository;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.repositories.impl.GroovyPatchFileRepositoryImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.GroovyPatchSystemService;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyPatchSystemServiceImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyQueryAnalyzerImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.services.impl.GroovyScriptCacheImpl;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchFile;
+import be.ida_mediafoundry.jetpack.patchsystem.services.impl.PatchPreconditionServiceImpl;
+import com.day.cq.replication.Replicator;
+import com.day.cq.search.QueryBuilder;
+import com.icfolson.aem.groovy.console.GroovyConsoleService;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultBindingExtensionProvider;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultExtensionService;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultScriptMetaClassExtensionProvider;
+import com.icfolson.aem.groovy.console.extension.impl.DefaultStarImportExtensionProvider;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.commons.classloader.DynamicClassLoaderManager;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the groovy patches of a content package against an in-memory repository, through the same services and
+ * job executor as on AEM, and reports the results and timings as JSON.
+ * Meant for validating patches in CI, before they reach an AEM instance.
+ *
+ * <pre>
+ * java -jar runner.jar &lt;package.zip|folder&gt; [--fixture /content/path=content.json]... [--output report.json]
+ * </pre>
+ */
+public class PatchRunner {
+
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String FIXTURE_OPTION = "--fixture";
+    private static final String OUTPUT_OPTION = "--output";
+    private static final String USAGE = "Usage: java -jar runner.jar <package.zip|folder> "
+            + "[" + FIXTURE_OPTION + " /content/path=content.json]... [" + OUTPUT_OPTION + " report.json]";
+
+    private final File content;
+    private final Map<String, File> fixtures;
+
+    /**
+     * @param content content package or folder with the patches, see {@link ContentLoader#load(File)}
+     * @param fixtures JSON content loaded before the patches run, keyed by repository path
+     */
+    public PatchRunner(File content, Map<String, File> fixtures) {
+        this.content = content;
+        this.fixtures = new LinkedHashMap<>(fixtures);
+    }
+
+    public static void main(String[] args) {
+        System.exit(execute(args));
+    }
+
+    static int execute(String[] args) {
+        File content = null;
+        File output = null;
+        Map<String, File> fixtures = new LinkedHashMap<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ((FIXTURE_OPTION.equals(arg) || OUTPUT_OPTION.equals(arg)) && i + 1 == args.length) {
+                System.err.println(USAGE);
+                return EXIT_USAGE;
+            } else if (FIXTURE_OPTION.equals(arg)) {
+                String fixture = args[++i];
+                if (!fixture.startsWith("/") || !fixture.contains("=")) {
+                    System.err.println("Invalid fixture '" + fixture + "', expected /content/path=content.json");
+                    return EXIT_USAGE;
+                }
+                fixtures.put(StringUtils.substringBefore(fixture, "="), new File(StringUtils.substringAfter(fixture, "=")));
+            } else if (OUTPUT_OPTION.equals(arg)) {
+                output = new File(args[++i]);
+            } else if (content == null && !arg.startsWith("--")) {
+                content = new File(arg);
+            } else {
+                System.err.println(USAGE);
+                return EXIT_USAGE;
+            }
+        }
+
+        if (content == null || !content.exists()) {
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try {
+            RunReport report = new PatchRunner(content, fixtures).run();
+            if (output != null) {
+                try (Writer writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+                    writer.write(report.toJson());
+                }
+            } else {
+                System.out.println(report.toJson());
+            }
+            return report.isSucceeded() ? EXIT_SUCCESS : EXIT_FAILED;
+        } catch (IOException e) {
+            System.err.println("Patches could not be run: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    /**
+     * Load the content in an empty repository and run all groovy patches that would be executed on deployment.
+     *
+     * @return results and timings of the run
+     * @throws IOException in case the content or fixtures can't be read
+     */
+    public RunReport run() throws IOException {
+        RunReport report = new RunReport();
+        long start = System.nanoTime();
+
+        try (OfflineAemContext context = new OfflineAemContext()) {
+            context.start();
+            InMemoryPatchResultRepository patchResultRepository = new InMemoryPatchResultRepository();
+            PatchJobExecutor patchJobExecutor = registerServices(context, patchResultRepository);
+            long started = System.nanoTime();
+            report.getTimings().startup = toMillis(started - start);
+
+            new ContentLoader(context.resourceResolver()).load(content);
+            for (Map.Entry<String, File> fixture : fixtures.entrySet()) {
+                try (InputStream inputStream = Files.newInputStream(fixture.getValue().toPath())) {
+                    context.load().json(inputStream, fixture.getKey());
+                }
+            }
+            long loaded = System.nanoTime();
+            report.getTimings().load = toMillis(loaded - started);
+
+            GroovyPatchSystemService groovyPatchSystemService = context.getService(GroovyPatchSystemService.class);
+            List<PatchFile> patchFiles = groovyPatchSystemService.getPatchesToExecute();
+            long discovered = System.nanoTime();
+            report.getTimings().discovery = toMillis(discovered - loaded);
+
+            RunnerJobContext jobContext = new RunnerJobContext();
+            JobExecutionResult jobResult = patchJobExecutor.process(new RunnerJob(getJobProperties(patchFiles)), jobContext);
+            long finished = System.nanoTime();
+            report.getTimings().job = toMillis(finished - discovered);
+
+            report.setSucceeded(jobResult.succeeded());
+            report.setMessage(jobResult.getMessage());
+            report.getLog().addAll(jobContext.getLog());
+
+            Map<String, String> patchPaths = new HashMap<>();
+            patchFiles.forEach(patchFile -> patchPaths.put(patchFile.getResultPath(), patchFile.getPath()));
+            for (GroovyPatchResult patchResult : patchResultRepository.getResults()) {
+                String patchPath = patchPaths.getOrDefault(patchResult.getId(), patchResult.getId());
+                report.getPatches().add(new RunReport.PatchRun(patchPath, patchResult));
+            }
+        }
+
+        report.getTimings().total = toMillis(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Register the patch system services with the Groovy Console extensions they use,
+     * services are registered before the components referencing them.
+     *
+     * @return the job executor, which is registered as a {@link org.apache.sling.event.jobs.consumer.JobExecutor}
+     */
+    private static PatchJobExecutor registerServices(OfflineAemContext context, GroovyPatchResultRepository patchResultRepository) {
+        context.addModelsForClasses(GroovyPatchFile.class, GroovyPatchFolder.class);
+
+        ClassLoader classLoader = PatchRunner.class.getClassLoader();
+        context.registerService(DynamicClassLoaderManager.class, () -> classLoader);
+        context.registerService(QueryBuilder.class, OfflineServices.unsupported(QueryBuilder.class));
+        context.registerService(Replicator.class, OfflineServices.noOperation(Replicator.class));
+        //scripts run through the extension service, the console service only has to be present
+        context.registerService(GroovyConsoleService.class, OfflineServices.unsupported(GroovyConsoleService.class));
+
+        context.registerInjectActivateService(new DefaultStarImportExtensionProvider());
+        context.registerInjectActivateService(new DefaultBindingExtensionProvider());
+        context.registerInjectActivateService(new DefaultScriptMetaClassExtensionProvider());
+        context.registerInjectActivateService(new DefaultExtensionService());
+
+        context.registerService(GroovyPatchResultRepository.class, patchResultRepository);
+        context.registerInjectActivateService(new GroovyPatchFileRepositoryImpl());
+        context.registerInjectActivateService(new GroovyScriptCacheImpl());
+        context.registerInjectActivateService(new GroovyQueryAnalyzerImpl());
+        context.registerInjectActivateService(new GroovyPatchSystemServiceImpl());
+        context.registerInjectActivateService(new PatchPreconditionServiceImpl());
+        return context.registerInjectActivateService(new PatchJobExecutor());
+    }
+
+    private static Map<String, Object> getJobProperties(List<PatchFile> patchFiles) {
+        List<String> patchPaths = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (PatchFile patchFile : patchFiles) {
+            patchPaths.add(patchFile.getPath());
+            types.add(GroovyPatchFile.TYPE);
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(JetpackConstants.PATCH_PATHS, patchPaths);
+        properties.put(JetpackConstants.TYPES, types);
+        return properties;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,162 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import be.ida_mediafoundry.jetpack.patchsystem.groovy.models.GroovyPatchResult;
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results and timings of a run, written as JSON.
+ */
+public class RunReport {
+
+    private boolean succeeded;
+    private String message;
+    private final Timings timings = new Timings();
+    private final List<PatchRun> patches = new ArrayList<>();
+    private final List<String> log = new ArrayList<>();
+
+    /**
+     * @return true in case the job succeeded and no patch failed
+     */
+    public boolean isSucceeded() {
+        return succeeded && patches.stream().noneMatch(patch -> PatchStatus.ERROR.name().equals(patch.status));
+    }
+
+    void setSucceeded(boolean succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Timings getTimings() {
+        return timings;
+    }
+
+    public List<PatchRun> getPatches() {
+        return patches;
+    }
+
+    public List<String> getLog() {
+        return log;
+    }
+
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this);
+    }
+
+    /**
+     * Durations of the stages of the run, in milliseconds.
+     */
+    public static class Timings {
+
+        long startup;
+        long load;
+        long discovery;
+        long job;
+        long total;
+
+        public long getStartup() {
+            return startup;
+        }
+
+        public long getLoad() {
+            return load;
+        }
+
+        public long getDiscovery() {
+            return discovery;
+        }
+
+        public long getJob() {
+            return job;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * Result of a patch.
+     */
+    public static class PatchRun {
+
+        private final String path;
+        private final String status;
+        private final Long duration;
+        private final String runningTime;
+        private final String output;
+        private final Integer commitCount;
+        private final Long rowsRead;
+        private final Long visitedNodes;
+        private final String queryPlan;
+        private final boolean queryPlanFlagged;
+
+        PatchRun(String path, GroovyPatchResult patchResult) {
+            this.path = path;
+            this.status = patchResult.getStatus();
+            this.duration = patchResult.getEndDate() != null
+                    ? patchResult.getEndDate().getTimeInMillis() - patchResult.getStartDate().getTimeInMillis()
+                    : null;
+            this.runningTime = patchResult.getRunningTime();
+            this.output = patchResult.getOutput();
+            this.commitCount = patchResult.getCommitCount();
+            this.rowsRead = patchResult.getRowsRead();
+            this.visitedNodes = patchResult.getVisitedNodes();
+            this.queryPlan = patchResult.getQueryPlan();
+            this.queryPlanFlagged = patchResult.isQueryPlanFlagged();
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return time between the start and end of the patch in milliseconds, including compiling and saving
+         */
+        public Long getDuration() {
+            return duration;
+        }
+
+        public String getRunningTime() {
+            return runningTime;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public Integer getCommitCount() {
+            return commitCount;
+        }
+
+        public Long getRowsRead() {
+            return rowsRead;
+        }
+
+        public Long getVisitedNodes() {
+            return visitedNodes;
+        }
+
+        public String getQueryPlan() {
+            return queryPlan;
+        }
+
+        public boolean isQueryPlanFlagged() {
+            return queryPlanFlagged;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import be.ida_mediafoundry.jetpack.patchsystem.executors.PatchJobExecutor;
+import org.apache.sling.event.jobs.Job;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Patch job as the job manager would hand it to the {@link PatchJobExecutor}.
+ */
+class RunnerJob implements Job {
+
+    private final Map<String, Object> properties;
+    private final Calendar created = Calendar.getInstance();
+
+    RunnerJob(Map<String, Object> properties) {
+        this.properties = new HashMap<>(properties);
+    }
+
+    @Override
+    public String getTopic() {
+        return PatchJobExecutor.TOPIC;
+    }
+
+    @Override
+    public String getId() {
+        return "patch-system-runner";
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public Set<String> getPropertyNames() {
+        return properties.keySet();
+    }
+
+    @Override
+    public <T> T getProperty(String name, Class<T> type) {
+        Object value = properties.get(name);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String name, T defaultValue) {
+        Object value = properties.get(name);
+        return value != null && defaultValue.getClass().isInstance(value) ? (T) value : defaultValue;
+    }
+
+    @Override
+    public int getRetryCount() {
+        return 0;
+    }
+
+    @Override
+    public int getNumberOfRetries() {
+        return 0;
+    }
+
+    @Override
+    public String getQueueName() {
+        return null;
+    }
+
+    @Override
+    public String getTargetInstance() {
+        return null;
+    }
+
+    @Override
+    public Calendar getProcessingStarted() {
+        return created;
+    }
+
+    @Override
+    public Calendar getCreated() {
+        return created;
+    }
+
+    @Override
+    public String getCreatedInstance() {
+        return null;
+    }
+
+    @Override
+    public JobState getJobState() {
+        return JobState.ACTIVE;
+    }
+
+    @Override
+    public Calendar getFinishedDate() {
+        return null;
+    }
+
+    @Override
+    public String getResultMessage() {
+        return null;
+    }
+
+    @Override
+    public String[] getProgressLog() {
+        return new String[0];
+    }
+
+    @Override
+    public int getProgressStepCount() {
+        return -1;
+    }
+
+    @Override
+    public int getFinishedProgressStep() {
+        return -1;
+    }
+
+    @Override
+    public Calendar getProgressETA() {
+        return null;
+    }
+}
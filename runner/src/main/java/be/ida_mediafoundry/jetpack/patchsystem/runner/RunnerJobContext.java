@@ -0,0 +1,124 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Execution context of the patch job, collecting the job log.
+ */
+class RunnerJobContext implements JobExecutionContext {
+
+    private final List<String> log = new ArrayList<>();
+
+    @Override
+    public void asyncProcessingFinished(JobExecutionResult result) {
+        //jobs run synchronously
+    }
+
+    @Override
+    public boolean isStopped() {
+        return false;
+    }
+
+    @Override
+    public void initProgress(int steps, long eta) {
+        //progress is reported through the log
+    }
+
+    @Override
+    public void incrementProgressCount(int steps) {
+        //progress is reported through the log
+    }
+
+    @Override
+    public void updateProgress(long eta) {
+        //progress is reported through the log
+    }
+
+    @Override
+    public synchronized void log(String message, Object... args) {
+        log.add(MessageFormat.format(message, args));
+    }
+
+    @Override
+    public ResultBuilder result() {
+        return new RunnerResultBuilder();
+    }
+
+    synchronized List<String> getLog() {
+        return new ArrayList<>(log);
+    }
+
+    private static class RunnerResultBuilder implements ResultBuilder {
+
+        private String message;
+
+        @Override
+        public ResultBuilder message(String message) {
+            this.message = message;
+            return this;
+        }
+
+        @Override
+        public JobExecutionResult succeeded() {
+            return new RunnerJobResult(true, false, message);
+        }
+
+        @Override
+        public JobExecutionResult failed() {
+            return new RunnerJobResult(false, false, message);
+        }
+
+        @Override
+        public JobExecutionResult failed(long retryDelayInMs) {
+            return failed();
+        }
+
+        @Override
+        public JobExecutionResult cancelled() {
+            return new RunnerJobResult(false, true, message);
+        }
+    }
+
+    private static class RunnerJobResult implements JobExecutionResult {
+
+        private final boolean succeeded;
+        private final boolean cancelled;
+        private final String message;
+
+        RunnerJobResult(boolean succeeded, boolean cancelled, String message) {
+            this.succeeded = succeeded;
+            this.cancelled = cancelled;
+            this.message = message;
+        }
+
+        @Override
+        public boolean succeeded() {
+            return succeeded;
+        }
+
+        @Override
+        public boolean cancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean failed() {
+            return !succeeded && !cancelled;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public Long getRetryDelayInMs() {
+            return null;
+        }
+    }
+}
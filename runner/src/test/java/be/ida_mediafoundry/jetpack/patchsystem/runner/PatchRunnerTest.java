@@ -0,0 +1,113 @@
+package be.ida_mediafoundry.jetpack.patchsystem.runner;
+
+import be.ida_mediafoundry.jetpack.patchsystem.models.PatchStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PatchRunnerTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRun_succeeding() throws Exception {
+        //given
+        PatchRunner patchRunner = new PatchRunner(getResource("/succeeding"), getFixtures());
+
+        //test
+        RunReport report = patchRunner.run();
+
+        //check
+        assertThat(report.isSucceeded()).isTrue();
+        assertThat(report.getPatches()).hasSize(2);
+
+        RunReport.PatchRun createNode = report.getPatches().get(0);
+        assertThat(createNode.getPath()).isEqualTo("/apps/patches/demo/01-create-node.groovy");
+        assertThat(createNode.getStatus()).isEqualTo(PatchStatus.SUCCESS.name());
+        assertThat(createNode.getDuration()).isNotNull();
+        assertThat(createNode.getOutput()).contains("Created /content/runner");
+
+        RunReport.PatchRun readNode = report.getPatches().get(1);
+        assertThat(readNode.getPath()).isEqualTo("/apps/patches/demo/02-read-node.groovy");
+        assertThat(readNode.getStatus()).isEqualTo(PatchStatus.SUCCESS.name());
+        assertThat(readNode.getOutput()).contains("Title: Fixture");
+    }
+
+    @Test
+    public void testRun_failingTransactionalGroup() throws Exception {
+        //given
+        PatchRunner patchRunner = new PatchRunner(getResource("/failing"), getFixtures());
+
+        //test
+        RunReport report = patchRunner.run();
+
+        //check
+        assertThat(report.isSucceeded()).isFalse();
+        assertThat(report.getPatches()).hasSize(2);
+        assertThat(report.getPatches()).allMatch(patch -> PatchStatus.ERROR.name().equals(patch.getStatus()));
+        assertThat(report.getPatches().get(1).getOutput()).contains("Patch failed on purpose");
+        assertThat(report.getLog()).anyMatch(line -> line.contains("transactional group"));
+    }
+
+    @Test
+    public void testExecute_writesReport() throws Exception {
+        //given
+        File output = new File(temporaryFolder.getRoot(), "report.json");
+        String[] args = {
+                getResource("/succeeding").getPath(),
+                "--fixture", "/content/fixture=" + getResource("/fixtures/content.json").getPath(),
+                "--output", output.getPath()
+        };
+
+        //test
+        int exitCode = PatchRunner.execute(args);
+
+        //check
+        assertThat(exitCode).isEqualTo(PatchRunner.EXIT_SUCCESS);
+        String json = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+        assertThat(json).contains("\"timings\"", "\"/apps/patches/demo/01-create-node.groovy\"");
+    }
+
+    @Test
+    public void testExecute_failing() throws Exception {
+        //given
+        String[] args = {
+                getResource("/failing").getPath(),
+                "--fixture", "/content/fixture=" + getResource("/fixtures/content.json").getPath(),
+                "--output", new File(temporaryFolder.getRoot(), "report.json").getPath()
+        };
+
+        //test
+        int exitCode = PatchRunner.execute(args);
+
+        //check
+        assertThat(exitCode).isEqualTo(PatchRunner.EXIT_FAILED);
+    }
+
+    @Test
+    public void testExecute_usage() {
+        assertThat(PatchRunner.execute(new String[0])).isEqualTo(PatchRunner.EXIT_USAGE);
+        assertThat(PatchRunner.execute(new String[]{temporaryFolder.getRoot().getPath(), "--output"}))
+                .isEqualTo(PatchRunner.EXIT_USAGE);
+        assertThat(PatchRunner.execute(new String[]{temporaryFolder.getRoot().getPath(), "--fixture", "content.json"}))
+                .isEqualTo(PatchRunner.EXIT_USAGE);
+    }
+
+    private static Map<String, File> getFixtures() throws URISyntaxException {
+        return Collections.singletonMap("/content/fixture", getResource("/fixtures/content.json"));
+    }
+
+    private static File getResource(String path) throws URISyntaxException {
+        return new File(PatchRunnerTest.class.getResource(path).toURI());
+    }
+}
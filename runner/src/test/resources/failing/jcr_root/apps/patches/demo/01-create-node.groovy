@@ -0,0 +1,2 @@
+getNode("/content/fixture").addNode("runner", "nt:unstructured")
+println "Created /content/fixture/runner"
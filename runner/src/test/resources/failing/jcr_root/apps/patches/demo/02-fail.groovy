@@ -0,0 +1 @@
+throw new IllegalStateException("Patch failed on purpose")
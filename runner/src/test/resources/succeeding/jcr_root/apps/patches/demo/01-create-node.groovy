@@ -0,0 +1,3 @@
+def content = session.getNode("/content")
+content.addNode("runner", "nt:unstructured").setProperty("title", getNode("/content/fixture").getProperty("title").string)
+println "Created /content/runner"
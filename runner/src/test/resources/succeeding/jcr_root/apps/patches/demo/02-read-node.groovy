@@ -0,0 +1 @@
+println "Title: " + getNode("/content/runner").getProperty("title").string
@@ -7,7 +7,7 @@
 
             var scriptTitle = $(this).data('script');
             console.log($(this));
-            var output = $(this).siblings()[0].innerHTML;
+            var output = $(this).next('.foundation-collection-item-showOutput__result')[0].innerHTML;
             console.log(output);
 
             progressTicker(scriptTitle, output)